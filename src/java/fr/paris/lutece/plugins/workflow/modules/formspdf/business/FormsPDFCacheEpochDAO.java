@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.business;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.FormsPDFPlugin;
+import fr.paris.lutece.util.sql.DAOUtil;
+
+/**
+ * DAO for the cache epochs
+ */
+public class FormsPDFCacheEpochDAO implements IFormsPDFCacheEpochDAO
+{
+    private static final String SQL_QUERY_SELECT_ALL = "SELECT cache_name, epoch FROM workflow_task_formspdf_cache_epoch ";
+    private static final String SQL_QUERY_INSERT = "INSERT INTO workflow_task_formspdf_cache_epoch ( cache_name, epoch ) VALUES ( ?, ? ) ";
+    private static final String SQL_QUERY_INCREMENT = "UPDATE workflow_task_formspdf_cache_epoch SET epoch = epoch + 1 WHERE cache_name = ? ";
+
+    @Override
+    public void insert( String strCacheName, long lEpoch )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT, FormsPDFPlugin.getPlugin( ) ) )
+        {
+            daoUtil.setString( 1, strCacheName );
+            daoUtil.setLong( 2, lEpoch );
+
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    @Override
+    public boolean increment( String strCacheName )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INCREMENT, FormsPDFPlugin.getPlugin( ) ) )
+        {
+            daoUtil.setString( 1, strCacheName );
+
+            return daoUtil.executeUpdate( ) == 1;
+        }
+    }
+
+    @Override
+    public Map<String, Long> selectAll( )
+    {
+        Map<String, Long> mapEpochs = new HashMap<>( );
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_ALL, FormsPDFPlugin.getPlugin( ) ) )
+        {
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                mapEpochs.put( daoUtil.getString( "cache_name" ), daoUtil.getLong( "epoch" ) );
+            }
+        }
+
+        return mapEpochs;
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.business;
+
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.FormsPDFPlugin;
+import fr.paris.lutece.util.sql.DAOUtil;
+
+/**
+ * DAO of the documents stored in the database by chunks
+ */
+public class FormsPDFDocumentStorageDAO implements IFormsPDFDocumentStorageDAO
+{
+    private static final String SQL_QUERY_INSERT_CHUNK = "INSERT INTO workflow_task_formspdf_document_chunk ( document_key, chunk_index, data ) VALUES ( ?, ?, ? ) ";
+    private static final String SQL_QUERY_SELECT_CHUNK = "SELECT data FROM workflow_task_formspdf_document_chunk WHERE document_key = ? AND chunk_index = ? ";
+    private static final String SQL_QUERY_INSERT_DOCUMENT = "INSERT INTO workflow_task_formspdf_document ( document_key, size, date_creation ) VALUES ( ?, ?, CURRENT_TIMESTAMP ) ";
+    private static final String SQL_QUERY_UPDATE_CHUNKS_KEY = "UPDATE workflow_task_formspdf_document_chunk SET document_key = ? WHERE document_key = ? ";
+    private static final String SQL_QUERY_SELECT_SIZE = "SELECT size FROM workflow_task_formspdf_document WHERE document_key = ? ";
+    private static final String SQL_QUERY_DELETE_DOCUMENT = "DELETE FROM workflow_task_formspdf_document WHERE document_key = ? ";
+    private static final String SQL_QUERY_DELETE_CHUNKS = "DELETE FROM workflow_task_formspdf_document_chunk WHERE document_key = ? ";
+
+    @Override
+    public void insertChunk( String strKey, int nIndex, byte [ ] data )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT_CHUNK, FormsPDFPlugin.getPlugin( ) ) )
+        {
+            int nParam = 0;
+            daoUtil.setString( ++nParam, strKey );
+            daoUtil.setInt( ++nParam, nIndex );
+            daoUtil.setBytes( ++nParam, data );
+
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    @Override
+    public byte [ ] loadChunk( String strKey, int nIndex )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_CHUNK, FormsPDFPlugin.getPlugin( ) ) )
+        {
+            daoUtil.setString( 1, strKey );
+            daoUtil.setInt( 2, nIndex );
+            daoUtil.executeQuery( );
+
+            return daoUtil.next( ) ? daoUtil.getBytes( "data" ) : null;
+        }
+    }
+
+    @Override
+    public void insertDocument( String strKey, long lSize )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT_DOCUMENT, FormsPDFPlugin.getPlugin( ) ) )
+        {
+            daoUtil.setString( 1, strKey );
+            daoUtil.setLong( 2, lSize );
+
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    @Override
+    public void updateChunksKey( String strKey, String strNewKey )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_UPDATE_CHUNKS_KEY, FormsPDFPlugin.getPlugin( ) ) )
+        {
+            daoUtil.setString( 1, strNewKey );
+            daoUtil.setString( 2, strKey );
+
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    @Override
+    public long loadSize( String strKey )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_SIZE, FormsPDFPlugin.getPlugin( ) ) )
+        {
+            daoUtil.setString( 1, strKey );
+            daoUtil.executeQuery( );
+
+            return daoUtil.next( ) ? daoUtil.getLong( "size" ) : -1;
+        }
+    }
+
+    @Override
+    public void delete( String strKey )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_DELETE_DOCUMENT, FormsPDFPlugin.getPlugin( ) ) )
+        {
+            daoUtil.setString( 1, strKey );
+
+            daoUtil.executeUpdate( );
+        }
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_DELETE_CHUNKS, FormsPDFPlugin.getPlugin( ) ) )
+        {
+            daoUtil.setString( 1, strKey );
+
+            daoUtil.executeUpdate( );
+        }
+    }
+}
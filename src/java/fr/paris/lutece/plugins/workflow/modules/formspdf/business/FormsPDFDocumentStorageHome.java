@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.business;
+
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.FormsPDFPlugin;
+import fr.paris.lutece.portal.service.spring.SpringContextService;
+import fr.paris.lutece.portal.service.util.AppException;
+import fr.paris.lutece.util.sql.TransactionManager;
+
+/**
+ * Home of the documents stored in the database by chunks
+ */
+public final class FormsPDFDocumentStorageHome
+{
+    private static IFormsPDFDocumentStorageDAO _dao = SpringContextService.getBean( "workflow-formspdf.formsPDFDocumentStorageDAO" );
+
+    private FormsPDFDocumentStorageHome( )
+    {
+    }
+
+    public static void createChunk( String strKey, int nIndex, byte [ ] data )
+    {
+        _dao.insertChunk( strKey, nIndex, data );
+    }
+
+    public static byte [ ] findChunk( String strKey, int nIndex )
+    {
+        return _dao.loadChunk( strKey, nIndex );
+    }
+
+    public static void createDocument( String strKey, long lSize )
+    {
+        _dao.insertDocument( strKey, lSize );
+    }
+
+    /**
+     * Replace a document by the chunks written under a temporary key, in a single transaction so that the readers get either document
+     * 
+     * @param strTemporaryKey
+     *            the temporary key of the chunks
+     * @param strKey
+     *            the key of the document
+     * @param lSize
+     *            the size of the document in bytes
+     */
+    public static void replaceDocument( String strTemporaryKey, String strKey, long lSize )
+    {
+        TransactionManager.beginTransaction( FormsPDFPlugin.getPlugin( ) );
+        try
+        {
+            _dao.delete( strKey );
+            _dao.updateChunksKey( strTemporaryKey, strKey );
+            _dao.insertDocument( strKey, lSize );
+            TransactionManager.commitTransaction( FormsPDFPlugin.getPlugin( ) );
+        }
+        catch( Exception e )
+        {
+            TransactionManager.rollBack( FormsPDFPlugin.getPlugin( ), e );
+            throw new AppException( e.getMessage( ), e );
+        }
+    }
+
+    public static long findSize( String strKey )
+    {
+        return _dao.loadSize( strKey );
+    }
+
+    public static void remove( String strKey )
+    {
+        _dao.delete( strKey );
+    }
+}
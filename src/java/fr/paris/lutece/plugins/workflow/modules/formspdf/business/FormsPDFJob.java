@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.business;
+
+import java.sql.Timestamp;
+
+/**
+ * A PDF generation job queued by a {@link fr.paris.lutece.plugins.workflow.modules.formspdf.service.task.FormsPDFTask FormsPDFTask} in cluster dispatch
+ * mode. A job is claimed by a node through a lease which expires if the node dies before completing it.
+ */
+public class FormsPDFJob
+{
+    public static final String STATUS_PENDING = "PENDING";
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_DONE = "DONE";
+    public static final String STATUS_FAILED = "FAILED";
+
+    private int _nId;
+    private int _nIdTask;
+    private int _nIdResourceHistory;
+    private String _strLocale;
+    private String _strStatus;
+    private String _strNodeId;
+    private Timestamp _leaseExpiration;
+    private int _nAttempts;
+    private Timestamp _dateCreation;
+
+    /**
+     * @return the job id
+     */
+    public int getId( )
+    {
+        return _nId;
+    }
+
+    /**
+     * @param nId
+     *            the job id
+     */
+    public void setId( int nId )
+    {
+        _nId = nId;
+    }
+
+    /**
+     * @return the id of the task which queued the job
+     */
+    public int getIdTask( )
+    {
+        return _nIdTask;
+    }
+
+    /**
+     * @param nIdTask
+     *            the id of the task which queued the job
+     */
+    public void setIdTask( int nIdTask )
+    {
+        _nIdTask = nIdTask;
+    }
+
+    /**
+     * @return the id of the resource history to process
+     */
+    public int getIdResourceHistory( )
+    {
+        return _nIdResourceHistory;
+    }
+
+    /**
+     * @param nIdResourceHistory
+     *            the id of the resource history to process
+     */
+    public void setIdResourceHistory( int nIdResourceHistory )
+    {
+        _nIdResourceHistory = nIdResourceHistory;
+    }
+
+    /**
+     * @return the language tag of the locale used to render the document
+     */
+    public String getLocale( )
+    {
+        return _strLocale;
+    }
+
+    /**
+     * @param strLocale
+     *            the language tag of the locale used to render the document
+     */
+    public void setLocale( String strLocale )
+    {
+        _strLocale = strLocale;
+    }
+
+    /**
+     * @return the status of the job
+     */
+    public String getStatus( )
+    {
+        return _strStatus;
+    }
+
+    /**
+     * @param strStatus
+     *            the status of the job
+     */
+    public void setStatus( String strStatus )
+    {
+        _strStatus = strStatus;
+    }
+
+    /**
+     * @return the id of the node holding the lease, if any
+     */
+    public String getNodeId( )
+    {
+        return _strNodeId;
+    }
+
+    /**
+     * @param strNodeId
+     *            the id of the node holding the lease
+     */
+    public void setNodeId( String strNodeId )
+    {
+        _strNodeId = strNodeId;
+    }
+
+    /**
+     * @return the expiration date of the lease
+     */
+    public Timestamp getLeaseExpiration( )
+    {
+        return _leaseExpiration;
+    }
+
+    /**
+     * @param leaseExpiration
+     *            the expiration date of the lease
+     */
+    public void setLeaseExpiration( Timestamp leaseExpiration )
+    {
+        _leaseExpiration = leaseExpiration;
+    }
+
+    /**
+     * @return the number of times the job has been claimed
+     */
+    public int getAttempts( )
+    {
+        return _nAttempts;
+    }
+
+    /**
+     * @param nAttempts
+     *            the number of times the job has been claimed
+     */
+    public void setAttempts( int nAttempts )
+    {
+        _nAttempts = nAttempts;
+    }
+
+    /**
+     * @return the creation date of the job
+     */
+    public Timestamp getDateCreation( )
+    {
+        return _dateCreation;
+    }
+
+    /**
+     * @param dateCreation
+     *            the creation date of the job
+     */
+    public void setDateCreation( Timestamp dateCreation )
+    {
+        _dateCreation = dateCreation;
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.business;
+
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.FormsPDFPlugin;
+import fr.paris.lutece.util.sql.DAOUtil;
+
+/**
+ * DAO for {@link FormsPDFJob}. Jobs are claimed with a compare-and-set update rather than a SELECT ... FOR UPDATE SKIP LOCKED so that the queries run
+ * unchanged on every database supported by Lutece.
+ */
+public class FormsPDFJobDAO implements IFormsPDFJobDAO
+{
+    private static final String SQL_QUERY_SELECT = "SELECT id_job, id_task, id_resource_history, locale, status, node_id, lease_expiration, nb_attempts, date_creation FROM workflow_task_formspdf_job WHERE id_job = ?";
+    private static final String SQL_QUERY_INSERT = "INSERT INTO workflow_task_formspdf_job ( id_task, id_resource_history, locale, status, nb_attempts, date_creation ) VALUES ( ?, ?, ?, ?, 0, ? ) ";
+    private static final String SQL_CLAIMABLE_CONDITION = " ( status = ? OR ( status = ? AND lease_expiration < ? ) ) ";
+    private static final String SQL_QUERY_SELECT_CLAIMABLE_IDS = "SELECT id_job FROM workflow_task_formspdf_job WHERE" + SQL_CLAIMABLE_CONDITION + "ORDER BY id_job LIMIT ?";
+    private static final String SQL_QUERY_CLAIM = "UPDATE workflow_task_formspdf_job SET status = ?, node_id = ?, lease_expiration = ?, nb_attempts = nb_attempts + 1 WHERE id_job = ? AND"
+            + SQL_CLAIMABLE_CONDITION;
+    private static final String SQL_QUERY_RENEW_LEASE = "UPDATE workflow_task_formspdf_job SET lease_expiration = ? WHERE id_job = ? AND node_id = ? AND status = ? ";
+    private static final String SQL_QUERY_RELEASE = "UPDATE workflow_task_formspdf_job SET status = ?, lease_expiration = NULL WHERE id_job = ? AND node_id = ? ";
+    private static final String SQL_QUERY_COUNT_BY_STATUS = "SELECT COUNT(*) FROM workflow_task_formspdf_job WHERE status = ? ";
+    private static final String SQL_QUERY_DELETE_BY_STATUS_BEFORE = "DELETE FROM workflow_task_formspdf_job WHERE status = ? AND date_creation < ? ";
+    private static final String SQL_QUERY_DELETE_BY_TASK = "DELETE FROM workflow_task_formspdf_job WHERE id_task = ? ";
+
+    @Override
+    public void insert( FormsPDFJob job )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT, Statement.RETURN_GENERATED_KEYS, FormsPDFPlugin.getPlugin( ) ) )
+        {
+            int nIndex = 0;
+            daoUtil.setInt( ++nIndex, job.getIdTask( ) );
+            daoUtil.setInt( ++nIndex, job.getIdResourceHistory( ) );
+            daoUtil.setString( ++nIndex, job.getLocale( ) );
+            daoUtil.setString( ++nIndex, job.getStatus( ) );
+            daoUtil.setTimestamp( ++nIndex, job.getDateCreation( ) );
+
+            daoUtil.executeUpdate( );
+
+            if ( daoUtil.nextGeneratedKey( ) )
+            {
+                job.setId( daoUtil.getGeneratedKeyInt( 1 ) );
+            }
+        }
+    }
+
+    @Override
+    public FormsPDFJob load( int nIdJob )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT, FormsPDFPlugin.getPlugin( ) ) )
+        {
+            daoUtil.setInt( 1, nIdJob );
+            daoUtil.executeQuery( );
+
+            FormsPDFJob job = null;
+
+            if ( daoUtil.next( ) )
+            {
+                job = new FormsPDFJob( );
+                job.setId( daoUtil.getInt( "id_job" ) );
+                job.setIdTask( daoUtil.getInt( "id_task" ) );
+                job.setIdResourceHistory( daoUtil.getInt( "id_resource_history" ) );
+                job.setLocale( daoUtil.getString( "locale" ) );
+                job.setStatus( daoUtil.getString( "status" ) );
+                job.setNodeId( daoUtil.getString( "node_id" ) );
+                job.setLeaseExpiration( daoUtil.getTimestamp( "lease_expiration" ) );
+                job.setAttempts( daoUtil.getInt( "nb_attempts" ) );
+                job.setDateCreation( daoUtil.getTimestamp( "date_creation" ) );
+            }
+
+            return job;
+        }
+    }
+
+    @Override
+    public List<Integer> selectClaimableIds( Timestamp now, int nLimit )
+    {
+        List<Integer> listIds = new ArrayList<>( );
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_CLAIMABLE_IDS, FormsPDFPlugin.getPlugin( ) ) )
+        {
+            int nIndex = 0;
+            daoUtil.setString( ++nIndex, FormsPDFJob.STATUS_PENDING );
+            daoUtil.setString( ++nIndex, FormsPDFJob.STATUS_RUNNING );
+            daoUtil.setTimestamp( ++nIndex, now );
+            daoUtil.setInt( ++nIndex, nLimit );
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                listIds.add( daoUtil.getInt( 1 ) );
+            }
+        }
+
+        return listIds;
+    }
+
+    @Override
+    public boolean claim( int nIdJob, String strNodeId, Timestamp now, Timestamp leaseExpiration )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_CLAIM, FormsPDFPlugin.getPlugin( ) ) )
+        {
+            int nIndex = 0;
+            daoUtil.setString( ++nIndex, FormsPDFJob.STATUS_RUNNING );
+            daoUtil.setString( ++nIndex, strNodeId );
+            daoUtil.setTimestamp( ++nIndex, leaseExpiration );
+            daoUtil.setInt( ++nIndex, nIdJob );
+            daoUtil.setString( ++nIndex, FormsPDFJob.STATUS_PENDING );
+            daoUtil.setString( ++nIndex, FormsPDFJob.STATUS_RUNNING );
+            daoUtil.setTimestamp( ++nIndex, now );
+
+            return daoUtil.executeUpdate( ) == 1;
+        }
+    }
+
+    @Override
+    public boolean renewLease( int nIdJob, String strNodeId, Timestamp leaseExpiration )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_RENEW_LEASE, FormsPDFPlugin.getPlugin( ) ) )
+        {
+            int nIndex = 0;
+            daoUtil.setTimestamp( ++nIndex, leaseExpiration );
+            daoUtil.setInt( ++nIndex, nIdJob );
+            daoUtil.setString( ++nIndex, strNodeId );
+            daoUtil.setString( ++nIndex, FormsPDFJob.STATUS_RUNNING );
+
+            return daoUtil.executeUpdate( ) == 1;
+        }
+    }
+
+    @Override
+    public void release( int nIdJob, String strNodeId, String strStatus )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_RELEASE, FormsPDFPlugin.getPlugin( ) ) )
+        {
+            int nIndex = 0;
+            daoUtil.setString( ++nIndex, strStatus );
+            daoUtil.setInt( ++nIndex, nIdJob );
+            daoUtil.setString( ++nIndex, strNodeId );
+
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    @Override
+    public void deleteByStatusBefore( String strStatus, Timestamp dateBefore )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_DELETE_BY_STATUS_BEFORE, FormsPDFPlugin.getPlugin( ) ) )
+        {
+            daoUtil.setString( 1, strStatus );
+            daoUtil.setTimestamp( 2, dateBefore );
+
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    @Override
+    public void deleteByTask( int nIdTask )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_DELETE_BY_TASK, FormsPDFPlugin.getPlugin( ) ) )
+        {
+            daoUtil.setInt( 1, nIdTask );
+
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    @Override
+    public int countByStatus( String strStatus )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_COUNT_BY_STATUS, FormsPDFPlugin.getPlugin( ) ) )
+        {
+            daoUtil.setString( 1, strStatus );
+            daoUtil.executeQuery( );
+
+            return daoUtil.next( ) ? daoUtil.getInt( 1 ) : 0;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.business;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+import fr.paris.lutece.portal.service.spring.SpringContextService;
+
+/**
+ * Home for {@link FormsPDFJob}
+ */
+public final class FormsPDFJobHome
+{
+    private static IFormsPDFJobDAO _dao = SpringContextService.getBean( "workflow-formspdf.formsPDFJobDAO" );
+
+    private FormsPDFJobHome( )
+    {
+    }
+
+    public static FormsPDFJob create( FormsPDFJob job )
+    {
+        _dao.insert( job );
+        return job;
+    }
+
+    public static FormsPDFJob findByPrimaryKey( int nIdJob )
+    {
+        return _dao.load( nIdJob );
+    }
+
+    public static List<Integer> findClaimableIds( Timestamp now, int nLimit )
+    {
+        return _dao.selectClaimableIds( now, nLimit );
+    }
+
+    public static boolean claim( int nIdJob, String strNodeId, Timestamp now, Timestamp leaseExpiration )
+    {
+        return _dao.claim( nIdJob, strNodeId, now, leaseExpiration );
+    }
+
+    public static boolean renewLease( int nIdJob, String strNodeId, Timestamp leaseExpiration )
+    {
+        return _dao.renewLease( nIdJob, strNodeId, leaseExpiration );
+    }
+
+    public static void release( int nIdJob, String strNodeId, String strStatus )
+    {
+        _dao.release( nIdJob, strNodeId, strStatus );
+    }
+
+    public static void removeByStatusBefore( String strStatus, Timestamp dateBefore )
+    {
+        _dao.deleteByStatusBefore( strStatus, dateBefore );
+    }
+
+    public static void removeByTask( int nIdTask )
+    {
+        _dao.deleteByTask( nIdTask );
+    }
+
+    public static int countByStatus( String strStatus )
+    {
+        return _dao.countByStatus( strStatus );
+    }
+}
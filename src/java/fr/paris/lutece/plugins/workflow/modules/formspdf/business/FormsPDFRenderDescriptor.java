@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.business;
+
+import java.sql.Timestamp;
+
+/**
+ * The description of a document to render in lazy dispatch mode. The task only records the descriptor; the document is rendered the first time it is
+ * downloaded, and kept for the next downloads.
+ */
+public class FormsPDFRenderDescriptor
+{
+    private int _nId;
+    private int _nIdTask;
+    private int _nIdResourceHistory;
+    private int _nIdTemplate;
+    private int _nTemplateRevision;
+    private int _nIdFormResponse;
+    private String _strLocale;
+    private Timestamp _dateCreation;
+    private String _strFileName;
+    private String _strMimeType;
+    private Timestamp _dateRendered;
+
+    /**
+     * @return the descriptor id
+     */
+    public int getId( )
+    {
+        return _nId;
+    }
+
+    /**
+     * @param nId
+     *            the descriptor id
+     */
+    public void setId( int nId )
+    {
+        _nId = nId;
+    }
+
+    /**
+     * @return the id of the task which recorded the descriptor
+     */
+    public int getIdTask( )
+    {
+        return _nIdTask;
+    }
+
+    /**
+     * @param nIdTask
+     *            the id of the task which recorded the descriptor
+     */
+    public void setIdTask( int nIdTask )
+    {
+        _nIdTask = nIdTask;
+    }
+
+    /**
+     * @return the id of the resource history
+     */
+    public int getIdResourceHistory( )
+    {
+        return _nIdResourceHistory;
+    }
+
+    /**
+     * @param nIdResourceHistory
+     *            the id of the resource history
+     */
+    public void setIdResourceHistory( int nIdResourceHistory )
+    {
+        _nIdResourceHistory = nIdResourceHistory;
+    }
+
+    /**
+     * @return the id of the template configured when the action was processed
+     */
+    public int getIdTemplate( )
+    {
+        return _nIdTemplate;
+    }
+
+    /**
+     * @param nIdTemplate
+     *            the id of the template configured when the action was processed
+     */
+    public void setIdTemplate( int nIdTemplate )
+    {
+        _nIdTemplate = nIdTemplate;
+    }
+
+    /**
+     * @return the revision of the template current when the action was processed
+     */
+    public int getTemplateRevision( )
+    {
+        return _nTemplateRevision;
+    }
+
+    /**
+     * @param nTemplateRevision
+     *            the revision of the template current when the action was processed
+     */
+    public void setTemplateRevision( int nTemplateRevision )
+    {
+        _nTemplateRevision = nTemplateRevision;
+    }
+
+    /**
+     * @return the id of the form response to render
+     */
+    public int getIdFormResponse( )
+    {
+        return _nIdFormResponse;
+    }
+
+    /**
+     * @param nIdFormResponse
+     *            the id of the form response to render
+     */
+    public void setIdFormResponse( int nIdFormResponse )
+    {
+        _nIdFormResponse = nIdFormResponse;
+    }
+
+    /**
+     * @return the language tag of the locale used to render the document
+     */
+    public String getLocale( )
+    {
+        return _strLocale;
+    }
+
+    /**
+     * @param strLocale
+     *            the language tag of the locale used to render the document
+     */
+    public void setLocale( String strLocale )
+    {
+        _strLocale = strLocale;
+    }
+
+    /**
+     * @return the date the action was processed
+     */
+    public Timestamp getDateCreation( )
+    {
+        return _dateCreation;
+    }
+
+    /**
+     * @param dateCreation
+     *            the date the action was processed
+     */
+    public void setDateCreation( Timestamp dateCreation )
+    {
+        _dateCreation = dateCreation;
+    }
+
+    /**
+     * @return the name of the rendered file, null until the document is rendered
+     */
+    public String getFileName( )
+    {
+        return _strFileName;
+    }
+
+    /**
+     * @param strFileName
+     *            the name of the rendered file, null until the document is rendered
+     */
+    public void setFileName( String strFileName )
+    {
+        _strFileName = strFileName;
+    }
+
+    /**
+     * @return the mime type of the rendered file, null until the document is rendered
+     */
+    public String getMimeType( )
+    {
+        return _strMimeType;
+    }
+
+    /**
+     * @param strMimeType
+     *            the mime type of the rendered file, null until the document is rendered
+     */
+    public void setMimeType( String strMimeType )
+    {
+        _strMimeType = strMimeType;
+    }
+
+    /**
+     * @return the date of the first rendering, null until the document is rendered
+     */
+    public Timestamp getDateRendered( )
+    {
+        return _dateRendered;
+    }
+
+    /**
+     * @param dateRendered
+     *            the date of the first rendering, null until the document is rendered
+     */
+    public void setDateRendered( Timestamp dateRendered )
+    {
+        _dateRendered = dateRendered;
+    }
+
+    /**
+     * @return true if the document has already been rendered
+     */
+    public boolean isRendered( )
+    {
+        return _dateRendered != null;
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.business;
+
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.FormsPDFPlugin;
+import fr.paris.lutece.util.sql.DAOUtil;
+
+/**
+ * DAO for {@link FormsPDFRenderDescriptor}
+ */
+public class FormsPDFRenderDescriptorDAO implements IFormsPDFRenderDescriptorDAO
+{
+    private static final String SQL_QUERY_SELECT_ALL = "SELECT id_render, id_task, id_resource_history, id_template, template_revision, id_form_response, locale, date_creation, file_name, mime_type, date_rendered FROM workflow_task_formspdf_render ";
+    private static final String SQL_QUERY_SELECT = SQL_QUERY_SELECT_ALL + "WHERE id_render = ? ";
+    private static final String SQL_QUERY_SELECT_BY_TASK_AND_HISTORY = SQL_QUERY_SELECT_ALL + "WHERE id_task = ? AND id_resource_history = ? ";
+    private static final String SQL_QUERY_SELECT_BY_TASK = SQL_QUERY_SELECT_ALL + "WHERE id_task = ? ";
+    private static final String SQL_QUERY_SELECT_RENDERED_BEFORE = SQL_QUERY_SELECT_ALL + "WHERE date_rendered < ? ORDER BY date_rendered ";
+    private static final String SQL_QUERY_INSERT = "INSERT INTO workflow_task_formspdf_render ( id_task, id_resource_history, id_template, template_revision, id_form_response, locale, date_creation ) VALUES ( ?, ?, ?, ?, ?, ?, ? ) ";
+    private static final String SQL_QUERY_UPDATE_RENDERED = "UPDATE workflow_task_formspdf_render SET file_name = ?, mime_type = ?, date_rendered = ? WHERE id_render = ? ";
+    private static final String SQL_QUERY_DELETE = "DELETE FROM workflow_task_formspdf_render WHERE id_render = ? ";
+
+    @Override
+    public void insert( FormsPDFRenderDescriptor descriptor )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT, Statement.RETURN_GENERATED_KEYS, FormsPDFPlugin.getPlugin( ) ) )
+        {
+            int nIndex = 0;
+            daoUtil.setInt( ++nIndex, descriptor.getIdTask( ) );
+            daoUtil.setInt( ++nIndex, descriptor.getIdResourceHistory( ) );
+            daoUtil.setInt( ++nIndex, descriptor.getIdTemplate( ) );
+            daoUtil.setInt( ++nIndex, descriptor.getTemplateRevision( ) );
+            daoUtil.setInt( ++nIndex, descriptor.getIdFormResponse( ) );
+            daoUtil.setString( ++nIndex, descriptor.getLocale( ) );
+            daoUtil.setTimestamp( ++nIndex, descriptor.getDateCreation( ) );
+
+            daoUtil.executeUpdate( );
+
+            if ( daoUtil.nextGeneratedKey( ) )
+            {
+                descriptor.setId( daoUtil.getGeneratedKeyInt( 1 ) );
+            }
+        }
+    }
+
+    @Override
+    public FormsPDFRenderDescriptor load( int nIdDescriptor )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT, FormsPDFPlugin.getPlugin( ) ) )
+        {
+            daoUtil.setInt( 1, nIdDescriptor );
+            daoUtil.executeQuery( );
+
+            return daoUtil.next( ) ? dataToObject( daoUtil ) : null;
+        }
+    }
+
+    @Override
+    public FormsPDFRenderDescriptor loadByTaskAndHistory( int nIdTask, int nIdResourceHistory )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_BY_TASK_AND_HISTORY, FormsPDFPlugin.getPlugin( ) ) )
+        {
+            daoUtil.setInt( 1, nIdTask );
+            daoUtil.setInt( 2, nIdResourceHistory );
+            daoUtil.executeQuery( );
+
+            return daoUtil.next( ) ? dataToObject( daoUtil ) : null;
+        }
+    }
+
+    @Override
+    public List<FormsPDFRenderDescriptor> loadByTask( int nIdTask )
+    {
+        List<FormsPDFRenderDescriptor> listDescriptors = new ArrayList<>( );
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_BY_TASK, FormsPDFPlugin.getPlugin( ) ) )
+        {
+            daoUtil.setInt( 1, nIdTask );
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                listDescriptors.add( dataToObject( daoUtil ) );
+            }
+        }
+
+        return listDescriptors;
+    }
+
+    @Override
+    public List<FormsPDFRenderDescriptor> loadRenderedBefore( Timestamp dateRendered, int nLimit )
+    {
+        List<FormsPDFRenderDescriptor> listDescriptors = new ArrayList<>( );
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_RENDERED_BEFORE, FormsPDFPlugin.getPlugin( ) ) )
+        {
+            daoUtil.setTimestamp( 1, dateRendered );
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) && listDescriptors.size( ) < nLimit )
+            {
+                listDescriptors.add( dataToObject( daoUtil ) );
+            }
+        }
+
+        return listDescriptors;
+    }
+
+    @Override
+    public void updateRendered( FormsPDFRenderDescriptor descriptor )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_UPDATE_RENDERED, FormsPDFPlugin.getPlugin( ) ) )
+        {
+            int nIndex = 0;
+            daoUtil.setString( ++nIndex, descriptor.getFileName( ) );
+            daoUtil.setString( ++nIndex, descriptor.getMimeType( ) );
+            daoUtil.setTimestamp( ++nIndex, descriptor.getDateRendered( ) );
+            daoUtil.setInt( ++nIndex, descriptor.getId( ) );
+
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    @Override
+    public void delete( int nIdDescriptor )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_DELETE, FormsPDFPlugin.getPlugin( ) ) )
+        {
+            daoUtil.setInt( 1, nIdDescriptor );
+
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    /**
+     * Build a descriptor from the current row
+     * 
+     * @param daoUtil
+     *            the daoUtil positioned on a row
+     * @return the descriptor
+     */
+    private FormsPDFRenderDescriptor dataToObject( DAOUtil daoUtil )
+    {
+        FormsPDFRenderDescriptor descriptor = new FormsPDFRenderDescriptor( );
+        descriptor.setId( daoUtil.getInt( "id_render" ) );
+        descriptor.setIdTask( daoUtil.getInt( "id_task" ) );
+        descriptor.setIdResourceHistory( daoUtil.getInt( "id_resource_history" ) );
+        descriptor.setIdTemplate( daoUtil.getInt( "id_template" ) );
+        descriptor.setTemplateRevision( daoUtil.getInt( "template_revision" ) );
+        descriptor.setIdFormResponse( daoUtil.getInt( "id_form_response" ) );
+        descriptor.setLocale( daoUtil.getString( "locale" ) );
+        descriptor.setDateCreation( daoUtil.getTimestamp( "date_creation" ) );
+        descriptor.setFileName( daoUtil.getString( "file_name" ) );
+        descriptor.setMimeType( daoUtil.getString( "mime_type" ) );
+        descriptor.setDateRendered( daoUtil.getTimestamp( "date_rendered" ) );
+        return descriptor;
+    }
+}
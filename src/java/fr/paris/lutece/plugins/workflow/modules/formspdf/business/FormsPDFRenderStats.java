@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.business;
+
+import java.sql.Timestamp;
+
+/**
+ * Render statistics of a template over a period, recorded by a node. The durations are in milliseconds and the sizes in bytes. When the statistics of
+ * several periods are aggregated, the percentiles are the worst percentiles of the periods.
+ */
+public class FormsPDFRenderStats
+{
+    private int _nIdTemplate;
+    private Timestamp _periodStart;
+    private String _strNodeId;
+    private int _nRenders;
+    private int _nFailures;
+    private long _lTotalDuration;
+    private long _lMaxDuration;
+    private long _lP50Duration;
+    private long _lP95Duration;
+    private long _lP99Duration;
+    private long _lTotalSize;
+
+    /**
+     * @return the id of the template
+     */
+    public int getIdTemplate( )
+    {
+        return _nIdTemplate;
+    }
+
+    /**
+     * @param nIdTemplate
+     *            the id of the template
+     */
+    public void setIdTemplate( int nIdTemplate )
+    {
+        _nIdTemplate = nIdTemplate;
+    }
+
+    /**
+     * @return the start of the period
+     */
+    public Timestamp getPeriodStart( )
+    {
+        return _periodStart;
+    }
+
+    /**
+     * @param periodStart
+     *            the start of the period
+     */
+    public void setPeriodStart( Timestamp periodStart )
+    {
+        _periodStart = periodStart;
+    }
+
+    /**
+     * @return the id of the node which recorded the statistics
+     */
+    public String getNodeId( )
+    {
+        return _strNodeId;
+    }
+
+    /**
+     * @param strNodeId
+     *            the id of the node which recorded the statistics
+     */
+    public void setNodeId( String strNodeId )
+    {
+        _strNodeId = strNodeId;
+    }
+
+    /**
+     * @return the number of documents rendered
+     */
+    public int getRenders( )
+    {
+        return _nRenders;
+    }
+
+    /**
+     * @param nRenders
+     *            the number of documents rendered
+     */
+    public void setRenders( int nRenders )
+    {
+        _nRenders = nRenders;
+    }
+
+    /**
+     * @return the number of failed renderings
+     */
+    public int getFailures( )
+    {
+        return _nFailures;
+    }
+
+    /**
+     * @param nFailures
+     *            the number of failed renderings
+     */
+    public void setFailures( int nFailures )
+    {
+        _nFailures = nFailures;
+    }
+
+    /**
+     * @return the total duration of the renderings
+     */
+    public long getTotalDuration( )
+    {
+        return _lTotalDuration;
+    }
+
+    /**
+     * @param lTotalDuration
+     *            the total duration of the renderings
+     */
+    public void setTotalDuration( long lTotalDuration )
+    {
+        _lTotalDuration = lTotalDuration;
+    }
+
+    /**
+     * @return the duration of the slowest rendering
+     */
+    public long getMaxDuration( )
+    {
+        return _lMaxDuration;
+    }
+
+    /**
+     * @param lMaxDuration
+     *            the duration of the slowest rendering
+     */
+    public void setMaxDuration( long lMaxDuration )
+    {
+        _lMaxDuration = lMaxDuration;
+    }
+
+    /**
+     * @return the median duration of the renderings
+     */
+    public long getP50Duration( )
+    {
+        return _lP50Duration;
+    }
+
+    /**
+     * @param lP50Duration
+     *            the median duration of the renderings
+     */
+    public void setP50Duration( long lP50Duration )
+    {
+        _lP50Duration = lP50Duration;
+    }
+
+    /**
+     * @return the 95th percentile of the durations of the renderings
+     */
+    public long getP95Duration( )
+    {
+        return _lP95Duration;
+    }
+
+    /**
+     * @param lP95Duration
+     *            the 95th percentile of the durations of the renderings
+     */
+    public void setP95Duration( long lP95Duration )
+    {
+        _lP95Duration = lP95Duration;
+    }
+
+    /**
+     * @return the 99th percentile of the durations of the renderings
+     */
+    public long getP99Duration( )
+    {
+        return _lP99Duration;
+    }
+
+    /**
+     * @param lP99Duration
+     *            the 99th percentile of the durations of the renderings
+     */
+    public void setP99Duration( long lP99Duration )
+    {
+        _lP99Duration = lP99Duration;
+    }
+
+    /**
+     * @return the total size of the rendered documents
+     */
+    public long getTotalSize( )
+    {
+        return _lTotalSize;
+    }
+
+    /**
+     * @param lTotalSize
+     *            the total size of the rendered documents
+     */
+    public void setTotalSize( long lTotalSize )
+    {
+        _lTotalSize = lTotalSize;
+    }
+
+    /**
+     * @return the average duration of the renderings, failed ones included
+     */
+    public long getAverageDuration( )
+    {
+        int nCount = _nRenders + _nFailures;
+        return nCount > 0 ? _lTotalDuration / nCount : 0L;
+    }
+
+    /**
+     * @return the average size of the rendered documents
+     */
+    public long getAverageSize( )
+    {
+        return _nRenders > 0 ? _lTotalSize / _nRenders : 0L;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.business;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.FormsPDFPlugin;
+import fr.paris.lutece.util.sql.DAOUtil;
+
+/**
+ * DAO of the render statistics
+ */
+public class FormsPDFRenderStatsDAO implements IFormsPDFRenderStatsDAO
+{
+    private static final String SQL_QUERY_INSERT = "INSERT INTO workflow_task_formspdf_render_stats ( id_template, period_start, node_id, nb_renders, nb_failures, total_duration, max_duration, p50_duration, p95_duration, p99_duration, total_size ) VALUES ( ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ? ) ";
+    private static final String SQL_QUERY_SELECT_AGGREGATED_SINCE = "SELECT id_template, MIN(period_start), SUM(nb_renders), SUM(nb_failures), SUM(total_duration), MAX(max_duration), MAX(p50_duration), MAX(p95_duration), MAX(p99_duration), SUM(total_size) FROM workflow_task_formspdf_render_stats WHERE period_start >= ? GROUP BY id_template ORDER BY MAX(p95_duration) DESC ";
+    private static final String SQL_QUERY_DELETE_BEFORE = "DELETE FROM workflow_task_formspdf_render_stats WHERE period_start < ? ";
+
+    @Override
+    public void insert( FormsPDFRenderStats stats )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT, FormsPDFPlugin.getPlugin( ) ) )
+        {
+            int nIndex = 0;
+            daoUtil.setInt( ++nIndex, stats.getIdTemplate( ) );
+            daoUtil.setTimestamp( ++nIndex, stats.getPeriodStart( ) );
+            daoUtil.setString( ++nIndex, stats.getNodeId( ) );
+            daoUtil.setInt( ++nIndex, stats.getRenders( ) );
+            daoUtil.setInt( ++nIndex, stats.getFailures( ) );
+            daoUtil.setLong( ++nIndex, stats.getTotalDuration( ) );
+            daoUtil.setLong( ++nIndex, stats.getMaxDuration( ) );
+            daoUtil.setLong( ++nIndex, stats.getP50Duration( ) );
+            daoUtil.setLong( ++nIndex, stats.getP95Duration( ) );
+            daoUtil.setLong( ++nIndex, stats.getP99Duration( ) );
+            daoUtil.setLong( ++nIndex, stats.getTotalSize( ) );
+
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    @Override
+    public List<FormsPDFRenderStats> selectAggregatedSince( Timestamp dateSince )
+    {
+        List<FormsPDFRenderStats> listStats = new ArrayList<>( );
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_AGGREGATED_SINCE, FormsPDFPlugin.getPlugin( ) ) )
+        {
+            daoUtil.setTimestamp( 1, dateSince );
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                int nIndex = 0;
+                FormsPDFRenderStats stats = new FormsPDFRenderStats( );
+                stats.setIdTemplate( daoUtil.getInt( ++nIndex ) );
+                stats.setPeriodStart( daoUtil.getTimestamp( ++nIndex ) );
+                stats.setRenders( daoUtil.getInt( ++nIndex ) );
+                stats.setFailures( daoUtil.getInt( ++nIndex ) );
+                stats.setTotalDuration( daoUtil.getLong( ++nIndex ) );
+                stats.setMaxDuration( daoUtil.getLong( ++nIndex ) );
+                stats.setP50Duration( daoUtil.getLong( ++nIndex ) );
+                stats.setP95Duration( daoUtil.getLong( ++nIndex ) );
+                stats.setP99Duration( daoUtil.getLong( ++nIndex ) );
+                stats.setTotalSize( daoUtil.getLong( ++nIndex ) );
+                listStats.add( stats );
+            }
+        }
+
+        return listStats;
+    }
+
+    @Override
+    public void deleteBefore( Timestamp dateBefore )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_DELETE_BEFORE, FormsPDFPlugin.getPlugin( ) ) )
+        {
+            daoUtil.setTimestamp( 1, dateBefore );
+
+            daoUtil.executeUpdate( );
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.business;
+
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.FormsPDFPlugin;
+import fr.paris.lutece.util.sql.DAOUtil;
+
+/**
+ * DAO for {@link FormsPDFSnapshot}
+ */
+public class FormsPDFSnapshotDAO implements IFormsPDFSnapshotDAO
+{
+    private static final String SQL_QUERY_SELECT = "SELECT id_task, id_resource_history, id_form, id_form_response, data, date_creation FROM workflow_task_formspdf_snapshot WHERE id_task = ? AND id_resource_history = ? ";
+    private static final String SQL_QUERY_INSERT = "INSERT INTO workflow_task_formspdf_snapshot ( id_task, id_resource_history, id_form, id_form_response, data, date_creation ) VALUES ( ?, ?, ?, ?, ?, ? ) ";
+    private static final String SQL_QUERY_DELETE = "DELETE FROM workflow_task_formspdf_snapshot WHERE id_task = ? AND id_resource_history = ? ";
+    private static final String SQL_QUERY_DELETE_BY_TASK = "DELETE FROM workflow_task_formspdf_snapshot WHERE id_task = ? ";
+
+    @Override
+    public void insert( FormsPDFSnapshot snapshot )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT, FormsPDFPlugin.getPlugin( ) ) )
+        {
+            int nIndex = 0;
+            daoUtil.setInt( ++nIndex, snapshot.getIdTask( ) );
+            daoUtil.setInt( ++nIndex, snapshot.getIdResourceHistory( ) );
+            daoUtil.setInt( ++nIndex, snapshot.getIdForm( ) );
+            daoUtil.setInt( ++nIndex, snapshot.getIdFormResponse( ) );
+            daoUtil.setBytes( ++nIndex, snapshot.getData( ) );
+            daoUtil.setTimestamp( ++nIndex, snapshot.getDateCreation( ) );
+
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    @Override
+    public FormsPDFSnapshot load( int nIdTask, int nIdResourceHistory )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT, FormsPDFPlugin.getPlugin( ) ) )
+        {
+            daoUtil.setInt( 1, nIdTask );
+            daoUtil.setInt( 2, nIdResourceHistory );
+            daoUtil.executeQuery( );
+
+            FormsPDFSnapshot snapshot = null;
+
+            if ( daoUtil.next( ) )
+            {
+                snapshot = new FormsPDFSnapshot( );
+                snapshot.setIdTask( daoUtil.getInt( "id_task" ) );
+                snapshot.setIdResourceHistory( daoUtil.getInt( "id_resource_history" ) );
+                snapshot.setIdForm( daoUtil.getInt( "id_form" ) );
+                snapshot.setIdFormResponse( daoUtil.getInt( "id_form_response" ) );
+                snapshot.setData( daoUtil.getBytes( "data" ) );
+                snapshot.setDateCreation( daoUtil.getTimestamp( "date_creation" ) );
+            }
+
+            return snapshot;
+        }
+    }
+
+    @Override
+    public void delete( int nIdTask, int nIdResourceHistory )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_DELETE, FormsPDFPlugin.getPlugin( ) ) )
+        {
+            daoUtil.setInt( 1, nIdTask );
+            daoUtil.setInt( 2, nIdResourceHistory );
+
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    @Override
+    public void deleteByTask( int nIdTask )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_DELETE_BY_TASK, FormsPDFPlugin.getPlugin( ) ) )
+        {
+            daoUtil.setInt( 1, nIdTask );
+
+            daoUtil.executeUpdate( );
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.business;
+
+import fr.paris.lutece.portal.service.spring.SpringContextService;
+
+/**
+ * Home for {@link FormsPDFSnapshot}
+ */
+public final class FormsPDFSnapshotHome
+{
+    private static IFormsPDFSnapshotDAO _dao = SpringContextService.getBean( "workflow-formspdf.formsPDFSnapshotDAO" );
+
+    private FormsPDFSnapshotHome( )
+    {
+    }
+
+    public static FormsPDFSnapshot create( FormsPDFSnapshot snapshot )
+    {
+        _dao.insert( snapshot );
+        return snapshot;
+    }
+
+    public static FormsPDFSnapshot find( int nIdTask, int nIdResourceHistory )
+    {
+        return _dao.load( nIdTask, nIdResourceHistory );
+    }
+
+    public static void remove( int nIdTask, int nIdResourceHistory )
+    {
+        _dao.delete( nIdTask, nIdResourceHistory );
+    }
+
+    public static void removeByTask( int nIdTask )
+    {
+        _dao.deleteByTask( nIdTask );
+    }
+}
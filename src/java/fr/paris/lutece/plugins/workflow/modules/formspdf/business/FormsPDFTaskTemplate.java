@@ -46,6 +46,12 @@ public class FormsPDFTaskTemplate {
 	private String _strContent;
 
 	private boolean _isRte;
+
+	private String _strCompiledContent;
+
+	private int _nRevision;
+
+	private String _strSha256;
 	
 	public int getId() {
 		return _nId;
@@ -93,4 +99,43 @@ public class FormsPDFTaskTemplate {
 		this._isRte = isRte;
 	}
 
+	/**
+	 * Gets the render-ready content, normalised and validated when the template was saved
+	 * 
+	 * @return the compiled content, or null if the template was saved before the compilation existed
+	 */
+	public String getCompiledContent() {
+		return _strCompiledContent;
+	}
+
+	public void setCompiledContent(String strCompiledContent) {
+		this._strCompiledContent = strCompiledContent;
+	}
+
+	/**
+	 * Gets the number of the current revision of the template
+	 * 
+	 * @return the revision number, 0 if the template has not been saved yet
+	 */
+	public int getRevision() {
+		return _nRevision;
+	}
+
+	public void setRevision(int nRevision) {
+		this._nRevision = nRevision;
+	}
+
+	/**
+	 * Gets the hash of the content of the current revision, which identifies the content on every node
+	 * 
+	 * @return the hex encoded SHA-256 hash of the content
+	 */
+	public String getSha256() {
+		return _strSha256;
+	}
+
+	public void setSha256(String strSha256) {
+		this._strSha256 = strSha256;
+	}
+
 }
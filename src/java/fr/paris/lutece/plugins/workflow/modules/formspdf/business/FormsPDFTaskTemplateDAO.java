@@ -35,6 +35,7 @@ package fr.paris.lutece.plugins.workflow.modules.formspdf.business;
 
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import fr.paris.lutece.plugins.workflow.modules.formspdf.service.FormsPDFPlugin;
@@ -43,20 +44,39 @@ import fr.paris.lutece.util.sql.DAOUtil;
 
 public class FormsPDFTaskTemplateDAO implements IFormsPDFTaskTemplateDAO {
 	
-	 private static final String SQL_QUERY_SELECTALL = "SELECT id_template, name, id_form, is_generic, content, is_rte FROM workflow_task_formspdf_template";
+	 // the content is kept in its own table and only joined when a single template is loaded
+	 private static final String SQL_QUERY_SELECTALL = "SELECT id_template, name, id_form, is_generic, is_rte, revision, sha256 FROM workflow_task_formspdf_template";
 
-	 private static final String SQL_QUERY_SELECT = SQL_QUERY_SELECTALL + " WHERE id_template = ?";
+	 private static final String SQL_QUERY_SELECT = "SELECT worklow_template.id_template, worklow_template.name, worklow_template.id_form, worklow_template.is_generic, template_content.content, worklow_template.is_rte, template_content.compiled_content, worklow_template.revision, worklow_template.sha256 FROM workflow_task_formspdf_template worklow_template"
+	 		+ " LEFT JOIN workflow_task_formspdf_template_content template_content ON template_content.id_template = worklow_template.id_template WHERE worklow_template.id_template = ?";
 	 
-	 private static final String SQL_QUERY_SELECT_WITH_FORM = "SELECT worklow_template.id_template, worklow_template.name, worklow_template.id_form, form.title, worklow_template.is_generic, worklow_template.content, worklow_template.is_rte FROM workflow_task_formspdf_template worklow_template"
-	 		+ " LEFT JOIN forms_form form ON form.id_form = worklow_template.id_form";
+	 // a union rather than id_form = ? OR is_generic = true, so that each branch uses its own index
+	 private static final String SQL_QUERY_SELECT_BY_ID_FORM_OR_GENERIC = SQL_QUERY_SELECTALL + " WHERE id_form = ? UNION " + SQL_QUERY_SELECTALL + " WHERE is_generic = 1 ORDER BY name";
 	 
-	 private static final String SQL_QUERY_SELECT_BY_ID_FORM_OR_GENERIC = SQL_QUERY_SELECTALL + " WHERE id_form = ? OR is_generic = true";
+	 private static final String SQL_QUERY_INSERT = "INSERT INTO workflow_task_formspdf_template ( name, id_form, is_generic, is_rte, revision, sha256 ) VALUES ( ?, ?, ?, ?, ?, ? ) ";
 	 
-	 private static final String SQL_QUERY_INSERT = "INSERT INTO workflow_task_formspdf_template ( name, id_form, is_generic, content, is_rte ) VALUES ( ?, ?, ?, ?, ? ) ";
+	 private static final String SQL_QUERY_INSERT_CONTENT = "INSERT INTO workflow_task_formspdf_template_content ( id_template, content, compiled_content ) VALUES ( ?, ?, ? ) ";
+	 
+	 private static final String SQL_QUERY_UPDATE_CONTENT = "UPDATE workflow_task_formspdf_template_content SET content = ?, compiled_content = ? WHERE id_template = ? ";
 	 
 	 private static final String SQL_QUERY_DELETE = "DELETE FROM workflow_task_formspdf_template WHERE id_template = ? ";
 	 
-	 private static final String SQL_QUERY_UPDATE = "UPDATE workflow_task_formspdf_template SET name = ?, id_form = ?, is_generic = ?, content = ?, is_rte = ? WHERE id_template = ?";
+	 private static final String SQL_QUERY_DELETE_CONTENT = "DELETE FROM workflow_task_formspdf_template_content WHERE id_template = ? ";
+	 
+	 private static final String SQL_QUERY_UPDATE = "UPDATE workflow_task_formspdf_template SET name = ?, id_form = ?, is_generic = ?, is_rte = ?, revision = ?, sha256 = ? WHERE id_template = ?";
+
+	 private static final String SQL_QUERY_SELECT_IDS = "SELECT id_template FROM workflow_task_formspdf_template";
+	 private static final String SQL_FILTER_NAME = "name LIKE ?";
+	 private static final String SQL_FILTER_ID_FORM = "id_form = ?";
+	 private static final String SQL_FILTER_GENERIC = "is_generic = ?";
+	 private static final String SQL_ORDER_BY_NAME = " ORDER BY name, id_template";
+
+	 private static final String SQL_QUERY_SELECT_SUMMARIES_WITH_FORM = "SELECT worklow_template.id_template, worklow_template.name, worklow_template.id_form, form.title, worklow_template.is_generic, worklow_template.is_rte, worklow_template.revision, worklow_template.sha256 FROM workflow_task_formspdf_template worklow_template"
+	 		+ " LEFT JOIN forms_form form ON form.id_form = worklow_template.id_form WHERE worklow_template.id_template IN ( ";
+	 private static final String SQL_ORDER_SUMMARIES_BY_NAME = " ) ORDER BY worklow_template.name, worklow_template.id_template";
+
+	 private static final String SQL_QUERY_SELECT_REVISION = "SELECT revision FROM workflow_task_formspdf_template WHERE id_template = ?";
+	 private static final String SQL_QUERY_LOCK = SQL_QUERY_SELECT_REVISION + " FOR UPDATE";
 	 @Override
 	 public void insert(FormsPDFTaskTemplate formsPDFTaskTemplate)
 	 {
@@ -66,8 +86,9 @@ public class FormsPDFTaskTemplateDAO implements IFormsPDFTaskTemplateDAO {
 			daoUtil.setString( ++nIndex, formsPDFTaskTemplate.getName() );
 			daoUtil.setInt( ++nIndex, formsPDFTaskTemplate.getIdForm());
 			daoUtil.setBoolean( ++nIndex, formsPDFTaskTemplate.isGeneric());
-			daoUtil.setString( ++nIndex, formsPDFTaskTemplate.getContent() );
 			daoUtil.setBoolean( ++nIndex, formsPDFTaskTemplate.isRte() );
+			daoUtil.setInt( ++nIndex, formsPDFTaskTemplate.getRevision() );
+			daoUtil.setString( ++nIndex, formsPDFTaskTemplate.getSha256() );
 			
 			daoUtil.executeUpdate( );
 			
@@ -76,6 +97,7 @@ public class FormsPDFTaskTemplateDAO implements IFormsPDFTaskTemplateDAO {
 				formsPDFTaskTemplate.setId( daoUtil.getGeneratedKeyInt( 1 ) );
 			}
         }
+		insertContent( formsPDFTaskTemplate );
 	 }
 	 
 	 @Override
@@ -88,13 +110,48 @@ public class FormsPDFTaskTemplateDAO implements IFormsPDFTaskTemplateDAO {
 			 daoUtil.setString(++nIndex, formsPDFTaskTemplate.getName());
 			 daoUtil.setInt(++nIndex, formsPDFTaskTemplate.getIdForm());
 			 daoUtil.setBoolean(++nIndex, formsPDFTaskTemplate.isGeneric());
-			 daoUtil.setString(++nIndex, formsPDFTaskTemplate.getContent());
 			 daoUtil.setBoolean(++nIndex, formsPDFTaskTemplate.isRte());
+			 daoUtil.setInt(++nIndex, formsPDFTaskTemplate.getRevision());
+			 daoUtil.setString(++nIndex, formsPDFTaskTemplate.getSha256());
 
 			 daoUtil.setInt(++nIndex, formsPDFTaskTemplate.getId());
 
 			 daoUtil.executeUpdate();
 		 }
+		 // the content row is updated in place, and only inserted for a template which has none yet
+		 try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_UPDATE_CONTENT, FormsPDFPlugin.getPlugin( ) ) )
+		 {
+			 int nIndex = 0;
+			 daoUtil.setString( ++nIndex, formsPDFTaskTemplate.getContent() );
+			 daoUtil.setString( ++nIndex, formsPDFTaskTemplate.getCompiledContent() );
+			 daoUtil.setInt( ++nIndex, formsPDFTaskTemplate.getId() );
+			 if ( daoUtil.executeUpdate( ) > 0 )
+			 {
+				 return;
+			 }
+		 }
+		 insertContent( formsPDFTaskTemplate );
+	 }
+	 
+	 private void insertContent( FormsPDFTaskTemplate formsPDFTaskTemplate )
+	 {
+		 try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT_CONTENT, FormsPDFPlugin.getPlugin( ) ) )
+		 {
+			 int nIndex = 0;
+			 daoUtil.setInt( ++nIndex, formsPDFTaskTemplate.getId() );
+			 daoUtil.setString( ++nIndex, formsPDFTaskTemplate.getContent() );
+			 daoUtil.setString( ++nIndex, formsPDFTaskTemplate.getCompiledContent() );
+			 daoUtil.executeUpdate( );
+		 }
+	 }
+	 
+	 private void deleteContent( int nIdTemplate )
+	 {
+		 try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_DELETE_CONTENT, FormsPDFPlugin.getPlugin( ) ) )
+		 {
+			 daoUtil.setInt( 1, nIdTemplate );
+			 daoUtil.executeUpdate( );
+		 }
 	 }
 	 
 	 @Override
@@ -110,12 +167,37 @@ public class FormsPDFTaskTemplateDAO implements IFormsPDFTaskTemplateDAO {
 			if (daoUtil.next())
 			{
 				formsPDFTaskTemplate = dataToObject(daoUtil);
+				formsPDFTaskTemplate.setContent( daoUtil.getString( "content" ) );
+				formsPDFTaskTemplate.setCompiledContent( daoUtil.getString( "compiled_content" ) );
 			}
 
 			return formsPDFTaskTemplate;
 		}
 	}
 	
+	@Override
+	public int selectRevision( int nIdTemplate )
+	{
+		try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_REVISION, FormsPDFPlugin.getPlugin( ) ))
+		{
+			daoUtil.setInt(1, nIdTemplate);
+			daoUtil.executeQuery();
+
+			return daoUtil.next() ? daoUtil.getInt(1) : 0;
+		}
+	}
+
+	@Override
+	public void lock( int nIdTemplate )
+	{
+		try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_LOCK, FormsPDFPlugin.getPlugin( ) ))
+		{
+			daoUtil.setInt(1, nIdTemplate);
+			daoUtil.executeQuery();
+			daoUtil.next();
+		}
+	}
+
 	@Override
 	public List<FormsPDFTaskTemplate> loadByIdFormPlusGenerics( int nIdForm )
 	{
@@ -142,6 +224,7 @@ public class FormsPDFTaskTemplateDAO implements IFormsPDFTaskTemplateDAO {
 			daoUtil.setInt( 1, nIdTemplate );
 			daoUtil.executeUpdate( );
 		}
+	    deleteContent( nIdTemplate );
 	}
 	
 	@Override
@@ -161,36 +244,86 @@ public class FormsPDFTaskTemplateDAO implements IFormsPDFTaskTemplateDAO {
 	}
 	
 	@Override
-	public List<FormsPDFTaskTemplateDTO> selectAllWithForms()
+	public List<Integer> selectIdsByFilter( FormsPDFTaskTemplateFilter filter )
 	{
-		List<FormsPDFTaskTemplateDTO> listFormsPDFTaskTemplateDto = new ArrayList<>();
-		
-		try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_WITH_FORM, WorkflowUtils.getPlugin( ) ) )
-        {
-            daoUtil.executeQuery( );
-            while ( daoUtil.next( ) )
-            {
-            	listFormsPDFTaskTemplateDto.add( dataToObjectDto( daoUtil ) );
-            }
-        }
-        return listFormsPDFTaskTemplateDto;
+		List<String> listClauses = new ArrayList<>();
+		if ( filter.containsName() )
+		{
+			listClauses.add( SQL_FILTER_NAME );
+		}
+		if ( filter.containsIdForm() )
+		{
+			listClauses.add( SQL_FILTER_ID_FORM );
+		}
+		if ( filter.containsGeneric() )
+		{
+			listClauses.add( SQL_FILTER_GENERIC );
+		}
+		String strSQL = SQL_QUERY_SELECT_IDS + ( listClauses.isEmpty() ? "" : " WHERE " + String.join( " AND ", listClauses ) ) + SQL_ORDER_BY_NAME;
+
+		List<Integer> listIds = new ArrayList<>();
+		try ( DAOUtil daoUtil = new DAOUtil( strSQL, FormsPDFPlugin.getPlugin( ) ) )
+		{
+			int nIndex = 0;
+			if ( filter.containsName() )
+			{
+				daoUtil.setString( ++nIndex, "%" + filter.getName() + "%" );
+			}
+			if ( filter.containsIdForm() )
+			{
+				daoUtil.setInt( ++nIndex, filter.getIdForm() );
+			}
+			if ( filter.containsGeneric() )
+			{
+				daoUtil.setBoolean( ++nIndex, filter.getGeneric() == FormsPDFTaskTemplateFilter.GENERIC_ONLY );
+			}
+			daoUtil.executeQuery();
+			while ( daoUtil.next() )
+			{
+				listIds.add( daoUtil.getInt( 1 ) );
+			}
+		}
+		return listIds;
 	}
-	
-	private FormsPDFTaskTemplateDTO dataToObjectDto(DAOUtil daoUtil)
+
+	@Override
+	public List<FormsPDFTaskTemplateDTO> selectSummariesWithForms( List<Integer> listIdTemplates )
 	{
-		FormsPDFTaskTemplate formsPDFTaskTemplate = dataToObject(daoUtil);
-		FormsPDFTaskTemplateDTO formsPDFTaskTemplateDto = new FormsPDFTaskTemplateDTO();
-		formsPDFTaskTemplateDto.setId(formsPDFTaskTemplate.getId());
-		formsPDFTaskTemplateDto.setName(formsPDFTaskTemplate.getName());
-		formsPDFTaskTemplateDto.setGeneric(formsPDFTaskTemplate.isGeneric());
-		formsPDFTaskTemplateDto.setIdForm(formsPDFTaskTemplate.getIdForm());
-		formsPDFTaskTemplateDto.setContent(formsPDFTaskTemplate.getContent());
-		formsPDFTaskTemplateDto.setRte(formsPDFTaskTemplate.isRte());
-		formsPDFTaskTemplateDto.setFormTitle(daoUtil.getString( "title" ));
-		
-		return formsPDFTaskTemplateDto;
+		List<FormsPDFTaskTemplateDTO> listFormsPDFTaskTemplateDto = new ArrayList<>();
+		if ( listIdTemplates.isEmpty() )
+		{
+			return listFormsPDFTaskTemplateDto;
+		}
+
+		String strSQL = SQL_QUERY_SELECT_SUMMARIES_WITH_FORM + String.join( ",", Collections.nCopies( listIdTemplates.size(), "?" ) ) + SQL_ORDER_SUMMARIES_BY_NAME;
+		try ( DAOUtil daoUtil = new DAOUtil( strSQL, WorkflowUtils.getPlugin( ) ) )
+		{
+			int nIndex = 0;
+			for ( Integer nIdTemplate : listIdTemplates )
+			{
+				daoUtil.setInt( ++nIndex, nIdTemplate );
+			}
+			daoUtil.executeQuery();
+			while ( daoUtil.next() )
+			{
+				FormsPDFTaskTemplateDTO formsPDFTaskTemplateDto = new FormsPDFTaskTemplateDTO();
+				formsPDFTaskTemplateDto.setId( daoUtil.getInt( "id_template" ) );
+				formsPDFTaskTemplateDto.setName( daoUtil.getString( "name" ) );
+				formsPDFTaskTemplateDto.setIdForm( daoUtil.getInt( "id_form" ) );
+				formsPDFTaskTemplateDto.setGeneric( daoUtil.getBoolean( "is_generic" ) );
+				formsPDFTaskTemplateDto.setRte( daoUtil.getBoolean( "is_rte" ) );
+				formsPDFTaskTemplateDto.setRevision( daoUtil.getInt( "revision" ) );
+				formsPDFTaskTemplateDto.setSha256( daoUtil.getString( "sha256" ) );
+				formsPDFTaskTemplateDto.setFormTitle( daoUtil.getString( "title" ) );
+				listFormsPDFTaskTemplateDto.add( formsPDFTaskTemplateDto );
+			}
+		}
+		return listFormsPDFTaskTemplateDto;
 	}
-	
+
+	/**
+	 * Read the listing columns of a template, the content is read by {@link #load(int)} only
+	 */
 	private FormsPDFTaskTemplate dataToObject(DAOUtil daoUtil)
 	{
 		FormsPDFTaskTemplate formsPDFTaskTemplate = new FormsPDFTaskTemplate( );
@@ -199,8 +332,9 @@ public class FormsPDFTaskTemplateDAO implements IFormsPDFTaskTemplateDAO {
 		formsPDFTaskTemplate.setName( daoUtil.getString( "name" ) );
 		formsPDFTaskTemplate.setIdForm(daoUtil.getInt( "id_form" ) );
 		formsPDFTaskTemplate.setGeneric(daoUtil.getBoolean( "is_generic" ) );
-		formsPDFTaskTemplate.setContent( daoUtil.getString( "content" ) );
 		formsPDFTaskTemplate.setRte( daoUtil.getBoolean( "is_rte" ) );
+		formsPDFTaskTemplate.setRevision( daoUtil.getInt( "revision" ) );
+		formsPDFTaskTemplate.setSha256( daoUtil.getString( "sha256" ) );
 		
 		return formsPDFTaskTemplate;
 	}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.business;
+
+/**
+ * Filter of the templates listed in the templates administration
+ */
+public class FormsPDFTaskTemplateFilter {
+
+	public static final int ALL = -1;
+	public static final int GENERIC_ONLY = 1;
+	public static final int FORM_ONLY = 0;
+
+	private String _strName;
+	private int _nIdForm;
+	private int _nGeneric = ALL;
+
+	/**
+	 * @return the part of the name searched, null to search all the names
+	 */
+	public String getName() {
+		return _strName;
+	}
+
+	public void setName(String strName) {
+		this._strName = strName;
+	}
+
+	/**
+	 * @return the id of the form of the templates, 0 for all the forms
+	 */
+	public int getIdForm() {
+		return _nIdForm;
+	}
+
+	public void setIdForm(int nIdForm) {
+		this._nIdForm = nIdForm;
+	}
+
+	/**
+	 * @return {@link #GENERIC_ONLY}, {@link #FORM_ONLY} or {@link #ALL}
+	 */
+	public int getGeneric() {
+		return _nGeneric;
+	}
+
+	public void setGeneric(int nGeneric) {
+		this._nGeneric = nGeneric;
+	}
+
+	public boolean containsName() {
+		return _strName != null && !_strName.isEmpty();
+	}
+
+	public boolean containsIdForm() {
+		return _nIdForm > 0;
+	}
+
+	public boolean containsGeneric() {
+		return _nGeneric != ALL;
+	}
+}
@@ -33,9 +33,16 @@
  */
 package fr.paris.lutece.plugins.workflow.modules.formspdf.business;
 
+import java.sql.Timestamp;
 import java.util.List;
 
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.FormsPDFPlugin;
 import fr.paris.lutece.portal.service.spring.SpringContextService;
+import fr.paris.lutece.portal.service.util.AppException;
+import fr.paris.lutece.util.sql.TransactionManager;
 
 public final class FormsPDFTaskTemplateHome {
 
@@ -48,19 +55,98 @@ public final class FormsPDFTaskTemplateHome {
 	
 	public static FormsPDFTaskTemplate create( FormsPDFTaskTemplate formsPDFTaskTemplate )
     {
-		_dao.insert(formsPDFTaskTemplate);
+		TransactionManager.beginTransaction( FormsPDFPlugin.getPlugin( ) );
+		try
+		{
+			_dao.insert(formsPDFTaskTemplate);
+			addRevision(formsPDFTaskTemplate);
+			_dao.store(formsPDFTaskTemplate);
+			TransactionManager.commitTransaction( FormsPDFPlugin.getPlugin( ) );
+		}
+		catch( Exception e )
+		{
+			TransactionManager.rollBack( FormsPDFPlugin.getPlugin( ), e );
+			throw new AppException( e.getMessage( ), e );
+		}
 		return formsPDFTaskTemplate;
     }
 	
+	/**
+	 * Update a template. A new revision is added when the content has changed, the previous revisions are kept unchanged. The row of the template is
+	 * locked during the update so that concurrent saves get distinct revision numbers.
+	 * 
+	 * @param formsPDFTaskTemplate
+	 *            the template
+	 * @return the template
+	 */
 	public static FormsPDFTaskTemplate update( FormsPDFTaskTemplate formsPDFTaskTemplate )
     {
-		_dao.store(formsPDFTaskTemplate);
+		TransactionManager.beginTransaction( FormsPDFPlugin.getPlugin( ) );
+		try
+		{
+			_dao.lock(formsPDFTaskTemplate.getId());
+			if (formsPDFTaskTemplate.getRevision() == 0 || !computeSha256(formsPDFTaskTemplate).equals(formsPDFTaskTemplate.getSha256()))
+			{
+				addRevision(formsPDFTaskTemplate);
+			}
+			_dao.store(formsPDFTaskTemplate);
+			TransactionManager.commitTransaction( FormsPDFPlugin.getPlugin( ) );
+		}
+		catch( Exception e )
+		{
+			TransactionManager.rollBack( FormsPDFPlugin.getPlugin( ), e );
+			throw new AppException( e.getMessage( ), e );
+		}
 		return formsPDFTaskTemplate;
     }
 	
+	/**
+	 * Make a previous revision the current revision of a template
+	 * 
+	 * @param nIdTemplate
+	 *            the id of the template
+	 * @param nRevision
+	 *            the revision number
+	 * @return the template, or null if the template or the revision does not exist
+	 */
+	public static FormsPDFTaskTemplate rollback( int nIdTemplate, int nRevision )
+	{
+		FormsPDFTaskTemplate formsPDFTaskTemplate = _dao.load(nIdTemplate);
+		FormsPDFTaskTemplateRevision revision = FormsPDFTaskTemplateRevisionHome.findByPrimaryKey(nIdTemplate, nRevision);
+		if (formsPDFTaskTemplate == null || revision == null)
+		{
+			return null;
+		}
+		applyRevision(formsPDFTaskTemplate, revision);
+		TransactionManager.beginTransaction( FormsPDFPlugin.getPlugin( ) );
+		try
+		{
+			_dao.lock(nIdTemplate);
+			_dao.store(formsPDFTaskTemplate);
+			TransactionManager.commitTransaction( FormsPDFPlugin.getPlugin( ) );
+		}
+		catch( Exception e )
+		{
+			TransactionManager.rollBack( FormsPDFPlugin.getPlugin( ), e );
+			throw new AppException( e.getMessage( ), e );
+		}
+		return formsPDFTaskTemplate;
+	}
+	
 	public static void remove( int nIdTemplate )
     {
-        _dao.delete( nIdTemplate );
+		TransactionManager.beginTransaction( FormsPDFPlugin.getPlugin( ) );
+		try
+		{
+			_dao.delete( nIdTemplate );
+			FormsPDFTaskTemplateRevisionHome.removeByTemplate( nIdTemplate );
+			TransactionManager.commitTransaction( FormsPDFPlugin.getPlugin( ) );
+		}
+		catch( Exception e )
+		{
+			TransactionManager.rollBack( FormsPDFPlugin.getPlugin( ), e );
+			throw new AppException( e.getMessage( ), e );
+		}
     }
 	
 	public static FormsPDFTaskTemplate findByPrimaryKey( int nIdTemplate )
@@ -68,6 +154,34 @@ public final class FormsPDFTaskTemplateHome {
 		return _dao.load( nIdTemplate );
 	}
 	
+	/**
+	 * Find a template with the content of one of its revisions
+	 * 
+	 * @param nIdTemplate
+	 *            the id of the template
+	 * @param nRevision
+	 *            the revision number, 0 for the current revision
+	 * @return the template, or null if not found
+	 */
+	public static FormsPDFTaskTemplate findByPrimaryKey( int nIdTemplate, int nRevision )
+	{
+		FormsPDFTaskTemplate formsPDFTaskTemplate = _dao.load( nIdTemplate );
+		if ( formsPDFTaskTemplate != null && nRevision > 0 && nRevision != formsPDFTaskTemplate.getRevision( ) )
+		{
+			FormsPDFTaskTemplateRevision revision = FormsPDFTaskTemplateRevisionHome.findByPrimaryKey( nIdTemplate, nRevision );
+			if ( revision != null )
+			{
+				applyRevision( formsPDFTaskTemplate, revision );
+			}
+		}
+		return formsPDFTaskTemplate;
+	}
+	
+	public static int findCurrentRevision( int nIdTemplate )
+	{
+		return _dao.selectRevision( nIdTemplate );
+	}
+	
 	public static List<FormsPDFTaskTemplate> findByIdFormPlusGenerics( int nIdForm )
 	{
 		return _dao.loadByIdFormPlusGenerics( nIdForm );
@@ -78,9 +192,83 @@ public final class FormsPDFTaskTemplateHome {
 		return _dao.selectAll();
 	}
 	
-	public static List<FormsPDFTaskTemplateDTO> findAllWithFormTitles()
+	/**
+	 * Find the ids of the templates matching a filter
+	 * 
+	 * @param filter
+	 *            the filter
+	 * @return the ids of the templates, ordered by name
+	 */
+	public static List<Integer> findIdsByFilter( FormsPDFTaskTemplateFilter filter )
+	{
+		return _dao.selectIdsByFilter( filter );
+	}
+	
+	/**
+	 * Find templates with the titles of their forms, without their content, for the listings
+	 * 
+	 * @param listIdTemplates
+	 *            the ids of the templates
+	 * @return the templates, ordered by name
+	 */
+	public static List<FormsPDFTaskTemplateDTO> findSummariesWithFormTitles( List<Integer> listIdTemplates )
+	{
+		return _dao.selectSummariesWithForms( listIdTemplates );
+	}
+
+	/**
+	 * Add a revision with the content of a template and make it the current revision
+	 * 
+	 * @param formsPDFTaskTemplate
+	 *            the template
+	 */
+	private static void addRevision( FormsPDFTaskTemplate formsPDFTaskTemplate )
+	{
+		FormsPDFTaskTemplateRevision revision = new FormsPDFTaskTemplateRevision( );
+		revision.setIdTemplate( formsPDFTaskTemplate.getId( ) );
+		revision.setRevision( FormsPDFTaskTemplateRevisionHome.newRevisionNumber( formsPDFTaskTemplate.getId( ) ) );
+		revision.setSha256( computeSha256( formsPDFTaskTemplate ) );
+		revision.setContent( formsPDFTaskTemplate.getContent( ) );
+		revision.setCompiledContent( formsPDFTaskTemplate.getCompiledContent( ) );
+		revision.setRte( formsPDFTaskTemplate.isRte( ) );
+		revision.setDateCreation( new Timestamp( System.currentTimeMillis( ) ) );
+		FormsPDFTaskTemplateRevisionHome.create( revision );
+
+		formsPDFTaskTemplate.setRevision( revision.getRevision( ) );
+		formsPDFTaskTemplate.setSha256( revision.getSha256( ) );
+	}
+
+	/**
+	 * Copy the content of a revision into a template
+	 * 
+	 * @param formsPDFTaskTemplate
+	 *            the template
+	 * @param revision
+	 *            the revision
+	 */
+	private static void applyRevision( FormsPDFTaskTemplate formsPDFTaskTemplate, FormsPDFTaskTemplateRevision revision )
+	{
+		formsPDFTaskTemplate.setContent( revision.getContent( ) );
+		formsPDFTaskTemplate.setCompiledContent( revision.getCompiledContent( ) );
+		formsPDFTaskTemplate.setRte( revision.isRte( ) );
+		formsPDFTaskTemplate.setRevision( revision.getRevision( ) );
+		formsPDFTaskTemplate.setSha256( revision.getSha256( ) );
+	}
+
+	/**
+	 * Compute the hash of what a revision renders : the raw content, the compiled content, which depends on the entry types of the questions of the
+	 * form, and the form the template is bound to. A template switched to or from the rich text editor gets a new hash, since its macros are written
+	 * differently.
+	 * 
+	 * @param formsPDFTaskTemplate
+	 *            the template
+	 * @return the hex encoded SHA-256 hash
+	 */
+	private static String computeSha256( FormsPDFTaskTemplate formsPDFTaskTemplate )
 	{
-		return _dao.selectAllWithForms();
+		String strBinding = "form:" + formsPDFTaskTemplate.getIdForm( ) + ":" + ( formsPDFTaskTemplate.isGeneric( ) ? 1 : 0 ) + ":";
+		return DigestUtils.sha256Hex( ( formsPDFTaskTemplate.isRte( ) ? "rte:" : "" ) + strBinding
+				+ StringUtils.defaultString( formsPDFTaskTemplate.getContent( ) ) + ":" + StringUtils.defaultString( formsPDFTaskTemplate.getCompiledContent( ) ) );
 	}
 
 }
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.business;
+
+import java.sql.Timestamp;
+
+/**
+ * An immutable revision of a {@link FormsPDFTaskTemplate}. Saving a template with a new content adds a revision; the template points at its current
+ * revision, so that a rollback only moves the pointer.
+ */
+public class FormsPDFTaskTemplateRevision
+{
+    private int _nIdTemplate;
+    private int _nRevision;
+    private String _strSha256;
+    private String _strContent;
+    private String _strCompiledContent;
+    private boolean _bRte;
+    private Timestamp _dateCreation;
+
+    /**
+     * @return the id of the template
+     */
+    public int getIdTemplate( )
+    {
+        return _nIdTemplate;
+    }
+
+    /**
+     * @param nIdTemplate
+     *            the id of the template
+     */
+    public void setIdTemplate( int nIdTemplate )
+    {
+        _nIdTemplate = nIdTemplate;
+    }
+
+    /**
+     * @return the revision number, starting at 1
+     */
+    public int getRevision( )
+    {
+        return _nRevision;
+    }
+
+    /**
+     * @param nRevision
+     *            the revision number, starting at 1
+     */
+    public void setRevision( int nRevision )
+    {
+        _nRevision = nRevision;
+    }
+
+    /**
+     * @return the hex encoded SHA-256 hash of the content
+     */
+    public String getSha256( )
+    {
+        return _strSha256;
+    }
+
+    /**
+     * @param strSha256
+     *            the hex encoded SHA-256 hash of the content
+     */
+    public void setSha256( String strSha256 )
+    {
+        _strSha256 = strSha256;
+    }
+
+    /**
+     * @return the content
+     */
+    public String getContent( )
+    {
+        return _strContent;
+    }
+
+    /**
+     * @param strContent
+     *            the content
+     */
+    public void setContent( String strContent )
+    {
+        _strContent = strContent;
+    }
+
+    /**
+     * @return the render-ready content
+     */
+    public String getCompiledContent( )
+    {
+        return _strCompiledContent;
+    }
+
+    /**
+     * @param strCompiledContent
+     *            the render-ready content
+     */
+    public void setCompiledContent( String strCompiledContent )
+    {
+        _strCompiledContent = strCompiledContent;
+    }
+
+    /**
+     * @return true if the content was written with the rich text editor
+     */
+    public boolean isRte( )
+    {
+        return _bRte;
+    }
+
+    /**
+     * @param bRte
+     *            true if the content was written with the rich text editor
+     */
+    public void setRte( boolean bRte )
+    {
+        _bRte = bRte;
+    }
+
+    /**
+     * @return the creation date of the revision
+     */
+    public Timestamp getDateCreation( )
+    {
+        return _dateCreation;
+    }
+
+    /**
+     * @param dateCreation
+     *            the creation date of the revision
+     */
+    public void setDateCreation( Timestamp dateCreation )
+    {
+        _dateCreation = dateCreation;
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.business;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.FormsPDFPlugin;
+import fr.paris.lutece.util.sql.DAOUtil;
+
+/**
+ * DAO for {@link FormsPDFTaskTemplateRevision}. Revisions are never updated.
+ */
+public class FormsPDFTaskTemplateRevisionDAO implements IFormsPDFTaskTemplateRevisionDAO
+{
+    private static final String SQL_QUERY_SELECT = "SELECT id_template, revision, sha256, content, compiled_content, is_rte, created_at FROM workflow_task_formspdf_template_revision WHERE id_template = ? AND revision = ? ";
+    // the raw content is only needed for the revisions saved before the compiled content existed
+    private static final String SQL_QUERY_SELECT_RENDER_CONTENT = "SELECT id_template, revision, sha256, is_rte, created_at, compiled_content, CASE WHEN compiled_content IS NULL THEN content END AS content FROM workflow_task_formspdf_template_revision WHERE id_template = ? AND revision = ? ";
+    private static final String SQL_QUERY_SELECT_BY_TEMPLATE = "SELECT id_template, revision, sha256, is_rte, created_at FROM workflow_task_formspdf_template_revision WHERE id_template = ? ORDER BY revision DESC ";
+    private static final String SQL_QUERY_NEW_REVISION = "SELECT MAX( revision ) FROM workflow_task_formspdf_template_revision WHERE id_template = ? ";
+    private static final String SQL_QUERY_INSERT = "INSERT INTO workflow_task_formspdf_template_revision ( id_template, revision, sha256, content, compiled_content, is_rte, created_at ) VALUES ( ?, ?, ?, ?, ?, ?, ? ) ";
+    private static final String SQL_QUERY_DELETE_BY_TEMPLATE = "DELETE FROM workflow_task_formspdf_template_revision WHERE id_template = ? ";
+
+    @Override
+    public void insert( FormsPDFTaskTemplateRevision revision )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT, FormsPDFPlugin.getPlugin( ) ) )
+        {
+            int nIndex = 0;
+            daoUtil.setInt( ++nIndex, revision.getIdTemplate( ) );
+            daoUtil.setInt( ++nIndex, revision.getRevision( ) );
+            daoUtil.setString( ++nIndex, revision.getSha256( ) );
+            daoUtil.setString( ++nIndex, revision.getContent( ) );
+            daoUtil.setString( ++nIndex, revision.getCompiledContent( ) );
+            daoUtil.setBoolean( ++nIndex, revision.isRte( ) );
+            daoUtil.setTimestamp( ++nIndex, revision.getDateCreation( ) );
+
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    @Override
+    public FormsPDFTaskTemplateRevision load( int nIdTemplate, int nRevision )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT, FormsPDFPlugin.getPlugin( ) ) )
+        {
+            daoUtil.setInt( 1, nIdTemplate );
+            daoUtil.setInt( 2, nRevision );
+            daoUtil.executeQuery( );
+
+            FormsPDFTaskTemplateRevision revision = null;
+
+            if ( daoUtil.next( ) )
+            {
+                revision = dataToObject( daoUtil );
+                revision.setContent( daoUtil.getString( "content" ) );
+                revision.setCompiledContent( daoUtil.getString( "compiled_content" ) );
+            }
+
+            return revision;
+        }
+    }
+
+    @Override
+    public FormsPDFTaskTemplateRevision loadRenderContent( int nIdTemplate, int nRevision )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_RENDER_CONTENT, FormsPDFPlugin.getPlugin( ) ) )
+        {
+            daoUtil.setInt( 1, nIdTemplate );
+            daoUtil.setInt( 2, nRevision );
+            daoUtil.executeQuery( );
+
+            FormsPDFTaskTemplateRevision revision = null;
+
+            if ( daoUtil.next( ) )
+            {
+                revision = dataToObject( daoUtil );
+                revision.setContent( daoUtil.getString( "content" ) );
+                revision.setCompiledContent( daoUtil.getString( "compiled_content" ) );
+            }
+
+            return revision;
+        }
+    }
+
+    @Override
+    public List<FormsPDFTaskTemplateRevision> selectByTemplate( int nIdTemplate )
+    {
+        List<FormsPDFTaskTemplateRevision> listRevisions = new ArrayList<>( );
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_BY_TEMPLATE, FormsPDFPlugin.getPlugin( ) ) )
+        {
+            daoUtil.setInt( 1, nIdTemplate );
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                listRevisions.add( dataToObject( daoUtil ) );
+            }
+        }
+
+        return listRevisions;
+    }
+
+    @Override
+    public int newRevisionNumber( int nIdTemplate )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_NEW_REVISION, FormsPDFPlugin.getPlugin( ) ) )
+        {
+            daoUtil.setInt( 1, nIdTemplate );
+            daoUtil.executeQuery( );
+
+            int nRevision = 1;
+
+            if ( daoUtil.next( ) )
+            {
+                nRevision = daoUtil.getInt( 1 ) + 1;
+            }
+
+            return nRevision;
+        }
+    }
+
+    @Override
+    public void deleteByTemplate( int nIdTemplate )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_DELETE_BY_TEMPLATE, FormsPDFPlugin.getPlugin( ) ) )
+        {
+            daoUtil.setInt( 1, nIdTemplate );
+
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    /**
+     * Build a revision without its content from the current row
+     * 
+     * @param daoUtil
+     *            the daoUtil positioned on a row
+     * @return the revision
+     */
+    private FormsPDFTaskTemplateRevision dataToObject( DAOUtil daoUtil )
+    {
+        FormsPDFTaskTemplateRevision revision = new FormsPDFTaskTemplateRevision( );
+        revision.setIdTemplate( daoUtil.getInt( "id_template" ) );
+        revision.setRevision( daoUtil.getInt( "revision" ) );
+        revision.setSha256( daoUtil.getString( "sha256" ) );
+        revision.setRte( daoUtil.getBoolean( "is_rte" ) );
+        revision.setDateCreation( daoUtil.getTimestamp( "created_at" ) );
+        return revision;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.business;
+
+import java.util.List;
+
+import fr.paris.lutece.portal.service.spring.SpringContextService;
+
+/**
+ * Home for {@link FormsPDFTaskTemplateRevision}
+ */
+public final class FormsPDFTaskTemplateRevisionHome
+{
+    private static IFormsPDFTaskTemplateRevisionDAO _dao = SpringContextService.getBean( "workflow-formspdf.formsPDFTaskTemplateRevisionDAO" );
+
+    private FormsPDFTaskTemplateRevisionHome( )
+    {
+    }
+
+    public static FormsPDFTaskTemplateRevision create( FormsPDFTaskTemplateRevision revision )
+    {
+        _dao.insert( revision );
+        return revision;
+    }
+
+    public static FormsPDFTaskTemplateRevision findByPrimaryKey( int nIdTemplate, int nRevision )
+    {
+        return _dao.load( nIdTemplate, nRevision );
+    }
+
+    public static FormsPDFTaskTemplateRevision findRenderContent( int nIdTemplate, int nRevision )
+    {
+        return _dao.loadRenderContent( nIdTemplate, nRevision );
+    }
+
+    public static List<FormsPDFTaskTemplateRevision> findByTemplate( int nIdTemplate )
+    {
+        return _dao.selectByTemplate( nIdTemplate );
+    }
+
+    public static int newRevisionNumber( int nIdTemplate )
+    {
+        return _dao.newRevisionNumber( nIdTemplate );
+    }
+
+    public static void removeByTemplate( int nIdTemplate )
+    {
+        _dao.deleteByTemplate( nIdTemplate );
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.business;
+
+/**
+ * DAO interface of the documents stored in the database by chunks
+ */
+public interface IFormsPDFDocumentStorageDAO
+{
+    /**
+     * Insert a chunk of a document
+     * 
+     * @param strKey
+     *            the key of the document
+     * @param nIndex
+     *            the index of the chunk, from 0
+     * @param data
+     *            the bytes of the chunk
+     */
+    void insertChunk( String strKey, int nIndex, byte [ ] data );
+
+    /**
+     * Load a chunk of a document
+     * 
+     * @param strKey
+     *            the key of the document
+     * @param nIndex
+     *            the index of the chunk
+     * @return the bytes of the chunk, or null if the document has no such chunk
+     */
+    byte [ ] loadChunk( String strKey, int nIndex );
+
+    /**
+     * Insert the header of a document once all its chunks are written, which makes it readable
+     * 
+     * @param strKey
+     *            the key of the document
+     * @param lSize
+     *            the size of the document in bytes
+     */
+    void insertDocument( String strKey, long lSize );
+
+    /**
+     * Move the chunks of a document to another key
+     * 
+     * @param strKey
+     *            the key of the chunks
+     * @param strNewKey
+     *            the new key of the chunks
+     */
+    void updateChunksKey( String strKey, String strNewKey );
+
+    /**
+     * Load the size of a document
+     * 
+     * @param strKey
+     *            the key of the document
+     * @return the size of the document in bytes, or -1 if the document is not stored
+     */
+    long loadSize( String strKey );
+
+    /**
+     * Delete a document and its chunks
+     * 
+     * @param strKey
+     *            the key of the document
+     */
+    void delete( String strKey );
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.business;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * DAO interface for {@link FormsPDFJob}
+ */
+public interface IFormsPDFJobDAO
+{
+    /**
+     * Insert a new job
+     * 
+     * @param job
+     *            the job to insert
+     */
+    void insert( FormsPDFJob job );
+
+    /**
+     * Load a job
+     * 
+     * @param nIdJob
+     *            the job id
+     * @return the job, or null if not found
+     */
+    FormsPDFJob load( int nIdJob );
+
+    /**
+     * Load the ids of the jobs which can be claimed : pending jobs and running jobs whose lease has expired
+     * 
+     * @param now
+     *            the current date
+     * @param nLimit
+     *            the maximum number of ids to return
+     * @return the list of job ids, oldest first
+     */
+    List<Integer> selectClaimableIds( Timestamp now, int nLimit );
+
+    /**
+     * Atomically claim a job : the update only succeeds if the job is still claimable
+     * 
+     * @param nIdJob
+     *            the job id
+     * @param strNodeId
+     *            the id of the claiming node
+     * @param now
+     *            the current date
+     * @param leaseExpiration
+     *            the expiration date of the new lease
+     * @return true if the job has been claimed by this node
+     */
+    boolean claim( int nIdJob, String strNodeId, Timestamp now, Timestamp leaseExpiration );
+
+    /**
+     * Extend the lease of a job still held by a node
+     * 
+     * @param nIdJob
+     *            the job id
+     * @param strNodeId
+     *            the id of the node holding the lease
+     * @param leaseExpiration
+     *            the new expiration date of the lease
+     * @return false if the lease is no longer held by the node
+     */
+    boolean renewLease( int nIdJob, String strNodeId, Timestamp leaseExpiration );
+
+    /**
+     * Set the final status of a job held by a node
+     * 
+     * @param nIdJob
+     *            the job id
+     * @param strNodeId
+     *            the id of the node holding the lease
+     * @param strStatus
+     *            the final status
+     */
+    void release( int nIdJob, String strNodeId, String strStatus );
+
+    /**
+     * Delete the jobs with the given status created before a date
+     * 
+     * @param strStatus
+     *            the status
+     * @param dateBefore
+     *            the date
+     */
+    void deleteByStatusBefore( String strStatus, Timestamp dateBefore );
+
+    /**
+     * Delete the jobs of a task, whatever their status
+     * 
+     * @param nIdTask
+     *            the id of the task
+     */
+    void deleteByTask( int nIdTask );
+
+    /**
+     * Count the jobs having a status
+     * 
+     * @param strStatus
+     *            the status
+     * @return the number of jobs
+     */
+    int countByStatus( String strStatus );
+}
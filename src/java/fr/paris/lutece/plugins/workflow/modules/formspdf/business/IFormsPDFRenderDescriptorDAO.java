@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.business;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * DAO interface for {@link FormsPDFRenderDescriptor}
+ */
+public interface IFormsPDFRenderDescriptorDAO
+{
+    /**
+     * Insert a new descriptor
+     * 
+     * @param descriptor
+     *            the descriptor to insert
+     */
+    void insert( FormsPDFRenderDescriptor descriptor );
+
+    /**
+     * Load a descriptor
+     * 
+     * @param nIdDescriptor
+     *            the descriptor id
+     * @return the descriptor, or null if not found
+     */
+    FormsPDFRenderDescriptor load( int nIdDescriptor );
+
+    /**
+     * Load the descriptor recorded by a task for a resource history
+     * 
+     * @param nIdTask
+     *            the id of the task
+     * @param nIdResourceHistory
+     *            the id of the resource history
+     * @return the descriptor, or null if not found
+     */
+    FormsPDFRenderDescriptor loadByTaskAndHistory( int nIdTask, int nIdResourceHistory );
+
+    /**
+     * Load the descriptors recorded by a task
+     * 
+     * @param nIdTask
+     *            the id of the task
+     * @return the descriptors
+     */
+    List<FormsPDFRenderDescriptor> loadByTask( int nIdTask );
+
+    /**
+     * Load the descriptors rendered before a date
+     * 
+     * @param dateRendered
+     *            the date
+     * @param nLimit
+     *            the maximum number of descriptors
+     * @return the descriptors, the oldest renderings first
+     */
+    List<FormsPDFRenderDescriptor> loadRenderedBefore( Timestamp dateRendered, int nLimit );
+
+    /**
+     * Record the rendering of a descriptor, or that its rendered document was deleted when its file name, mime type and date of rendering are null
+     * 
+     * @param descriptor
+     *            the rendered descriptor
+     */
+    void updateRendered( FormsPDFRenderDescriptor descriptor );
+
+    /**
+     * Delete a descriptor
+     * 
+     * @param nIdDescriptor
+     *            the descriptor id
+     */
+    void delete( int nIdDescriptor );
+}
@@ -41,14 +41,59 @@ public interface IFormsPDFTaskTemplateDAO {
 
 	void store(FormsPDFTaskTemplate formsPDFTaskTemplate);
 
+	/**
+	 * Load a template with its content
+	 * 
+	 * @param nIdTemplate
+	 *            the id of the template
+	 * @return the template, or null if not found
+	 */
 	FormsPDFTaskTemplate load(int nIdTemplate);
+
+	int selectRevision(int nIdTemplate);
+
+	/**
+	 * Lock the row of a template until the end of the current transaction, so that the concurrent saves of the template are serialised
+	 * 
+	 * @param nIdTemplate
+	 *            the id of the template
+	 */
+	void lock(int nIdTemplate);
 	
+	/**
+	 * Load the templates of a form and the generic templates, without their content
+	 * 
+	 * @param nIdForm
+	 *            the id of the form
+	 * @return the templates, ordered by name
+	 */
 	List<FormsPDFTaskTemplate> loadByIdFormPlusGenerics(int nIdForm);
 
 	void delete(int nIdTemplate);
 
+	/**
+	 * Load all the templates, without their content
+	 * 
+	 * @return the templates
+	 */
 	List<FormsPDFTaskTemplate> selectAll();
 
-	List<FormsPDFTaskTemplateDTO> selectAllWithForms();
+	/**
+	 * Load the ids of the templates matching a filter, ordered by name
+	 * 
+	 * @param filter
+	 *            the filter
+	 * @return the ids of the templates
+	 */
+	List<Integer> selectIdsByFilter(FormsPDFTaskTemplateFilter filter);
+
+	/**
+	 * Load the templates with the titles of their forms, without their content
+	 * 
+	 * @param listIdTemplates
+	 *            the ids of the templates
+	 * @return the templates, ordered by name
+	 */
+	List<FormsPDFTaskTemplateDTO> selectSummariesWithForms(List<Integer> listIdTemplates);
 
 }
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.business;
+
+import java.util.List;
+
+/**
+ * DAO interface for {@link FormsPDFTaskTemplateRevision}
+ */
+public interface IFormsPDFTaskTemplateRevisionDAO
+{
+    /**
+     * Insert a new revision
+     * 
+     * @param revision
+     *            the revision to insert
+     */
+    void insert( FormsPDFTaskTemplateRevision revision );
+
+    /**
+     * Load a revision
+     * 
+     * @param nIdTemplate
+     *            the id of the template
+     * @param nRevision
+     *            the revision number
+     * @return the revision, or null if not found
+     */
+    FormsPDFTaskTemplateRevision load( int nIdTemplate, int nRevision );
+
+    /**
+     * Load a revision with the content needed to render it : the compiled content, or the raw content if the revision has no compiled content
+     * 
+     * @param nIdTemplate
+     *            the id of the template
+     * @param nRevision
+     *            the revision number
+     * @return the revision, or null if not found
+     */
+    FormsPDFTaskTemplateRevision loadRenderContent( int nIdTemplate, int nRevision );
+
+    /**
+     * Load the revisions of a template, without their content
+     * 
+     * @param nIdTemplate
+     *            the id of the template
+     * @return the revisions, latest first
+     */
+    List<FormsPDFTaskTemplateRevision> selectByTemplate( int nIdTemplate );
+
+    /**
+     * Get the number of the next revision of a template
+     * 
+     * @param nIdTemplate
+     *            the id of the template
+     * @return the next revision number
+     */
+    int newRevisionNumber( int nIdTemplate );
+
+    /**
+     * Delete the revisions of a template
+     * 
+     * @param nIdTemplate
+     *            the id of the template
+     */
+    void deleteByTemplate( int nIdTemplate );
+}
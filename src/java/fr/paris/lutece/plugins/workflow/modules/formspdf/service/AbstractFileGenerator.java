@@ -43,12 +43,11 @@ import org.apache.commons.collections.CollectionUtils;
 
 import fr.paris.lutece.plugins.filegenerator.service.IFileGenerator;
 import fr.paris.lutece.plugins.forms.business.Form;
-import fr.paris.lutece.plugins.forms.business.FormHome;
 import fr.paris.lutece.plugins.forms.business.FormResponse;
-import fr.paris.lutece.plugins.forms.business.export.FormExportConfig;
-import fr.paris.lutece.plugins.forms.business.export.FormExportConfigHome;
 import fr.paris.lutece.plugins.forms.export.ExportServiceManager;
 import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFTaskTemplate;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.cache.FormsPDFFormCacheService;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.cache.FormsPDFFormStructure;
 import fr.paris.lutece.util.file.FileUtil;
 
 public abstract class AbstractFileGenerator implements IFileGenerator
@@ -57,14 +56,12 @@ public abstract class AbstractFileGenerator implements IFileGenerator
 
     // 4: size for file extension (.pdf, .zip, .csv)
     private static final int MAX_NAME_LENGTH = 250 - PATTERN_TIMESTAMP.length( );
-    protected static final String TMP_DIR = System.getProperty( "java.io.tmpdir" );
 
     protected final FormResponse _formResponse;
     protected final String _fileName;
     protected final String _fileDescription;
     protected final FormsPDFTaskTemplate _formsPDFTaskTemplate;
 
-    private List<FormExportConfig> _configList = null;
     protected Form _form;
 
     /**
@@ -101,13 +98,14 @@ public abstract class AbstractFileGenerator implements IFileGenerator
      */
     protected String generateFileName( FormResponse response )
     {
-        if ( CollectionUtils.isEmpty( _configList ) )
+        FormsPDFFormStructure formStructure = FormsPDFFormCacheService.getInstance( ).getFormStructure( response.getFormId( ) );
+        if ( formStructure == null )
         {
-            _configList = FormExportConfigHome.findByForm( response.getFormId( ) );
-            _form = FormHome.findByPrimaryKey( response.getFormId( ) );
+            return FileUtil.normalizeFileName( String.valueOf( response.getId( ) ) );
         }
+        _form = formStructure.getForm( );
 
-        List<String> nameValues = ExportServiceManager.getInstance( ).generateNameComponents( _form, response, _configList );
+        List<String> nameValues = ExportServiceManager.getInstance( ).generateNameComponents( _form, response, formStructure.getExportConfigs( ) );
         if ( CollectionUtils.isEmpty( nameValues ) )
         {
             nameValues.add( String.valueOf( response.getId( ) ) );
@@ -0,0 +1,379 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.multipdf.PDFMergerUtility;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+import com.openhtmltopdf.pdfboxout.PdfRendererBuilder;
+
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.budget.RenderBudget;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.output.PdfRendererBuilderFactory;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Renders large documents by chunks. The body of the document is split before the top level elements matching the configured section selector, each
+ * chunk is rendered into its own PDF file and the files are merged with a merger backed by temporary files. The heap used by the layout is thus bounded
+ * by the size of a chunk instead of the size of the whole document.
+ * <p>
+ * Each chunk starts on a new page and page counters restart in each chunk, so the sections should be parts of the document where a page break is
+ * expected.
+ * <p>
+ * Each chunk is rendered by its own renderer builder, so the chunks of the documents can be rendered concurrently by the render threads shared by all
+ * the documents. With a parallelism of 1 the chunks are rendered in the calling thread.
+ */
+public final class ChunkedPDFRenderer
+{
+    private static final String PROPERTY_ENABLED = "workflow-formspdf.largeDocument.enabled";
+    private static final String PROPERTY_THRESHOLD = "workflow-formspdf.largeDocument.threshold";
+    private static final String PROPERTY_SECTION_SELECTOR = "workflow-formspdf.largeDocument.sectionSelector";
+    private static final String PROPERTY_SECTIONS_PER_CHUNK = "workflow-formspdf.largeDocument.sectionsPerChunk";
+    private static final String PROPERTY_PARALLELISM = "workflow-formspdf.largeDocument.parallelism";
+
+    private static final int DEFAULT_THRESHOLD = 1048576;
+    private static final String DEFAULT_SECTION_SELECTOR = ".pdf-section";
+    private static final int DEFAULT_SECTIONS_PER_CHUNK = 1;
+    private static final int DEFAULT_PARALLELISM = 1;
+
+    private static final String PREFIX_CHUNK_FILE = "chunk_";
+    private static final String EXTENSION_PDF = ".pdf";
+
+    private static ChunkedPDFRenderer _singleton = new ChunkedPDFRenderer( );
+
+    private final int _nParallelism;
+    private final ExecutorService _executor;
+
+    /**
+     * Private constructor
+     */
+    private ChunkedPDFRenderer( )
+    {
+        _nParallelism = Math.max( 1, AppPropertiesService.getPropertyInt( PROPERTY_PARALLELISM, DEFAULT_PARALLELISM ) );
+        _executor = _nParallelism > 1 ? Executors.newFixedThreadPool( _nParallelism, runnable -> {
+            Thread thread = new Thread( runnable, "formspdf-chunk" );
+            thread.setDaemon( true );
+            return thread;
+        } ) : null;
+    }
+
+    /**
+     * Get the instance of the renderer
+     * 
+     * @return the instance
+     */
+    public static ChunkedPDFRenderer getInstance( )
+    {
+        return _singleton;
+    }
+
+    /**
+     * Check if a document must be rendered by chunks
+     * 
+     * @param nLength
+     *            the length of the html of the document
+     * @return true if the large document mode is enabled and the document exceeds the threshold
+     */
+    public boolean isLargeDocument( int nLength )
+    {
+        return AppPropertiesService.getPropertyBoolean( PROPERTY_ENABLED, false ) && nLength > AppPropertiesService.getPropertyInt( PROPERTY_THRESHOLD, DEFAULT_THRESHOLD );
+    }
+
+    /**
+     * Render a document by chunks. The top level elements of the body are removed from the document as they are handed to the chunks.
+     * 
+     * @param doc
+     *            the document, with its output settings
+     * @param outputStream
+     *            the stream receiving the merged PDF
+     * @param workDirectory
+     *            the directory receiving the temporary chunk files
+     * @throws IOException
+     *             if the rendering or the merge fails
+     */
+    public void render( Document doc, OutputStream outputStream, Path workDirectory ) throws IOException
+    {
+        String strSelector = AppPropertiesService.getProperty( PROPERTY_SECTION_SELECTOR, DEFAULT_SECTION_SELECTOR );
+        int nSectionsPerChunk = Math.max( 1, AppPropertiesService.getPropertyInt( PROPERTY_SECTIONS_PER_CHUNK, DEFAULT_SECTIONS_PER_CHUNK ) );
+
+        // bounds the number of chunk html of the document kept in memory while waiting for a render thread
+        Semaphore semaphore = new Semaphore( _nParallelism );
+        // set when the rendering fails, the chunks not started yet are then skipped
+        AtomicBoolean aborted = new AtomicBoolean( );
+        List<Path> listChunkFiles = new ArrayList<>( );
+        List<Future<Void>> listFutures = new ArrayList<>( );
+        boolean bSucceeded = false;
+
+        try
+        {
+            Document chunk = newChunk( doc );
+            int nSections = 0;
+
+            for ( Element child : new ArrayList<>( doc.body( ).children( ) ) )
+            {
+                if ( child.is( strSelector ) )
+                {
+                    if ( nSections == nSectionsPerChunk )
+                    {
+                        submitChunk( chunk, workDirectory, listChunkFiles, listFutures, semaphore, aborted );
+                        chunk = newChunk( doc );
+                        nSections = 0;
+                    }
+                    nSections++;
+                }
+                child.remove( );
+                chunk.body( ).appendChild( child );
+            }
+            submitChunk( chunk, workDirectory, listChunkFiles, listFutures, semaphore, aborted );
+
+            for ( Future<Void> future : listFutures )
+            {
+                future.get( );
+            }
+
+            PDFMergerUtility merger = new PDFMergerUtility( );
+            for ( Path chunkFile : listChunkFiles )
+            {
+                merger.addSource( chunkFile.toFile( ) );
+            }
+            merger.setDestinationStream( outputStream );
+            merger.mergeDocuments( MemoryUsageSetting.setupTempFileOnly( ) );
+            bSucceeded = true;
+        }
+        catch( InterruptedException e )
+        {
+            Thread.currentThread( ).interrupt( );
+            throw new IOException( "Chunked rendering interrupted", e );
+        }
+        catch( ExecutionException e )
+        {
+            throw new IOException( "Error while rendering a chunk", e.getCause( ) );
+        }
+        finally
+        {
+            if ( !bSucceeded )
+            {
+                // the chunk files are deleted once no render thread writes them any more
+                aborted.set( true );
+                awaitChunks( listFutures );
+            }
+            for ( Path chunkFile : listChunkFiles )
+            {
+                Files.deleteIfExists( chunkFile );
+            }
+        }
+    }
+
+    /**
+     * Render the first chunk of a document only, split as {@link #render(Document, OutputStream, Path)} splits it, whatever the length of the
+     * document. The layout is thus limited to the head and the first sections, for the outputs only showing the first page. A document without any
+     * section is rendered whole.
+     * 
+     * @param doc
+     *            the document, with its output settings, whose top level elements of the first chunk are removed
+     * @param outputStream
+     *            the stream receiving the PDF of the first chunk
+     * @throws IOException
+     *             if the rendering fails
+     */
+    public void renderFirstChunk( Document doc, OutputStream outputStream ) throws IOException
+    {
+        String strSelector = AppPropertiesService.getProperty( PROPERTY_SECTION_SELECTOR, DEFAULT_SECTION_SELECTOR );
+        int nSectionsPerChunk = Math.max( 1, AppPropertiesService.getPropertyInt( PROPERTY_SECTIONS_PER_CHUNK, DEFAULT_SECTIONS_PER_CHUNK ) );
+
+        Document chunk = newChunk( doc );
+        int nSections = 0;
+        for ( Element child : new ArrayList<>( doc.body( ).children( ) ) )
+        {
+            if ( child.is( strSelector ) )
+            {
+                if ( nSections == nSectionsPerChunk )
+                {
+                    break;
+                }
+                nSections++;
+            }
+            child.remove( );
+            chunk.body( ).appendChild( child );
+        }
+
+        PdfRendererBuilder builder = PdfRendererBuilderFactory.createBuilder( chunk.html( ) );
+        builder.toStream( outputStream );
+        builder.run( );
+    }
+
+    /**
+     * Create a new chunk
+     * 
+     * @param doc
+     *            the source document
+     * @return an empty document with the head and the output settings of the source document
+     */
+    private Document newChunk( Document doc )
+    {
+        Document chunk = Document.createShell( doc.location( ) );
+        chunk.outputSettings( doc.outputSettings( ).clone( ) );
+        for ( Element headElement : doc.head( ).children( ) )
+        {
+            chunk.head( ).appendChild( headElement.clone( ) );
+        }
+        return chunk;
+    }
+
+    /**
+     * Serialize a chunk and submit its rendering, or render it in the calling thread when the chunks are not rendered concurrently
+     */
+    private void submitChunk( Document chunk, Path workDirectory, List<Path> listChunkFiles, List<Future<Void>> listFutures, Semaphore semaphore,
+            AtomicBoolean aborted ) throws InterruptedException, IOException
+    {
+        if ( chunk.body( ).childNodeSize( ) == 0 && !listChunkFiles.isEmpty( ) )
+        {
+            return;
+        }
+
+        // the budget of the rendering is checked between the chunks, and counts the heap allocated by the render threads of the chunks
+        RenderBudget budget = RenderBudget.current( );
+        if ( budget != null )
+        {
+            budget.check( );
+        }
+
+        Path chunkFile = workDirectory.resolve( PREFIX_CHUNK_FILE + listChunkFiles.size( ) + EXTENSION_PDF );
+        listChunkFiles.add( chunkFile );
+
+        String strChunkHtml = chunk.html( );
+        if ( _executor == null )
+        {
+            renderChunk( strChunkHtml, chunkFile );
+            return;
+        }
+
+        semaphore.acquire( );
+        listFutures.add( _executor.submit( ( ) -> {
+            if ( budget != null )
+            {
+                budget.enter( );
+            }
+            try
+            {
+                if ( !aborted.get( ) && ( budget == null || !budget.isCancelled( ) ) )
+                {
+                    renderChunk( strChunkHtml, chunkFile );
+                }
+            }
+            finally
+            {
+                if ( budget != null )
+                {
+                    budget.exit( );
+                }
+                semaphore.release( );
+            }
+            return null;
+        } ) );
+    }
+
+    /**
+     * Render a chunk into its file with a builder of its own
+     * 
+     * @param strChunkHtml
+     *            the html of the chunk
+     * @param chunkFile
+     *            the file receiving the PDF of the chunk
+     * @throws IOException
+     *             if the rendering fails
+     */
+    private static void renderChunk( String strChunkHtml, Path chunkFile ) throws IOException
+    {
+        try ( OutputStream chunkStream = Files.newOutputStream( chunkFile ) )
+        {
+            PdfRendererBuilder builder = PdfRendererBuilderFactory.createBuilder( strChunkHtml );
+            builder.toStream( chunkStream );
+            builder.run( );
+        }
+        catch( IOException | RuntimeException e )
+        {
+            AppLogService.error( "Error while rendering the chunk " + chunkFile, e );
+            throw e;
+        }
+    }
+
+    /**
+     * Wait until the submitted chunks are rendered or skipped, whatever their outcome
+     * 
+     * @param listFutures
+     *            the renderings of the chunks
+     */
+    private static void awaitChunks( List<Future<Void>> listFutures )
+    {
+        boolean bInterrupted = false;
+        for ( Future<Void> future : listFutures )
+        {
+            while ( !future.isDone( ) )
+            {
+                try
+                {
+                    future.get( );
+                }
+                catch( InterruptedException e )
+                {
+                    bInterrupted = true;
+                }
+                catch( ExecutionException e )
+                {
+                    // already reported by the failed rendering
+                }
+            }
+        }
+        if ( bInterrupted )
+        {
+            Thread.currentThread( ).interrupt( );
+        }
+    }
+}
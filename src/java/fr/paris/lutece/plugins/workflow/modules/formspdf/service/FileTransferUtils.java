@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Utility to hand generated documents over to a consumer without copying them through the heap
+ */
+public final class FileTransferUtils
+{
+    /**
+     * Private constructor
+     */
+    private FileTransferUtils( )
+    {
+    }
+
+    /**
+     * Transfer a file to a stream with {@link FileChannel#transferTo(long, long, WritableByteChannel)}. The operating system copies the bytes directly
+     * when the target is a file or a socket; otherwise the file is mapped and written by chunks, without a copy buffer in the heap.
+     * 
+     * @param file
+     *            the file to transfer
+     * @param outputStream
+     *            the target stream, which is not closed
+     * @return the number of bytes transferred
+     * @throws IOException
+     *             if the transfer fails
+     */
+    public static long transferTo( Path file, OutputStream outputStream ) throws IOException
+    {
+        WritableByteChannel target = Channels.newChannel( outputStream );
+        try ( FileChannel source = FileChannel.open( file, StandardOpenOption.READ ) )
+        {
+            long lSize = source.size( );
+            long lPosition = 0;
+            while ( lPosition < lSize )
+            {
+                lPosition += source.transferTo( lPosition, lSize - lPosition, target );
+            }
+            return lSize;
+        }
+    }
+
+    /**
+     * Transfer the remaining bytes of a buffer to a stream. The bytes of a direct buffer are copied to the stream by small chunks.
+     * 
+     * @param buffer
+     *            the buffer, whose position is moved to its limit
+     * @param outputStream
+     *            the target stream, which is not closed
+     * @return the number of bytes transferred
+     * @throws IOException
+     *             if the transfer fails
+     */
+    public static long transferTo( ByteBuffer buffer, OutputStream outputStream ) throws IOException
+    {
+        WritableByteChannel target = Channels.newChannel( outputStream );
+        long lSize = buffer.remaining( );
+        while ( buffer.hasRemaining( ) )
+        {
+            target.write( buffer );
+        }
+        return lSize;
+    }
+}
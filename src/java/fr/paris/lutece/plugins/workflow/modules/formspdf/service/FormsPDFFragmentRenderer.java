@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import fr.paris.lutece.portal.service.template.AppTemplateService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Merges the templates rendering their questions concurrently. Each call of the displayEntry macro on a question of the model is replaced by a
+ * placeholder, the fragments of the questions are rendered on a fork-join pool into their own slots, the rest of the template is merged as usual and the
+ * fragments are stitched in place of their placeholders, as many times as the merge output them. The render threads only share the model, which is
+ * not modified during the merge.
+ * <p>
+ * The renderings use the renderer configured in the properties, unless a benchmark bound its own renderer to the rendering thread.
+ */
+public final class FormsPDFFragmentRenderer
+{
+    private static final String PROPERTY_ENABLED = "workflow-formspdf.fragments.parallel";
+    private static final String PROPERTY_PARALLELISM = "workflow-formspdf.fragments.parallelism";
+    private static final String PROPERTY_MIN_FRAGMENTS = "workflow-formspdf.fragments.minFragments";
+
+    private static final int DEFAULT_MIN_FRAGMENTS = 20;
+
+    private static final Pattern PATTERN_DISPLAY_ENTRY = Pattern.compile( "[<\\[]@displayEntry\\s+q\\s*=\\s*(position_\\d+)\\s*/[>\\]]" );
+    private static final String PLACEHOLDER_PREFIX = "<!--formspdf-fragment-";
+    private static final String PLACEHOLDER_SUFFIX = "-->";
+    private static final String FRAGMENT_TEMPLATE = "<@displayEntry q=%s/>";
+
+    private static FormsPDFFragmentRenderer _singleton = new FormsPDFFragmentRenderer(
+            AppPropertiesService.getPropertyInt( PROPERTY_PARALLELISM, Runtime.getRuntime( ).availableProcessors( ) ), false );
+    private static final ThreadLocal<FormsPDFFragmentRenderer> _boundRenderer = new ThreadLocal<>( );
+
+    private final ForkJoinPool _pool;
+    private final boolean _bAlwaysEnabled;
+
+    /**
+     * Constructor
+     * 
+     * @param nParallelism
+     *            the number of threads rendering the fragments
+     * @param bAlwaysEnabled
+     *            true to render the questions concurrently whatever the properties
+     */
+    private FormsPDFFragmentRenderer( int nParallelism, boolean bAlwaysEnabled )
+    {
+        _pool = new ForkJoinPool( Math.max( 1, nParallelism ) );
+        _bAlwaysEnabled = bAlwaysEnabled;
+    }
+
+    /**
+     * Get the instance of the renderer
+     * 
+     * @return the instance
+     */
+    public static FormsPDFFragmentRenderer getInstance( )
+    {
+        return _singleton;
+    }
+
+    /**
+     * Create a renderer with its own pool, for the benchmarks of the load test. It renders the questions concurrently whatever the properties and must
+     * be shut down once the benchmark is over.
+     * 
+     * @param nParallelism
+     *            the number of threads rendering the fragments
+     * @return the renderer
+     */
+    public static FormsPDFFragmentRenderer createBenchmarkRenderer( int nParallelism )
+    {
+        return new FormsPDFFragmentRenderer( nParallelism, true );
+    }
+
+    /**
+     * Get the renderer of the current thread
+     * 
+     * @return the renderer bound to the current thread, or the instance configured in the properties
+     */
+    public static FormsPDFFragmentRenderer getCurrent( )
+    {
+        FormsPDFFragmentRenderer renderer = _boundRenderer.get( );
+        return renderer != null ? renderer : _singleton;
+    }
+
+    /**
+     * Bind a renderer to the current thread, so that the renderings of the thread use it
+     * 
+     * @param renderer
+     *            the renderer, null to use again the instance configured in the properties
+     */
+    public static void bind( FormsPDFFragmentRenderer renderer )
+    {
+        if ( renderer != null )
+        {
+            _boundRenderer.set( renderer );
+        }
+        else
+        {
+            _boundRenderer.remove( );
+        }
+    }
+
+    /**
+     * Shut down the pool of a benchmark renderer, once no thread renders with it
+     */
+    public void shutdown( )
+    {
+        if ( this != _singleton )
+        {
+            _pool.shutdown( );
+        }
+    }
+
+    /**
+     * @return true if the questions are rendered concurrently
+     */
+    public boolean isEnabled( )
+    {
+        return _bAlwaysEnabled || AppPropertiesService.getPropertyBoolean( PROPERTY_ENABLED, false );
+    }
+
+    /**
+     * Merge a template
+     * 
+     * @param strTemplate
+     *            the render-ready content of the template
+     * @param model
+     *            the model, which must not be modified during the merge
+     * @param locale
+     *            the locale
+     * @return the merged html
+     */
+    public String merge( String strTemplate, Map<String, Object> model, Locale locale )
+    {
+        List<String> listQuestions = new ArrayList<>( );
+        StringBuilder sbTemplate = new StringBuilder( strTemplate.length( ) );
+        Matcher matcher = PATTERN_DISPLAY_ENTRY.matcher( strTemplate );
+        int nEnd = 0;
+        while ( matcher.find( ) )
+        {
+            // the questions without response are left to the macro, as in a sequential merge
+            if ( model.get( matcher.group( 1 ) ) != null )
+            {
+                sbTemplate.append( strTemplate, nEnd, matcher.start( ) );
+                sbTemplate.append( PLACEHOLDER_PREFIX ).append( listQuestions.size( ) ).append( PLACEHOLDER_SUFFIX );
+                listQuestions.add( matcher.group( 1 ) );
+                nEnd = matcher.end( );
+            }
+        }
+
+        if ( listQuestions.size( ) < AppPropertiesService.getPropertyInt( PROPERTY_MIN_FRAGMENTS, DEFAULT_MIN_FRAGMENTS ) )
+        {
+            return AppTemplateService.getTemplateFromStringFtl( strTemplate, locale, model ).getHtml( );
+        }
+        sbTemplate.append( strTemplate, nEnd, strTemplate.length( ) );
+
+        // the fragments include the same display entry macros as the template
+        String strFragmentTemplate = FormsPDFTemplateIncludes.getFragmentHeader( strTemplate ) + FRAGMENT_TEMPLATE;
+        String [ ] fragments = new String [ listQuestions.size( )];
+        _pool.invoke( new FragmentsAction( strFragmentTemplate, listQuestions, fragments, 0, fragments.length, model, locale ) );
+
+        return stitch( AppTemplateService.getTemplateFromStringFtl( sbTemplate.toString( ), locale, model ).getHtml( ), fragments );
+    }
+
+    /**
+     * Replace the placeholders by their fragments. A placeholder is output as many times as its call, e.g. once per iteration of a list, or not at all
+     * in a branch of a condition which was not taken.
+     * 
+     * @param strMerged
+     *            the merged html with the placeholders
+     * @param fragments
+     *            the fragments, indexed by the numbers of their placeholders
+     * @return the final html
+     */
+    private static String stitch( String strMerged, String [ ] fragments )
+    {
+        StringBuilder sbResult = new StringBuilder( strMerged.length( ) + Arrays.stream( fragments ).mapToInt( String::length ).sum( ) );
+        int nEnd = 0;
+        int nStart = strMerged.indexOf( PLACEHOLDER_PREFIX );
+        while ( nStart >= 0 )
+        {
+            int nNumberStart = nStart + PLACEHOLDER_PREFIX.length( );
+            int nNumberEnd = nNumberStart;
+            while ( nNumberEnd < strMerged.length( ) && Character.isDigit( strMerged.charAt( nNumberEnd ) ) )
+            {
+                nNumberEnd++;
+            }
+            int nFragment = nNumberEnd > nNumberStart ? Integer.parseInt( strMerged.substring( nNumberStart, nNumberEnd ) ) : -1;
+            if ( nFragment >= 0 && nFragment < fragments.length && strMerged.startsWith( PLACEHOLDER_SUFFIX, nNumberEnd ) )
+            {
+                sbResult.append( strMerged, nEnd, nStart ).append( fragments [nFragment] );
+                nEnd = nNumberEnd + PLACEHOLDER_SUFFIX.length( );
+            }
+            nStart = strMerged.indexOf( PLACEHOLDER_PREFIX, nNumberStart );
+        }
+        return sbResult.append( strMerged, nEnd, strMerged.length( ) ).toString( );
+    }
+
+    /**
+     * Renders a range of fragments, splitting it while it is larger than one fragment
+     */
+    private static final class FragmentsAction extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final String _strFragmentTemplate;
+        private final transient List<String> _listQuestions;
+        private final String [ ] _fragments;
+        private final int _nFrom;
+        private final int _nTo;
+        private final transient Map<String, Object> _model;
+        private final transient Locale _locale;
+
+        FragmentsAction( String strFragmentTemplate, List<String> listQuestions, String [ ] fragments, int nFrom, int nTo, Map<String, Object> model,
+                Locale locale )
+        {
+            _strFragmentTemplate = strFragmentTemplate;
+            _listQuestions = listQuestions;
+            _fragments = fragments;
+            _nFrom = nFrom;
+            _nTo = nTo;
+            _model = model;
+            _locale = locale;
+        }
+
+        @Override
+        protected void compute( )
+        {
+            if ( _nTo - _nFrom == 1 )
+            {
+                _fragments [_nFrom] = AppTemplateService
+                        .getTemplateFromStringFtl( String.format( _strFragmentTemplate, _listQuestions.get( _nFrom ) ), _locale, _model ).getHtml( );
+                return;
+            }
+            int nMiddle = ( _nFrom + _nTo ) >>> 1;
+            invokeAll( new FragmentsAction( _strFragmentTemplate, _listQuestions, _fragments, _nFrom, nMiddle, _model, _locale ),
+                    new FragmentsAction( _strFragmentTemplate, _listQuestions, _fragments, nMiddle, _nTo, _model, _locale ) );
+        }
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service;
+
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+
+import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFJob;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFJobHome;
+import fr.paris.lutece.portal.service.util.AppException;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Cluster-aware dispatch of the PDF generation. In cluster mode the task only queues a job; the jobs are then claimed by the render daemon of any node
+ * through a lease stored in the database, so that each job is rendered once even when several nodes are running. The lease of a job is renewed while it
+ * is rendered, so that a rendering longer than the lease is not claimed again by another node.
+ */
+public final class FormsPDFJobService
+{
+    public static final String DISPATCH_MODE_LOCAL = "local";
+    public static final String DISPATCH_MODE_CLUSTER = "cluster";
+    public static final String DISPATCH_MODE_LAZY = "lazy";
+
+    private static final String PROPERTY_DISPATCH_MODE = "workflow-formspdf.dispatch.mode";
+    private static final String PROPERTY_NODE_ID = "workflow-formspdf.dispatch.nodeId";
+    private static final String PROPERTY_LEASE_DURATION = "workflow-formspdf.dispatch.leaseDuration";
+    private static final String PROPERTY_BATCH_SIZE = "workflow-formspdf.dispatch.batchSize";
+    private static final String PROPERTY_MAX_ATTEMPTS = "workflow-formspdf.dispatch.maxAttempts";
+    private static final String PROPERTY_RETENTION = "workflow-formspdf.dispatch.doneJobsRetention";
+
+    private static final int DEFAULT_LEASE_DURATION = 300;
+    private static final int DEFAULT_BATCH_SIZE = 10;
+    private static final int DEFAULT_MAX_ATTEMPTS = 3;
+    private static final int DEFAULT_RETENTION = 86400;
+
+    // class of the SQL states of the integrity constraint violations
+    private static final String SQLSTATE_INTEGRITY_CONSTRAINT_VIOLATION = "23";
+
+    private static FormsPDFJobService _singleton = new FormsPDFJobService( );
+
+    private final String _strNodeId;
+    private final ScheduledExecutorService _leaseRenewer;
+
+    /**
+     * Private constructor
+     */
+    private FormsPDFJobService( )
+    {
+        _strNodeId = AppPropertiesService.getProperty( PROPERTY_NODE_ID, ManagementFactory.getRuntimeMXBean( ).getName( ) );
+        _leaseRenewer = Executors.newSingleThreadScheduledExecutor( runnable -> {
+            Thread thread = new Thread( runnable, "formspdf-lease-renewer" );
+            thread.setDaemon( true );
+            return thread;
+        } );
+    }
+
+    /**
+     * Get the instance of the service
+     * 
+     * @return the instance
+     */
+    public static FormsPDFJobService getInstance( )
+    {
+        return _singleton;
+    }
+
+    /**
+     * @return true if the generation must be queued and processed by the render daemons of the cluster
+     */
+    public boolean isClusterMode( )
+    {
+        return DISPATCH_MODE_CLUSTER.equals( AppPropertiesService.getProperty( PROPERTY_DISPATCH_MODE, DISPATCH_MODE_LOCAL ) );
+    }
+
+    /**
+     * @return true if the task only records a render descriptor, the document being rendered on its first download
+     */
+    public boolean isLazyMode( )
+    {
+        return DISPATCH_MODE_LAZY.equals( AppPropertiesService.getProperty( PROPERTY_DISPATCH_MODE, DISPATCH_MODE_LOCAL ) );
+    }
+
+    /**
+     * @return the id of this node
+     */
+    public String getNodeId( )
+    {
+        return _strNodeId;
+    }
+
+    /**
+     * Queue the generation of a PDF. A job is queued at most once for a given task and resource history.
+     * 
+     * @param nIdTask
+     *            the id of the task
+     * @param nIdResourceHistory
+     *            the id of the resource history
+     * @param locale
+     *            the locale
+     */
+    public void enqueue( int nIdTask, int nIdResourceHistory, Locale locale )
+    {
+        FormsPDFJob job = new FormsPDFJob( );
+        job.setIdTask( nIdTask );
+        job.setIdResourceHistory( nIdResourceHistory );
+        job.setLocale( locale != null ? locale.toLanguageTag( ) : null );
+        job.setStatus( FormsPDFJob.STATUS_PENDING );
+        job.setDateCreation( new Timestamp( System.currentTimeMillis( ) ) );
+
+        try
+        {
+            FormsPDFJobHome.create( job );
+        }
+        catch( AppException e )
+        {
+            if ( !isIntegrityConstraintViolation( e ) )
+            {
+                throw e;
+            }
+            // the unique key on (id_task, id_resource_history) rejects a job already queued by another node
+            AppLogService.info( "PDF job already queued for task " + nIdTask + " and resource history " + nIdResourceHistory );
+        }
+    }
+
+    /**
+     * Claim and render a batch of queued jobs
+     * 
+     * @return the number of jobs processed by this node
+     */
+    public int processJobs( )
+    {
+        int nBatchSize = AppPropertiesService.getPropertyInt( PROPERTY_BATCH_SIZE, DEFAULT_BATCH_SIZE );
+        int nLeaseDuration = AppPropertiesService.getPropertyInt( PROPERTY_LEASE_DURATION, DEFAULT_LEASE_DURATION );
+        int nMaxAttempts = AppPropertiesService.getPropertyInt( PROPERTY_MAX_ATTEMPTS, DEFAULT_MAX_ATTEMPTS );
+        int nProcessed = 0;
+
+        List<Integer> listIds = FormsPDFJobHome.findClaimableIds( new Timestamp( System.currentTimeMillis( ) ), nBatchSize );
+        for ( Integer nIdJob : listIds )
+        {
+            long lNow = System.currentTimeMillis( );
+            if ( !FormsPDFJobHome.claim( nIdJob, _strNodeId, new Timestamp( lNow ), new Timestamp( lNow + nLeaseDuration * 1000L ) ) )
+            {
+                // claimed by another node in the meantime
+                continue;
+            }
+
+            FormsPDFJob job = FormsPDFJobHome.findByPrimaryKey( nIdJob );
+            if ( job.getAttempts( ) > nMaxAttempts )
+            {
+                AppLogService.error( "PDF job " + nIdJob + " abandoned after " + nMaxAttempts + " attempts" );
+                FormsPDFJobHome.release( nIdJob, _strNodeId, FormsPDFJob.STATUS_FAILED );
+                continue;
+            }
+
+            processJob( job, nLeaseDuration, job.getAttempts( ) >= nMaxAttempts );
+            nProcessed++;
+        }
+
+        return nProcessed;
+    }
+
+    /**
+     * Remove the completed jobs older than the retention delay
+     */
+    public void purgeJobs( )
+    {
+        int nRetention = AppPropertiesService.getPropertyInt( PROPERTY_RETENTION, DEFAULT_RETENTION );
+        FormsPDFJobHome.removeByStatusBefore( FormsPDFJob.STATUS_DONE, new Timestamp( System.currentTimeMillis( ) - nRetention * 1000L ) );
+    }
+
+    /**
+     * Render a claimed job and release its lease. The lease is renewed every half lease while the job is rendered.
+     * 
+     * @param job
+     *            the job
+     * @param nLeaseDuration
+     *            the duration of the lease in seconds
+     * @param bLastAttempt
+     *            true if the job is not retried after a failure, the error document being only written on the last attempt
+     */
+    private void processJob( FormsPDFJob job, int nLeaseDuration, boolean bLastAttempt )
+    {
+        Locale locale = StringUtils.isNotEmpty( job.getLocale( ) ) ? Locale.forLanguageTag( job.getLocale( ) ) : Locale.getDefault( );
+        long lRenewalPeriod = Math.max( 1L, nLeaseDuration * 1000L / 2 );
+        ScheduledFuture<?> renewal = _leaseRenewer.scheduleAtFixedRate( ( ) -> renewLease( job.getId( ), nLeaseDuration ), lRenewalPeriod, lRenewalPeriod,
+                TimeUnit.MILLISECONDS );
+        try
+        {
+            FormsPDFRenderService.getInstance( ).generate( job.getIdTask( ), job.getIdResourceHistory( ), null, locale, bLastAttempt );
+            FormsPDFJobHome.release( job.getId( ), _strNodeId, FormsPDFJob.STATUS_DONE );
+        }
+        catch( RuntimeException e )
+        {
+            AppLogService.error( "Error while processing PDF job " + job.getId( ), e );
+            if ( bLastAttempt )
+            {
+                FormsPDFJobHome.release( job.getId( ), _strNodeId, FormsPDFJob.STATUS_FAILED );
+            }
+            // otherwise the lease is kept so that the job is retried by any node once it expires
+        }
+        finally
+        {
+            renewal.cancel( false );
+        }
+    }
+
+    /**
+     * Renew the lease of a job being rendered by this node
+     * 
+     * @param nIdJob
+     *            the id of the job
+     * @param nLeaseDuration
+     *            the duration of the lease in seconds
+     */
+    private void renewLease( int nIdJob, int nLeaseDuration )
+    {
+        try
+        {
+            if ( !FormsPDFJobHome.renewLease( nIdJob, _strNodeId, new Timestamp( System.currentTimeMillis( ) + nLeaseDuration * 1000L ) ) )
+            {
+                AppLogService.error( "Lease of the PDF job " + nIdJob + " lost by node " + _strNodeId );
+            }
+        }
+        catch( RuntimeException e )
+        {
+            // a failed renewal must not stop the next ones
+            AppLogService.error( "Error while renewing the lease of the PDF job " + nIdJob, e );
+        }
+    }
+
+    /**
+     * Check whether an error was raised by an integrity constraint of the database
+     * 
+     * @param e
+     *            the error
+     * @return true if the error or one of its causes is an integrity constraint violation
+     */
+    static boolean isIntegrityConstraintViolation( Throwable e )
+    {
+        for ( Throwable cause = e; cause != null; cause = cause.getCause( ) )
+        {
+            if ( cause instanceof SQLException && StringUtils.startsWith( ( (SQLException) cause ).getSQLState( ), SQLSTATE_INTEGRITY_CONSTRAINT_VIOLATION ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,434 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.servlet.http.HttpServletRequest;
+
+import fr.paris.lutece.plugins.forms.business.FormResponse;
+import fr.paris.lutece.plugins.forms.business.FormResponseHome;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFRenderDescriptor;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFRenderDescriptorHome;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFSnapshot;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFSnapshotHome;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFTaskConfig;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFTaskTemplateHome;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.cache.CachedDocument;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.cache.FormsPDFDocumentCacheService;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.storage.DocumentOutputStream;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.storage.DocumentStorageService;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.storage.IDocumentStorage;
+import fr.paris.lutece.plugins.workflowcore.business.resource.ResourceHistory;
+import fr.paris.lutece.plugins.workflowcore.service.config.ITaskConfigService;
+import fr.paris.lutece.plugins.workflowcore.service.resource.IResourceHistoryService;
+import fr.paris.lutece.plugins.workflowcore.service.resource.ResourceHistoryService;
+import fr.paris.lutece.portal.service.spring.SpringContextService;
+import fr.paris.lutece.portal.service.util.AppException;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Lazy dispatch of the PDF generation. The task only records a {@link FormsPDFRenderDescriptor}; the document is rendered the first time it is downloaded
+ * and kept in the document storage for the next downloads, until the sweeper deletes it. The documents downloaded repeatedly can also be kept off-heap
+ * by the rendered documents cache.
+ */
+public final class FormsPDFLazyRenderService
+{
+    private static final String PROPERTY_STORAGE_RETENTION = "workflow-formspdf.storage.retention";
+    private static final String PROPERTY_SWEEP_BATCH_SIZE = "workflow-formspdf.storage.sweepBatchSize";
+
+    private static final long DEFAULT_STORAGE_RETENTION = 604800L;
+    private static final int DEFAULT_SWEEP_BATCH_SIZE = 500;
+
+    private static FormsPDFLazyRenderService _singleton = new FormsPDFLazyRenderService( );
+
+    private final ITaskConfigService _formsPDFTaskConfigService = SpringContextService.getBean( "workflow-formspdf.formsPDFTaskConfigService" );
+    private final IResourceHistoryService _resourceHistoryService = SpringContextService.getBean( ResourceHistoryService.BEAN_SERVICE );
+
+    /**
+     * Locks of the descriptors being rendered, so that concurrent first downloads render the document once. A lock is kept until no download holds or
+     * waits for it.
+     */
+    private final Map<Integer, RenderLock> _mapRenderLocks = new ConcurrentHashMap<>( );
+
+    /**
+     * Private constructor
+     */
+    private FormsPDFLazyRenderService( )
+    {
+    }
+
+    /**
+     * Get the instance of the service
+     * 
+     * @return the instance
+     */
+    public static FormsPDFLazyRenderService getInstance( )
+    {
+        return _singleton;
+    }
+
+    /**
+     * Record the render descriptor of a resource history. A descriptor is recorded at most once for a given task and resource history.
+     * 
+     * @param nIdTask
+     *            the id of the task
+     * @param nIdResourceHistory
+     *            the id of the resource history
+     * @param locale
+     *            the locale
+     */
+    public void record( int nIdTask, int nIdResourceHistory, Locale locale )
+    {
+        ResourceHistory resourceHistory = _resourceHistoryService.findByPrimaryKey( nIdResourceHistory );
+        FormsPDFTaskConfig formsPDFTaskConfig = _formsPDFTaskConfigService.findByPrimaryKey( nIdTask );
+
+        FormsPDFRenderDescriptor descriptor = new FormsPDFRenderDescriptor( );
+        descriptor.setIdTask( nIdTask );
+        descriptor.setIdResourceHistory( nIdResourceHistory );
+        descriptor.setIdTemplate( formsPDFTaskConfig.getIdTemplate( ) );
+        descriptor.setTemplateRevision( FormsPDFTaskTemplateHome.findCurrentRevision( formsPDFTaskConfig.getIdTemplate( ) ) );
+        descriptor.setIdFormResponse( resourceHistory.getIdResource( ) );
+        descriptor.setLocale( locale != null ? locale.toLanguageTag( ) : null );
+        descriptor.setDateCreation( new Timestamp( System.currentTimeMillis( ) ) );
+
+        try
+        {
+            FormsPDFRenderDescriptorHome.create( descriptor );
+        }
+        catch( AppException e )
+        {
+            if ( !FormsPDFJobService.isIntegrityConstraintViolation( e ) )
+            {
+                throw e;
+            }
+            // the unique key on (id_task, id_resource_history) rejects a descriptor already recorded
+            AppLogService.info( "PDF render descriptor already recorded for task " + nIdTask + " and resource history " + nIdResourceHistory );
+        }
+    }
+
+    /**
+     * Make sure the document of a descriptor is in the storage, rendering it if it has not been rendered yet, if it was deleted by the sweeper or if it
+     * is missing from the storage of this node
+     * 
+     * @param descriptor
+     *            the render descriptor, updated with the name and mime type of the rendered file
+     * @param request
+     *            the download request
+     * @return the size of the stored document in bytes
+     * @throws IOException
+     *             if the document cannot be rendered
+     */
+    public long getRenderedDocument( FormsPDFRenderDescriptor descriptor, HttpServletRequest request ) throws IOException
+    {
+        IDocumentStorage storage = DocumentStorageService.getStorage( );
+        String strKey = getStorageKey( descriptor );
+        long lSize = storage.getSize( strKey );
+        if ( descriptor.isRendered( ) && lSize >= 0 )
+        {
+            return lSize;
+        }
+
+        RenderLock lock = _mapRenderLocks.compute( descriptor.getId( ), ( k, current ) -> {
+            RenderLock renderLock = current != null ? current : new RenderLock( );
+            renderLock._nUsers++;
+            return renderLock;
+        } );
+        try
+        {
+            synchronized( lock )
+            {
+                // rendered by a concurrent download
+                FormsPDFRenderDescriptor current = FormsPDFRenderDescriptorHome.findByPrimaryKey( descriptor.getId( ) );
+                lSize = storage.getSize( strKey );
+                if ( current != null && current.isRendered( ) && lSize >= 0 )
+                {
+                    descriptor.setFileName( current.getFileName( ) );
+                    descriptor.setMimeType( current.getMimeType( ) );
+                    descriptor.setDateRendered( current.getDateRendered( ) );
+                    return lSize;
+                }
+                return render( descriptor, request, storage, strKey );
+            }
+        }
+        finally
+        {
+            _mapRenderLocks.compute( descriptor.getId( ), ( k, current ) -> --current._nUsers == 0 ? null : current );
+        }
+    }
+
+    /**
+     * Open the stored document of a descriptor
+     * 
+     * @param descriptor
+     *            the render descriptor, whose document was stored by {@link #getRenderedDocument(FormsPDFRenderDescriptor, HttpServletRequest)}
+     * @return the stream reading the document, or null if it is no longer stored
+     * @throws IOException
+     *             if the document cannot be read
+     */
+    public InputStream openRenderedDocument( FormsPDFRenderDescriptor descriptor ) throws IOException
+    {
+        return DocumentStorageService.getStorage( ).openInputStream( getStorageKey( descriptor ) );
+    }
+
+    /**
+     * Get the file of the stored document of a descriptor, when the storage keeps the documents in files of the node
+     * 
+     * @param descriptor
+     *            the render descriptor, whose document was stored by {@link #getRenderedDocument(FormsPDFRenderDescriptor, HttpServletRequest)}
+     * @return the file, or null if the document is no longer stored or is not stored in a file
+     * @throws IOException
+     *             if the storage cannot be queried
+     */
+    public Path getRenderedFile( FormsPDFRenderDescriptor descriptor ) throws IOException
+    {
+        return DocumentStorageService.getStorage( ).getFile( getStorageKey( descriptor ) );
+    }
+
+    /**
+     * Get the document of a descriptor from the rendered documents cache, rendering or reading it and caching it if needed
+     * 
+     * @param descriptor
+     *            the render descriptor, updated with the name and mime type of the rendered file
+     * @param request
+     *            the download request
+     * @return the cached document, or null if the cache is disabled or the document is too large to be cached
+     * @throws IOException
+     *             if the document cannot be rendered
+     */
+    public CachedDocument getCachedDocument( FormsPDFRenderDescriptor descriptor, HttpServletRequest request ) throws IOException
+    {
+        FormsPDFDocumentCacheService cacheService = FormsPDFDocumentCacheService.getInstance( );
+        if ( !cacheService.isCacheEnable( ) )
+        {
+            return null;
+        }
+
+        // the snapshot taken by the action, when there is one, is what the document shows of the response
+        FormsPDFSnapshot snapshot = FormsPDFSnapshotHome.find( descriptor.getIdTask( ), descriptor.getIdResourceHistory( ) );
+        Timestamp lastModified = snapshot != null ? snapshot.getDateCreation( ) : getLastModified( descriptor.getIdFormResponse( ) );
+        FormsPDFTaskConfig formsPDFTaskConfig = _formsPDFTaskConfigService.findByPrimaryKey( descriptor.getIdTask( ) );
+        String strKey = FormsPDFDocumentCacheService.getKey( formsPDFTaskConfig.getFormat( ), descriptor.getIdTemplate( ), descriptor.getTemplateRevision( ),
+                descriptor.getIdFormResponse( ), lastModified != null ? lastModified.getTime( ) : 0L, descriptor.getLocale( ) );
+
+        CachedDocument document = cacheService.get( strKey );
+        if ( document == null )
+        {
+            long lSize = getRenderedDocument( descriptor, request );
+            if ( !cacheService.isCacheable( lSize ) )
+            {
+                return null;
+            }
+            try ( InputStream inputStream = openRenderedDocument( descriptor ) )
+            {
+                document = inputStream != null ? cacheService.put( strKey, inputStream, lSize, descriptor.getFileName( ), descriptor.getMimeType( ) ) : null;
+            }
+        }
+        return document;
+    }
+
+    /**
+     * Remove the render descriptor recorded by a task for a resource history, and its rendered document
+     * 
+     * @param nIdTask
+     *            the id of the task
+     * @param nIdResourceHistory
+     *            the id of the resource history
+     */
+    public void remove( int nIdTask, int nIdResourceHistory )
+    {
+        FormsPDFRenderDescriptor descriptor = FormsPDFRenderDescriptorHome.findByTaskAndHistory( nIdTask, nIdResourceHistory );
+        if ( descriptor != null )
+        {
+            remove( descriptor );
+        }
+    }
+
+    /**
+     * Remove the render descriptors recorded by a task, and their rendered documents
+     * 
+     * @param nIdTask
+     *            the id of the task
+     */
+    public void removeByTask( int nIdTask )
+    {
+        for ( FormsPDFRenderDescriptor descriptor : FormsPDFRenderDescriptorHome.findByTask( nIdTask ) )
+        {
+            remove( descriptor );
+        }
+    }
+
+    /**
+     * Remove a render descriptor and its rendered document
+     */
+    private void remove( FormsPDFRenderDescriptor descriptor )
+    {
+        try
+        {
+            DocumentStorageService.getStorage( ).delete( getStorageKey( descriptor ) );
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "Unable to delete the rendered document of the PDF render descriptor " + descriptor.getId( ), e );
+        }
+        FormsPDFRenderDescriptorHome.remove( descriptor.getId( ) );
+    }
+
+    /**
+     * Delete the documents rendered before the retention delay. Their descriptors are kept, so a later download renders the document again.
+     * 
+     * @return the number of deleted documents
+     */
+    public int sweep( )
+    {
+        long lRetention = AppPropertiesService.getPropertyLong( PROPERTY_STORAGE_RETENTION, DEFAULT_STORAGE_RETENTION ) * 1000L;
+        if ( lRetention <= 0 )
+        {
+            return 0;
+        }
+
+        IDocumentStorage storage = DocumentStorageService.getStorage( );
+        Timestamp limit = new Timestamp( System.currentTimeMillis( ) - lRetention );
+        int nDeleted = 0;
+        for ( FormsPDFRenderDescriptor descriptor : FormsPDFRenderDescriptorHome.findRenderedBefore( limit,
+                AppPropertiesService.getPropertyInt( PROPERTY_SWEEP_BATCH_SIZE, DEFAULT_SWEEP_BATCH_SIZE ) ) )
+        {
+            try
+            {
+                storage.delete( getStorageKey( descriptor ) );
+                descriptor.setFileName( null );
+                descriptor.setMimeType( null );
+                descriptor.setDateRendered( null );
+                FormsPDFRenderDescriptorHome.updateRendered( descriptor );
+                nDeleted++;
+            }
+            catch( IOException e )
+            {
+                AppLogService.error( "Unable to delete the rendered document of the PDF render descriptor " + descriptor.getId( ), e );
+            }
+        }
+
+        // documents of this node left behind by renderings swept on another node
+        try
+        {
+            nDeleted += storage.deleteOlderThan( limit.getTime( ) );
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "Unable to delete the old documents of the " + storage.getName( ) + " storage", e );
+        }
+        return nDeleted;
+    }
+
+    /**
+     * Render the document of a descriptor and stream it into the storage
+     * 
+     * @param descriptor
+     *            the render descriptor
+     * @param request
+     *            the download request
+     * @param storage
+     *            the storage
+     * @param strKey
+     *            the key of the document in the storage
+     * @return the size of the stored document in bytes
+     * @throws IOException
+     *             if the document cannot be rendered
+     */
+    private long render( FormsPDFRenderDescriptor descriptor, HttpServletRequest request, IDocumentStorage storage, String strKey ) throws IOException
+    {
+        HtmlToPDFGenerator htmltopdf = FormsPDFRenderService.getInstance( ).createGenerator( descriptor, request );
+        Path renderedFile = htmltopdf.generateFile( );
+
+        long lSize;
+        try ( DocumentOutputStream outputStream = storage.openOutputStream( strKey ) )
+        {
+            lSize = Files.copy( renderedFile, outputStream );
+            outputStream.commit( );
+        }
+        finally
+        {
+            Files.deleteIfExists( renderedFile );
+            Files.deleteIfExists( renderedFile.getParent( ) );
+        }
+
+        descriptor.setFileName( htmltopdf.getFileName( ) );
+        descriptor.setMimeType( htmltopdf.getMimeType( ) );
+        descriptor.setDateRendered( new Timestamp( System.currentTimeMillis( ) ) );
+        FormsPDFRenderDescriptorHome.updateRendered( descriptor );
+        return lSize;
+    }
+
+    /**
+     * @param nIdFormResponse
+     *            the id of the form response
+     * @return the date of the last modification of the response
+     */
+    private Timestamp getLastModified( int nIdFormResponse )
+    {
+        FormResponse formResponse = FormResponseHome.findByPrimaryKey( nIdFormResponse );
+        if ( formResponse == null )
+        {
+            return null;
+        }
+        return formResponse.getUpdate( ) != null ? formResponse.getUpdate( ) : formResponse.getCreation( );
+    }
+
+    /**
+     * @param descriptor
+     *            the render descriptor
+     * @return the key of its rendered document in the storage
+     */
+    private static String getStorageKey( FormsPDFRenderDescriptor descriptor )
+    {
+        return String.valueOf( descriptor.getId( ) );
+    }
+
+    /**
+     * Lock of a descriptor being rendered, counting the downloads holding or waiting for it. The count is only updated within the atomic computations
+     * of the map of the locks.
+     */
+    private static final class RenderLock
+    {
+        private int _nUsers;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import fr.paris.lutece.plugins.workflow.utils.WorkflowUtils;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+import fr.paris.lutece.util.sql.TransactionManager;
+
+/**
+ * Runs the independent blocking loads of a rendering (form response, form, task configuration, template) concurrently. The loads run on virtual threads
+ * when the JVM provides them, on a bounded pool of platform threads otherwise. The CPU-bound rendering stays on the render lanes.
+ */
+public final class FormsPDFLoadService
+{
+    private static final String PROPERTY_ENABLED = "workflow-formspdf.loads.concurrent";
+    private static final String PROPERTY_THREADS = "workflow-formspdf.loads.threads";
+    private static final String METHOD_VIRTUAL_THREADS = "newVirtualThreadPerTaskExecutor";
+
+    private static FormsPDFLoadService _singleton = new FormsPDFLoadService( );
+
+    private final ExecutorService _executor;
+
+    /**
+     * Private constructor
+     */
+    private FormsPDFLoadService( )
+    {
+        _executor = createExecutor( );
+    }
+
+    /**
+     * Get the instance of the service
+     * 
+     * @return the instance
+     */
+    public static FormsPDFLoadService getInstance( )
+    {
+        return _singleton;
+    }
+
+    /**
+     * Start a load. The load runs concurrently when the concurrent loads are enabled and no transaction is open on the current thread, since the other
+     * threads would not see its uncommitted rows. It runs immediately on the current thread otherwise.
+     * 
+     * @param <T>
+     *            the type of the loaded value
+     * @param supplier
+     *            the load
+     * @return the future of the loaded value
+     */
+    public <T> CompletableFuture<T> supply( Supplier<T> supplier )
+    {
+        if ( AppPropertiesService.getPropertyBoolean( PROPERTY_ENABLED, false ) && TransactionManager.getCurrentTransaction( WorkflowUtils.getPlugin( ) ) == null )
+        {
+            return CompletableFuture.supplyAsync( supplier, _executor );
+        }
+
+        CompletableFuture<T> future = new CompletableFuture<>( );
+        try
+        {
+            future.complete( supplier.get( ) );
+        }
+        catch( RuntimeException e )
+        {
+            future.completeExceptionally( e );
+        }
+        return future;
+    }
+
+    /**
+     * Wait for a load, rethrowing its failure as is
+     * 
+     * @param <T>
+     *            the type of the loaded value
+     * @param future
+     *            the future of the load
+     * @return the loaded value
+     */
+    public <T> T join( CompletableFuture<T> future )
+    {
+        try
+        {
+            return future.join( );
+        }
+        catch( CompletionException e )
+        {
+            if ( e.getCause( ) instanceof RuntimeException )
+            {
+                throw (RuntimeException) e.getCause( );
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Create the executor of the loads : one virtual thread per load on JDK 21 and later, a bounded pool of daemon threads otherwise
+     * 
+     * @return the executor
+     */
+    private static ExecutorService createExecutor( )
+    {
+        try
+        {
+            ExecutorService executor = (ExecutorService) Executors.class.getMethod( METHOD_VIRTUAL_THREADS ).invoke( null );
+            AppLogService.info( "FormsPDF loads run on virtual threads" );
+            return executor;
+        }
+        catch( ReflectiveOperationException e )
+        {
+            AtomicInteger counter = new AtomicInteger( );
+            ThreadFactory factory = runnable -> {
+                Thread thread = new Thread( runnable, "formspdf-load-" + counter.incrementAndGet( ) );
+                thread.setDaemon( true );
+                return thread;
+            };
+            return Executors.newFixedThreadPool( Math.max( 1, AppPropertiesService.getPropertyInt( PROPERTY_THREADS, 16 ) ), factory );
+        }
+    }
+}
@@ -0,0 +1,441 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.commons.lang3.StringUtils;
+
+import fr.paris.lutece.plugins.filegenerator.service.TemporaryFileGeneratorService;
+import fr.paris.lutece.plugins.forms.business.Form;
+import fr.paris.lutece.plugins.forms.business.FormQuestionResponse;
+import fr.paris.lutece.plugins.forms.business.FormResponse;
+import fr.paris.lutece.plugins.forms.business.FormResponseHome;
+import fr.paris.lutece.plugins.forms.business.FormResponseStep;
+import fr.paris.lutece.plugins.forms.business.Question;
+import fr.paris.lutece.plugins.forms.service.provider.GenericFormsProvider;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFRenderDescriptor;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFSnapshot;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFSnapshotHome;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFTaskConfig;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFTaskTemplate;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFTaskTemplateHome;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.budget.FormsPDFRenderLane;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.cache.FormsPDFFormCacheService;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.cache.FormsPDFFormStructure;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.cache.FormsPDFTemplateContentCacheService;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.metrics.FormsPDFMetricsService;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.snapshot.FormsPDFSnapshotService;
+import fr.paris.lutece.plugins.workflowcore.business.resource.ResourceHistory;
+import fr.paris.lutece.plugins.workflowcore.service.config.ITaskConfigService;
+import fr.paris.lutece.plugins.workflowcore.service.provider.InfoMarker;
+import fr.paris.lutece.plugins.workflowcore.service.resource.IResourceHistoryService;
+import fr.paris.lutece.plugins.workflowcore.service.resource.ResourceHistoryService;
+import fr.paris.lutece.portal.business.user.AdminUser;
+import fr.paris.lutece.portal.service.admin.AdminUserService;
+import fr.paris.lutece.portal.service.i18n.I18nService;
+import fr.paris.lutece.portal.service.spring.SpringContextService;
+import fr.paris.lutece.portal.service.template.AppTemplateService;
+import fr.paris.lutece.portal.service.util.AppException;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Renders the PDF of a form response for a {@link fr.paris.lutece.plugins.workflow.modules.formspdf.service.task.FormsPDFTask FormsPDFTask}. The
+ * rendering is shared by the task itself and by the nodes processing queued jobs.
+ */
+public final class FormsPDFRenderService
+{
+    private static final String PROPERTY_LABEL_DESCRIPTION = "module.workflow.formspdf.export.pdf.description";
+    private static final String PROPERTY_FORM_SKELETON = "workflow-formspdf.markers.formSkeleton";
+    private static final String MARKER_POSITION = "position_";
+
+    private static FormsPDFRenderService _singleton = new FormsPDFRenderService( );
+
+    /**
+     * the task config service to get the task configuration
+     */
+    private final ITaskConfigService _formsPDFTaskConfigService = SpringContextService.getBean( "workflow-formspdf.formsPDFTaskConfigService" );
+
+    /**
+     * the ResourceHistoryService to get the forms to process
+     */
+    private final IResourceHistoryService _resourceHistoryService = SpringContextService.getBean( ResourceHistoryService.BEAN_SERVICE );
+
+    /**
+     * Private constructor
+     */
+    private FormsPDFRenderService( )
+    {
+    }
+
+    /**
+     * Get the instance of the service
+     * 
+     * @return the instance
+     */
+    public static FormsPDFRenderService getInstance( )
+    {
+        return _singleton;
+    }
+
+    /**
+     * Render the PDF of the resource of a resource history and hand it to the temporary file generator service
+     * 
+     * @param nIdTask
+     *            the id of the task
+     * @param nIdResourceHistory
+     *            the id of the resource history
+     * @param request
+     *            the request, null for automatic actions and queued jobs
+     * @param locale
+     *            the locale
+     */
+    public void generate( int nIdTask, int nIdResourceHistory, HttpServletRequest request, Locale locale )
+    {
+        generate( nIdTask, nIdResourceHistory, request, locale, true );
+    }
+
+    /**
+     * Render the PDF of the resource of a resource history and hand it to the temporary file generator service
+     * 
+     * @param nIdTask
+     *            the id of the task
+     * @param nIdResourceHistory
+     *            the id of the resource history
+     * @param request
+     *            the request, null for automatic actions and queued jobs
+     * @param locale
+     *            the locale
+     * @param bErrorDocument
+     *            true to hand a document describing the error to the temporary file generator service when the rendering fails, false when the
+     *            rendering is retried later
+     */
+    public void generate( int nIdTask, int nIdResourceHistory, HttpServletRequest request, Locale locale, boolean bErrorDocument )
+    {
+        AdminUser user = null;
+        // TODO Gerer le cas null quand il s'agit d'une action automatique
+        if ( request != null )
+        {
+            user = AdminUserService.getAdminUser( request );
+        }
+        try
+        {
+            HtmlToPDFGenerator htmltopdf = createGenerator( nIdTask, nIdResourceHistory, request, locale );
+            TemporaryFileGeneratorService.getInstance( ).generateFile( htmltopdf, user );
+        }
+        catch( Exception e )
+        {
+            if ( !bErrorDocument )
+            {
+                throw new RuntimeException( "", e );
+            }
+            // print the error in a pdf
+            FormsPDFTaskTemplate errorTemplate = new FormsPDFTaskTemplate( );
+            errorTemplate.setContent( e.getMessage( ) );
+            HtmlToPDFGenerator htmltopdf = new HtmlToPDFGenerator( "error", I18nService.getLocalizedString( PROPERTY_LABEL_DESCRIPTION, locale ), new FormResponse( ),
+                    errorTemplate );
+            TemporaryFileGeneratorService.getInstance( ).generateFile( htmltopdf, user );
+            throw new RuntimeException( "", e );
+        }
+    }
+
+    /**
+     * Create the generator rendering the document of the resource of a resource history with the current revision of the template
+     * 
+     * @param nIdTask
+     *            the id of the task
+     * @param nIdResourceHistory
+     *            the id of the resource history
+     * @param request
+     *            the request, may be null
+     * @param locale
+     *            the locale
+     * @return the generator, which writes the document when {@link HtmlToPDFGenerator#generateFile()} is called
+     */
+    public HtmlToPDFGenerator createGenerator( int nIdTask, int nIdResourceHistory, HttpServletRequest request, Locale locale )
+    {
+        // Get the resourceHistory to find the resource to work with, and the task configuration
+        CompletableFuture<ResourceHistory> futureResourceHistory = FormsPDFLoadService.getInstance( )
+                .supply( ( ) -> _resourceHistoryService.findByPrimaryKey( nIdResourceHistory ) );
+        FormsPDFTaskConfig formsPDFTaskConfig = _formsPDFTaskConfigService.findByPrimaryKey( nIdTask );
+        ResourceHistory resourceHistory = FormsPDFLoadService.getInstance( ).join( futureResourceHistory );
+
+        return createGenerator( formsPDFTaskConfig, formsPDFTaskConfig.getIdTemplate( ), 0, nIdTask, nIdResourceHistory, resourceHistory.getIdResource( ),
+                request, locale );
+    }
+
+    /**
+     * Create the generator rendering the document described by a render descriptor recorded in lazy dispatch mode
+     * 
+     * @param descriptor
+     *            the render descriptor
+     * @param request
+     *            the download request
+     * @return the generator, which writes the document when {@link HtmlToPDFGenerator#generateFile()} is called
+     */
+    public HtmlToPDFGenerator createGenerator( FormsPDFRenderDescriptor descriptor, HttpServletRequest request )
+    {
+        FormsPDFTaskConfig formsPDFTaskConfig = _formsPDFTaskConfigService.findByPrimaryKey( descriptor.getIdTask( ) );
+        Locale locale = StringUtils.isNotEmpty( descriptor.getLocale( ) ) ? Locale.forLanguageTag( descriptor.getLocale( ) ) : Locale.getDefault( );
+
+        return createGenerator( formsPDFTaskConfig, descriptor.getIdTemplate( ), descriptor.getTemplateRevision( ), descriptor.getIdTask( ),
+                descriptor.getIdResourceHistory( ), descriptor.getIdFormResponse( ), request, locale );
+    }
+
+    /**
+     * Build the marker model of a form response. With the form skeleton, the question markers are built from the questions of the form kept by the
+     * form cache, filled with the responses of the form response, and the provider only builds the markers of the response itself.
+     * 
+     * @param frep
+     *            the form response
+     * @param request
+     *            the request, may be null
+     * @return the marker model
+     */
+    public Map<String, Object> buildModel( FormResponse frep, HttpServletRequest request )
+    {
+        FormsPDFFormStructure formStructure = AppPropertiesService.getPropertyBoolean( PROPERTY_FORM_SKELETON, true )
+                ? FormsPDFFormCacheService.getInstance( ).getFormStructure( frep.getFormId( ) )
+                : null;
+        if ( formStructure == null || frep.getSteps( ) == null )
+        {
+            Map<String, InfoMarker> collectionMarkersValue = GenericFormsProvider.provideMarkerValues( frep, request );
+            Map<String, Object> model = new HashMap<>( collectionMarkersValue.size( ) * 4 / 3 + 1 );
+            markersToModels( model, collectionMarkersValue );
+            return model;
+        }
+
+        Map<Integer, Question> mapQuestions = formStructure.getQuestions( );
+        Map<String, Object> model = new HashMap<>( mapQuestions.size( ) * 2 );
+
+        // the provider walks no question response
+        List<FormResponseStep> listSteps = frep.getSteps( );
+        Map<String, InfoMarker> collectionMarkersValue;
+        frep.setSteps( new ArrayList<>( ) );
+        try
+        {
+            collectionMarkersValue = GenericFormsProvider.provideMarkerValues( frep, request );
+        }
+        finally
+        {
+            frep.setSteps( listSteps );
+        }
+        for ( Map.Entry<String, InfoMarker> marker : collectionMarkersValue.entrySet( ) )
+        {
+            if ( !marker.getKey( ).startsWith( MARKER_POSITION ) )
+            {
+                model.put( marker.getKey( ), marker.getValue( ).getValue( ) );
+            }
+        }
+
+        for ( FormResponseStep step : listSteps )
+        {
+            for ( FormQuestionResponse formQuestionResponse : step.getQuestions( ) )
+            {
+                Question question = formQuestionResponse.getQuestion( ) != null ? mapQuestions.get( formQuestionResponse.getQuestion( ).getId( ) ) : null;
+                if ( question != null && question.getEntry( ) != null )
+                {
+                    formQuestionResponse.setQuestion( question );
+                    model.putIfAbsent( MARKER_POSITION + question.getId( ), formQuestionResponse );
+                }
+            }
+        }
+        return model;
+    }
+
+    /**
+     * Merge the template with the markers of a form response and create the generator writing the document. The markers are read from the snapshot
+     * taken when the action was processed if any, from the current form response otherwise.
+     * 
+     * @param formsPDFTaskConfig
+     *            the task configuration
+     * @param nIdTemplate
+     *            the id of the template
+     * @param nTemplateRevision
+     *            the revision of the template, 0 for the current revision
+     * @param nIdTask
+     *            the id of the task
+     * @param nIdResourceHistory
+     *            the id of the resource history
+     * @param nIdFormResponse
+     *            the id of the form response
+     * @param request
+     *            the request, may be null
+     * @param locale
+     *            the locale
+     * @return the generator
+     */
+    private HtmlToPDFGenerator createGenerator( FormsPDFTaskConfig formsPDFTaskConfig, int nIdTemplate, int nTemplateRevision, int nIdTask,
+            int nIdResourceHistory, int nIdFormResponse, HttpServletRequest request, Locale locale )
+    {
+        // the duration of the preparation is added to the duration of the writing in the render metrics
+        long lPreparationStart = System.nanoTime( );
+        try
+        {
+            HtmlToPDFGenerator generator = prepareGenerator( formsPDFTaskConfig, nIdTemplate, nTemplateRevision, nIdTask, nIdResourceHistory,
+                    nIdFormResponse, request, locale );
+            generator.setPreparationDuration( System.nanoTime( ) - lPreparationStart );
+            return generator;
+        }
+        catch( RuntimeException e )
+        {
+            FormsPDFMetricsService.getInstance( ).recordFailure( nIdTemplate, System.nanoTime( ) - lPreparationStart, String.valueOf( e.getMessage( ) ) );
+            throw e;
+        }
+    }
+
+    /**
+     * Load the markers and the template, merge them and create the generator
+     * 
+     * @see #createGenerator(FormsPDFTaskConfig, int, int, int, int, int, HttpServletRequest, Locale)
+     */
+    private HtmlToPDFGenerator prepareGenerator( FormsPDFTaskConfig formsPDFTaskConfig, int nIdTemplate, int nTemplateRevision, int nIdTask,
+            int nIdResourceHistory, int nIdFormResponse, HttpServletRequest request, Locale locale )
+    {
+        long lStart = FormsPDFRenderStages.start( );
+        // the template is loaded while the form response and its markers are
+        CompletableFuture<FormsPDFTaskTemplate> futureTemplate = FormsPDFLoadService.getInstance( )
+                .supply( ( ) -> loadTemplate( nIdTemplate, nTemplateRevision ) );
+        FormResponse frep;
+        Map<String, Object> model;
+        FormsPDFSnapshot snapshot = FormsPDFSnapshotHome.find( nIdTask, nIdResourceHistory );
+        if ( snapshot != null )
+        {
+            frep = FormsPDFSnapshotService.getInstance( ).getFormResponse( snapshot );
+            model = FormsPDFSnapshotService.getInstance( ).getModel( snapshot );
+        }
+        else
+        {
+            frep = FormResponseHome.findByPrimaryKey( nIdFormResponse );
+            model = null;
+        }
+        int nIdForm = frep.getFormId( );
+        CompletableFuture<Form> futureForm = FormsPDFLoadService.getInstance( )
+                .supply( ( ) -> FormsPDFFormCacheService.getInstance( ).getFormStructure( nIdForm ).getForm( ) );
+        if ( model == null )
+        {
+            model = buildModel( frep, request );
+        }
+        Form form = FormsPDFLoadService.getInstance( ).join( futureForm );
+        FormsPDFTaskTemplate formsPDFTaskTemplate = FormsPDFLoadService.getInstance( ).join( futureTemplate );
+        FormsPDFRenderStages.end( FormsPDFRenderStages.STAGE_MARKERS, lStart );
+
+        lStart = FormsPDFRenderStages.start( );
+        // the questions of the form may have been edited since the template was saved
+        String strRenderContent = FormsPDFTemplateIncludes.checkHeader( formsPDFTaskTemplate.getContent( ), nIdForm );
+        FormsPDFFragmentRenderer fragmentRenderer = FormsPDFFragmentRenderer.getCurrent( );
+        if ( fragmentRenderer.isEnabled( ) )
+        {
+            formsPDFTaskTemplate.setContent( fragmentRenderer.merge( strRenderContent, model, Locale.getDefault( ) ) );
+        }
+        else
+        {
+            formsPDFTaskTemplate.setContent( AppTemplateService.getTemplateFromStringFtl( strRenderContent, Locale.getDefault( ), model ).getHtml( ) );
+        }
+        FormsPDFRenderStages.end( FormsPDFRenderStages.STAGE_MERGE, lStart );
+        HtmlToPDFGenerator generator = new HtmlToPDFGenerator( form.getTitle( ), I18nService.getLocalizedString( PROPERTY_LABEL_DESCRIPTION, locale ), frep,
+                formsPDFTaskTemplate, formsPDFTaskConfig.getFormat( ) );
+        // an agent waits for the documents requested from the back office, the automatic actions and the jobs are rendered in the background
+        generator.setLane( request != null ? FormsPDFRenderLane.INTERACTIVE : FormsPDFRenderLane.BACKGROUND );
+        return generator;
+    }
+
+    /**
+     * Load the render-ready content of a revision of a template
+     * 
+     * @param nIdTemplate
+     *            the id of the template
+     * @param nTemplateRevision
+     *            the revision of the template, 0 for the current revision
+     * @return the template holding the render-ready content of the revision
+     */
+    private static FormsPDFTaskTemplate loadTemplate( int nIdTemplate, int nTemplateRevision )
+    {
+        int nRevision = nTemplateRevision > 0 ? nTemplateRevision : FormsPDFTaskTemplateHome.findCurrentRevision( nIdTemplate );
+        String strRenderContent = FormsPDFTemplateContentCacheService.getInstance( ).getRenderContent( nIdTemplate, nRevision );
+        if ( strRenderContent == null )
+        {
+            throw new AppException( "Unknown template " + nIdTemplate );
+        }
+        FormsPDFTaskTemplate formsPDFTaskTemplate = new FormsPDFTaskTemplate( );
+        formsPDFTaskTemplate.setId( nIdTemplate );
+        formsPDFTaskTemplate.setRevision( nRevision );
+        formsPDFTaskTemplate.setContent( strRenderContent );
+        return formsPDFTaskTemplate;
+    }
+
+    /**
+     * In a loop, call the markersToModel method to add the markers to the model
+     * 
+     * @param model
+     * @param collectionMarkersValue
+     */
+    private void markersToModels( Map<String, Object> model, Map<String, InfoMarker> collectionMarkersValue )
+    {
+        for ( Map.Entry<String, InfoMarker> marker : collectionMarkersValue.entrySet( ) )
+        {
+            markersToModel( model, marker.getKey( ), marker.getValue( ) );
+        }
+    }
+
+    /**
+     * Add the markers to the model
+     * 
+     * @param model
+     * @param key
+     * @param marker
+     */
+    private void markersToModel( Map<String, Object> model, String key, InfoMarker marker )
+    {
+        if ( key.contains( MARKER_POSITION ) )
+        {
+            FormQuestionResponse formQuestionResponse = (FormQuestionResponse) marker.getValue( );
+            if ( formQuestionResponse.getQuestion( ).getEntry( ) != null )
+            {
+                model.put( key, formQuestionResponse );
+            }
+        }
+        else
+        {
+            model.put( key, marker.getValue( ) );
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Durations of the stages of the rendering, recorded only while a measure is running so that the rendering pays nothing otherwise
+ */
+public final class FormsPDFRenderStages
+{
+    /**
+     * Loading of the response and of its markers, or of the snapshot
+     */
+    public static final String STAGE_MARKERS = "markers";
+
+    /**
+     * Merge of the template with the markers
+     */
+    public static final String STAGE_MERGE = "merge";
+
+    /**
+     * Writing of the document by the output writer
+     */
+    public static final String STAGE_WRITE = "write";
+
+    private static volatile Map<String, Queue<Long>> _mapDurations;
+
+    /**
+     * Private constructor
+     */
+    private FormsPDFRenderStages( )
+    {
+    }
+
+    /**
+     * Start recording the durations of the stages, dropping the durations of a previous measure
+     */
+    public static synchronized void startRecording( )
+    {
+        _mapDurations = new ConcurrentHashMap<>( );
+    }
+
+    /**
+     * Stop recording the durations of the stages
+     * 
+     * @return the durations in nanoseconds recorded since the start, keyed by stage
+     */
+    public static synchronized Map<String, long [ ]> stopRecording( )
+    {
+        Map<String, long [ ]> mapResult = new HashMap<>( );
+        if ( _mapDurations != null )
+        {
+            for ( Map.Entry<String, Queue<Long>> durations : _mapDurations.entrySet( ) )
+            {
+                mapResult.put( durations.getKey( ), durations.getValue( ).stream( ).mapToLong( Long::longValue ).toArray( ) );
+            }
+            _mapDurations = null;
+        }
+        return mapResult;
+    }
+
+    /**
+     * @return the current time in nanoseconds if a measure is running, 0 otherwise
+     */
+    public static long start( )
+    {
+        return _mapDurations != null ? System.nanoTime( ) : 0L;
+    }
+
+    /**
+     * Record the end of a stage
+     * 
+     * @param strStage
+     *            the stage
+     * @param lStart
+     *            the value returned by {@link #start()} at the beginning of the stage
+     */
+    public static void end( String strStage, long lStart )
+    {
+        Map<String, Queue<Long>> mapDurations = _mapDurations;
+        if ( mapDurations != null && lStart != 0L )
+        {
+            mapDurations.computeIfAbsent( strStage, k -> new ConcurrentLinkedQueue<>( ) ).add( System.nanoTime( ) - lStart );
+        }
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Scratch buffers of the render threads, reused from one rendering to the next instead of being allocated by each rendering. A buffer is taken by a
+ * rendering and given back when it is done, so a nested rendering on the same thread gets a buffer of its own. The text buffers which grew over the cap
+ * are dropped rather than kept for the next rendering. The texts are encoded by the encoder of the thread, without being copied to a string.
+ */
+public final class FormsPDFScratchBuffers
+{
+    private static final String PROPERTY_OUTPUT_BUFFER_SIZE = "workflow-formspdf.scratch.outputBufferSize";
+    private static final String PROPERTY_MAX_TEXT_CAPACITY = "workflow-formspdf.scratch.maxTextCapacity";
+
+    private static final int OUTPUT_BUFFER_SIZE = Math.max( 1024, AppPropertiesService.getPropertyInt( PROPERTY_OUTPUT_BUFFER_SIZE, 65536 ) );
+    private static final int MAX_TEXT_CAPACITY = AppPropertiesService.getPropertyInt( PROPERTY_MAX_TEXT_CAPACITY, 1048576 );
+    private static final int ENCODER_BUFFER_SIZE = 8192;
+
+    private static final ThreadLocal<byte [ ]> _outputBuffer = new ThreadLocal<>( );
+    private static final ThreadLocal<StringBuilder> _textBuffer = new ThreadLocal<>( );
+    // the malformed texts are replaced as an OutputStreamWriter does
+    private static final ThreadLocal<CharsetEncoder> _encoder = ThreadLocal.withInitial( ( ) -> StandardCharsets.UTF_8.newEncoder( )
+            .onMalformedInput( CodingErrorAction.REPLACE ).onUnmappableCharacter( CodingErrorAction.REPLACE ) );
+    private static final ThreadLocal<ByteBuffer> _encoderBuffer = ThreadLocal.withInitial( ( ) -> ByteBuffer.allocate( ENCODER_BUFFER_SIZE ) );
+
+    /**
+     * Private constructor
+     */
+    private FormsPDFScratchBuffers( )
+    {
+    }
+
+    /**
+     * Buffer a stream with the output buffer of the current thread. The buffer is given back when the returned stream is closed, which flushes it but
+     * does not close the underlying stream.
+     * 
+     * @param outputStream
+     *            the stream to buffer
+     * @return the buffered stream, to be used and closed by the current thread only
+     */
+    public static OutputStream buffer( OutputStream outputStream )
+    {
+        byte [ ] buffer = _outputBuffer.get( );
+        _outputBuffer.remove( );
+        return new ScratchOutputStream( outputStream, buffer != null ? buffer : new byte [ OUTPUT_BUFFER_SIZE] );
+    }
+
+    /**
+     * Take the empty text buffer of the current thread
+     * 
+     * @return the text buffer, to be given back with {@link #release(StringBuilder)}
+     */
+    public static StringBuilder takeText( )
+    {
+        StringBuilder sbText = _textBuffer.get( );
+        if ( sbText == null )
+        {
+            return new StringBuilder( );
+        }
+        _textBuffer.remove( );
+        sbText.setLength( 0 );
+        return sbText;
+    }
+
+    /**
+     * Give back a text buffer to the current thread
+     * 
+     * @param sbText
+     *            the text buffer taken with {@link #takeText()}
+     */
+    public static void release( StringBuilder sbText )
+    {
+        if ( sbText.capacity( ) <= MAX_TEXT_CAPACITY )
+        {
+            sbText.setLength( 0 );
+            _textBuffer.set( sbText );
+        }
+    }
+
+    /**
+     * Write a text in UTF-8 with the encoder of the current thread
+     * 
+     * @param csText
+     *            the text, such as a text buffer
+     * @param outputStream
+     *            the stream
+     * @throws IOException
+     *             if the text cannot be written
+     */
+    public static void writeText( CharSequence csText, OutputStream outputStream ) throws IOException
+    {
+        CharsetEncoder encoder = _encoder.get( ).reset( );
+        ByteBuffer buffer = _encoderBuffer.get( );
+        CharBuffer chars = CharBuffer.wrap( csText );
+        CoderResult result;
+        do
+        {
+            buffer.clear( );
+            result = encoder.encode( chars, buffer, true );
+            outputStream.write( buffer.array( ), 0, buffer.position( ) );
+        }
+        while ( result.isOverflow( ) );
+
+        do
+        {
+            buffer.clear( );
+            result = encoder.flush( buffer );
+            outputStream.write( buffer.array( ), 0, buffer.position( ) );
+        }
+        while ( result.isOverflow( ) );
+    }
+
+    /**
+     * Unsynchronized buffered stream giving back its buffer to the current thread when it is closed
+     */
+    private static final class ScratchOutputStream extends FilterOutputStream
+    {
+        private byte [ ] _buffer;
+        private int _nCount;
+
+        ScratchOutputStream( OutputStream out, byte [ ] buffer )
+        {
+            super( out );
+            _buffer = buffer;
+        }
+
+        @Override
+        public void write( int b ) throws IOException
+        {
+            if ( _nCount == _buffer.length )
+            {
+                flushBuffer( );
+            }
+            _buffer [_nCount++] = (byte) b;
+        }
+
+        @Override
+        public void write( byte [ ] b, int off, int len ) throws IOException
+        {
+            if ( len >= _buffer.length )
+            {
+                flushBuffer( );
+                out.write( b, off, len );
+                return;
+            }
+            if ( len > _buffer.length - _nCount )
+            {
+                flushBuffer( );
+            }
+            System.arraycopy( b, off, _buffer, _nCount, len );
+            _nCount += len;
+        }
+
+        @Override
+        public void flush( ) throws IOException
+        {
+            flushBuffer( );
+            out.flush( );
+        }
+
+        @Override
+        public void close( ) throws IOException
+        {
+            if ( _buffer == null )
+            {
+                return;
+            }
+            try
+            {
+                flush( );
+            }
+            finally
+            {
+                _outputBuffer.set( _buffer );
+                _buffer = null;
+            }
+        }
+
+        private void flushBuffer( ) throws IOException
+        {
+            if ( _nCount > 0 )
+            {
+                out.write( _buffer, 0, _nCount );
+                _nCount = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,354 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.cache.FormsPDFFormCacheService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Computes the display entry macros a template depends on. When a template is saved, the questions it displays are intersected with the entry types of
+ * the questions of its form, and only the files of the macros of those entry types are included by the compiled content, in a header delimited by
+ * comments. The templates whose dependencies cannot be computed, generic templates or questions not passed literally to the displayEntry macro, include
+ * the macros of all the entry types. As the questions of the form can be edited after the template is saved, the header is checked against their entry
+ * types at render time.
+ */
+public final class FormsPDFTemplateIncludes
+{
+    private static final String PROPERTY_SELECTIVE = "workflow-formspdf.template.selectiveIncludes";
+
+    private static final String PATH_DISPLAY_ENTRIES = "/admin/plugins/workflow/modules/formspdf/display_entries/";
+    private static final String FILE_EXTENSION = ".ftl";
+    private static final String MACRO_ALL = "displayEntry";
+    private static final String MACRO_DISPATCH = "displayEntryDispatch";
+    private static final String MACRO_TYPE_PREFIX = "displayEntryType";
+    private static final String MACRO_FALLBACK = "displayEntryTypeText";
+
+    private static final String HEADER_START = "-- formspdf:includes --";
+    private static final String HEADER_END = "-- /formspdf:includes --";
+
+    private static final Pattern PATTERN_MACRO_CALL = Pattern.compile( "[<\\[]@(displayEntry\\w*)([^>\\]]*)[>\\]]" );
+    private static final Pattern PATTERN_POSITION_ARGUMENT = Pattern.compile( "\\s+q\\s*=\\s*(position_\\d+)\\s*/?\\s*" );
+    private static final Pattern PATTERN_INCLUDE = Pattern.compile( "#include \"([^\"]+)\"" );
+
+    // macro of each entry type, the entry types missing from the map are displayed by the fallback macro
+    private static final Map<String, String> _mapEntryTypeMacros = new HashMap<>( );
+
+    static
+    {
+        _mapEntryTypeMacros.put( "forms.entryTypeArray", "displayEntryTypeArray" );
+        _mapEntryTypeMacros.put( "forms.entryTypeAutomaticFileReading", "displayEntryTypeAutoFileReading" );
+        _mapEntryTypeMacros.put( "forms.entryTypeCamera", "displayEntryTypeCamera" );
+        _mapEntryTypeMacros.put( "forms.entryTypeCartography", "displayEntryTypeCartography" );
+        _mapEntryTypeMacros.put( "forms.entryTypeCheckbox", "displayEntryTypeCheckBox" );
+        _mapEntryTypeMacros.put( "forms.entryTypeComment", "displayEntryTypeComment" );
+        _mapEntryTypeMacros.put( "forms.entryTypeDate", "displayEntryTypeDate" );
+        _mapEntryTypeMacros.put( "forms.entryTypeFile", "displayEntryTypeFile" );
+        _mapEntryTypeMacros.put( "forms.entryTypeGalleryImage", "displayEntryTypeGalleryImage" );
+        _mapEntryTypeMacros.put( "forms.entryTypeGeolocation", "displayEntryTypeGeolocation" );
+        _mapEntryTypeMacros.put( "forms.entryTypeImage", "displayEntryTypeImage" );
+        _mapEntryTypeMacros.put( "forms.entryTypeMyLuteceUser", "displayEntryTypeMyLuteceUser" );
+        _mapEntryTypeMacros.put( "forms.entryTypeNumber", "displayEntryTypeNumber" );
+        _mapEntryTypeMacros.put( "forms.entryTypeNumbering", "displayEntryTypeNumbering" );
+        _mapEntryTypeMacros.put( "forms.entryTypeRadioButton", "displayEntryTypeRadioButton" );
+        _mapEntryTypeMacros.put( "forms.entryTypeSelect", "displayEntryTypeSelect" );
+        _mapEntryTypeMacros.put( "forms.entryTypeSelectOrder", "displayEntryTypeSelectOrder" );
+        _mapEntryTypeMacros.put( "forms.entryTypeTelephoneNumber", "displayEntryTypeTelephone" );
+        _mapEntryTypeMacros.put( "forms.entryTypeTermsOfService", "displayEntryTypeTermsOfService" );
+        _mapEntryTypeMacros.put( "forms.entryTypeText", "displayEntryTypeText" );
+        _mapEntryTypeMacros.put( "forms.entryTypeTextArea", "displayEntryTypeTextArea" );
+    }
+
+    /**
+     * Private constructor
+     */
+    private FormsPDFTemplateIncludes( )
+    {
+    }
+
+    /**
+     * Compute the include header of a template
+     * 
+     * @param strContent
+     *            the raw content of the template
+     * @param nIdForm
+     *            the id of the form of the template, 0 for a generic template
+     * @param bRte
+     *            true if the header is written in the square bracket syntax of the rich text editor
+     * @return the include header
+     */
+    public static String getHeader( String strContent, int nIdForm, boolean bRte )
+    {
+        return getHeader( strContent, ( ) -> getEntryTypes( nIdForm ), bRte );
+    }
+
+    /**
+     * Compute the include header of a template
+     * 
+     * @param strContent
+     *            the raw content of the template
+     * @param entryTypes
+     *            the entry types of the questions of the form by position, null if unknown
+     * @param bRte
+     *            true if the header is written in the square bracket syntax of the rich text editor
+     * @return the include header
+     */
+    static String getHeader( String strContent, Supplier<Map<String, String>> entryTypes, boolean bRte )
+    {
+        Set<String> setMacros = AppPropertiesService.getPropertyBoolean( PROPERTY_SELECTIVE, true ) ? getMacros( strContent, entryTypes ) : null;
+        if ( setMacros == null )
+        {
+            return getDefaultHeader( bRte );
+        }
+        return buildHeader( setMacros, bRte );
+    }
+
+    /**
+     * Get the header including the macros of all the entry types
+     * 
+     * @param bRte
+     *            true if the header is written in the square bracket syntax of the rich text editor
+     * @return the include header
+     */
+    public static String getDefaultHeader( boolean bRte )
+    {
+        Set<String> setMacros = new LinkedHashSet<>( );
+        setMacros.add( MACRO_ALL );
+        return buildHeader( setMacros, bRte );
+    }
+
+    /**
+     * @param strRenderContent
+     *            the render-ready content of a template
+     * @return true if the content starts with its include header
+     */
+    public static boolean hasHeader( String strRenderContent )
+    {
+        int nOffset = strRenderContent.startsWith( FormsPDFTemplateService.FTL_SQUARE_BRACKET_TAG ) ? FormsPDFTemplateService.FTL_SQUARE_BRACKET_TAG.length( )
+                : 0;
+        // the opening of the comment, <# or [#, precedes the start of the header
+        return strRenderContent.startsWith( HEADER_START, nOffset + 2 );
+    }
+
+    /**
+     * Check the include header of a render-ready content against the entry types of the questions of the form at render time. A question whose entry
+     * type was changed, or which was removed from the form, since the template was saved would be displayed by a macro the header does not include : the
+     * header is then replaced by the header including the macros of all the entry types.
+     * 
+     * @param strRenderContent
+     *            the render-ready content of a template
+     * @param nIdForm
+     *            the id of the form of the rendered response
+     * @return the content, with the header including the macros of all the entry types if its own header misses a macro
+     */
+    public static String checkHeader( String strRenderContent, int nIdForm )
+    {
+        return checkHeader( strRenderContent, ( ) -> getEntryTypes( nIdForm ) );
+    }
+
+    /**
+     * Check the include header of a render-ready content against the entry types of the questions of the form
+     * 
+     * @param strRenderContent
+     *            the render-ready content of a template
+     * @param entryTypes
+     *            the entry types of the questions of the form by position, null if unknown
+     * @return the content, with the header including the macros of all the entry types if its own header misses a macro
+     */
+    static String checkHeader( String strRenderContent, Supplier<Map<String, String>> entryTypes )
+    {
+        if ( !hasHeader( strRenderContent ) )
+        {
+            return strRenderContent;
+        }
+        int nEnd = strRenderContent.indexOf( HEADER_END );
+        Set<String> setIncludes = new HashSet<>( );
+        Matcher matcher = PATTERN_INCLUDE.matcher( strRenderContent ).region( 0, nEnd );
+        while ( matcher.find( ) )
+        {
+            setIncludes.add( matcher.group( 1 ) );
+        }
+        if ( setIncludes.contains( getPath( MACRO_ALL ) ) )
+        {
+            return strRenderContent;
+        }
+
+        int nHeaderEnd = nEnd + HEADER_END.length( ) + 1;
+        Set<String> setMacros = getMacros( strRenderContent.substring( nHeaderEnd ), entryTypes );
+        if ( setMacros != null && setMacros.stream( ).map( FormsPDFTemplateIncludes::getPath ).allMatch( setIncludes::contains ) )
+        {
+            return strRenderContent;
+        }
+        int nStart = strRenderContent.startsWith( FormsPDFTemplateService.FTL_SQUARE_BRACKET_TAG ) ? FormsPDFTemplateService.FTL_SQUARE_BRACKET_TAG.length( )
+                : 0;
+        boolean bRte = strRenderContent.charAt( nStart ) == '[';
+        return strRenderContent.substring( 0, nStart ) + getDefaultHeader( bRte ) + strRenderContent.substring( nHeaderEnd );
+    }
+
+    /**
+     * Get the include header of a render-ready content in the usual syntax, to merge the parts of the template rendered on their own
+     * 
+     * @param strRenderContent
+     *            the render-ready content of a template
+     * @return the include header
+     */
+    public static String getFragmentHeader( String strRenderContent )
+    {
+        if ( !hasHeader( strRenderContent ) )
+        {
+            return getDefaultHeader( false );
+        }
+        int nEnd = strRenderContent.indexOf( HEADER_END );
+        StringBuilder sbHeader = new StringBuilder( );
+        sbHeader.append( "<#" ).append( HEADER_START ).append( '>' );
+        Matcher matcher = PATTERN_INCLUDE.matcher( strRenderContent ).region( 0, nEnd < 0 ? strRenderContent.length( ) : nEnd );
+        while ( matcher.find( ) )
+        {
+            sbHeader.append( "<#include \"" ).append( matcher.group( 1 ) ).append( "\" />" );
+        }
+        return sbHeader.append( "<#" ).append( HEADER_END ).append( '>' ).toString( );
+    }
+
+    /**
+     * Compute the macros displaying the questions of a template
+     * 
+     * @param strContent
+     *            the raw content of the template
+     * @param entryTypes
+     *            the entry types of the questions of the form by position, only read if the template displays questions
+     * @return the macros to include, or null if the macros of all the entry types must be included
+     */
+    private static Set<String> getMacros( String strContent, Supplier<Map<String, String>> entryTypes )
+    {
+        Set<String> setMacros = new LinkedHashSet<>( );
+        Set<String> setPositions = new LinkedHashSet<>( );
+        Matcher matcher = PATTERN_MACRO_CALL.matcher( strContent );
+        while ( matcher.find( ) )
+        {
+            String strMacro = matcher.group( 1 );
+            if ( MACRO_ALL.equals( strMacro ) )
+            {
+                Matcher matcherPosition = PATTERN_POSITION_ARGUMENT.matcher( matcher.group( 2 ) );
+                if ( !matcherPosition.matches( ) )
+                {
+                    // the question is computed at render time
+                    return null;
+                }
+                setPositions.add( matcherPosition.group( 1 ) );
+            }
+            else if ( strMacro.startsWith( MACRO_TYPE_PREFIX ) )
+            {
+                if ( !_mapEntryTypeMacros.containsValue( strMacro ) )
+                {
+                    // not a macro of this module
+                    return null;
+                }
+                setMacros.add( strMacro );
+            }
+        }
+
+        if ( !setPositions.isEmpty( ) )
+        {
+            Map<String, String> mapEntryTypes = entryTypes.get( );
+            if ( mapEntryTypes == null )
+            {
+                return null;
+            }
+            for ( String strPosition : setPositions )
+            {
+                String strEntryType = mapEntryTypes.get( strPosition );
+                if ( strEntryType == null )
+                {
+                    // not a question of the form
+                    return null;
+                }
+                setMacros.add( _mapEntryTypeMacros.getOrDefault( strEntryType, MACRO_FALLBACK ) );
+            }
+            setMacros.add( MACRO_FALLBACK );
+            setMacros.add( MACRO_DISPATCH );
+        }
+        return setMacros;
+    }
+
+    /**
+     * @param nIdForm
+     *            the id of a form, 0 for a generic template
+     * @return the entry types of the questions of the form by position, or null for a generic template
+     */
+    private static Map<String, String> getEntryTypes( int nIdForm )
+    {
+        return FormsPDFFormCacheService.getInstance( ).getEntryTypes( nIdForm );
+    }
+
+    /**
+     * Build an include header
+     * 
+     * @param setMacros
+     *            the names of the included files, without their extension
+     * @param bRte
+     *            true if the header is written in the square bracket syntax of the rich text editor
+     * @return the include header
+     */
+    private static String buildHeader( Set<String> setMacros, boolean bRte )
+    {
+        char cOpen = bRte ? '[' : '<';
+        char cClose = bRte ? ']' : '>';
+        StringBuilder sbHeader = new StringBuilder( );
+        sbHeader.append( cOpen ).append( '#' ).append( HEADER_START ).append( cClose );
+        for ( String strMacro : setMacros )
+        {
+            sbHeader.append( cOpen ).append( "#include \"" ).append( getPath( strMacro ) ).append( "\" /" ).append( cClose );
+        }
+        sbHeader.append( cOpen ).append( '#' ).append( HEADER_END ).append( cClose );
+        return sbHeader.toString( );
+    }
+
+    /**
+     * @param strMacro
+     *            the name of a display entry macro
+     * @return the path of the file of the macro
+     */
+    private static String getPath( String strMacro )
+    {
+        return PATH_DISPLAY_ENTRIES + strMacro + FILE_EXTENSION;
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+import org.jsoup.parser.ParseError;
+import org.jsoup.parser.Parser;
+
+import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFTaskTemplate;
+import fr.paris.lutece.portal.service.i18n.I18nService;
+import fr.paris.lutece.portal.service.template.AppTemplateService;
+import fr.paris.lutece.portal.service.util.AppException;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+import freemarker.core.ParseException;
+
+/**
+ * Normalises and validates the templates when they are saved. The render-ready form of a template, with its macro syntax converted, the square
+ * bracket header added for the rich text editor and the includes of the display entry macros it depends on, is stored as the compiled content of the
+ * template so that nothing has to be rewritten at render time.
+ * <p>
+ * The template is checked with the FreeMarker configuration used at render time, so that a template saved without error also parses when it is
+ * rendered. The HTML check ignores the FreeMarker directives, interpolations and comments.
+ */
+public final class FormsPDFTemplateService
+{
+    public static final String FTL_SQUARE_BRACKET_TAG = "[#ftl]";
+
+    private static final String PROPERTY_VALIDATION_XHTML = "workflow-formspdf.template.validation.xhtml";
+    private static final String PROPERTY_VALIDATION_MAX_ERRORS = "workflow-formspdf.template.validation.maxErrors";
+    private static final int DEFAULT_VALIDATION_MAX_ERRORS = 10;
+
+    private static final String MESSAGE_ERROR_EMPTY = "module.workflow.formspdf.modify.template.error.empty";
+    private static final String MESSAGE_ERROR_FREEMARKER = "module.workflow.formspdf.modify.template.error.freemarker";
+    private static final String MESSAGE_ERROR_XHTML = "module.workflow.formspdf.modify.template.error.xhtml";
+
+    // FreeMarker comments, directives and macro calls in both syntaxes, and interpolations
+    private static final Pattern PATTERN_FREEMARKER = Pattern.compile( "<#--.*?-->|\\[#--.*?--\\]|</?[#@][^>]*>|\\[/?[#@][^\\]]*\\]|\\$\\{[^}]*\\}",
+            Pattern.DOTALL );
+
+    /**
+     * Private constructor
+     */
+    private FormsPDFTemplateService( )
+    {
+    }
+
+    /**
+     * Normalise and validate a template. On success the compiled content of the template is set.
+     * 
+     * @param formsPDFTaskTemplate
+     *            the template
+     * @param locale
+     *            the locale of the error messages
+     * @return the list of errors, empty if the template is valid
+     */
+    public static List<String> compile( FormsPDFTaskTemplate formsPDFTaskTemplate, Locale locale )
+    {
+        List<String> listErrors = new ArrayList<>( );
+        formsPDFTaskTemplate.setCompiledContent( null );
+
+        String strContent = formsPDFTaskTemplate.getContent( );
+        if ( StringUtils.isBlank( strContent ) )
+        {
+            listErrors.add( I18nService.getLocalizedString( MESSAGE_ERROR_EMPTY, locale ) );
+            return listErrors;
+        }
+
+        if ( AppPropertiesService.getPropertyBoolean( PROPERTY_VALIDATION_XHTML, true ) )
+        {
+            Parser parser = Parser.htmlParser( ).setTrackErrors( AppPropertiesService.getPropertyInt( PROPERTY_VALIDATION_MAX_ERRORS, DEFAULT_VALIDATION_MAX_ERRORS ) );
+            parser.parseInput( maskFreemarker( strContent ), StringUtils.EMPTY );
+            for ( ParseError error : parser.getErrors( ) )
+            {
+                listErrors.add( I18nService.getLocalizedString( MESSAGE_ERROR_XHTML, new Object [ ] {
+                        error.getPosition( ), error.getErrorMessage( )
+                }, locale ) );
+            }
+        }
+
+        // generic templates are used with the questions of any form
+        int nIdForm = formsPDFTaskTemplate.isGeneric( ) ? 0 : formsPDFTaskTemplate.getIdForm( );
+        String strHeader = FormsPDFTemplateIncludes.getHeader( strContent, nIdForm, formsPDFTaskTemplate.isRte( ) );
+        String strCompiledContent = normalize( strContent, strHeader, formsPDFTaskTemplate.isRte( ) );
+        ParseException parseException = parse( strCompiledContent );
+        if ( parseException != null )
+        {
+            listErrors.add( I18nService.getLocalizedString( MESSAGE_ERROR_FREEMARKER, new Object [ ] {
+                    parseException.getMessage( )
+            }, locale ) );
+        }
+
+        if ( listErrors.isEmpty( ) )
+        {
+            formsPDFTaskTemplate.setCompiledContent( strCompiledContent );
+        }
+
+        return listErrors;
+    }
+
+    /**
+     * Get the render-ready content of a template, falling back on the normalisation of the raw content for the templates saved before the compiled
+     * content existed. The contents compiled before the include headers existed include the macros of all the entry types.
+     * 
+     * @param formsPDFTaskTemplate
+     *            the template
+     * @return the content to give to the template engine
+     */
+    public static String getRenderContent( FormsPDFTaskTemplate formsPDFTaskTemplate )
+    {
+        String strCompiledContent = formsPDFTaskTemplate.getCompiledContent( );
+        if ( strCompiledContent != null && FormsPDFTemplateIncludes.hasHeader( strCompiledContent ) )
+        {
+            return strCompiledContent;
+        }
+        String strHeader = FormsPDFTemplateIncludes.getDefaultHeader( formsPDFTaskTemplate.isRte( ) );
+        if ( strCompiledContent != null )
+        {
+            return strCompiledContent.startsWith( FTL_SQUARE_BRACKET_TAG )
+                    ? FTL_SQUARE_BRACKET_TAG + strHeader + strCompiledContent.substring( FTL_SQUARE_BRACKET_TAG.length( ) )
+                    : strHeader + strCompiledContent;
+        }
+        return formsPDFTaskTemplate.isRte( ) ? FTL_SQUARE_BRACKET_TAG + strHeader + formsPDFTaskTemplate.getContent( )
+                : strHeader + formsPDFTaskTemplate.getContent( );
+    }
+
+    /**
+     * Parse a template with the configuration of the template engine used at render time. The template is merged with an empty model : the errors
+     * raised by the missing markers are ignored, only the syntax errors are reported.
+     * 
+     * @param strCompiledContent
+     *            the render-ready content of the template
+     * @return the syntax error, or null if the template parses
+     */
+    private static ParseException parse( String strCompiledContent )
+    {
+        try
+        {
+            AppTemplateService.getTemplateFromStringFtl( strCompiledContent, Locale.getDefault( ), new HashMap<String, Object>( ) );
+        }
+        catch( AppException e )
+        {
+            for ( Throwable cause = e; cause != null; cause = cause.getCause( ) )
+            {
+                if ( cause instanceof ParseException )
+                {
+                    return (ParseException) cause;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Replace the FreeMarker constructs of a template by blanks so that they are not reported by the HTML check, keeping the line breaks so that the
+     * positions of the errors remain those of the raw content
+     * 
+     * @param strContent
+     *            the raw content
+     * @return the content without FreeMarker constructs
+     */
+    private static String maskFreemarker( String strContent )
+    {
+        StringBuilder sbMasked = new StringBuilder( strContent );
+        Matcher matcher = PATTERN_FREEMARKER.matcher( strContent );
+        while ( matcher.find( ) )
+        {
+            for ( int i = matcher.start( ); i < matcher.end( ); i++ )
+            {
+                if ( strContent.charAt( i ) != '\n' )
+                {
+                    sbMasked.setCharAt( i, ' ' );
+                }
+            }
+        }
+        return sbMasked.toString( );
+    }
+
+    /**
+     * Convert the macro to display responses to the usual supp and minor
+     * 
+     * @param strtemplate
+     * @return the string with the macro converted
+     */
+    public static String convertMacroToSuppMinor( String strtemplate )
+    {
+        return strtemplate.replaceAll( "\\[@displayEntry q=position_(\\d+)/]", "<@displayEntry q=position_$1/>" );
+    }
+
+    /**
+     * Convert the macro to display responses to the square brackets
+     * 
+     * @param strtemplate
+     * @return the string with the macro converted
+     */
+    public static String convertMacroToSquareBrackets( String strtemplate )
+    {
+        return strtemplate.replaceAll( "<@displayEntry q=position_(\\d+)/>", "[@displayEntry q=position_$1/]" );
+    }
+
+    /**
+     * Convert the macros to the syntax of the editor and add the square bracket header for the templates edited with the rich text editor
+     * 
+     * @param strContent
+     *            the raw content
+     * @param strHeader
+     *            the include header of the template
+     * @param bRte
+     *            true if the template is edited with the rich text editor
+     * @return the normalised content
+     */
+    private static String normalize( String strContent, String strHeader, boolean bRte )
+    {
+        if ( bRte )
+        {
+            return FTL_SQUARE_BRACKET_TAG + strHeader + convertMacroToSquareBrackets( strContent );
+        }
+        return strHeader + convertMacroToSuppMinor( strContent );
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Work directories of the renderings, created under a work root of the module rather than directly in the temporary directory of the JVM. The
+ * directories in use by a rendering of this node are tracked, and the others are swept by age and by a size quota : the files handed over to the
+ * temporary file generator service are read after the rendering, and the failed renderings leave their directory behind.
+ */
+public final class FormsPDFWorkDirectoryService
+{
+    private static final String PROPERTY_DIRECTORY = "workflow-formspdf.work.directory";
+    private static final String PROPERTY_MAX_AGE = "workflow-formspdf.work.maxAge";
+    private static final String PROPERTY_MIN_AGE = "workflow-formspdf.work.minAge";
+    private static final String PROPERTY_MAX_SIZE = "workflow-formspdf.work.maxSize";
+
+    private static final String DEFAULT_DIRECTORY = Paths.get( System.getProperty( "java.io.tmpdir" ), "formspdf-work" ).toString( );
+    private static final long DEFAULT_MAX_AGE = 3600L;
+    private static final long DEFAULT_MIN_AGE = 300L;
+    private static final long DEFAULT_MAX_SIZE = 1024L * 1024 * 1024;
+
+    private static FormsPDFWorkDirectoryService _singleton = new FormsPDFWorkDirectoryService( );
+
+    /**
+     * Number of renderings of this node using each work directory
+     */
+    private final Map<Path, Integer> _mapActiveDirectories = new ConcurrentHashMap<>( );
+
+    /**
+     * Private constructor
+     */
+    private FormsPDFWorkDirectoryService( )
+    {
+    }
+
+    /**
+     * Get the instance of the service
+     * 
+     * @return the instance
+     */
+    public static FormsPDFWorkDirectoryService getInstance( )
+    {
+        return _singleton;
+    }
+
+    /**
+     * @return the work root of the module
+     */
+    public Path getRoot( )
+    {
+        return Paths.get( AppPropertiesService.getProperty( PROPERTY_DIRECTORY, DEFAULT_DIRECTORY ) );
+    }
+
+    /**
+     * Create a work directory if needed and mark it in use, so that it is not swept until it is released
+     * 
+     * @param strName
+     *            the name of the directory
+     * @return the work directory
+     * @throws IOException
+     *             if the directory cannot be created
+     */
+    public Path acquire( String strName ) throws IOException
+    {
+        Path directory = getRoot( ).resolve( strName );
+        _mapActiveDirectories.merge( directory, 1, Integer::sum );
+        try
+        {
+            Files.createDirectories( directory );
+        }
+        catch( IOException e )
+        {
+            release( directory );
+            throw e;
+        }
+        return directory;
+    }
+
+    /**
+     * Release a work directory acquired by a rendering
+     * 
+     * @param directory
+     *            the work directory
+     */
+    public void release( Path directory )
+    {
+        _mapActiveDirectories.computeIfPresent( directory, ( d, nCount ) -> nCount > 1 ? nCount - 1 : null );
+    }
+
+    /**
+     * Delete the work directories which are not in use and are older than the maximum age, then the oldest ones until the work root is within its
+     * size quota, sparing the directories younger than the minimum age which may still be read by the temporary file generator service
+     * 
+     * @return the number of deleted directories
+     */
+    public int sweep( )
+    {
+        Path root = getRoot( );
+        if ( !Files.isDirectory( root ) )
+        {
+            return 0;
+        }
+
+        long lNow = System.currentTimeMillis( );
+        long lMaxAge = AppPropertiesService.getPropertyLong( PROPERTY_MAX_AGE, DEFAULT_MAX_AGE ) * 1000L;
+        long lMinAge = AppPropertiesService.getPropertyLong( PROPERTY_MIN_AGE, DEFAULT_MIN_AGE ) * 1000L;
+        long lMaxSize = AppPropertiesService.getPropertyLong( PROPERTY_MAX_SIZE, DEFAULT_MAX_SIZE );
+
+        List<WorkEntry> listEntries = new ArrayList<>( );
+        long lTotalSize = 0;
+        try ( DirectoryStream<Path> entries = Files.newDirectoryStream( root ) )
+        {
+            for ( Path entry : entries )
+            {
+                WorkEntry workEntry = measure( entry );
+                lTotalSize += workEntry._lSize;
+                if ( !_mapActiveDirectories.containsKey( entry ) && lNow - workEntry._lLastModified > lMinAge )
+                {
+                    listEntries.add( workEntry );
+                }
+            }
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "Unable to list the work directory " + root, e );
+            return 0;
+        }
+
+        int nDeleted = 0;
+        listEntries.sort( Comparator.comparingLong( e -> e._lLastModified ) );
+        for ( WorkEntry workEntry : listEntries )
+        {
+            boolean bExpired = lMaxAge > 0 && lNow - workEntry._lLastModified > lMaxAge;
+            boolean bOverQuota = lMaxSize > 0 && lTotalSize > lMaxSize;
+            if ( ( bExpired || bOverQuota ) && delete( workEntry._path ) )
+            {
+                lTotalSize -= workEntry._lSize;
+                nDeleted++;
+            }
+        }
+        return nDeleted;
+    }
+
+    /**
+     * @param entry
+     *            an entry of the work root
+     * @return its total size and the last modification of its files
+     */
+    private static WorkEntry measure( Path entry )
+    {
+        WorkEntry workEntry = new WorkEntry( entry );
+        try ( Stream<Path> files = Files.walk( entry ) )
+        {
+            files.forEach( file -> {
+                try
+                {
+                    workEntry._lLastModified = Math.max( workEntry._lLastModified, Files.getLastModifiedTime( file ).toMillis( ) );
+                    if ( Files.isRegularFile( file ) )
+                    {
+                        workEntry._lSize += Files.size( file );
+                    }
+                }
+                catch( IOException e )
+                {
+                    // deleted meanwhile
+                }
+            } );
+        }
+        catch( IOException | RuntimeException e )
+        {
+            AppLogService.debug( "Unable to measure the work directory " + entry + " : " + e.getMessage( ) );
+        }
+        return workEntry;
+    }
+
+    /**
+     * Delete an entry of the work root and its content
+     * 
+     * @param entry
+     *            the entry
+     * @return true if the entry was deleted
+     */
+    private static boolean delete( Path entry )
+    {
+        try ( Stream<Path> files = Files.walk( entry ) )
+        {
+            for ( Path file : (Iterable<Path>) files.sorted( Comparator.reverseOrder( ) )::iterator )
+            {
+                Files.deleteIfExists( file );
+            }
+            return true;
+        }
+        catch( IOException | RuntimeException e )
+        {
+            AppLogService.error( "Unable to delete the work directory " + entry, e );
+            return false;
+        }
+    }
+
+    /**
+     * Size and last modification of an entry of the work root
+     */
+    private static final class WorkEntry
+    {
+        private final Path _path;
+        private long _lSize;
+        private long _lLastModified;
+
+        WorkEntry( Path path )
+        {
+            _path = path;
+        }
+    }
+}
@@ -33,27 +33,29 @@
  */
 package fr.paris.lutece.plugins.workflow.modules.formspdf.service;
 
-import java.io.File;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Entities.EscapeMode;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import fr.paris.lutece.plugins.forms.business.FormResponse;
-import fr.paris.lutece.plugins.html2pdf.service.PdfConverterService;
-import fr.paris.lutece.plugins.html2pdf.service.PdfConverterServiceException;
 import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFTaskTemplate;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.budget.FormsPDFRenderBudgetService;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.budget.FormsPDFRenderLane;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.metrics.FormsPDFMetricsService;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.output.IOutputWriter;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.output.MergedDocument;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.output.OutputWriterService;
 import fr.paris.lutece.portal.service.util.AppLogService;
 import fr.paris.lutece.portal.service.util.AppPropertiesService;
 
 // TODO: Auto-generated Javadoc
 /**
- * The Class HtmlToPDFGenerator.
+ * The Class HtmlToPDFGenerator. The merged html is written by the output writer of the format of the task configuration, PDF by default, within the
+ * render budget of the node.
  */
 public class HtmlToPDFGenerator extends AbstractFileGenerator
 {
@@ -71,13 +73,60 @@ public class HtmlToPDFGenerator extends AbstractFileGenerator
      *            the template
      */
     public HtmlToPDFGenerator( String fileName, String fileDescription, FormResponse formResponse, FormsPDFTaskTemplate formsPDFTaskTemplate )
+    {
+        this( fileName, fileDescription, formResponse, formsPDFTaskTemplate, null );
+    }
+
+    /**
+     * Instantiates a new html to PDF generator for a given format.
+     *
+     * @param fileName
+     *            the file name
+     * @param fileDescription
+     *            the file description
+     * @param formResponse
+     *            the form response
+     * @param formsPDFTaskTemplate
+     *            the template
+     * @param strFormat
+     *            the format of the task configuration, pdf if null
+     */
+    public HtmlToPDFGenerator( String fileName, String fileDescription, FormResponse formResponse, FormsPDFTaskTemplate formsPDFTaskTemplate,
+            String strFormat )
     {
         super( fileName, fileDescription, formResponse, formsPDFTaskTemplate );
+        _outputWriter = OutputWriterService.getWriter( strFormat );
     }
     private static final boolean ZIP_EXPORT = Boolean.parseBoolean( AppPropertiesService.getProperty( "workflow-formspdf.export.pdf.zip", "false" ) );
-    private static final String CONSTANT_MIME_TYPE_PDF = "application/pdf";
-    private static final String EXTENSION_PDF = ".pdf";
-    
+    private static final String CONSTANT_MIME_TYPE_ZIP = "application/zip";
+    private static final String EXTENSION_ZIP = ".zip";
+
+    private final IOutputWriter _outputWriter;
+    private FormsPDFRenderLane _lane = FormsPDFRenderLane.BACKGROUND;
+    private long _lPreparationDuration;
+
+
+    /**
+     * Set the lane of the render executor writing the document
+     *
+     * @param lane
+     *            the lane, background by default
+     */
+    public void setLane( FormsPDFRenderLane lane )
+    {
+        _lane = lane;
+    }
+
+    /**
+     * Set the duration of the loading and merge of the template, counted in the render metrics of the template
+     *
+     * @param lPreparationDuration
+     *            the duration in nanoseconds
+     */
+    public void setPreparationDuration( long lPreparationDuration )
+    {
+        _lPreparationDuration = lPreparationDuration;
+    }
 
     /**
      * Generate file.
@@ -89,18 +138,20 @@ public class HtmlToPDFGenerator extends AbstractFileGenerator
     @Override
     public Path generateFile( ) throws IOException
     {
-        Path directoryFile = Paths.get( TMP_DIR, _fileName );
-        if ( !directoryFile.toFile( ).exists( ) )
+        Path directoryFile = FormsPDFWorkDirectoryService.getInstance( ).acquire( _fileName );
+        try
         {
-            directoryFile.toFile( ).mkdir( );
+            Path file = writeExportFile( directoryFile );
+            if ( hasMultipleFiles( ) )
+            {
+                return directoryFile;
+            }
+            return file;
         }
-        writeExportFile( directoryFile );
-        if ( hasMultipleFiles( ) )
+        finally
         {
-            return directoryFile;
+            FormsPDFWorkDirectoryService.getInstance( ).release( directoryFile );
         }
-        File [ ] files = directoryFile.toFile( ).listFiles( ( File f ) -> f.getName( ).endsWith( EXTENSION_PDF ) );
-        return files [0].toPath( );
     }
 
     /**
@@ -111,7 +162,7 @@ public class HtmlToPDFGenerator extends AbstractFileGenerator
     @Override
     public String getFileName( )
     {
-        return _fileName + EXTENSION_PDF;
+        return _fileName + ( ZIP_EXPORT ? EXTENSION_ZIP : _outputWriter.getExtension( ) );
     }
 
     /**
@@ -122,7 +173,7 @@ public class HtmlToPDFGenerator extends AbstractFileGenerator
     @Override
     public String getMimeType( )
     {
-        return CONSTANT_MIME_TYPE_PDF;
+        return ZIP_EXPORT ? CONSTANT_MIME_TYPE_ZIP : _outputWriter.getMimeType( );
     }
 
     /**
@@ -137,49 +188,76 @@ public class HtmlToPDFGenerator extends AbstractFileGenerator
     }
 
     /**
-     * Checks if is zippable.
+     * Checks if is zippable. When the zip export is enabled, the archive is written directly while rendering the document, so the file generator service
+     * must not zip it again.
      *
-     * @return true, if is zippable
+     * @return false
      */
     @Override
     public boolean isZippable( )
     {
-        return ZIP_EXPORT;
+        return false;
     }
 
     /**
-     * Write export file.
+     * Write export file. The document is written in a single pass, directly into a zip archive when the zip export is enabled.
      *
      * @param directoryFile
      *            the directory file
+     * @return the written file
      * @throws IOException
      *             Signals that an I/O exception has occurred.
      */
-    private void writeExportFile( Path directoryFile ) throws IOException
+    private Path writeExportFile( Path directoryFile ) throws IOException
     {
         String strError = "";
-        try ( OutputStream outputStream = Files.newOutputStream( directoryFile.resolve( generateFileName( _formResponse ) + ".pdf" ) ) )
+        String strDocumentName = generateFileName( _formResponse );
+        Path file = directoryFile.resolve( strDocumentName + ( ZIP_EXPORT ? EXTENSION_ZIP : _outputWriter.getExtension( ) ) );
+        long lWriteStart = System.nanoTime( );
+        try ( OutputStream outputStream = openOutputStream( file, strDocumentName + _outputWriter.getExtension( ) ) )
         {
-            Document doc = Jsoup.parse( _formsPDFTaskTemplate.getContent( ), "UTF-8" );
-            doc.outputSettings( ).syntax( Document.OutputSettings.Syntax.xml );
-            doc.outputSettings( ).escapeMode( EscapeMode.base.xhtml );
-            doc.outputSettings( ).charset( "UTF-8" );
-
-            PdfConverterService.getInstance( ).getPdfBuilder( ).reset( ).withHtmlContent( doc.html( ) ).notEditable( ).render( outputStream );
+            long lStart = FormsPDFRenderStages.start( );
+            FormsPDFRenderBudgetService.getInstance( ).write( _outputWriter, new MergedDocument( _formsPDFTaskTemplate.getContent( ) ), outputStream,
+                    directoryFile, _formsPDFTaskTemplate.getId( ), _lane );
+            FormsPDFRenderStages.end( FormsPDFRenderStages.STAGE_WRITE, lStart );
         }
-        catch( PdfConverterServiceException e )
+        catch( IOException e )
         {
+            FormsPDFMetricsService.getInstance( ).recordFailure( _formsPDFTaskTemplate.getId( ), _lPreparationDuration + System.nanoTime( ) - lWriteStart,
+                    String.valueOf( e.getMessage( ) ) );
+            // no partial document is left in the work directory
+            Files.deleteIfExists( file );
             strError = "Une erreur s'est produite lors de la generation de l'edition";
             AppLogService.error( strError, e );
             throw new RuntimeException( strError, e );
         }
-        catch( IOException e )
+        FormsPDFMetricsService.getInstance( ).recordRender( _formsPDFTaskTemplate.getId( ), _lPreparationDuration + System.nanoTime( ) - lWriteStart,
+                Files.size( file ) );
+        return file;
+    }
+
+    /**
+     * Open a stream on the export file. The documents are buffered by the scratch buffer of the render thread, only the small writes of the zip
+     * archive are buffered here.
+     *
+     * @param file
+     *            the export file
+     * @param strEntryName
+     *            the name of the document in the archive when the zip export is enabled
+     * @return the stream receiving the document
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    private OutputStream openOutputStream( Path file, String strEntryName ) throws IOException
+    {
+        if ( !ZIP_EXPORT )
         {
-            strError = "Une erreur s'est produite lors de la generation de l'edition";
-            AppLogService.error( strError, e );
-            throw new RuntimeException( strError, e );
+            return Files.newOutputStream( file );
         }
 
+        ZipOutputStream zipOutputStream = new ZipOutputStream( new BufferedOutputStream( Files.newOutputStream( file ) ) );
+        zipOutputStream.putNextEntry( new ZipEntry( strEntryName ) );
+        return zipOutputStream;
     }
 
 }
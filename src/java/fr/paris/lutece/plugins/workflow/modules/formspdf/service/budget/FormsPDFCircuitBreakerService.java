@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service.budget;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Circuit breakers of the templates. A template whose renderings keep exceeding their budget is no longer rendered by this node until the open
+ * duration has elapsed or its circuit is reset from the templates administration.
+ */
+public final class FormsPDFCircuitBreakerService
+{
+    private static final String PROPERTY_FAILURE_THRESHOLD = "workflow-formspdf.circuitBreaker.failureThreshold";
+    private static final String PROPERTY_OPEN_DURATION = "workflow-formspdf.circuitBreaker.openDuration";
+
+    private static final int DEFAULT_FAILURE_THRESHOLD = 3;
+    private static final int DEFAULT_OPEN_DURATION = 600;
+
+    private static final Map<Integer, TemplateCircuit> _mapCircuits = new ConcurrentHashMap<>( );
+
+    /**
+     * Private constructor
+     */
+    private FormsPDFCircuitBreakerService( )
+    {
+    }
+
+    /**
+     * Check that a template may be rendered. Once the open duration of its circuit has elapsed, the rendering checking it first is the probe of the
+     * half-open circuit, the others being refused until the probe ends.
+     * 
+     * @param nIdTemplate
+     *            the id of the template
+     * @return true if the rendering is the probe of the half-open circuit, whose end must be reported by {@link #endProbe(int)}
+     * @throws RenderBudgetExceededException
+     *             if the circuit of the template is open
+     */
+    public static boolean checkClosed( int nIdTemplate ) throws RenderBudgetExceededException
+    {
+        TemplateCircuit circuit = _mapCircuits.get( nIdTemplate );
+        if ( circuit == null )
+        {
+            return false;
+        }
+        if ( circuit.startProbe( ) )
+        {
+            return true;
+        }
+        if ( circuit.isOpen( ) )
+        {
+            throw new RenderBudgetExceededException( "The template " + nIdTemplate + " is suspended until " + circuit.getOpenUntil( )
+                    + " after exceeding its render budget : " + circuit.getLastError( ) );
+        }
+        return false;
+    }
+
+    /**
+     * Report the end of the probe of a half-open circuit. A probe which succeeded has closed the circuit and a probe which failed has opened it again,
+     * any other outcome lets the next rendering probe the circuit.
+     * 
+     * @param nIdTemplate
+     *            the id of the template
+     */
+    public static void endProbe( int nIdTemplate )
+    {
+        TemplateCircuit circuit = _mapCircuits.get( nIdTemplate );
+        if ( circuit != null )
+        {
+            circuit.endProbe( );
+        }
+    }
+
+    /**
+     * Record a rendering within its budget, closing the circuit of the template
+     * 
+     * @param nIdTemplate
+     *            the id of the template
+     */
+    public static void recordSuccess( int nIdTemplate )
+    {
+        _mapCircuits.remove( nIdTemplate );
+    }
+
+    /**
+     * Record a rendering which exceeded its budget
+     * 
+     * @param nIdTemplate
+     *            the id of the template
+     * @param strError
+     *            the reason
+     */
+    public static void recordFailure( int nIdTemplate, String strError )
+    {
+        TemplateCircuit circuit = _mapCircuits.computeIfAbsent( nIdTemplate, TemplateCircuit::new );
+        boolean bWasOpen = circuit.isOpen( );
+        circuit.recordFailure( strError, AppPropertiesService.getPropertyInt( PROPERTY_FAILURE_THRESHOLD, DEFAULT_FAILURE_THRESHOLD ),
+                AppPropertiesService.getPropertyInt( PROPERTY_OPEN_DURATION, DEFAULT_OPEN_DURATION ) * 1000L );
+        if ( !bWasOpen && circuit.isOpen( ) )
+        {
+            AppLogService.error( "Forms PDF : the template " + nIdTemplate + " is suspended until " + circuit.getOpenUntil( ) + " : " + strError );
+        }
+    }
+
+    /**
+     * Close the circuit of a template
+     * 
+     * @param nIdTemplate
+     *            the id of the template
+     */
+    public static void reset( int nIdTemplate )
+    {
+        _mapCircuits.remove( nIdTemplate );
+    }
+
+    /**
+     * @return the circuits of the templates whose renderings recently exceeded their budget, keyed by the id of the template as a string
+     */
+    public static Map<String, TemplateCircuit> getCircuits( )
+    {
+        Map<String, TemplateCircuit> mapCircuits = new HashMap<>( );
+        for ( TemplateCircuit circuit : _mapCircuits.values( ) )
+        {
+            mapCircuits.put( String.valueOf( circuit.getIdTemplate( ) ), circuit );
+        }
+        return mapCircuits;
+    }
+}
@@ -0,0 +1,406 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service.budget;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.FormsPDFScratchBuffers;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.output.IOutputWriter;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.output.MergedDocument;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Enforces the budget of the renderings. The output writer runs in a render thread of the lane of the rendering, each lane having its own concurrency
+ * limit and a bounded queue, while the calling thread waits at most the queue timeout for a render thread then at most the wall-clock budget : on
+ * timeout the rendering is cancelled and the stream it writes to refuses any further write, so the workflow action returns even if the converter
+ * does not react to the interruption. The lane gets an extra render thread until the cancelled rendering reaches its next checkpoint.
+ * <p>
+ * The heap allocated by the render thread and by the threads rendering the chunks of the document is checked by the calling thread at each check
+ * interval, on JVMs measuring it, so a rendering is stopped while the converter lays the document out and before it writes anything.
+ * <p>
+ * A rendering is refused at once while the queue of its lane is full, and given up if no render thread of the lane picks it within the queue
+ * timeout, so a saturated lane fails fast rather than piling up the calling threads.
+ * <p>
+ * Every rendering which exceeds its budget is recorded in the circuit breaker of its template.
+ */
+public final class FormsPDFRenderBudgetService
+{
+    private static final String PROPERTY_TIMEOUT = "workflow-formspdf.budget.timeout";
+    private static final String PROPERTY_MAX_ALLOCATED_BYTES = "workflow-formspdf.budget.maxAllocatedBytes";
+    private static final String PROPERTY_MAX_DOCUMENT_LENGTH = "workflow-formspdf.budget.maxDocumentLength";
+    private static final String PROPERTY_QUEUE_TIMEOUT = "workflow-formspdf.budget.queueTimeout";
+    private static final String PROPERTY_CHECK_INTERVAL = "workflow-formspdf.budget.checkInterval";
+    private static final String PROPERTY_LANE_THREADS = "workflow-formspdf.lane.%s.threads";
+    private static final String PROPERTY_LANE_QUEUE_SIZE = "workflow-formspdf.lane.%s.queueSize";
+
+    private static final int DEFAULT_TIMEOUT = 120;
+    private static final int DEFAULT_QUEUE_TIMEOUT = 30;
+    private static final int DEFAULT_QUEUE_SIZE = 100;
+    private static final int DEFAULT_CHECK_INTERVAL = 200;
+
+    private static final int STATE_RUNNING = 0;
+    private static final int STATE_DONE = 1;
+    private static final int STATE_ABANDONED = 2;
+
+    private static FormsPDFRenderBudgetService _singleton = new FormsPDFRenderBudgetService( );
+
+    private final Map<FormsPDFRenderLane, ThreadPoolExecutor> _mapExecutors = new EnumMap<>( FormsPDFRenderLane.class );
+    private final Map<FormsPDFRenderLane, Integer> _mapThreads = new EnumMap<>( FormsPDFRenderLane.class );
+
+    /**
+     * Private constructor
+     */
+    private FormsPDFRenderBudgetService( )
+    {
+        for ( FormsPDFRenderLane lane : FormsPDFRenderLane.values( ) )
+        {
+            int nThreads = Math.max( 1,
+                    AppPropertiesService.getPropertyInt( String.format( PROPERTY_LANE_THREADS, lane.getName( ) ), lane.getDefaultThreads( ) ) );
+            int nQueueSize = AppPropertiesService.getPropertyInt( String.format( PROPERTY_LANE_QUEUE_SIZE, lane.getName( ) ), DEFAULT_QUEUE_SIZE );
+            _mapThreads.put( lane, nThreads );
+            // the default abort policy refuses the renderings submitted while the queue of the lane is full
+            _mapExecutors.put( lane, new ThreadPoolExecutor( nThreads, nThreads, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>( Math.max( 1, nQueueSize ) ), runnable -> {
+                        Thread thread = new Thread( runnable, "formspdf-render-" + lane.getName( ) );
+                        thread.setDaemon( true );
+                        return thread;
+                    } ) );
+        }
+    }
+
+    /**
+     * Get the instance of the service
+     * 
+     * @return the instance
+     */
+    public static FormsPDFRenderBudgetService getInstance( )
+    {
+        return _singleton;
+    }
+
+    /**
+     * Get the number of renderings of a lane waiting for a render thread
+     * 
+     * @param lane
+     *            the lane
+     * @return the number of waiting renderings
+     */
+    public int getQueueDepth( FormsPDFRenderLane lane )
+    {
+        return _mapExecutors.get( lane ).getQueue( ).size( );
+    }
+
+    /**
+     * Get the number of renderings of a lane being written
+     * 
+     * @param lane
+     *            the lane
+     * @return the number of active render threads
+     */
+    public int getActiveCount( FormsPDFRenderLane lane )
+    {
+        return _mapExecutors.get( lane ).getActiveCount( );
+    }
+
+    /**
+     * Write a merged document within the budget
+     * 
+     * @param outputWriter
+     *            the output writer
+     * @param document
+     *            the merged document
+     * @param outputStream
+     *            the stream receiving the document
+     * @param workDirectory
+     *            the work directory of the rendering
+     * @param nIdTemplate
+     *            the id of the template, 0 for the documents not rendered from a saved template
+     * @param lane
+     *            the lane of the rendering
+     * @throws IOException
+     *             if the writing fails, exceeds its budget, is refused by the circuit breaker of the template or if the lane is saturated
+     */
+    public void write( IOutputWriter outputWriter, MergedDocument document, OutputStream outputStream, Path workDirectory, int nIdTemplate,
+            FormsPDFRenderLane lane ) throws IOException
+    {
+        boolean bProbe = FormsPDFCircuitBreakerService.checkClosed( nIdTemplate );
+        try
+        {
+            writeInLane( outputWriter, document, outputStream, workDirectory, nIdTemplate, lane );
+        }
+        finally
+        {
+            if ( bProbe )
+            {
+                // a probe which neither succeeded nor exceeded its budget lets the next rendering probe
+                FormsPDFCircuitBreakerService.endProbe( nIdTemplate );
+            }
+        }
+    }
+
+    /**
+     * Write a merged document in a render thread of its lane, checking its budget while it is written
+     * 
+     * @see #write(IOutputWriter, MergedDocument, OutputStream, Path, int, FormsPDFRenderLane)
+     */
+    private void writeInLane( IOutputWriter outputWriter, MergedDocument document, OutputStream outputStream, Path workDirectory, int nIdTemplate,
+            FormsPDFRenderLane lane ) throws IOException
+    {
+        int nMaxDocumentLength = AppPropertiesService.getPropertyInt( PROPERTY_MAX_DOCUMENT_LENGTH, 0 );
+        if ( nMaxDocumentLength > 0 && document.getLength( ) > nMaxDocumentLength )
+        {
+            throw exceeded( nIdTemplate, "the merged document is " + document.getLength( ) + " characters long, the maximum is " + nMaxDocumentLength );
+        }
+
+        long lTimeout = AppPropertiesService.getPropertyInt( PROPERTY_TIMEOUT, DEFAULT_TIMEOUT ) * 1000L;
+        long lQueueTimeout = AppPropertiesService.getPropertyInt( PROPERTY_QUEUE_TIMEOUT, DEFAULT_QUEUE_TIMEOUT ) * 1000L;
+        long lCheckInterval = Math.max( 1, AppPropertiesService.getPropertyInt( PROPERTY_CHECK_INTERVAL, DEFAULT_CHECK_INTERVAL ) );
+        RenderBudget budget = new RenderBudget( AppPropertiesService.getPropertyLong( PROPERTY_MAX_ALLOCATED_BYTES, 0L ) );
+        BudgetOutputStream budgetStream = new BudgetOutputStream( outputStream, budget );
+        ThreadPoolExecutor executor = _mapExecutors.get( lane );
+
+        // the budget starts when a render thread of the lane picks the rendering, not while it waits behind the other renderings of the lane
+        CountDownLatch started = new CountDownLatch( 1 );
+        AtomicInteger state = new AtomicInteger( STATE_RUNNING );
+        Future<Void> future;
+        try
+        {
+            future = executor.submit( ( ) -> {
+                started.countDown( );
+                budget.enter( );
+                try
+                {
+                    writeWithinBudget( outputWriter, document, budgetStream, workDirectory, nIdTemplate );
+                }
+                finally
+                {
+                    budget.exit( );
+                    if ( !state.compareAndSet( STATE_RUNNING, STATE_DONE ) )
+                    {
+                        releaseThread( executor );
+                    }
+                }
+                return null;
+            } );
+        }
+        catch( RejectedExecutionException e )
+        {
+            // a saturated lane is not a failure of the template, so the circuit breaker is left untouched
+            throw new RenderBudgetExceededException(
+                    "The " + lane.getName( ) + " render lane is saturated, " + getQueueDepth( lane ) + " renderings are waiting" );
+        }
+        try
+        {
+            if ( lQueueTimeout > 0 && !started.await( lQueueTimeout, TimeUnit.MILLISECONDS ) )
+            {
+                budget.cancel( );
+                future.cancel( true );
+                throw new RenderBudgetExceededException(
+                        "No render thread of the " + lane.getName( ) + " lane was free within " + lQueueTimeout + " ms" );
+            }
+
+            // the heap is checked while the converter lays the document out, which it does before writing anything
+            long lDeadline = lTimeout > 0 ? System.currentTimeMillis( ) + lTimeout : Long.MAX_VALUE;
+            while ( true )
+            {
+                long lRemaining = lDeadline - System.currentTimeMillis( );
+                if ( lRemaining <= 0 )
+                {
+                    abandon( lane, future, budget, started, state );
+                    throw exceeded( nIdTemplate, "the rendering took more than " + lTimeout + " ms" );
+                }
+                try
+                {
+                    future.get( Math.min( lRemaining, lCheckInterval ), TimeUnit.MILLISECONDS );
+                    break;
+                }
+                catch( TimeoutException e )
+                {
+                    if ( budget.isOverAllocated( ) )
+                    {
+                        abandon( lane, future, budget, started, state );
+                        throw exceeded( nIdTemplate, "the rendering allocated more than " + budget.getMaxAllocatedBytes( ) + " bytes" );
+                    }
+                }
+            }
+        }
+        catch( InterruptedException e )
+        {
+            abandon( lane, future, budget, started, state );
+            Thread.currentThread( ).interrupt( );
+            throw new IOException( "Rendering interrupted", e );
+        }
+        catch( ExecutionException e )
+        {
+            if ( e.getCause( ) instanceof IOException )
+            {
+                throw (IOException) e.getCause( );
+            }
+            throw new IOException( e.getCause( ) );
+        }
+    }
+
+    /**
+     * Give up a rendering. The converter does not react to the interruption and keeps its render thread until its next checkpoint, so the lane gets an
+     * extra render thread until then, up to twice its render threads : a rendering given up does not reduce the capacity of its lane.
+     */
+    private void abandon( FormsPDFRenderLane lane, Future<Void> future, RenderBudget budget, CountDownLatch started, AtomicInteger state )
+    {
+        budget.cancel( );
+        future.cancel( true );
+        ThreadPoolExecutor executor = _mapExecutors.get( lane );
+        synchronized( executor )
+        {
+            // a rendering cancelled before it started holds no render thread
+            if ( started.getCount( ) == 0 && executor.getMaximumPoolSize( ) < 2 * _mapThreads.get( lane )
+                    && state.compareAndSet( STATE_RUNNING, STATE_ABANDONED ) )
+            {
+                executor.setMaximumPoolSize( executor.getMaximumPoolSize( ) + 1 );
+                executor.setCorePoolSize( executor.getCorePoolSize( ) + 1 );
+            }
+        }
+    }
+
+    /**
+     * Remove the extra render thread given to a lane by a rendering given up, once that rendering has stopped
+     */
+    private static void releaseThread( ThreadPoolExecutor executor )
+    {
+        synchronized( executor )
+        {
+            executor.setCorePoolSize( executor.getCorePoolSize( ) - 1 );
+            executor.setMaximumPoolSize( executor.getMaximumPoolSize( ) - 1 );
+        }
+    }
+
+    /**
+     * Write the document in the current thread, recording the outcome in the circuit breaker of the template
+     */
+    private void writeWithinBudget( IOutputWriter outputWriter, MergedDocument document, BudgetOutputStream budgetStream, Path workDirectory,
+            int nIdTemplate ) throws IOException
+    {
+        try
+        {
+            // the converter writes through the scratch buffer of the render thread, so the budget is checked once per buffer rather than per write
+            try ( OutputStream outputStream = FormsPDFScratchBuffers.buffer( budgetStream ) )
+            {
+                outputWriter.write( document, outputStream, workDirectory );
+            }
+            budgetStream.getBudget( ).check( );
+        }
+        catch( RenderBudgetExceededException e )
+        {
+            if ( !budgetStream.getBudget( ).isCancelled( ) )
+            {
+                FormsPDFCircuitBreakerService.recordFailure( nIdTemplate, e.getMessage( ) );
+            }
+            throw e;
+        }
+        FormsPDFCircuitBreakerService.recordSuccess( nIdTemplate );
+    }
+
+    /**
+     * Record a rendering which exceeded its budget
+     * 
+     * @return the exception to throw
+     */
+    private static RenderBudgetExceededException exceeded( int nIdTemplate, String strReason )
+    {
+        FormsPDFCircuitBreakerService.recordFailure( nIdTemplate, strReason );
+        return new RenderBudgetExceededException( "Render budget exceeded by the template " + nIdTemplate + " : " + strReason );
+    }
+
+    /**
+     * Stream checking the budget of the rendering at each write. Once the budget is cancelled, it refuses to write to the underlying stream, which is
+     * closed by the calling thread.
+     */
+    private static final class BudgetOutputStream extends FilterOutputStream
+    {
+        private final RenderBudget _budget;
+
+        BudgetOutputStream( OutputStream out, RenderBudget budget )
+        {
+            super( out );
+            _budget = budget;
+        }
+
+        RenderBudget getBudget( )
+        {
+            return _budget;
+        }
+
+        @Override
+        public synchronized void write( int b ) throws IOException
+        {
+            _budget.check( );
+            out.write( b );
+        }
+
+        @Override
+        public synchronized void write( byte [ ] b, int off, int len ) throws IOException
+        {
+            _budget.check( );
+            out.write( b, off, len );
+        }
+
+        @Override
+        public synchronized void flush( ) throws IOException
+        {
+            if ( !_budget.isCancelled( ) )
+            {
+                out.flush( );
+            }
+        }
+
+        @Override
+        public void close( )
+        {
+            // the underlying stream is closed by its owner
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service.budget;
+
+/**
+ * Lanes of the render executor. Each lane has its own render threads, so the background renderings never delay the renderings an agent waits for.
+ */
+public enum FormsPDFRenderLane
+{
+    /**
+     * Documents requested by an agent from the back office
+     */
+    INTERACTIVE( "interactive", 4 ),
+
+    /**
+     * Documents of the automatic actions, of the render jobs and of the batch regenerations
+     */
+    BACKGROUND( "background", 2 );
+
+    private final String _strName;
+    private final int _nDefaultThreads;
+
+    FormsPDFRenderLane( String strName, int nDefaultThreads )
+    {
+        _strName = strName;
+        _nDefaultThreads = nDefaultThreads;
+    }
+
+    /**
+     * @return the name of the lane, used in the properties and in the names of the render threads
+     */
+    public String getName( )
+    {
+        return _strName;
+    }
+
+    /**
+     * @return the default number of render threads of the lane
+     */
+    public int getDefaultThreads( )
+    {
+        return _nDefaultThreads;
+    }
+}
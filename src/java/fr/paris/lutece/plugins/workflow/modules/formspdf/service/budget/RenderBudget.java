@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service.budget;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Budget of a rendering, shared by the threads writing its document : the render thread of its lane and the threads rendering the chunks of a large
+ * document. The heap allocated by each thread is measured from its entry in the budget, on JVMs measuring it, so the calling thread can check the
+ * budget while the converter lays the document out without writing anything. A cancelled budget makes the writing stop at its next checkpoint.
+ */
+public final class RenderBudget
+{
+    private static final ThreadLocal<RenderBudget> _current = new ThreadLocal<>( );
+
+    private final long _lMaxAllocatedBytes;
+    private final com.sun.management.ThreadMXBean _threadMXBean;
+    private final Map<Long, Long> _mapAllocatedAtEntry = new HashMap<>( );
+    private long _lAllocatedByExitedThreads;
+    private volatile boolean _bCancelled;
+
+    /**
+     * Constructor
+     * 
+     * @param lMaxAllocatedBytes
+     *            the maximum heap allocated by the rendering, 0 for no limit
+     */
+    RenderBudget( long lMaxAllocatedBytes )
+    {
+        _lMaxAllocatedBytes = lMaxAllocatedBytes;
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean( );
+        _threadMXBean = lMaxAllocatedBytes > 0 && threadMXBean instanceof com.sun.management.ThreadMXBean
+                && ( (com.sun.management.ThreadMXBean) threadMXBean ).isThreadAllocatedMemoryEnabled( ) ? (com.sun.management.ThreadMXBean) threadMXBean
+                        : null;
+    }
+
+    /**
+     * @return the budget of the rendering written by the current thread, null if the current thread writes no budgeted rendering
+     */
+    public static RenderBudget current( )
+    {
+        return _current.get( );
+    }
+
+    /**
+     * Count the heap allocated by the current thread from now on, and make the budget the current one of the thread
+     */
+    public void enter( )
+    {
+        if ( _threadMXBean != null )
+        {
+            long lIdThread = Thread.currentThread( ).getId( );
+            long lAllocated = _threadMXBean.getThreadAllocatedBytes( lIdThread );
+            synchronized( this )
+            {
+                _mapAllocatedAtEntry.put( lIdThread, lAllocated );
+            }
+        }
+        _current.set( this );
+    }
+
+    /**
+     * Stop counting the heap allocated by the current thread, which no longer writes the rendering
+     */
+    public void exit( )
+    {
+        _current.remove( );
+        if ( _threadMXBean != null )
+        {
+            long lIdThread = Thread.currentThread( ).getId( );
+            long lAllocated = _threadMXBean.getThreadAllocatedBytes( lIdThread );
+            synchronized( this )
+            {
+                Long lAllocatedAtEntry = _mapAllocatedAtEntry.remove( lIdThread );
+                if ( lAllocatedAtEntry != null )
+                {
+                    _lAllocatedByExitedThreads += lAllocated - lAllocatedAtEntry;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the heap allocated by the threads of the rendering so far, 0 if it is not measured
+     */
+    public synchronized long getAllocatedBytes( )
+    {
+        if ( _threadMXBean == null )
+        {
+            return 0;
+        }
+        long lAllocated = _lAllocatedByExitedThreads;
+        for ( Map.Entry<Long, Long> thread : _mapAllocatedAtEntry.entrySet( ) )
+        {
+            long lThreadAllocated = _threadMXBean.getThreadAllocatedBytes( thread.getKey( ) );
+            if ( lThreadAllocated >= 0 )
+            {
+                lAllocated += lThreadAllocated - thread.getValue( );
+            }
+        }
+        return lAllocated;
+    }
+
+    /**
+     * @return true if the heap allocated by the rendering exceeds the budget
+     */
+    public boolean isOverAllocated( )
+    {
+        return _threadMXBean != null && getAllocatedBytes( ) > _lMaxAllocatedBytes;
+    }
+
+    /**
+     * @return the maximum heap allocated by the rendering
+     */
+    public long getMaxAllocatedBytes( )
+    {
+        return _lMaxAllocatedBytes;
+    }
+
+    /**
+     * Cancel the rendering, whose writing stops at its next checkpoint
+     */
+    public void cancel( )
+    {
+        _bCancelled = true;
+    }
+
+    /**
+     * @return true if the rendering was cancelled
+     */
+    public boolean isCancelled( )
+    {
+        return _bCancelled;
+    }
+
+    /**
+     * Checkpoint of the writing
+     * 
+     * @throws RenderBudgetExceededException
+     *             if the rendering was cancelled or allocated more heap than allowed
+     */
+    public void check( ) throws RenderBudgetExceededException
+    {
+        if ( _bCancelled )
+        {
+            throw new RenderBudgetExceededException( "Rendering cancelled" );
+        }
+        if ( isOverAllocated( ) )
+        {
+            throw new RenderBudgetExceededException( "the rendering allocated " + getAllocatedBytes( ) + " bytes, the maximum is " + _lMaxAllocatedBytes );
+        }
+    }
+}
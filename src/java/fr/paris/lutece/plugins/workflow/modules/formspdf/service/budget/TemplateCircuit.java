@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service.budget;
+
+import java.util.Date;
+
+/**
+ * State of the circuit breaker of a template. The circuit is closed until the threshold of consecutive failures is reached, then open for the open
+ * duration. It is then half-open : a single rendering is let through as a probe while the others are still refused, the circuit closing if the probe
+ * succeeds and opening again at once if it fails.
+ */
+public class TemplateCircuit
+{
+    private final int _nIdTemplate;
+    private int _nFailures;
+    private long _lOpenUntil;
+    private boolean _bProbing;
+    private String _strLastError;
+
+    /**
+     * Constructor
+     * 
+     * @param nIdTemplate
+     *            the id of the template
+     */
+    TemplateCircuit( int nIdTemplate )
+    {
+        _nIdTemplate = nIdTemplate;
+    }
+
+    /**
+     * @return the id of the template
+     */
+    public int getIdTemplate( )
+    {
+        return _nIdTemplate;
+    }
+
+    /**
+     * @return the number of consecutive renderings of the template which exceeded their budget
+     */
+    public synchronized int getFailures( )
+    {
+        return _nFailures;
+    }
+
+    /**
+     * @return the reason of the last rendering which exceeded its budget
+     */
+    public synchronized String getLastError( )
+    {
+        return _strLastError;
+    }
+
+    /**
+     * @return the date until which the renderings of the template are refused, null if the circuit is closed
+     */
+    public synchronized Date getOpenUntil( )
+    {
+        return isOpen( ) ? new Date( _lOpenUntil ) : null;
+    }
+
+    /**
+     * @return true if the renderings of the template are refused, while the circuit is open or while the probe of the half-open circuit is rendered
+     */
+    public synchronized boolean isOpen( )
+    {
+        return _bProbing || _lOpenUntil > System.currentTimeMillis( );
+    }
+
+    /**
+     * Let the probe of the half-open circuit through
+     * 
+     * @return true if the open duration has elapsed and no probe is being rendered : the caller renders the probe
+     */
+    synchronized boolean startProbe( )
+    {
+        if ( _lOpenUntil == 0 || _bProbing || _lOpenUntil > System.currentTimeMillis( ) )
+        {
+            return false;
+        }
+        _bProbing = true;
+        return true;
+    }
+
+    /**
+     * End the probe of the half-open circuit whose outcome was neither a success nor a failure, so that the next rendering probes the circuit
+     */
+    synchronized void endProbe( )
+    {
+        _bProbing = false;
+    }
+
+    /**
+     * Record a rendering which exceeded its budget, opening the circuit when the threshold is reached. A failed probe opens the circuit again at once,
+     * the failures being still above the threshold.
+     * 
+     * @param strError
+     *            the reason
+     * @param nThreshold
+     *            the number of consecutive failures opening the circuit
+     * @param lOpenDuration
+     *            the open duration in milliseconds
+     */
+    synchronized void recordFailure( String strError, int nThreshold, long lOpenDuration )
+    {
+        _nFailures++;
+        _strLastError = strError;
+        _bProbing = false;
+        if ( _nFailures >= nThreshold )
+        {
+            _lOpenUntil = System.currentTimeMillis( ) + lOpenDuration;
+        }
+    }
+}
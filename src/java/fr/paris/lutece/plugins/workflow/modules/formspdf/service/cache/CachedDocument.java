@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service.cache;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Rendered document held off-heap by the {@link FormsPDFDocumentCacheService}
+ */
+public class CachedDocument
+{
+    private final String _strFileName;
+    private final String _strMimeType;
+    private final ByteBuffer _content;
+
+    /**
+     * Constructor
+     * 
+     * @param strFileName
+     *            the file name of the document
+     * @param strMimeType
+     *            the mime type of the document
+     * @param content
+     *            the direct buffer holding the bytes of the document
+     */
+    CachedDocument( String strFileName, String strMimeType, ByteBuffer content )
+    {
+        _strFileName = strFileName;
+        _strMimeType = strMimeType;
+        _content = content;
+    }
+
+    /**
+     * @return the file name of the document
+     */
+    public String getFileName( )
+    {
+        return _strFileName;
+    }
+
+    /**
+     * @return the mime type of the document
+     */
+    public String getMimeType( )
+    {
+        return _strMimeType;
+    }
+
+    /**
+     * @return the size of the document in bytes
+     */
+    public int getSize( )
+    {
+        return _content.capacity( );
+    }
+
+    /**
+     * @return a read-only view of the bytes of the document, with its own position so that concurrent downloads do not interfere
+     */
+    public ByteBuffer getContent( )
+    {
+        return _content.asReadOnlyBuffer( );
+    }
+}
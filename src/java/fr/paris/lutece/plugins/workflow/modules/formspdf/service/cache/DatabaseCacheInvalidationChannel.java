@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service.cache;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFCacheEpochHome;
+import fr.paris.lutece.portal.service.util.AppException;
+
+/**
+ * Invalidation channel polling the database. Each cache has an epoch in the workflow_task_formspdf_cache_epoch table, incremented by a broadcast; a
+ * node drops its cache when it sees a new epoch, so within the polling interval of the cache invalidation daemon.
+ */
+public class DatabaseCacheInvalidationChannel extends AbstractCacheInvalidationChannel
+{
+    private final Map<String, Long> _mapKnownEpochs = new ConcurrentHashMap<>( );
+    private volatile boolean _bInitialized;
+
+    @Override
+    public void broadcast( String strCacheName )
+    {
+        if ( !FormsPDFCacheEpochHome.increment( strCacheName ) )
+        {
+            try
+            {
+                FormsPDFCacheEpochHome.create( strCacheName, 1L );
+            }
+            catch( AppException e )
+            {
+                // created by another node in the meantime
+                FormsPDFCacheEpochHome.increment( strCacheName );
+            }
+        }
+
+        // this node does not wait for the next poll
+        invalidateLocally( strCacheName );
+    }
+
+    @Override
+    public synchronized void poll( )
+    {
+        Map<String, Long> mapEpochs = FormsPDFCacheEpochHome.findAll( );
+        for ( Map.Entry<String, Long> epoch : mapEpochs.entrySet( ) )
+        {
+            Long lKnownEpoch = _mapKnownEpochs.put( epoch.getKey( ), epoch.getValue( ) );
+
+            // the caches are empty when the node starts, the first poll only records the epochs
+            if ( _bInitialized && !epoch.getValue( ).equals( lKnownEpoch ) )
+            {
+                invalidateLocally( epoch.getKey( ) );
+            }
+        }
+        _bInitialized = true;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service.cache;
+
+import fr.paris.lutece.portal.service.spring.SpringContextService;
+
+/**
+ * Access to the cache invalidation channel of the module
+ */
+public final class FormsPDFCacheInvalidationService
+{
+    /**
+     * Name of the caches of form level data
+     */
+    public static final String CACHE_FORMS = "forms";
+
+    /**
+     * Name of the caches of template data
+     */
+    public static final String CACHE_TEMPLATES = "templates";
+
+    private static final String BEAN_CHANNEL = "workflow-formspdf.cacheInvalidationChannel";
+
+    /**
+     * Private constructor
+     */
+    private FormsPDFCacheInvalidationService( )
+    {
+    }
+
+    /**
+     * @return the cache invalidation channel
+     */
+    public static ICacheInvalidationChannel getChannel( )
+    {
+        return SpringContextService.getBean( BEAN_CHANNEL );
+    }
+
+    /**
+     * Broadcast the invalidation of a cache to every node
+     * 
+     * @param strCacheName
+     *            the name of the cache
+     */
+    public static void broadcast( String strCacheName )
+    {
+        getChannel( ).broadcast( strCacheName );
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service.cache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import fr.paris.lutece.portal.service.cache.CacheService;
+import fr.paris.lutece.portal.service.cache.CacheableService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Cache of the rendered documents downloaded repeatedly. The bytes are held in direct buffers, outside of the heap, so that a cached document costs
+ * neither a rendering nor garbage collection work when it is served. The total size of the cached documents is bounded, the least recently downloaded
+ * documents being evicted first.
+ * <p>
+ * The keys identify the content of a document (format, template revision, response and its last modification), so an entry never gets stale and the
+ * cache is not dropped by the invalidations of the other caches. It is listed in the cache management screen, with its hit and miss counters.
+ */
+public final class FormsPDFDocumentCacheService implements CacheableService
+{
+    private static final String SERVICE_NAME = "Workflow Forms PDF Rendered Documents Off-Heap Cache";
+
+    private static final String PROPERTY_ENABLED = "workflow-formspdf.documentCache.enabled";
+    private static final String PROPERTY_MAX_SIZE = "workflow-formspdf.documentCache.maxSize";
+    private static final String PROPERTY_MAX_DOCUMENT_SIZE = "workflow-formspdf.documentCache.maxDocumentSize";
+
+    private static final long DEFAULT_MAX_SIZE = 64L * 1024 * 1024;
+    private static final long DEFAULT_MAX_DOCUMENT_SIZE = 4L * 1024 * 1024;
+
+    private static FormsPDFDocumentCacheService _singleton;
+
+    private final Map<String, CachedDocument> _mapDocuments = new LinkedHashMap<>( 16, 0.75f, true );
+    private final AtomicLong _lHits = new AtomicLong( );
+    private final AtomicLong _lMisses = new AtomicLong( );
+    private final AtomicLong _lEvictions = new AtomicLong( );
+    private long _lSize;
+    private boolean _bEnabled;
+
+    /**
+     * Private constructor
+     */
+    private FormsPDFDocumentCacheService( )
+    {
+        _bEnabled = AppPropertiesService.getPropertyBoolean( PROPERTY_ENABLED, false );
+        CacheService.registerCacheableService( this );
+    }
+
+    /**
+     * Get the instance of the service
+     * 
+     * @return the instance
+     */
+    public static synchronized FormsPDFDocumentCacheService getInstance( )
+    {
+        if ( _singleton == null )
+        {
+            _singleton = new FormsPDFDocumentCacheService( );
+        }
+        return _singleton;
+    }
+
+    /**
+     * Build the key of a document
+     * 
+     * @param strFormat
+     *            the output format
+     * @param nIdTemplate
+     *            the id of the template
+     * @param nRevision
+     *            the revision of the template
+     * @param nIdFormResponse
+     *            the id of the form response
+     * @param lLastModified
+     *            the last modification of the data of the response rendered in the document
+     * @param strLocale
+     *            the locale of the rendering
+     * @return the key
+     */
+    public static String getKey( String strFormat, int nIdTemplate, int nRevision, int nIdFormResponse, long lLastModified, String strLocale )
+    {
+        return strFormat + ":" + nIdTemplate + ":" + nRevision + ":" + nIdFormResponse + ":" + lLastModified + ":" + strLocale;
+    }
+
+    /**
+     * Get a cached document
+     * 
+     * @param strKey
+     *            the key of the document
+     * @return the document, or null if it is not cached
+     */
+    public CachedDocument get( String strKey )
+    {
+        CachedDocument document;
+        synchronized( this )
+        {
+            document = _mapDocuments.get( strKey );
+        }
+        ( document != null ? _lHits : _lMisses ).incrementAndGet( );
+        return document;
+    }
+
+    /**
+     * @param lSize
+     *            the size of a document in bytes
+     * @return true if the document is small enough to be cached
+     */
+    public boolean isCacheable( long lSize )
+    {
+        return lSize >= 0 && lSize <= Math.min( AppPropertiesService.getPropertyLong( PROPERTY_MAX_SIZE, DEFAULT_MAX_SIZE ),
+                AppPropertiesService.getPropertyLong( PROPERTY_MAX_DOCUMENT_SIZE, DEFAULT_MAX_DOCUMENT_SIZE ) );
+    }
+
+    /**
+     * Copy a stored document into the cache, evicting the least recently used documents to make room for it
+     * 
+     * @param strKey
+     *            the key of the document
+     * @param inputStream
+     *            the stream reading the stored document, which is not closed
+     * @param lSize
+     *            the size of the document in bytes
+     * @param strFileName
+     *            the file name of the document
+     * @param strMimeType
+     *            the mime type of the document
+     * @return the cached document, or null if the document is larger than the maximum size of a cached document
+     * @throws IOException
+     *             if the document cannot be read
+     */
+    public CachedDocument put( String strKey, InputStream inputStream, long lSize, String strFileName, String strMimeType ) throws IOException
+    {
+        if ( !isCacheable( lSize ) )
+        {
+            return null;
+        }
+
+        ByteBuffer content = ByteBuffer.allocateDirect( (int) lSize );
+        ReadableByteChannel channel = Channels.newChannel( inputStream );
+        while ( content.hasRemaining( ) && channel.read( content ) >= 0 )
+        {
+            // read until the buffer is full
+        }
+        content.flip( );
+
+        CachedDocument document = new CachedDocument( strFileName, strMimeType, content );
+        synchronized( this )
+        {
+            CachedDocument previous = _mapDocuments.put( strKey, document );
+            _lSize += document.getSize( ) - ( previous != null ? previous.getSize( ) : 0 );
+            evict( AppPropertiesService.getPropertyLong( PROPERTY_MAX_SIZE, DEFAULT_MAX_SIZE ) );
+        }
+        return document;
+    }
+
+    /**
+     * Evict the least recently used documents until the size of the cache is within the maximum size. The direct memory of an evicted document is
+     * released when its buffer is collected, after the downloads still reading it are over.
+     */
+    private void evict( long lMaxSize )
+    {
+        Iterator<CachedDocument> iterator = _mapDocuments.values( ).iterator( );
+        while ( _lSize > lMaxSize && iterator.hasNext( ) )
+        {
+            _lSize -= iterator.next( ).getSize( );
+            iterator.remove( );
+            _lEvictions.incrementAndGet( );
+        }
+    }
+
+    /**
+     * @return the number of downloads served from the cache
+     */
+    public long getHits( )
+    {
+        return _lHits.get( );
+    }
+
+    /**
+     * @return the number of downloads of documents which were not cached
+     */
+    public long getMisses( )
+    {
+        return _lMisses.get( );
+    }
+
+    /**
+     * @return the number of documents evicted to make room for others
+     */
+    public long getEvictions( )
+    {
+        return _lEvictions.get( );
+    }
+
+    /**
+     * @return the total size in bytes of the cached documents
+     */
+    public synchronized long getSize( )
+    {
+        return _lSize;
+    }
+
+    @Override
+    public String getName( )
+    {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public synchronized boolean isCacheEnable( )
+    {
+        return _bEnabled;
+    }
+
+    @Override
+    public synchronized void enableCache( boolean bEnable )
+    {
+        _bEnabled = bEnable;
+        if ( !bEnable )
+        {
+            resetCache( );
+        }
+    }
+
+    @Override
+    public synchronized void resetCache( )
+    {
+        _mapDocuments.clear( );
+        _lSize = 0;
+    }
+
+    @Override
+    public synchronized int getCacheSize( )
+    {
+        return _mapDocuments.size( );
+    }
+
+    @Override
+    public String getInfos( )
+    {
+        return "Size : " + getSize( ) + " bytes, hits : " + getHits( ) + ", misses : " + getMisses( ) + ", evictions : " + getEvictions( );
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service.cache;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.math.NumberUtils;
+
+import fr.paris.lutece.plugins.forms.business.Form;
+import fr.paris.lutece.plugins.forms.business.FormHome;
+import fr.paris.lutece.plugins.forms.business.export.FormExportConfigHome;
+import fr.paris.lutece.plugins.forms.service.provider.GenericFormsProvider;
+import fr.paris.lutece.plugins.workflowcore.service.provider.InfoMarker;
+import fr.paris.lutece.portal.business.event.EventRessourceListener;
+import fr.paris.lutece.portal.business.event.ResourceEvent;
+import fr.paris.lutece.portal.service.cache.AbstractCacheableService;
+import fr.paris.lutece.portal.service.event.ResourceEventManager;
+
+/**
+ * Cache of the form level data used to render the documents, keyed by form id. The cache is dropped on every node when a form is modified or deleted,
+ * and it can be reset from the cache management screen.
+ */
+public final class FormsPDFFormCacheService extends AbstractCacheableService implements EventRessourceListener, ICacheInvalidationListener
+{
+    private static final String SERVICE_NAME = "Workflow Forms PDF Form Structure Cache Service";
+
+    private static FormsPDFFormCacheService _singleton;
+
+    private final AtomicLong _lHits = new AtomicLong( );
+    private final AtomicLong _lMisses = new AtomicLong( );
+
+    private volatile Collection<InfoMarker> _collectionGenericMarkerDescriptions;
+
+    /**
+     * Private constructor
+     */
+    private FormsPDFFormCacheService( )
+    {
+        initCache( );
+        ResourceEventManager.register( this );
+        FormsPDFCacheInvalidationService.getChannel( ).addListener( this );
+    }
+
+    /**
+     * Get the instance of the service
+     * 
+     * @return the instance
+     */
+    public static synchronized FormsPDFFormCacheService getInstance( )
+    {
+        if ( _singleton == null )
+        {
+            _singleton = new FormsPDFFormCacheService( );
+        }
+        return _singleton;
+    }
+
+    @Override
+    public String getName( )
+    {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public String getCacheName( )
+    {
+        return FormsPDFCacheInvalidationService.CACHE_FORMS;
+    }
+
+    @Override
+    public void invalidateCache( )
+    {
+        if ( isCacheEnable( ) )
+        {
+            resetCache( );
+        }
+    }
+
+    /**
+     * Get the structure of a form
+     * 
+     * @param nIdForm
+     *            the form id
+     * @return the structure of the form, or null if the form does not exist
+     */
+    public FormsPDFFormStructure getFormStructure( int nIdForm )
+    {
+        String strKey = String.valueOf( nIdForm );
+        FormsPDFFormStructure formStructure = (FormsPDFFormStructure) getFromCache( strKey );
+        if ( formStructure != null )
+        {
+            _lHits.incrementAndGet( );
+        }
+        else
+        {
+            _lMisses.incrementAndGet( );
+            Form form = FormHome.findByPrimaryKey( nIdForm );
+            if ( form == null )
+            {
+                return null;
+            }
+            formStructure = new FormsPDFFormStructure( form, FormExportConfigHome.findByForm( nIdForm ) );
+            putInCache( strKey, formStructure );
+        }
+        return formStructure;
+    }
+
+    /**
+     * Get the descriptions of the markers available in the templates of a form
+     * 
+     * @param nIdForm
+     *            the form id
+     * @return the descriptions of the markers of the form, or of the markers common to all the forms if the form does not exist
+     */
+    public Collection<InfoMarker> getMarkerDescriptions( int nIdForm )
+    {
+        FormsPDFFormStructure formStructure = nIdForm > 0 ? getFormStructure( nIdForm ) : null;
+        if ( formStructure != null )
+        {
+            return formStructure.getMarkerDescriptions( );
+        }
+
+        // the markers common to all the forms only depend on the providers
+        Collection<InfoMarker> collectionMarkerDescriptions = _collectionGenericMarkerDescriptions;
+        if ( collectionMarkerDescriptions == null )
+        {
+            collectionMarkerDescriptions = GenericFormsProvider.getProviderMarkerDescriptions( new Form( ) );
+            _collectionGenericMarkerDescriptions = collectionMarkerDescriptions;
+        }
+        return collectionMarkerDescriptions;
+    }
+
+    /**
+     * Get the entry types of the questions of a form
+     * 
+     * @param nIdForm
+     *            the form id
+     * @return the bean names of the entry types keyed by the position marker of their question, or null if the form does not exist
+     */
+    public Map<String, String> getEntryTypes( int nIdForm )
+    {
+        FormsPDFFormStructure formStructure = nIdForm > 0 ? getFormStructure( nIdForm ) : null;
+        return formStructure != null ? formStructure.getEntryTypes( ) : null;
+    }
+
+    /**
+     * Remove the structure of a form from the cache
+     * 
+     * @param nIdForm
+     *            the form id
+     */
+    public void invalidate( int nIdForm )
+    {
+        if ( isCacheEnable( ) )
+        {
+            removeKey( String.valueOf( nIdForm ) );
+        }
+    }
+
+    @Override
+    public void addedResource( ResourceEvent event )
+    {
+        // a new form has nothing cached
+    }
+
+    @Override
+    public void deletedResource( ResourceEvent event )
+    {
+        invalidate( event );
+    }
+
+    @Override
+    public void updatedResource( ResourceEvent event )
+    {
+        invalidate( event );
+    }
+
+    /**
+     * Drop the structure of the form concerned by an event. The forms events are only raised on the node where the form is modified, so the
+     * invalidation is broadcast to the other nodes.
+     * 
+     * @param event
+     *            the event
+     */
+    private void invalidate( ResourceEvent event )
+    {
+        if ( Form.RESOURCE_TYPE.equals( event.getTypeResource( ) ) )
+        {
+            invalidate( NumberUtils.toInt( event.getIdResource( ), NumberUtils.INTEGER_MINUS_ONE ) );
+            FormsPDFCacheInvalidationService.broadcast( FormsPDFCacheInvalidationService.CACHE_FORMS );
+        }
+    }
+
+    /**
+     * @return the number of lookups served from the cache
+     */
+    public long getHits( )
+    {
+        return _lHits.get( );
+    }
+
+    /**
+     * @return the number of lookups which were not cached
+     */
+    public long getMisses( )
+    {
+        return _lMisses.get( );
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service.cache;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import fr.paris.lutece.plugins.forms.business.Form;
+import fr.paris.lutece.plugins.forms.business.Question;
+import fr.paris.lutece.plugins.forms.business.QuestionHome;
+import fr.paris.lutece.plugins.forms.business.export.FormExportConfig;
+import fr.paris.lutece.plugins.forms.service.provider.GenericFormsProvider;
+import fr.paris.lutece.plugins.genericattributes.business.Entry;
+import fr.paris.lutece.plugins.genericattributes.business.EntryHome;
+import fr.paris.lutece.plugins.workflowcore.service.provider.InfoMarker;
+
+/**
+ * The form level data used to render the documents of the responses of a form, identical for every response of the form
+ */
+public class FormsPDFFormStructure
+{
+    private static final String MARKER_POSITION = "position_";
+
+    private final Form _form;
+    private final List<FormExportConfig> _listExportConfigs;
+    private volatile Collection<InfoMarker> _collectionMarkerDescriptions;
+    private volatile Map<Integer, Question> _mapQuestions;
+    private volatile Map<String, String> _mapEntryTypes;
+
+    /**
+     * Constructor
+     * 
+     * @param form
+     *            the form
+     * @param listExportConfigs
+     *            the export configurations of the form
+     */
+    public FormsPDFFormStructure( Form form, List<FormExportConfig> listExportConfigs )
+    {
+        _form = form;
+        _listExportConfigs = listExportConfigs;
+    }
+
+    /**
+     * @return the form
+     */
+    public Form getForm( )
+    {
+        return _form;
+    }
+
+    /**
+     * @return the export configurations of the form, used to build the name of the generated files
+     */
+    public List<FormExportConfig> getExportConfigs( )
+    {
+        return _listExportConfigs;
+    }
+
+    /**
+     * Get the descriptions of the markers available for the form. They are only needed by the template edition screen and are computed on first use.
+     * 
+     * @return the marker descriptions
+     */
+    public Collection<InfoMarker> getMarkerDescriptions( )
+    {
+        Collection<InfoMarker> collectionMarkerDescriptions = _collectionMarkerDescriptions;
+        if ( collectionMarkerDescriptions == null )
+        {
+            collectionMarkerDescriptions = GenericFormsProvider.getProviderMarkerDescriptions( _form );
+            _collectionMarkerDescriptions = collectionMarkerDescriptions;
+        }
+        return collectionMarkerDescriptions;
+    }
+
+    /**
+     * Get the questions of the form with their entry, the skeleton of the question markers filled with the responses at render time. They are loaded
+     * on first use.
+     * 
+     * @return the questions, keyed by id
+     */
+    public Map<Integer, Question> getQuestions( )
+    {
+        Map<Integer, Question> mapQuestions = _mapQuestions;
+        if ( mapQuestions == null )
+        {
+            mapQuestions = new HashMap<>( );
+            for ( Question question : QuestionHome.getListQuestionByIdForm( _form.getId( ) ) )
+            {
+                if ( question.getEntry( ) == null )
+                {
+                    question.setEntry( EntryHome.findByPrimaryKey( question.getIdEntry( ) ) );
+                }
+                mapQuestions.put( question.getId( ), question );
+            }
+            mapQuestions = Collections.unmodifiableMap( mapQuestions );
+            _mapQuestions = mapQuestions;
+        }
+        return mapQuestions;
+    }
+
+    /**
+     * Get the entry types of the questions of the form. They are only needed when a template is saved and are computed on first use.
+     * 
+     * @return the bean names of the entry types, keyed by the position marker of their question
+     */
+    public Map<String, String> getEntryTypes( )
+    {
+        Map<String, String> mapEntryTypes = _mapEntryTypes;
+        if ( mapEntryTypes == null )
+        {
+            mapEntryTypes = new HashMap<>( );
+            for ( Question question : getQuestions( ).values( ) )
+            {
+                Entry entry = question.getEntry( );
+                if ( entry != null && entry.getEntryType( ) != null )
+                {
+                    mapEntryTypes.put( MARKER_POSITION + question.getId( ), entry.getEntryType( ).getBeanName( ) );
+                }
+            }
+            mapEntryTypes = Collections.unmodifiableMap( mapEntryTypes );
+            _mapEntryTypes = mapEntryTypes;
+        }
+        return mapEntryTypes;
+    }
+}
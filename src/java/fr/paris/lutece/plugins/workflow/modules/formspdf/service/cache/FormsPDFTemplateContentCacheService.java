@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFTaskTemplate;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFTaskTemplateHome;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFTaskTemplateRevision;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFTaskTemplateRevisionHome;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.FormsPDFTemplateService;
+import fr.paris.lutece.portal.service.cache.AbstractCacheableService;
+
+/**
+ * Cache of the render-ready content of the template revisions, keyed by template id and revision number. The revisions are never modified, so an entry
+ * never gets stale : the content of a template is read from the database once per revision instead of once per rendering. The cache is dropped on
+ * every node when a template is saved, removed or rolled back, which only frees the revisions that are no longer used.
+ */
+public final class FormsPDFTemplateContentCacheService extends AbstractCacheableService implements ICacheInvalidationListener
+{
+    private static final String SERVICE_NAME = "Workflow Forms PDF Template Content Cache Service";
+
+    private static FormsPDFTemplateContentCacheService _singleton;
+
+    private final AtomicLong _lHits = new AtomicLong( );
+    private final AtomicLong _lMisses = new AtomicLong( );
+
+    /**
+     * Private constructor
+     */
+    private FormsPDFTemplateContentCacheService( )
+    {
+        initCache( );
+        FormsPDFCacheInvalidationService.getChannel( ).addListener( this );
+    }
+
+    /**
+     * Get the instance of the service
+     * 
+     * @return the instance
+     */
+    public static synchronized FormsPDFTemplateContentCacheService getInstance( )
+    {
+        if ( _singleton == null )
+        {
+            _singleton = new FormsPDFTemplateContentCacheService( );
+        }
+        return _singleton;
+    }
+
+    @Override
+    public String getName( )
+    {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public String getCacheName( )
+    {
+        return FormsPDFCacheInvalidationService.CACHE_TEMPLATES;
+    }
+
+    @Override
+    public void invalidateCache( )
+    {
+        if ( isCacheEnable( ) )
+        {
+            resetCache( );
+        }
+    }
+
+    /**
+     * Get the render-ready content of a revision of a template
+     * 
+     * @param nIdTemplate
+     *            the id of the template
+     * @param nRevision
+     *            the revision number, 0 for the templates saved before the revisions existed
+     * @return the content, or null if the template does not exist
+     */
+    public String getRenderContent( int nIdTemplate, int nRevision )
+    {
+        String strKey = nIdTemplate + ":" + nRevision;
+        String strRenderContent = (String) getFromCache( strKey );
+        if ( strRenderContent != null )
+        {
+            _lHits.incrementAndGet( );
+            return strRenderContent;
+        }
+        _lMisses.incrementAndGet( );
+
+        FormsPDFTaskTemplateRevision revision = nRevision > 0 ? FormsPDFTaskTemplateRevisionHome.findRenderContent( nIdTemplate, nRevision ) : null;
+        if ( revision == null )
+        {
+            // no immutable revision to cache, the current content is read each time
+            FormsPDFTaskTemplate formsPDFTaskTemplate = FormsPDFTaskTemplateHome.findByPrimaryKey( nIdTemplate );
+            return formsPDFTaskTemplate != null ? FormsPDFTemplateService.getRenderContent( formsPDFTaskTemplate ) : null;
+        }
+
+        FormsPDFTaskTemplate formsPDFTaskTemplate = new FormsPDFTaskTemplate( );
+        formsPDFTaskTemplate.setContent( revision.getContent( ) );
+        formsPDFTaskTemplate.setCompiledContent( revision.getCompiledContent( ) );
+        formsPDFTaskTemplate.setRte( revision.isRte( ) );
+        strRenderContent = FormsPDFTemplateService.getRenderContent( formsPDFTaskTemplate );
+        if ( strRenderContent != null )
+        {
+            putInCache( strKey, strRenderContent );
+        }
+        return strRenderContent;
+    }
+
+    /**
+     * @return the number of lookups served from the cache
+     */
+    public long getHits( )
+    {
+        return _lHits.get( );
+    }
+
+    /**
+     * @return the number of lookups which were not cached
+     */
+    public long getMisses( )
+    {
+        return _lMisses.get( );
+    }
+}
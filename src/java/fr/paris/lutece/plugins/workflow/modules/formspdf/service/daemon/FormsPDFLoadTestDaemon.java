@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service.daemon;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.apache.commons.lang3.StringUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.FormsPDFFragmentRenderer;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.loadtest.FormsPDFLoadTestService;
+import fr.paris.lutece.portal.service.daemon.Daemon;
+import fr.paris.lutece.portal.service.i18n.I18nService;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Daemon running the load test of the PDF generation. It is not declared by the plugin : on a test node, declare it in the daemons of
+ * WEB-INF/plugins/workflow-formspdf.xml with the id formspdfLoadTestDaemon, start it manually from the daemons administration and enable the load
+ * test in the properties.
+ */
+public class FormsPDFLoadTestDaemon extends Daemon
+{
+    private static final String PROPERTY_ENABLED = "workflow-formspdf.loadtest.enabled";
+    private static final String PROPERTY_ID_TASK = "workflow-formspdf.loadtest.idTask";
+    private static final String PROPERTY_THREADS = "workflow-formspdf.loadtest.threads";
+    private static final String PROPERTY_ITERATIONS = "workflow-formspdf.loadtest.iterations";
+    private static final String PROPERTY_MAX_RESOURCE_HISTORIES = "workflow-formspdf.loadtest.maxResourceHistories";
+    private static final String PROPERTY_FRAGMENT_PARALLELISM = "workflow-formspdf.loadtest.fragmentParallelism";
+    private static final String PROPERTY_REPORT_DIRECTORY = "workflow-formspdf.loadtest.reportDirectory";
+    private static final String REPORT_FILE_NAME = "formspdf-loadtest-%s.json";
+    private static final String REPORT_DATE_FORMAT = "yyyyMMdd-HHmmss";
+
+    @Override
+    public void run( )
+    {
+        if ( !AppPropertiesService.getPropertyBoolean( PROPERTY_ENABLED, false ) )
+        {
+            setLastRunLogs( "Load test disabled" );
+            return;
+        }
+
+        try
+        {
+            JSONObject report;
+            String strFragmentParallelism = AppPropertiesService.getProperty( PROPERTY_FRAGMENT_PARALLELISM );
+            if ( StringUtils.isBlank( strFragmentParallelism ) )
+            {
+                report = runLoadTest( null );
+            }
+            else
+            {
+                // scaling curve of the parallel rendering of the questions : one run for each number of render threads
+                report = new JSONObject( );
+                JSONArray runs = new JSONArray( );
+                for ( String strParallelism : strFragmentParallelism.split( "," ) )
+                {
+                    int nParallelism = Integer.parseInt( strParallelism.trim( ) );
+                    // each run has its own renderer, the renderings of the node keep the one of the properties
+                    FormsPDFFragmentRenderer fragmentRenderer = FormsPDFFragmentRenderer.createBenchmarkRenderer( nParallelism );
+                    try
+                    {
+                        JSONObject run = runLoadTest( fragmentRenderer );
+                        run.put( "fragmentParallelism", nParallelism );
+                        runs.put( run );
+                    }
+                    finally
+                    {
+                        fragmentRenderer.shutdown( );
+                    }
+                }
+                report.put( "availableProcessors", Runtime.getRuntime( ).availableProcessors( ) );
+                report.put( "runs", runs );
+            }
+
+            String strReport = report.toString( 2 );
+            Path directory = Paths.get( AppPropertiesService.getProperty( PROPERTY_REPORT_DIRECTORY, System.getProperty( "java.io.tmpdir" ) ) );
+            Files.createDirectories( directory );
+            Path file = directory.resolve( String.format( REPORT_FILE_NAME, new SimpleDateFormat( REPORT_DATE_FORMAT ).format( new Date( ) ) ) );
+            Files.write( file, strReport.getBytes( StandardCharsets.UTF_8 ) );
+
+            setLastRunLogs( "Report written to " + file + "\n" + strReport );
+        }
+        catch( IOException | RuntimeException e )
+        {
+            AppLogService.error( "Load test failed", e );
+            setLastRunLogs( "Load test failed : " + e.getMessage( ) );
+        }
+    }
+
+    /**
+     * Run the load test configured in the properties
+     * 
+     * @param fragmentRenderer
+     *            the renderer of the questions, null for the renderer configured in the properties
+     * @return the report
+     */
+    private JSONObject runLoadTest( FormsPDFFragmentRenderer fragmentRenderer )
+    {
+        return FormsPDFLoadTestService.run( AppPropertiesService.getPropertyInt( PROPERTY_ID_TASK, 0 ), AppPropertiesService.getPropertyInt( PROPERTY_THREADS, 4 ),
+                AppPropertiesService.getPropertyInt( PROPERTY_ITERATIONS, 10 ), AppPropertiesService.getPropertyInt( PROPERTY_MAX_RESOURCE_HISTORIES, 100 ),
+                fragmentRenderer, I18nService.getDefaultLocale( ) );
+    }
+}
@@ -0,0 +1,377 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service.loadtest;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONObject;
+
+import fr.paris.lutece.plugins.forms.business.FormResponse;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFLoadTestHome;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.FormsPDFFragmentRenderer;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.FormsPDFRenderService;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.FormsPDFRenderStages;
+import fr.paris.lutece.portal.service.util.AppLogService;
+
+/**
+ * Load test of the PDF generation. A number of threads render the documents of a task for the latest form responses for a number of iterations, and the
+ * throughput, the latency percentiles, the heap allocated per document, the heap and GC statistics and the durations of the rendering stages are
+ * reported as JSON.
+ * <p>
+ * The documents are rendered synchronously in the calling thread and their files are deleted : the task itself is not processed, so the test creates
+ * no job, render descriptor, snapshot nor file handed to the temporary file generator service.
+ */
+public final class FormsPDFLoadTestService
+{
+    private static final double [ ] PERCENTILES = {
+            50, 90, 95, 99
+    };
+    private static final double NANOS_PER_MILLI = 1_000_000d;
+
+    /**
+     * Private constructor
+     */
+    private FormsPDFLoadTestService( )
+    {
+    }
+
+    /**
+     * Run a load test
+     * 
+     * @param nIdTask
+     *            the id of the task whose documents are rendered
+     * @param nThreads
+     *            the number of concurrent threads
+     * @param nIterations
+     *            the number of renderings of each thread
+     * @param nMaxResourceHistories
+     *            the maximum number of resource histories of form responses processed in turn by the threads
+     * @param locale
+     *            the locale
+     * @return the report
+     */
+    public static JSONObject run( int nIdTask, int nThreads, int nIterations, int nMaxResourceHistories, Locale locale )
+    {
+        return run( nIdTask, nThreads, nIterations, nMaxResourceHistories, null, locale );
+    }
+
+    /**
+     * Run a load test rendering the questions with a renderer of its own. The renderer is bound to the threads of the test only, so the renderings of
+     * the node keep the configuration of the properties.
+     * 
+     * @param nIdTask
+     *            the id of the task whose documents are rendered
+     * @param nThreads
+     *            the number of concurrent threads
+     * @param nIterations
+     *            the number of renderings of each thread
+     * @param nMaxResourceHistories
+     *            the maximum number of resource histories of form responses processed in turn by the threads
+     * @param fragmentRenderer
+     *            the renderer of the questions, null for the renderer configured in the properties
+     * @param locale
+     *            the locale
+     * @return the report
+     */
+    public static JSONObject run( int nIdTask, int nThreads, int nIterations, int nMaxResourceHistories, FormsPDFFragmentRenderer fragmentRenderer,
+            Locale locale )
+    {
+        List<Integer> listIdHistories = FormsPDFLoadTestHome.findResourceHistoryIds( FormResponse.RESOURCE_TYPE, nMaxResourceHistories );
+        if ( listIdHistories.isEmpty( ) )
+        {
+            throw new IllegalStateException( "No form response history to process" );
+        }
+
+        ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>( );
+        AtomicLong lWorkersAllocatedBytes = new AtomicLong( );
+        AtomicInteger nErrors = new AtomicInteger( );
+        AtomicInteger nNext = new AtomicInteger( );
+        CountDownLatch start = new CountDownLatch( 1 );
+        ExecutorService executor = Executors.newFixedThreadPool( nThreads );
+
+        for ( int i = 0; i < nThreads; i++ )
+        {
+            executor.execute( ( ) -> {
+                try
+                {
+                    start.await( );
+                }
+                catch( InterruptedException e )
+                {
+                    Thread.currentThread( ).interrupt( );
+                    return;
+                }
+                long lAllocatedAtStart = getCurrentThreadAllocatedBytes( );
+                FormsPDFFragmentRenderer.bind( fragmentRenderer );
+                try
+                {
+                    for ( int j = 0; j < nIterations; j++ )
+                    {
+                        int nIdHistory = listIdHistories.get( Math.floorMod( nNext.getAndIncrement( ), listIdHistories.size( ) ) );
+                        long lStart = System.nanoTime( );
+                        try
+                        {
+                            render( nIdTask, nIdHistory, locale );
+                            latencies.add( System.nanoTime( ) - lStart );
+                        }
+                        catch( Exception e )
+                        {
+                            nErrors.incrementAndGet( );
+                            AppLogService.error( "Load test : rendering of the resource history " + nIdHistory + " failed", e );
+                        }
+                    }
+                }
+                finally
+                {
+                    FormsPDFFragmentRenderer.bind( null );
+                }
+                lWorkersAllocatedBytes.addAndGet( getCurrentThreadAllocatedBytes( ) - lAllocatedAtStart );
+            } );
+        }
+
+        Map<String, Long> mapGcBefore = getGcStatistics( );
+        Map<Long, Long> mapAllocatedBefore = getThreadsAllocatedBytes( );
+        FormsPDFRenderStages.startRecording( );
+        long lStart = System.nanoTime( );
+        start.countDown( );
+        executor.shutdown( );
+        try
+        {
+            while ( !executor.awaitTermination( 1, TimeUnit.MINUTES ) )
+            {
+                AppLogService.info( "Load test : " + latencies.size( ) + " renderings done" );
+            }
+        }
+        catch( InterruptedException e )
+        {
+            executor.shutdownNow( );
+            Thread.currentThread( ).interrupt( );
+        }
+        long lDuration = System.nanoTime( ) - lStart;
+        long lAllocatedBytes = lWorkersAllocatedBytes.get( ) + getAllocatedBytesSince( mapAllocatedBefore );
+        Map<String, long [ ]> mapStages = FormsPDFRenderStages.stopRecording( );
+
+        JSONObject report = new JSONObject( );
+        report.put( "idTask", nIdTask );
+        report.put( "threads", nThreads );
+        report.put( "iterations", nIterations );
+        report.put( "resourceHistories", listIdHistories.size( ) );
+        report.put( "processed", latencies.size( ) );
+        report.put( "errors", nErrors.get( ) );
+        report.put( "durationMs", lDuration / NANOS_PER_MILLI );
+        report.put( "throughputPerSecond", latencies.size( ) / ( lDuration / 1_000_000_000d ) );
+        report.put( "latency", toStatistics( latencies.stream( ).mapToLong( Long::longValue ).toArray( ) ) );
+
+        JSONObject stages = new JSONObject( );
+        for ( Map.Entry<String, long [ ]> stage : mapStages.entrySet( ) )
+        {
+            stages.put( stage.getKey( ), toStatistics( stage.getValue( ) ) );
+        }
+        report.put( "stages", stages );
+        report.put( "heap", getHeapStatistics( ) );
+
+        JSONObject gc = new JSONObject( );
+        for ( Map.Entry<String, Long> gcAfter : getGcStatistics( ).entrySet( ) )
+        {
+            gc.put( gcAfter.getKey( ), gcAfter.getValue( ) - mapGcBefore.getOrDefault( gcAfter.getKey( ), 0L ) );
+        }
+        report.put( "gc", gc );
+
+        if ( lAllocatedBytes >= 0 )
+        {
+            JSONObject allocation = new JSONObject( );
+            allocation.put( "allocatedBytes", lAllocatedBytes );
+            allocation.put( "allocatedBytesPerDocument", latencies.isEmpty( ) ? 0 : lAllocatedBytes / latencies.size( ) );
+            report.put( "allocation", allocation );
+        }
+
+        return report;
+    }
+
+    /**
+     * Render a document and delete its file
+     * 
+     * @param nIdTask
+     *            the id of the task
+     * @param nIdHistory
+     *            the id of the resource history
+     * @param locale
+     *            the locale
+     * @throws IOException
+     *             if the document cannot be written
+     */
+    private static void render( int nIdTask, int nIdHistory, Locale locale ) throws IOException
+    {
+        Path file = FormsPDFRenderService.getInstance( ).createGenerator( nIdTask, nIdHistory, null, locale ).generateFile( );
+        Files.deleteIfExists( file );
+        Files.deleteIfExists( file.getParent( ) );
+    }
+
+    /**
+     * @param durations
+     *            durations in nanoseconds
+     * @return the count, mean, percentiles and max of the durations in milliseconds
+     */
+    private static JSONObject toStatistics( long [ ] durations )
+    {
+        JSONObject statistics = new JSONObject( );
+        statistics.put( "count", durations.length );
+        if ( durations.length == 0 )
+        {
+            return statistics;
+        }
+        long [ ] sorted = durations.clone( );
+        Arrays.sort( sorted );
+        statistics.put( "meanMs", Arrays.stream( sorted ).average( ).orElse( 0 ) / NANOS_PER_MILLI );
+        for ( double dPercentile : PERCENTILES )
+        {
+            int nIndex = (int) Math.ceil( dPercentile / 100 * sorted.length ) - 1;
+            statistics.put( "p" + (int) dPercentile + "Ms", sorted [Math.max( nIndex, 0 )] / NANOS_PER_MILLI );
+        }
+        statistics.put( "maxMs", sorted [sorted.length - 1] / NANOS_PER_MILLI );
+        return statistics;
+    }
+
+    /**
+     * @return the heap usage at the end of the test
+     */
+    private static JSONObject getHeapStatistics( )
+    {
+        MemoryUsage usage = ManagementFactory.getMemoryMXBean( ).getHeapMemoryUsage( );
+        JSONObject heap = new JSONObject( );
+        heap.put( "usedBytes", usage.getUsed( ) );
+        heap.put( "committedBytes", usage.getCommitted( ) );
+        heap.put( "maxBytes", usage.getMax( ) );
+        return heap;
+    }
+
+    /**
+     * @return the measure of the heap allocated by the threads, null if the JVM does not measure it
+     */
+    private static com.sun.management.ThreadMXBean getAllocationMXBean( )
+    {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean( );
+        if ( threadMXBean instanceof com.sun.management.ThreadMXBean && ( (com.sun.management.ThreadMXBean) threadMXBean ).isThreadAllocatedMemoryEnabled( ) )
+        {
+            return (com.sun.management.ThreadMXBean) threadMXBean;
+        }
+        return null;
+    }
+
+    /**
+     * @return the heap allocated by the current thread, 0 if the JVM does not measure it
+     */
+    private static long getCurrentThreadAllocatedBytes( )
+    {
+        com.sun.management.ThreadMXBean threadMXBean = getAllocationMXBean( );
+        return threadMXBean != null ? threadMXBean.getThreadAllocatedBytes( Thread.currentThread( ).getId( ) ) : 0;
+    }
+
+    /**
+     * @return the heap allocated by each live thread, empty if the JVM does not measure it
+     */
+    private static Map<Long, Long> getThreadsAllocatedBytes( )
+    {
+        Map<Long, Long> mapAllocated = new HashMap<>( );
+        com.sun.management.ThreadMXBean threadMXBean = getAllocationMXBean( );
+        if ( threadMXBean != null )
+        {
+            long [ ] ids = threadMXBean.getAllThreadIds( );
+            long [ ] allocated = threadMXBean.getThreadAllocatedBytes( ids );
+            for ( int i = 0; i < ids.length; i++ )
+            {
+                mapAllocated.put( ids [i], allocated [i] );
+            }
+        }
+        return mapAllocated;
+    }
+
+    /**
+     * Measure the heap allocated during the test by the threads living before and after it, such as the render threads. The threads of the test measure
+     * their own allocations since they end with the test.
+     * 
+     * @param mapAllocatedBefore
+     *            the heap allocated by each thread before the test
+     * @return the heap allocated by the threads still alive, -1 if the JVM does not measure it
+     */
+    private static long getAllocatedBytesSince( Map<Long, Long> mapAllocatedBefore )
+    {
+        if ( getAllocationMXBean( ) == null )
+        {
+            return -1;
+        }
+        long lAllocated = 0;
+        for ( Map.Entry<Long, Long> allocatedAfter : getThreadsAllocatedBytes( ).entrySet( ) )
+        {
+            Long lBefore = mapAllocatedBefore.get( allocatedAfter.getKey( ) );
+            if ( lBefore != null && lBefore >= 0 && allocatedAfter.getValue( ) >= 0 )
+            {
+                lAllocated += allocatedAfter.getValue( ) - lBefore;
+            }
+        }
+        return lAllocated;
+    }
+
+    /**
+     * @return the cumulated number of collections and collection time in milliseconds of each garbage collector
+     */
+    private static Map<String, Long> getGcStatistics( )
+    {
+        Map<String, Long> mapStatistics = new HashMap<>( );
+        for ( GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans( ) )
+        {
+            mapStatistics.put( gc.getName( ) + ".count", gc.getCollectionCount( ) );
+            mapStatistics.put( gc.getName( ) + ".timeMs", gc.getCollectionTime( ) );
+        }
+        return mapStatistics;
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service.metrics;
+
+import java.sql.Timestamp;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFRenderStats;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFRenderStatsHome;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.FormsPDFJobService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Render metrics of the node, shown by the performance dashboard. The durations and sizes of the renderings of each template are kept in memory, the
+ * latest durations in ring buffers to compute the percentiles, and the metrics of each period are persisted by the metrics daemon so that the history
+ * of all the nodes can be compared.
+ */
+public final class FormsPDFMetricsService
+{
+    private static final String PROPERTY_ENABLED = "workflow-formspdf.metrics.enabled";
+    private static final String PROPERTY_RING_SIZE = "workflow-formspdf.metrics.ringSize";
+    private static final String PROPERTY_MAX_FAILURES = "workflow-formspdf.metrics.maxFailures";
+    private static final String PROPERTY_RETENTION = "workflow-formspdf.metrics.retention";
+
+    private static final int DEFAULT_RING_SIZE = 1024;
+    private static final int DEFAULT_MAX_FAILURES = 50;
+    private static final int DEFAULT_RETENTION = 30;
+
+    private static FormsPDFMetricsService _singleton = new FormsPDFMetricsService( );
+
+    private final Map<Integer, TemplateRenderMetrics> _mapMetrics = new ConcurrentHashMap<>( );
+    private final Deque<RenderFailure> _recentFailures = new ArrayDeque<>( );
+
+    /**
+     * Private constructor
+     */
+    private FormsPDFMetricsService( )
+    {
+    }
+
+    /**
+     * Get the instance of the service
+     * 
+     * @return the instance
+     */
+    public static FormsPDFMetricsService getInstance( )
+    {
+        return _singleton;
+    }
+
+    /**
+     * @return true if the renderings are measured
+     */
+    public boolean isEnabled( )
+    {
+        return AppPropertiesService.getPropertyBoolean( PROPERTY_ENABLED, true );
+    }
+
+    /**
+     * Record a rendering
+     * 
+     * @param nIdTemplate
+     *            the id of the template
+     * @param lDuration
+     *            the duration of the rendering in nanoseconds
+     * @param lSize
+     *            the size of the document in bytes
+     */
+    public void recordRender( int nIdTemplate, long lDuration, long lSize )
+    {
+        if ( isEnabled( ) )
+        {
+            getMetrics( nIdTemplate ).recordRender( TimeUnit.NANOSECONDS.toMillis( lDuration ), lSize );
+        }
+    }
+
+    /**
+     * Record a failed rendering
+     * 
+     * @param nIdTemplate
+     *            the id of the template
+     * @param lDuration
+     *            the duration before the failure in nanoseconds
+     * @param strError
+     *            the error
+     */
+    public void recordFailure( int nIdTemplate, long lDuration, String strError )
+    {
+        if ( !isEnabled( ) )
+        {
+            return;
+        }
+        long lDurationMillis = TimeUnit.NANOSECONDS.toMillis( lDuration );
+        getMetrics( nIdTemplate ).recordFailure( lDurationMillis );
+        int nMaxFailures = AppPropertiesService.getPropertyInt( PROPERTY_MAX_FAILURES, DEFAULT_MAX_FAILURES );
+        synchronized( _recentFailures )
+        {
+            _recentFailures.addFirst( new RenderFailure( nIdTemplate, lDurationMillis, strError ) );
+            while ( _recentFailures.size( ) > nMaxFailures )
+            {
+                _recentFailures.removeLast( );
+            }
+        }
+    }
+
+    /**
+     * @return the metrics of the templates rendered since the start of the node, slowest templates first
+     */
+    public List<FormsPDFRenderStats> getTemplateMetrics( )
+    {
+        List<FormsPDFRenderStats> listStats = new ArrayList<>( _mapMetrics.size( ) );
+        for ( TemplateRenderMetrics metrics : _mapMetrics.values( ) )
+        {
+            listStats.add( metrics.snapshot( ) );
+        }
+        listStats.sort( Comparator.comparingLong( FormsPDFRenderStats::getP95Duration ).reversed( ) );
+        return listStats;
+    }
+
+    /**
+     * @return the latest failed renderings of the node, latest first
+     */
+    public List<RenderFailure> getRecentFailures( )
+    {
+        synchronized( _recentFailures )
+        {
+            return new ArrayList<>( _recentFailures );
+        }
+    }
+
+    /**
+     * Get the persisted metrics of all the nodes
+     * 
+     * @param nHours
+     *            the number of hours of history
+     * @return the metrics of each template over the period, slowest templates first
+     */
+    public List<FormsPDFRenderStats> getHistory( int nHours )
+    {
+        return FormsPDFRenderStatsHome.findAggregatedSince( new Timestamp( System.currentTimeMillis( ) - TimeUnit.HOURS.toMillis( nHours ) ) );
+    }
+
+    /**
+     * Persist the metrics of the current period of each template and start a new period, then delete the metrics older than the retention delay
+     * 
+     * @return the number of templates whose metrics were persisted
+     */
+    public int persist( )
+    {
+        String strNodeId = FormsPDFJobService.getInstance( ).getNodeId( );
+        int nPersisted = 0;
+        for ( TemplateRenderMetrics metrics : _mapMetrics.values( ) )
+        {
+            FormsPDFRenderStats stats = metrics.drainPeriod( strNodeId );
+            if ( stats != null )
+            {
+                FormsPDFRenderStatsHome.create( stats );
+                nPersisted++;
+            }
+        }
+
+        long lRetention = TimeUnit.DAYS.toMillis( AppPropertiesService.getPropertyInt( PROPERTY_RETENTION, DEFAULT_RETENTION ) );
+        FormsPDFRenderStatsHome.removeBefore( new Timestamp( System.currentTimeMillis( ) - lRetention ) );
+        return nPersisted;
+    }
+
+    /**
+     * Drop the in-memory metrics of the node, the metrics not persisted yet being lost
+     */
+    public void reset( )
+    {
+        _mapMetrics.clear( );
+        synchronized( _recentFailures )
+        {
+            _recentFailures.clear( );
+        }
+    }
+
+    private TemplateRenderMetrics getMetrics( int nIdTemplate )
+    {
+        return _mapMetrics.computeIfAbsent( nIdTemplate,
+                nId -> new TemplateRenderMetrics( nId, AppPropertiesService.getPropertyInt( PROPERTY_RING_SIZE, DEFAULT_RING_SIZE ) ) );
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Ring buffer of the latest durations, the oldest being overwritten once it is full. It is not thread safe, its owner synchronizes the accesses.
+ */
+final class LatencyRing
+{
+    private final long [ ] _samples;
+    private int _nNext;
+    private int _nSize;
+
+    /**
+     * Constructor
+     * 
+     * @param nCapacity
+     *            the number of durations kept
+     */
+    LatencyRing( int nCapacity )
+    {
+        _samples = new long [ Math.max( 1, nCapacity )];
+    }
+
+    /**
+     * Add a duration
+     * 
+     * @param lDuration
+     *            the duration
+     */
+    void add( long lDuration )
+    {
+        _samples [_nNext] = lDuration;
+        _nNext = ( _nNext + 1 ) % _samples.length;
+        _nSize = Math.min( _nSize + 1, _samples.length );
+    }
+
+    /**
+     * Compute percentiles of the kept durations, sorting them once
+     * 
+     * @param percentiles
+     *            the percentiles, between 0 and 100
+     * @return the duration of each percentile, 0 if no duration is kept
+     */
+    long [ ] percentiles( double... percentiles )
+    {
+        long [ ] result = new long [ percentiles.length];
+        if ( _nSize == 0 )
+        {
+            return result;
+        }
+        long [ ] sorted = Arrays.copyOf( _samples, _nSize );
+        Arrays.sort( sorted );
+        for ( int i = 0; i < percentiles.length; i++ )
+        {
+            // nearest rank
+            int nRank = (int) Math.ceil( percentiles [i] / 100 * _nSize );
+            result [i] = sorted [Math.min( _nSize, Math.max( 1, nRank ) ) - 1];
+        }
+        return result;
+    }
+
+    /**
+     * Drop the kept durations
+     */
+    void clear( )
+    {
+        _nNext = 0;
+        _nSize = 0;
+    }
+}
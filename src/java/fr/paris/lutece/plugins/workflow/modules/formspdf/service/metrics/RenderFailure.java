@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service.metrics;
+
+import java.util.Date;
+
+/**
+ * A failed rendering
+ */
+public class RenderFailure
+{
+    private final int _nIdTemplate;
+    private final Date _date;
+    private final long _lDuration;
+    private final String _strError;
+
+    /**
+     * Constructor
+     * 
+     * @param nIdTemplate
+     *            the id of the template
+     * @param lDuration
+     *            the duration in milliseconds before the failure
+     * @param strError
+     *            the error
+     */
+    RenderFailure( int nIdTemplate, long lDuration, String strError )
+    {
+        _nIdTemplate = nIdTemplate;
+        _date = new Date( );
+        _lDuration = lDuration;
+        _strError = strError;
+    }
+
+    /**
+     * @return the id of the template
+     */
+    public int getIdTemplate( )
+    {
+        return _nIdTemplate;
+    }
+
+    /**
+     * @return the date of the failure
+     */
+    public Date getDate( )
+    {
+        return _date;
+    }
+
+    /**
+     * @return the duration in milliseconds before the failure
+     */
+    public long getDuration( )
+    {
+        return _lDuration;
+    }
+
+    /**
+     * @return the error
+     */
+    public String getError( )
+    {
+        return _strError;
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service.metrics;
+
+import java.sql.Timestamp;
+
+import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFRenderStats;
+
+/**
+ * Render metrics of a template on this node : the totals since the start of the node with the latest durations, and the totals of the current period
+ * until they are persisted. The durations are in milliseconds.
+ */
+final class TemplateRenderMetrics
+{
+    private static final double [ ] PERCENTILES = {
+            50, 95, 99
+    };
+
+    private final int _nIdTemplate;
+    private final Timestamp _dateStart;
+    private final LatencyRing _recentDurations;
+    private int _nRenders;
+    private int _nFailures;
+    private long _lTotalDuration;
+    private long _lMaxDuration;
+    private long _lTotalSize;
+
+    private final LatencyRing _periodDurations;
+    private Timestamp _periodStart;
+    private int _nPeriodRenders;
+    private int _nPeriodFailures;
+    private long _lPeriodDuration;
+    private long _lPeriodMaxDuration;
+    private long _lPeriodSize;
+
+    /**
+     * Constructor
+     * 
+     * @param nIdTemplate
+     *            the id of the template
+     * @param nRingSize
+     *            the number of durations kept to compute the percentiles
+     */
+    TemplateRenderMetrics( int nIdTemplate, int nRingSize )
+    {
+        _nIdTemplate = nIdTemplate;
+        _dateStart = new Timestamp( System.currentTimeMillis( ) );
+        _periodStart = _dateStart;
+        _recentDurations = new LatencyRing( nRingSize );
+        _periodDurations = new LatencyRing( nRingSize );
+    }
+
+    /**
+     * Record a rendering
+     * 
+     * @param lDuration
+     *            the duration of the rendering
+     * @param lSize
+     *            the size of the document
+     */
+    synchronized void recordRender( long lDuration, long lSize )
+    {
+        _nRenders++;
+        _lTotalSize += lSize;
+        _nPeriodRenders++;
+        _lPeriodSize += lSize;
+        recordDuration( lDuration );
+    }
+
+    /**
+     * Record a failed rendering
+     * 
+     * @param lDuration
+     *            the duration before the failure
+     */
+    synchronized void recordFailure( long lDuration )
+    {
+        _nFailures++;
+        _nPeriodFailures++;
+        recordDuration( lDuration );
+    }
+
+    private void recordDuration( long lDuration )
+    {
+        _recentDurations.add( lDuration );
+        _lTotalDuration += lDuration;
+        _lMaxDuration = Math.max( _lMaxDuration, lDuration );
+        _periodDurations.add( lDuration );
+        _lPeriodDuration += lDuration;
+        _lPeriodMaxDuration = Math.max( _lPeriodMaxDuration, lDuration );
+    }
+
+    /**
+     * @return the metrics since the start of the node, the percentiles being those of the latest durations
+     */
+    synchronized FormsPDFRenderStats snapshot( )
+    {
+        return toStats( _dateStart, _nRenders, _nFailures, _lTotalDuration, _lMaxDuration, _lTotalSize, _recentDurations );
+    }
+
+    /**
+     * Get the metrics of the current period and start a new period
+     * 
+     * @param strNodeId
+     *            the id of the node
+     * @return the metrics of the period, or null if nothing was rendered during the period
+     */
+    synchronized FormsPDFRenderStats drainPeriod( String strNodeId )
+    {
+        FormsPDFRenderStats stats = null;
+        if ( _nPeriodRenders + _nPeriodFailures > 0 )
+        {
+            stats = toStats( _periodStart, _nPeriodRenders, _nPeriodFailures, _lPeriodDuration, _lPeriodMaxDuration, _lPeriodSize, _periodDurations );
+            stats.setNodeId( strNodeId );
+        }
+        _periodStart = new Timestamp( System.currentTimeMillis( ) );
+        _nPeriodRenders = 0;
+        _nPeriodFailures = 0;
+        _lPeriodDuration = 0L;
+        _lPeriodMaxDuration = 0L;
+        _lPeriodSize = 0L;
+        _periodDurations.clear( );
+        return stats;
+    }
+
+    private FormsPDFRenderStats toStats( Timestamp dateStart, int nRenders, int nFailures, long lTotalDuration, long lMaxDuration, long lTotalSize,
+            LatencyRing durations )
+    {
+        long [ ] percentiles = durations.percentiles( PERCENTILES );
+        FormsPDFRenderStats stats = new FormsPDFRenderStats( );
+        stats.setIdTemplate( _nIdTemplate );
+        stats.setPeriodStart( dateStart );
+        stats.setRenders( nRenders );
+        stats.setFailures( nFailures );
+        stats.setTotalDuration( lTotalDuration );
+        stats.setMaxDuration( lMaxDuration );
+        stats.setP50Duration( percentiles [0] );
+        stats.setP95Duration( percentiles [1] );
+        stats.setP99Duration( percentiles [2] );
+        stats.setTotalSize( lTotalSize );
+        return stats;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service.output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.FormsPDFScratchBuffers;
+
+/**
+ * Writes documents as xhtml, a lightweight preview which does not need any layout
+ */
+public class HtmlOutputWriter implements IOutputWriter
+{
+    public static final String FORMAT = "html";
+
+    private static final String MIME_TYPE = "text/html";
+    private static final String EXTENSION = ".html";
+
+    @Override
+    public String getFormat( )
+    {
+        return FORMAT;
+    }
+
+    @Override
+    public String getMimeType( )
+    {
+        return MIME_TYPE;
+    }
+
+    @Override
+    public String getExtension( )
+    {
+        return EXTENSION;
+    }
+
+    @Override
+    public void write( MergedDocument document, OutputStream outputStream, Path workDirectory ) throws IOException
+    {
+        // the document is serialised into the text buffer of the thread, jsoup serialising into a writer node by node being far more costly
+        StringBuilder sbHtml = FormsPDFScratchBuffers.takeText( );
+        try
+        {
+            document.getDocument( ).html( sbHtml );
+            FormsPDFScratchBuffers.writeText( sbHtml, outputStream );
+        }
+        finally
+        {
+            FormsPDFScratchBuffers.release( sbHtml );
+        }
+    }
+}
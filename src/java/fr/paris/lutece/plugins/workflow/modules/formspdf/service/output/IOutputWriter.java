@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service.output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+
+/**
+ * Writes the merged document in an output format. The writers are
+ * declared as Spring beans and selected by the format of the task configuration.
+ */
+public interface IOutputWriter
+{
+    /**
+     * @return the code of the format, as listed in the task configuration
+     */
+    String getFormat( );
+
+    /**
+     * @return the mime type of the written files
+     */
+    String getMimeType( );
+
+    /**
+     * @return the extension of the written files, including the dot
+     */
+    String getExtension( );
+
+    /**
+     * @return true if the writer is configured to write documents, the formats of the unavailable writers are not offered in the task configuration
+     */
+    default boolean isAvailable( )
+    {
+        return true;
+    }
+
+    /**
+     * Write a document
+     * 
+     * @param document
+     *            the merged document
+     * @param outputStream
+     *            the stream receiving the output, which is not closed
+     * @param workDirectory
+     *            a directory which can receive temporary files
+     * @throws IOException
+     *             if the writing fails
+     */
+    void write( MergedDocument document, OutputStream outputStream, Path workDirectory ) throws IOException;
+}
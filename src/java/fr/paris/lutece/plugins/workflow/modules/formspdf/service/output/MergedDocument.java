@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service.output;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Entities.EscapeMode;
+
+/**
+ * The output of the merge stage shared by all the output writers : the template processed with the markers of a response. The html is normalised as
+ * xhtml on first use.
+ */
+public class MergedDocument
+{
+    private static final String CHARSET = "UTF-8";
+
+    private final String _strHtml;
+    private Document _document;
+
+    /**
+     * Constructor
+     * 
+     * @param strHtml
+     *            the html produced by the template
+     */
+    public MergedDocument( String strHtml )
+    {
+        _strHtml = strHtml;
+    }
+
+    /**
+     * @return the length of the html produced by the template
+     */
+    public int getLength( )
+    {
+        return _strHtml.length( );
+    }
+
+    /**
+     * Get the document normalised as xhtml
+     * 
+     * @return the document
+     */
+    public Document getDocument( )
+    {
+        if ( _document == null )
+        {
+            _document = Jsoup.parse( _strHtml, CHARSET );
+            _document.outputSettings( ).syntax( Document.OutputSettings.Syntax.xml );
+            _document.outputSettings( ).escapeMode( EscapeMode.base.xhtml );
+            _document.outputSettings( ).charset( CHARSET );
+        }
+        return _document;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service.output;
+
+import java.util.List;
+
+import fr.paris.lutece.portal.service.spring.SpringContextService;
+
+/**
+ * Gives access to the output writers declared in the Spring context
+ */
+public final class OutputWriterService
+{
+    /**
+     * Private constructor
+     */
+    private OutputWriterService( )
+    {
+    }
+
+    /**
+     * Get the writer of a format
+     * 
+     * @param strFormat
+     *            the format of the task configuration
+     * @return the writer of the format, or the PDF writer if the format is null or unknown
+     */
+    public static IOutputWriter getWriter( String strFormat )
+    {
+        IOutputWriter pdfWriter = null;
+        List<IOutputWriter> listWriters = SpringContextService.getBeansOfType( IOutputWriter.class );
+        for ( IOutputWriter writer : listWriters )
+        {
+            if ( writer.getFormat( ).equals( strFormat ) )
+            {
+                return writer;
+            }
+            if ( PdfOutputWriter.FORMAT.equals( writer.getFormat( ) ) )
+            {
+                pdfWriter = writer;
+            }
+        }
+        return pdfWriter != null ? pdfWriter : new PdfOutputWriter( );
+    }
+
+    /**
+     * Check if the writer of a format can write documents
+     * 
+     * @param strFormat
+     *            the format
+     * @return false if the writer of the format is not configured, true otherwise
+     */
+    public static boolean isAvailable( String strFormat )
+    {
+        for ( IOutputWriter writer : SpringContextService.getBeansOfType( IOutputWriter.class ) )
+        {
+            if ( writer.getFormat( ).equals( strFormat ) )
+            {
+                return writer.isAvailable( );
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service.output;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.openhtmltopdf.pdfboxout.PdfRendererBuilder;
+import com.openhtmltopdf.pdfboxout.PdfRendererBuilder.PdfAConformance;
+
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Renders archivable PDF/A documents. PDF/A requires an output intent and embedded fonts : the ICC color profile and the fonts are read from the
+ * configured files, and the fonts are embedded as subsets to keep the documents small.
+ */
+public class PdfAOutputWriter extends PdfOutputWriter
+{
+    public static final String FORMAT = "pdfa";
+
+    private static final String PROPERTY_CONFORMANCE = "workflow-formspdf.pdfa.conformance";
+    private static final String PROPERTY_COLOR_PROFILE = "workflow-formspdf.pdfa.colorProfile";
+    private static final String PROPERTY_FONTS = "workflow-formspdf.pdfa.fonts";
+    private static final String DEFAULT_CONFORMANCE = "PDFA_2_U";
+    private static final String SEPARATOR_FONTS = ",";
+    private static final String SEPARATOR_FONT_FAMILY = "=";
+
+    private final byte [ ] _colorProfile;
+
+    /**
+     * Constructor
+     */
+    public PdfAOutputWriter( )
+    {
+        byte [ ] colorProfile = null;
+        String strColorProfile = AppPropertiesService.getProperty( PROPERTY_COLOR_PROFILE );
+        if ( StringUtils.isNotEmpty( strColorProfile ) )
+        {
+            try
+            {
+                colorProfile = Files.readAllBytes( Paths.get( strColorProfile ) );
+            }
+            catch( IOException e )
+            {
+                AppLogService.error( "Unable to read the PDF/A color profile " + strColorProfile, e );
+            }
+        }
+        _colorProfile = colorProfile;
+    }
+
+    @Override
+    public String getFormat( )
+    {
+        return FORMAT;
+    }
+
+    /**
+     * @return true if the color profile required by PDF/A is configured and readable
+     */
+    @Override
+    public boolean isAvailable( )
+    {
+        return _colorProfile != null;
+    }
+
+    /**
+     * Render the document as PDF/A. Large documents are not rendered by chunks, the merge would break the conformance.
+     * 
+     * @throws IOException
+     *             if the rendering fails or if no color profile is configured
+     */
+    @Override
+    public void write( MergedDocument document, OutputStream outputStream, Path workDirectory ) throws IOException
+    {
+        if ( _colorProfile == null )
+        {
+            throw new IOException( "No color profile configured for PDF/A in " + PROPERTY_COLOR_PROFILE );
+        }
+
+        PdfRendererBuilder builder = PdfRendererBuilderFactory.createBuilder( document.getDocument( ).html( ) );
+        builder.usePdfAConformance( PdfAConformance.valueOf( AppPropertiesService.getProperty( PROPERTY_CONFORMANCE, DEFAULT_CONFORMANCE ) ) );
+        builder.useColorProfile( _colorProfile );
+
+        // font=family pairs, each font being embedded as a subset
+        for ( String strFont : AppPropertiesService.getProperty( PROPERTY_FONTS, StringUtils.EMPTY ).split( SEPARATOR_FONTS ) )
+        {
+            String [ ] fontAndFamily = strFont.trim( ).split( SEPARATOR_FONT_FAMILY );
+            if ( fontAndFamily.length == 2 )
+            {
+                builder.useFont( new File( fontAndFamily [0].trim( ) ), fontAndFamily [1].trim( ) );
+            }
+        }
+
+        builder.toStream( outputStream );
+        builder.run( );
+    }
+}
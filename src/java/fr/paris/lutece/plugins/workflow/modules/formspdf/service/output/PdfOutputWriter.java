@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service.output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+
+import fr.paris.lutece.plugins.html2pdf.service.PdfConverterService;
+import fr.paris.lutece.plugins.html2pdf.service.PdfConverterServiceException;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.ChunkedPDFRenderer;
+
+/**
+ * Writes documents as PDF with the html to PDF converter, by chunks for the large documents
+ */
+public class PdfOutputWriter implements IOutputWriter
+{
+    public static final String FORMAT = "pdf";
+
+    private static final String MIME_TYPE = "application/pdf";
+    private static final String EXTENSION = ".pdf";
+
+    @Override
+    public String getFormat( )
+    {
+        return FORMAT;
+    }
+
+    @Override
+    public String getMimeType( )
+    {
+        return MIME_TYPE;
+    }
+
+    @Override
+    public String getExtension( )
+    {
+        return EXTENSION;
+    }
+
+    @Override
+    public void write( MergedDocument document, OutputStream outputStream, Path workDirectory ) throws IOException
+    {
+        if ( ChunkedPDFRenderer.getInstance( ).isLargeDocument( document.getLength( ) ) )
+        {
+            ChunkedPDFRenderer.getInstance( ).render( document.getDocument( ), outputStream, workDirectory );
+            return;
+        }
+
+        try
+        {
+            PdfConverterService.getInstance( ).getPdfBuilder( ).reset( ).withHtmlContent( document.getDocument( ).html( ) ).notEditable( ).render( outputStream );
+        }
+        catch( PdfConverterServiceException e )
+        {
+            throw new IOException( e );
+        }
+    }
+}
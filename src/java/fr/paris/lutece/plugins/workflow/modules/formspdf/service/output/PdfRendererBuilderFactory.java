@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service.output;
+
+import java.io.File;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.openhtmltopdf.pdfboxout.PdfRendererBuilder;
+
+import fr.paris.lutece.portal.service.util.AppPathService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Creates the renderer builders used outside of the html to PDF converter, for the chunks of the large documents and for the PDF/A documents. The
+ * builders are set up as the converter sets up its own : fast renderer, and relative urls of the images and of the style sheets resolved against the
+ * webapp, so that a document renders the same whatever the writer.
+ */
+public final class PdfRendererBuilderFactory
+{
+    private static final String PROPERTY_BASE_URI = "workflow-formspdf.pdf.baseUri";
+
+    /**
+     * Private constructor
+     */
+    private PdfRendererBuilderFactory( )
+    {
+    }
+
+    /**
+     * Create a builder rendering an html content
+     * 
+     * @param strHtml
+     *            the html content
+     * @return the builder, to which only the output stream is left to give
+     */
+    public static PdfRendererBuilder createBuilder( String strHtml )
+    {
+        PdfRendererBuilder builder = new PdfRendererBuilder( );
+        builder.useFastMode( );
+        builder.withHtmlContent( strHtml, getBaseUri( ) );
+        return builder;
+    }
+
+    /**
+     * @return the uri against which the relative urls of the documents are resolved, the webapp directory unless configured
+     */
+    public static String getBaseUri( )
+    {
+        String strBaseUri = AppPropertiesService.getProperty( PROPERTY_BASE_URI );
+        if ( StringUtils.isNotEmpty( strBaseUri ) )
+        {
+            return strBaseUri;
+        }
+        return new File( AppPathService.getWebAppPath( ) ).toURI( ).toString( );
+    }
+}
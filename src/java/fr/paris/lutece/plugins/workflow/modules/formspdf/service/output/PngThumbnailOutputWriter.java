@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service.output;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import javax.imageio.ImageIO;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.ChunkedPDFRenderer;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Writes a PNG thumbnail of the first page of documents. Only the first chunk of the document, as split by the large document mode, is laid out as a
+ * PDF, whose first page is rasterised by PDFBox, so the thumbnail is an image of the PDF rendered without any display on headless servers and without
+ * the layout of the whole document.
+ */
+public class PngThumbnailOutputWriter implements IOutputWriter
+{
+    public static final String FORMAT = "png";
+
+    private static final String MIME_TYPE = "image/png";
+    private static final String EXTENSION = ".png";
+    private static final String IMAGE_FORMAT = "png";
+    private static final String PREFIX_PDF_FILE = "thumbnail";
+
+    private static final String PROPERTY_WIDTH = "workflow-formspdf.thumbnail.width";
+
+    private static final int DEFAULT_WIDTH = 200;
+
+    private static final String EXTENSION_PDF = ".pdf";
+
+    @Override
+    public String getFormat( )
+    {
+        return FORMAT;
+    }
+
+    @Override
+    public String getMimeType( )
+    {
+        return MIME_TYPE;
+    }
+
+    @Override
+    public String getExtension( )
+    {
+        return EXTENSION;
+    }
+
+    @Override
+    public void write( MergedDocument document, OutputStream outputStream, Path workDirectory ) throws IOException
+    {
+        int nWidth = AppPropertiesService.getPropertyInt( PROPERTY_WIDTH, DEFAULT_WIDTH );
+
+        Path pdfFile = Files.createTempFile( workDirectory, PREFIX_PDF_FILE, EXTENSION_PDF );
+        try
+        {
+            try ( OutputStream pdfStream = Files.newOutputStream( pdfFile ) )
+            {
+                ChunkedPDFRenderer.getInstance( ).renderFirstChunk( document.getDocument( ), pdfStream );
+            }
+
+            try ( PDDocument pdf = PDDocument.load( pdfFile.toFile( ), MemoryUsageSetting.setupTempFileOnly( ) ) )
+            {
+                // the width of the page is in points, the scale gives the width of the thumbnail in pixels
+                float fScale = nWidth / pdf.getPage( 0 ).getMediaBox( ).getWidth( );
+                BufferedImage thumbnail = new PDFRenderer( pdf ).renderImage( 0, fScale, ImageType.RGB );
+                ImageIO.write( thumbnail, IMAGE_FORMAT, outputStream );
+            }
+        }
+        finally
+        {
+            Files.deleteIfExists( pdfFile );
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service.output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.select.NodeTraversor;
+import org.jsoup.select.NodeVisitor;
+
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.FormsPDFScratchBuffers;
+
+/**
+ * Writes the text of documents, one line per block element
+ */
+public class TextOutputWriter implements IOutputWriter
+{
+    public static final String FORMAT = "txt";
+
+    private static final String MIME_TYPE = "text/plain";
+    private static final String EXTENSION = ".txt";
+    private static final String LINE_SEPARATOR = "\n";
+    private static final String TAG_BR = "br";
+
+    @Override
+    public String getFormat( )
+    {
+        return FORMAT;
+    }
+
+    @Override
+    public String getMimeType( )
+    {
+        return MIME_TYPE;
+    }
+
+    @Override
+    public String getExtension( )
+    {
+        return EXTENSION;
+    }
+
+    @Override
+    public void write( MergedDocument document, OutputStream outputStream, Path workDirectory ) throws IOException
+    {
+        StringBuilder sbText = FormsPDFScratchBuffers.takeText( );
+        NodeTraversor.traverse( new NodeVisitor( )
+        {
+            @Override
+            public void head( Node node, int nDepth )
+            {
+                if ( node instanceof TextNode )
+                {
+                    sbText.append( ( (TextNode) node ).text( ) );
+                }
+                else if ( node instanceof Element && TAG_BR.equals( node.nodeName( ) ) )
+                {
+                    sbText.append( LINE_SEPARATOR );
+                }
+            }
+
+            @Override
+            public void tail( Node node, int nDepth )
+            {
+                if ( node instanceof Element && ( (Element) node ).isBlock( ) && sbText.length( ) > 0
+                        && sbText.charAt( sbText.length( ) - 1 ) != LINE_SEPARATOR.charAt( 0 ) )
+                {
+                    sbText.append( LINE_SEPARATOR );
+                }
+            }
+        }, document.getDocument( ).body( ) );
+
+        try
+        {
+            FormsPDFScratchBuffers.writeText( sbText, outputStream );
+        }
+        finally
+        {
+            FormsPDFScratchBuffers.release( sbText );
+        }
+    }
+}
@@ -0,0 +1,382 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service.snapshot;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.commons.io.IOUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import fr.paris.lutece.plugins.forms.business.FormResponse;
+import fr.paris.lutece.plugins.forms.business.FormResponseHome;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFSnapshot;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFSnapshotHome;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.FormsPDFRenderService;
+import fr.paris.lutece.plugins.workflowcore.business.resource.ResourceHistory;
+import fr.paris.lutece.plugins.workflowcore.service.resource.IResourceHistoryService;
+import fr.paris.lutece.plugins.workflowcore.service.resource.ResourceHistoryService;
+import fr.paris.lutece.portal.service.spring.SpringContextService;
+import fr.paris.lutece.portal.service.util.AppException;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Snapshots of the marker model of the form responses. In the cluster and lazy dispatch modes the model is taken when the action is processed and
+ * stored as gzip compressed JSON, so that the document rendered later on any node shows the response as it was in this workflow state.
+ * <p>
+ * Every marker is kept with the graph of the readable properties of its Lutece beans, including the images of the fields and the properties of the
+ * marker objects other than the question responses; the other objects are kept as the strings the templates display. The templates read the snapshot
+ * maps as they read the beans, and the dates are restored as dates. Only the byte arrays, the contents of the files, are not kept : the templates
+ * link the files by their id. The snapshots are enabled by default, the deferred renderings showing the current response otherwise.
+ */
+public final class FormsPDFSnapshotService
+{
+    private static final String PROPERTY_SNAPSHOT_ENABLED = "workflow-formspdf.snapshot.enabled";
+    private static final String PROPERTY_MAX_DEPTH = "workflow-formspdf.snapshot.maxDepth";
+
+    private static final int DEFAULT_MAX_DEPTH = 10;
+
+    private static final String KEY_DATE = "@date";
+    private static final String PROPERTY_CLASS = "class";
+    private static final String PREFIX_LUTECE_PACKAGES = "fr.paris.lutece.";
+
+    private static FormsPDFSnapshotService _singleton = new FormsPDFSnapshotService( );
+
+    private final IResourceHistoryService _resourceHistoryService = SpringContextService.getBean( ResourceHistoryService.BEAN_SERVICE );
+
+    /**
+     * Private constructor
+     */
+    private FormsPDFSnapshotService( )
+    {
+    }
+
+    /**
+     * Get the instance of the service
+     * 
+     * @return the instance
+     */
+    public static FormsPDFSnapshotService getInstance( )
+    {
+        return _singleton;
+    }
+
+    /**
+     * @return true if the deferred renderings use a snapshot taken when the action is processed
+     */
+    public boolean isEnabled( )
+    {
+        return AppPropertiesService.getPropertyBoolean( PROPERTY_SNAPSHOT_ENABLED, true );
+    }
+
+    /**
+     * Take the snapshot of the marker model of the resource of a resource history. A snapshot is taken at most once for a given task and resource
+     * history.
+     * 
+     * @param nIdTask
+     *            the id of the task
+     * @param nIdResourceHistory
+     *            the id of the resource history
+     * @param request
+     *            the request, null for automatic actions
+     */
+    public void takeSnapshot( int nIdTask, int nIdResourceHistory, HttpServletRequest request )
+    {
+        ResourceHistory resourceHistory = _resourceHistoryService.findByPrimaryKey( nIdResourceHistory );
+        FormResponse frep = FormResponseHome.findByPrimaryKey( resourceHistory.getIdResource( ) );
+
+        JSONObject jsonModel = new JSONObject( );
+        int nMaxDepth = AppPropertiesService.getPropertyInt( PROPERTY_MAX_DEPTH, DEFAULT_MAX_DEPTH );
+        for ( Map.Entry<String, Object> marker : FormsPDFRenderService.getInstance( ).buildModel( frep, request ).entrySet( ) )
+        {
+            jsonModel.putOpt( marker.getKey( ), toJson( marker.getValue( ), nMaxDepth, new IdentityHashMap<>( ) ) );
+        }
+
+        FormsPDFSnapshot snapshot = new FormsPDFSnapshot( );
+        snapshot.setIdTask( nIdTask );
+        snapshot.setIdResourceHistory( nIdResourceHistory );
+        snapshot.setIdForm( frep.getFormId( ) );
+        snapshot.setIdFormResponse( frep.getId( ) );
+        snapshot.setData( compress( jsonModel.toString( ) ) );
+        snapshot.setDateCreation( new Timestamp( System.currentTimeMillis( ) ) );
+
+        try
+        {
+            FormsPDFSnapshotHome.create( snapshot );
+        }
+        catch( AppException e )
+        {
+            // the primary key on (id_task, id_resource_history) rejects a snapshot already taken
+            AppLogService.info( "PDF snapshot already taken for task " + nIdTask + " and resource history " + nIdResourceHistory );
+        }
+    }
+
+    /**
+     * Get the marker model of a snapshot
+     * 
+     * @param snapshot
+     *            the snapshot
+     * @return the marker model, made of maps, lists, strings, numbers, booleans and dates
+     */
+    @SuppressWarnings( "unchecked" )
+    public Map<String, Object> getModel( FormsPDFSnapshot snapshot )
+    {
+        return (Map<String, Object>) restoreDates( new JSONObject( decompress( snapshot.getData( ) ) ).toMap( ) );
+    }
+
+    /**
+     * Get the form response of a snapshot, which only carries the ids of the response and of its form
+     * 
+     * @param snapshot
+     *            the snapshot
+     * @return the form response
+     */
+    public FormResponse getFormResponse( FormsPDFSnapshot snapshot )
+    {
+        FormResponse frep = new FormResponse( );
+        frep.setId( snapshot.getIdFormResponse( ) );
+        frep.setFormId( snapshot.getIdForm( ) );
+        return frep;
+    }
+
+    /**
+     * Serialize a marker value with the graph of its readable properties
+     * 
+     * @param value
+     *            the value
+     * @param nDepth
+     *            the number of levels of properties still serialized below the value
+     * @param mapVisited
+     *            the objects being serialized above the value, not serialized again to break the cycles
+     * @return the JSON value, or null if the value is not kept
+     */
+    private static Object toJson( Object value, int nDepth, Map<Object, Boolean> mapVisited )
+    {
+        if ( value == null || value instanceof byte [ ] )
+        {
+            return null;
+        }
+        if ( value instanceof String || value instanceof Number || value instanceof Boolean )
+        {
+            return value;
+        }
+        if ( value instanceof Character || value instanceof Enum )
+        {
+            return value.toString( );
+        }
+        if ( value instanceof Date )
+        {
+            return new JSONObject( ).put( KEY_DATE, ( (Date) value ).getTime( ) );
+        }
+        if ( nDepth <= 0 || mapVisited.put( value, Boolean.TRUE ) != null )
+        {
+            return null;
+        }
+
+        try
+        {
+            if ( value instanceof Map )
+            {
+                JSONObject json = new JSONObject( );
+                for ( Map.Entry<?, ?> entry : ( (Map<?, ?>) value ).entrySet( ) )
+                {
+                    json.putOpt( String.valueOf( entry.getKey( ) ), toJson( entry.getValue( ), nDepth - 1, mapVisited ) );
+                }
+                return json;
+            }
+            if ( value instanceof Collection || value.getClass( ).isArray( ) )
+            {
+                JSONArray json = new JSONArray( );
+                Collection<?> collection = value instanceof Collection ? (Collection<?>) value : toList( value );
+                for ( Object item : collection )
+                {
+                    Object jsonItem = toJson( item, nDepth - 1, mapVisited );
+                    json.put( jsonItem != null ? jsonItem : JSONObject.NULL );
+                }
+                return json;
+            }
+            if ( !value.getClass( ).getName( ).startsWith( PREFIX_LUTECE_PACKAGES ) )
+            {
+                // the other objects are displayed by the templates as strings
+                return value.toString( );
+            }
+            return toJsonBean( value, nDepth, mapVisited );
+        }
+        finally
+        {
+            mapVisited.remove( value );
+        }
+    }
+
+    /**
+     * Serialize the readable properties of a bean
+     */
+    private static JSONObject toJsonBean( Object bean, int nDepth, Map<Object, Boolean> mapVisited )
+    {
+        JSONObject json = new JSONObject( );
+        PropertyDescriptor [ ] properties;
+        try
+        {
+            properties = Introspector.getBeanInfo( bean.getClass( ) ).getPropertyDescriptors( );
+        }
+        catch( IntrospectionException e )
+        {
+            AppLogService.error( "Unable to read the properties of a marker of class " + bean.getClass( ).getName( ), e );
+            return json;
+        }
+
+        for ( PropertyDescriptor property : properties )
+        {
+            Method getter = property.getReadMethod( );
+            if ( getter == null || getter.getParameterCount( ) > 0 || PROPERTY_CLASS.equals( property.getName( ) ) )
+            {
+                continue;
+            }
+            try
+            {
+                json.putOpt( property.getName( ), toJson( getter.invoke( bean ), nDepth - 1, mapVisited ) );
+            }
+            catch( IllegalAccessException | InvocationTargetException | RuntimeException e )
+            {
+                // a property which cannot be read is not read by the templates either
+                AppLogService.debug( "Property " + property.getName( ) + " of a marker of class " + bean.getClass( ).getName( ) + " not kept" );
+            }
+        }
+        return json;
+    }
+
+    /**
+     * @return the items of an array
+     */
+    private static List<Object> toList( Object array )
+    {
+        int nLength = Array.getLength( array );
+        List<Object> list = new ArrayList<>( nLength );
+        for ( int i = 0; i < nLength; i++ )
+        {
+            list.add( Array.get( array, i ) );
+        }
+        return list;
+    }
+
+    /**
+     * Replace the serialized dates of a deserialized value by dates
+     * 
+     * @param value
+     *            the value, made of maps, lists and plain values
+     * @return the value with its dates restored
+     */
+    @SuppressWarnings( "unchecked" )
+    private static Object restoreDates( Object value )
+    {
+        if ( value instanceof Map )
+        {
+            Map<String, Object> map = (Map<String, Object>) value;
+            if ( map.size( ) == 1 && map.get( KEY_DATE ) instanceof Number )
+            {
+                return new Timestamp( ( (Number) map.get( KEY_DATE ) ).longValue( ) );
+            }
+            map.replaceAll( ( strKey, item ) -> restoreDates( item ) );
+        }
+        else
+            if ( value instanceof List )
+            {
+                ( (List<Object>) value ).replaceAll( FormsPDFSnapshotService::restoreDates );
+            }
+        return value;
+    }
+
+    /**
+     * Compress a JSON string
+     * 
+     * @param strJson
+     *            the JSON string
+     * @return the gzip compressed UTF-8 bytes
+     */
+    private static byte [ ] compress( String strJson )
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream( );
+        try ( OutputStream outputStream = new GZIPOutputStream( bytes ) )
+        {
+            outputStream.write( strJson.getBytes( StandardCharsets.UTF_8 ) );
+        }
+        catch( IOException e )
+        {
+            throw new AppException( "Unable to compress the PDF snapshot", e );
+        }
+        return bytes.toByteArray( );
+    }
+
+    /**
+     * Decompress a JSON string
+     * 
+     * @param data
+     *            the gzip compressed UTF-8 bytes
+     * @return the JSON string
+     */
+    private static String decompress( byte [ ] data )
+    {
+        try ( InputStream inputStream = new GZIPInputStream( new ByteArrayInputStream( data ) ) )
+        {
+            return IOUtils.toString( inputStream, StandardCharsets.UTF_8 );
+        }
+        catch( IOException e )
+        {
+            throw new AppException( "Unable to decompress the PDF snapshot", e );
+        }
+    }
+}
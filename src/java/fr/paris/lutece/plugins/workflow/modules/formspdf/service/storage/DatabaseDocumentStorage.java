@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFDocumentStorageHome;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Stores the documents in the database, shared by all the nodes. A document is written and read one chunk at a time, so at most one chunk of a
+ * document is held in the heap. Its chunks are written under a temporary key, then moved under its key with its header row when it is committed,
+ * which makes it readable in place of the previous document in a single transaction.
+ */
+public class DatabaseDocumentStorage implements IDocumentStorage
+{
+    public static final String NAME = "database";
+
+    private static final String PROPERTY_CHUNK_SIZE = "workflow-formspdf.storage.database.chunkSize";
+    private static final int DEFAULT_CHUNK_SIZE = 1048576;
+    private static final String SUFFIX_TEMPORARY = ".tmp";
+
+    @Override
+    public String getName( )
+    {
+        return NAME;
+    }
+
+    @Override
+    public DocumentOutputStream openOutputStream( String strKey ) throws IOException
+    {
+        // chunks left behind by an interrupted writing
+        FormsPDFDocumentStorageHome.remove( strKey + SUFFIX_TEMPORARY );
+        return new ChunkOutputStream( strKey, Math.max( 1024, AppPropertiesService.getPropertyInt( PROPERTY_CHUNK_SIZE, DEFAULT_CHUNK_SIZE ) ) );
+    }
+
+    @Override
+    public InputStream openInputStream( String strKey ) throws IOException
+    {
+        return FormsPDFDocumentStorageHome.findSize( strKey ) >= 0 ? new ChunkInputStream( strKey ) : null;
+    }
+
+    @Override
+    public long getSize( String strKey ) throws IOException
+    {
+        return FormsPDFDocumentStorageHome.findSize( strKey );
+    }
+
+    @Override
+    public void delete( String strKey ) throws IOException
+    {
+        FormsPDFDocumentStorageHome.remove( strKey );
+        FormsPDFDocumentStorageHome.remove( strKey + SUFFIX_TEMPORARY );
+    }
+
+    /**
+     * Stream inserting a chunk under the temporary key each time its buffer is full
+     */
+    private static final class ChunkOutputStream extends DocumentOutputStream
+    {
+        private final String _strKey;
+        private final String _strTemporaryKey;
+        private final byte [ ] _chunk;
+        private int _nCount;
+        private int _nIndex;
+        private long _lSize;
+
+        ChunkOutputStream( String strKey, int nChunkSize )
+        {
+            _strKey = strKey;
+            _strTemporaryKey = strKey + SUFFIX_TEMPORARY;
+            _chunk = new byte [ nChunkSize];
+        }
+
+        @Override
+        public void write( int b ) throws IOException
+        {
+            if ( _nCount == _chunk.length )
+            {
+                writeChunk( );
+            }
+            _chunk [_nCount++] = (byte) b;
+        }
+
+        @Override
+        public void write( byte [ ] b, int off, int len ) throws IOException
+        {
+            int nOffset = off;
+            int nRemaining = len;
+            while ( nRemaining > 0 )
+            {
+                if ( _nCount == _chunk.length )
+                {
+                    writeChunk( );
+                }
+                int nLength = Math.min( nRemaining, _chunk.length - _nCount );
+                System.arraycopy( b, nOffset, _chunk, _nCount, nLength );
+                _nCount += nLength;
+                nOffset += nLength;
+                nRemaining -= nLength;
+            }
+        }
+
+        @Override
+        protected void store( ) throws IOException
+        {
+            if ( _nCount > 0 )
+            {
+                writeChunk( );
+            }
+            FormsPDFDocumentStorageHome.replaceDocument( _strTemporaryKey, _strKey, _lSize );
+        }
+
+        @Override
+        protected void discard( ) throws IOException
+        {
+            FormsPDFDocumentStorageHome.remove( _strTemporaryKey );
+        }
+
+        private void writeChunk( )
+        {
+            FormsPDFDocumentStorageHome.createChunk( _strTemporaryKey, _nIndex++, _nCount == _chunk.length ? _chunk : Arrays.copyOf( _chunk, _nCount ) );
+            _lSize += _nCount;
+            _nCount = 0;
+        }
+    }
+
+    /**
+     * Stream loading the next chunk each time the current one is read
+     */
+    private static final class ChunkInputStream extends InputStream
+    {
+        private final String _strKey;
+        private byte [ ] _chunk = new byte [ 0];
+        private int _nPosition;
+        private int _nIndex;
+        private boolean _bEnd;
+
+        ChunkInputStream( String strKey )
+        {
+            _strKey = strKey;
+        }
+
+        @Override
+        public int read( ) throws IOException
+        {
+            return nextChunk( ) ? _chunk [_nPosition++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read( byte [ ] b, int off, int len ) throws IOException
+        {
+            if ( len == 0 )
+            {
+                return 0;
+            }
+            if ( !nextChunk( ) )
+            {
+                return -1;
+            }
+            int nLength = Math.min( len, _chunk.length - _nPosition );
+            System.arraycopy( _chunk, _nPosition, b, off, nLength );
+            _nPosition += nLength;
+            return nLength;
+        }
+
+        /**
+         * @return true if bytes remain to be read, loading the next chunk if the current one is read
+         */
+        private boolean nextChunk( )
+        {
+            while ( !_bEnd && _nPosition == _chunk.length )
+            {
+                byte [ ] chunk = FormsPDFDocumentStorageHome.findChunk( _strKey, _nIndex++ );
+                if ( chunk == null )
+                {
+                    _bEnd = true;
+                }
+                else
+                {
+                    _chunk = chunk;
+                    _nPosition = 0;
+                }
+            }
+            return !_bEnd;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service.storage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Stream writing a document into a storage. The document replaces the stored document of the same key only when the stream is committed : a stream
+ * closed without being committed discards what it wrote and leaves the stored document unchanged, so a failed rendering never replaces a complete
+ * document with a truncated one.
+ */
+public abstract class DocumentOutputStream extends OutputStream
+{
+    private boolean _bClosed;
+
+    /**
+     * Store the written document, replacing the document of the same key if any, and close the stream
+     * 
+     * @throws IOException
+     *             if the document cannot be stored, in which case what was written is discarded
+     */
+    public final void commit( ) throws IOException
+    {
+        if ( _bClosed )
+        {
+            throw new IOException( "The stream of the document is closed" );
+        }
+        _bClosed = true;
+
+        boolean bStored = false;
+        try
+        {
+            store( );
+            bStored = true;
+        }
+        finally
+        {
+            if ( !bStored )
+            {
+                discard( );
+            }
+        }
+    }
+
+    /**
+     * Close the stream, discarding what was written unless the stream was committed
+     * 
+     * @throws IOException
+     *             if what was written cannot be discarded
+     */
+    @Override
+    public final void close( ) throws IOException
+    {
+        if ( _bClosed )
+        {
+            return;
+        }
+        _bClosed = true;
+        discard( );
+    }
+
+    /**
+     * Store the written document in place of the document of the same key, called once by {@link #commit()}
+     * 
+     * @throws IOException
+     *             if the document cannot be stored
+     */
+    protected abstract void store( ) throws IOException;
+
+    /**
+     * Drop what was written, called once when the stream is closed without being committed or when the document cannot be stored
+     * 
+     * @throws IOException
+     *             if what was written cannot be dropped
+     */
+    protected abstract void discard( ) throws IOException;
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.nio.file.Path;
+
+/**
+ * Storage of the rendered documents. The documents are written and read as streams, so a storage never holds more than a bounded buffer of a document
+ * in the heap. A document becomes readable, in place of the document of the same key, once the stream writing it is committed.
+ */
+public interface IDocumentStorage
+{
+    /**
+     * @return the name of the storage, used to select it in the properties
+     */
+    String getName( );
+
+    /**
+     * Open a stream writing a document. The document of the same key, if any, is kept until the stream is committed.
+     * 
+     * @param strKey
+     *            the key of the document
+     * @return the stream, which stores the document when it is committed and discards it when it is closed without being committed
+     * @throws IOException
+     *             if the document cannot be written
+     */
+    DocumentOutputStream openOutputStream( String strKey ) throws IOException;
+
+    /**
+     * Open a stream reading a document
+     * 
+     * @param strKey
+     *            the key of the document
+     * @return the stream, or null if the document is not stored
+     * @throws IOException
+     *             if the document cannot be read
+     */
+    InputStream openInputStream( String strKey ) throws IOException;
+
+    /**
+     * Get the file of a document, for the storages keeping the documents in files of the node, so that the document can be transferred from its file
+     * 
+     * @param strKey
+     *            the key of the document
+     * @return the file, or null if the document is not stored or not stored in a file of the node
+     * @throws IOException
+     *             if the storage cannot be queried
+     */
+    default Path getFile( String strKey ) throws IOException
+    {
+        return null;
+    }
+
+    /**
+     * Get the size of a document
+     * 
+     * @param strKey
+     *            the key of the document
+     * @return the size of the document in bytes, or -1 if the document is not stored
+     * @throws IOException
+     *             if the storage cannot be queried
+     */
+    long getSize( String strKey ) throws IOException;
+
+    /**
+     * Delete a document, doing nothing if it is not stored
+     * 
+     * @param strKey
+     *            the key of the document
+     * @throws IOException
+     *             if the document cannot be deleted
+     */
+    void delete( String strKey ) throws IOException;
+
+    /**
+     * Delete the documents written before a date which are no longer referenced, such as the copies kept by a storage local to a node. The storages
+     * shared by the nodes have nothing to do, their documents being deleted through the render descriptors.
+     * 
+     * @param lDate
+     *            the date, in milliseconds since the epoch
+     * @return the number of deleted documents
+     * @throws IOException
+     *             if the documents cannot be deleted
+     */
+    default int deleteOlderThan( long lDate ) throws IOException
+    {
+        return 0;
+    }
+}
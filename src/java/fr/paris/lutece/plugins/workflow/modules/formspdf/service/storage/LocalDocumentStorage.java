@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.stream.Stream;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Stores the documents in a directory of the node. The documents are spread over two levels of subdirectories named after the first characters of the
+ * hash of their key, so that no directory holds a huge number of files. A document is written to a temporary file moved in place when it is committed.
+ * The sweeper deletes the old files of the node, including those of the renderings swept on another node.
+ */
+public class LocalDocumentStorage implements IDocumentStorage
+{
+    public static final String NAME = "local";
+
+    private static final String PROPERTY_DIRECTORY = "workflow-formspdf.storage.local.directory";
+    private static final String PROPERTY_LAZY_CACHE_DIRECTORY = "workflow-formspdf.lazy.cacheDirectory";
+    private static final String DEFAULT_DIRECTORY = Paths.get( System.getProperty( "java.io.tmpdir" ), "formspdf" ).toString( );
+    private static final String SUFFIX_TEMPORARY = ".tmp";
+    private static final int SHARD_LENGTH = 2;
+
+    @Override
+    public String getName( )
+    {
+        return NAME;
+    }
+
+    @Override
+    public DocumentOutputStream openOutputStream( String strKey ) throws IOException
+    {
+        Path file = getPath( strKey );
+        Files.createDirectories( file.getParent( ) );
+        Path temporaryFile = Files.createTempFile( file.getParent( ), file.getFileName( ).toString( ), SUFFIX_TEMPORARY );
+        OutputStream out = Files.newOutputStream( temporaryFile );
+
+        return new DocumentOutputStream( )
+        {
+            @Override
+            public void write( int b ) throws IOException
+            {
+                out.write( b );
+            }
+
+            @Override
+            public void write( byte [ ] b, int off, int len ) throws IOException
+            {
+                out.write( b, off, len );
+            }
+
+            @Override
+            public void flush( ) throws IOException
+            {
+                out.flush( );
+            }
+
+            @Override
+            protected void store( ) throws IOException
+            {
+                out.close( );
+                Files.move( temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+            }
+
+            @Override
+            protected void discard( ) throws IOException
+            {
+                try
+                {
+                    out.close( );
+                }
+                finally
+                {
+                    Files.deleteIfExists( temporaryFile );
+                }
+            }
+        };
+    }
+
+    @Override
+    public InputStream openInputStream( String strKey ) throws IOException
+    {
+        try
+        {
+            return Files.newInputStream( getPath( strKey ) );
+        }
+        catch( NoSuchFileException e )
+        {
+            return null;
+        }
+    }
+
+    @Override
+    public Path getFile( String strKey ) throws IOException
+    {
+        Path file = getPath( strKey );
+        return Files.exists( file ) ? file : null;
+    }
+
+    @Override
+    public long getSize( String strKey ) throws IOException
+    {
+        Path file = getPath( strKey );
+        return Files.exists( file ) ? Files.size( file ) : -1;
+    }
+
+    @Override
+    public void delete( String strKey ) throws IOException
+    {
+        Files.deleteIfExists( getPath( strKey ) );
+    }
+
+    @Override
+    public int deleteOlderThan( long lDate ) throws IOException
+    {
+        Path directory = getDirectory( );
+        if ( !Files.isDirectory( directory ) )
+        {
+            return 0;
+        }
+
+        int nDeleted = 0;
+        try ( Stream<Path> files = Files.walk( directory ) )
+        {
+            for ( Path file : (Iterable<Path>) files.filter( Files::isRegularFile )::iterator )
+            {
+                if ( Files.getLastModifiedTime( file ).toMillis( ) < lDate && Files.deleteIfExists( file ) )
+                {
+                    nDeleted++;
+                }
+            }
+        }
+        return nDeleted;
+    }
+
+    /**
+     * @param strKey
+     *            the key of a document
+     * @return the file of the document, in the subdirectories of the hash of its key
+     */
+    private static Path getPath( String strKey )
+    {
+        String strHash = DigestUtils.sha256Hex( strKey.getBytes( StandardCharsets.UTF_8 ) );
+        return getDirectory( ).resolve( strHash.substring( 0, SHARD_LENGTH ) ).resolve( strHash.substring( SHARD_LENGTH, 2 * SHARD_LENGTH ) ).resolve( strHash );
+    }
+
+    /**
+     * @return the root directory of the storage, the cache directory of the lazy dispatch mode by default
+     */
+    private static Path getDirectory( )
+    {
+        return Paths.get( AppPropertiesService.getProperty( PROPERTY_DIRECTORY,
+                AppPropertiesService.getProperty( PROPERTY_LAZY_CACHE_DIRECTORY, DEFAULT_DIRECTORY ) ) );
+    }
+}
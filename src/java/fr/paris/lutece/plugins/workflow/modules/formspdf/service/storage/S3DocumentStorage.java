@@ -0,0 +1,417 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Stores the documents in a bucket of an S3 compatible storage, addressed in path style so that a local stand-in such as MinIO can be used. The
+ * documents larger than a part are uploaded by a multipart upload, one part at a time, so at most one part of a document is held in the heap. The
+ * object of a document is only replaced when its upload is completed, on commit.
+ */
+public class S3DocumentStorage implements IDocumentStorage
+{
+    public static final String NAME = "s3";
+
+    private static final String PROPERTY_ENDPOINT = "workflow-formspdf.storage.s3.endpoint";
+    private static final String PROPERTY_REGION = "workflow-formspdf.storage.s3.region";
+    private static final String PROPERTY_BUCKET = "workflow-formspdf.storage.s3.bucket";
+    private static final String PROPERTY_PREFIX = "workflow-formspdf.storage.s3.prefix";
+    private static final String PROPERTY_ACCESS_KEY = "workflow-formspdf.storage.s3.accessKey";
+    private static final String PROPERTY_SECRET_KEY = "workflow-formspdf.storage.s3.secretKey";
+    private static final String PROPERTY_PART_SIZE = "workflow-formspdf.storage.s3.partSize";
+    private static final String PROPERTY_TIMEOUT = "workflow-formspdf.storage.s3.timeout";
+
+    private static final String DEFAULT_REGION = "us-east-1";
+    private static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+    private static final int DEFAULT_PART_SIZE = 8 * 1024 * 1024;
+    private static final int DEFAULT_TIMEOUT = 30;
+
+    private static final String METHOD_GET = "GET";
+    private static final String METHOD_HEAD = "HEAD";
+    private static final String METHOD_PUT = "PUT";
+    private static final String METHOD_POST = "POST";
+    private static final String METHOD_DELETE = "DELETE";
+    private static final String HEADER_ETAG = "ETag";
+    private static final String QUERY_UPLOADS = "uploads=";
+    private static final String QUERY_UPLOAD_ID = "uploadId=";
+    private static final String QUERY_PART = "partNumber=%d&uploadId=%s";
+    private static final Pattern PATTERN_UPLOAD_ID = Pattern.compile( "<UploadId>([^<]+)</UploadId>" );
+
+    @Override
+    public String getName( )
+    {
+        return NAME;
+    }
+
+    @Override
+    public DocumentOutputStream openOutputStream( String strKey ) throws IOException
+    {
+        return new MultipartOutputStream( strKey, Math.max( MIN_PART_SIZE, getPropertyInt( PROPERTY_PART_SIZE, DEFAULT_PART_SIZE ) ) );
+    }
+
+    @Override
+    public InputStream openInputStream( String strKey ) throws IOException
+    {
+        HttpURLConnection connection = send( METHOD_GET, strKey, null, null, 0 );
+        if ( connection.getResponseCode( ) == HttpURLConnection.HTTP_NOT_FOUND )
+        {
+            connection.disconnect( );
+            return null;
+        }
+        checkResponse( connection );
+        return connection.getInputStream( );
+    }
+
+    @Override
+    public long getSize( String strKey ) throws IOException
+    {
+        HttpURLConnection connection = send( METHOD_HEAD, strKey, null, null, 0 );
+        try
+        {
+            if ( connection.getResponseCode( ) == HttpURLConnection.HTTP_NOT_FOUND )
+            {
+                return -1;
+            }
+            checkResponse( connection );
+            return connection.getContentLengthLong( );
+        }
+        finally
+        {
+            connection.disconnect( );
+        }
+    }
+
+    @Override
+    public void delete( String strKey ) throws IOException
+    {
+        HttpURLConnection connection = send( METHOD_DELETE, strKey, null, null, 0 );
+        try
+        {
+            if ( connection.getResponseCode( ) != HttpURLConnection.HTTP_NOT_FOUND )
+            {
+                checkResponse( connection );
+            }
+        }
+        finally
+        {
+            connection.disconnect( );
+        }
+    }
+
+    /**
+     * Read a property of the storage, overridden by the tests pointing the storage to a local stand-in
+     * 
+     * @param strKey
+     *            the key of the property
+     * @param strDefault
+     *            the default value
+     * @return the value of the property
+     */
+    String getProperty( String strKey, String strDefault )
+    {
+        return AppPropertiesService.getProperty( strKey, strDefault );
+    }
+
+    /**
+     * Read an integer property of the storage
+     * 
+     * @param strKey
+     *            the key of the property
+     * @param nDefault
+     *            the default value
+     * @return the value of the property
+     */
+    int getPropertyInt( String strKey, int nDefault )
+    {
+        String strValue = getProperty( strKey, null );
+        return StringUtils.isNumeric( strValue ) ? Integer.parseInt( strValue ) : nDefault;
+    }
+
+    /**
+     * Send a signed request
+     * 
+     * @param strMethod
+     *            the http method
+     * @param strKey
+     *            the key of the document
+     * @param strQuery
+     *            the encoded query, with its parameters sorted by name, or null
+     * @param body
+     *            the body of the request, or null
+     * @param nLength
+     *            the length of the body
+     * @return the connection, whose response code is available
+     * @throws IOException
+     *             if the request cannot be sent
+     */
+    private HttpURLConnection send( String strMethod, String strKey, String strQuery, byte [ ] body, int nLength ) throws IOException
+    {
+        String strEndpoint = StringUtils.removeEnd( getProperty( PROPERTY_ENDPOINT, null ), "/" );
+        String strPath = "/" + S3RequestSigner.encode( getProperty( PROPERTY_BUCKET, null ), false ) + "/"
+                + S3RequestSigner.encode( getProperty( PROPERTY_PREFIX, "" ) + strKey, true );
+        URL url = new URL( strEndpoint + strPath + ( strQuery != null ? "?" + strQuery : "" ) );
+
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection( );
+        int nTimeout = getPropertyInt( PROPERTY_TIMEOUT, DEFAULT_TIMEOUT ) * 1000;
+        connection.setConnectTimeout( nTimeout );
+        connection.setReadTimeout( nTimeout );
+        connection.setRequestMethod( strMethod );
+
+        String strPayloadHash = S3RequestSigner.EMPTY_PAYLOAD_HASH;
+        if ( body != null )
+        {
+            strPayloadHash = DigestUtils.sha256Hex( new ByteArrayInputStream( body, 0, nLength ) );
+        }
+        new S3RequestSigner( getProperty( PROPERTY_REGION, DEFAULT_REGION ), getProperty( PROPERTY_ACCESS_KEY, null ),
+                getProperty( PROPERTY_SECRET_KEY, null ) ).sign( connection, strPayloadHash );
+
+        if ( body != null )
+        {
+            connection.setDoOutput( true );
+            connection.setFixedLengthStreamingMode( nLength );
+            try ( OutputStream outputStream = connection.getOutputStream( ) )
+            {
+                outputStream.write( body, 0, nLength );
+            }
+        }
+        else
+            if ( METHOD_POST.equals( strMethod ) )
+            {
+                connection.setDoOutput( true );
+                connection.setFixedLengthStreamingMode( 0 );
+                connection.getOutputStream( ).close( );
+            }
+        connection.getResponseCode( );
+        return connection;
+    }
+
+    /**
+     * @param connection
+     *            the connection of a request
+     * @throws IOException
+     *             if the storage answered with an error
+     */
+    private static void checkResponse( HttpURLConnection connection ) throws IOException
+    {
+        int nStatus = connection.getResponseCode( );
+        if ( nStatus >= HttpURLConnection.HTTP_MULT_CHOICE )
+        {
+            String strError = "";
+            InputStream errorStream = connection.getErrorStream( );
+            if ( errorStream != null )
+            {
+                try ( InputStream inputStream = errorStream )
+                {
+                    strError = IOUtils.toString( inputStream, StandardCharsets.UTF_8 );
+                }
+            }
+            connection.disconnect( );
+            throw new IOException( "S3 storage error " + nStatus + " on " + connection.getURL( ).getPath( ) + " : " + strError );
+        }
+    }
+
+    /**
+     * @return the body of the response of a successful request
+     */
+    private static String readResponse( HttpURLConnection connection ) throws IOException
+    {
+        checkResponse( connection );
+        try ( InputStream inputStream = connection.getInputStream( ) )
+        {
+            return IOUtils.toString( inputStream, StandardCharsets.UTF_8 );
+        }
+        finally
+        {
+            connection.disconnect( );
+        }
+    }
+
+    /**
+     * Stream uploading a part each time its buffer is full, the multipart upload being completed on commit and aborted on discard. A document smaller
+     * than a part is uploaded by a single request on commit.
+     */
+    private final class MultipartOutputStream extends DocumentOutputStream
+    {
+        private final String _strKey;
+        private final byte [ ] _part;
+        private final List<String> _listETags = new ArrayList<>( );
+        private int _nCount;
+        private String _strUploadId;
+        private boolean _bFailed;
+
+        MultipartOutputStream( String strKey, int nPartSize )
+        {
+            _strKey = strKey;
+            _part = new byte [ nPartSize];
+        }
+
+        @Override
+        public void write( int b ) throws IOException
+        {
+            if ( _nCount == _part.length )
+            {
+                uploadPart( );
+            }
+            _part [_nCount++] = (byte) b;
+        }
+
+        @Override
+        public void write( byte [ ] b, int off, int len ) throws IOException
+        {
+            int nOffset = off;
+            int nRemaining = len;
+            while ( nRemaining > 0 )
+            {
+                if ( _nCount == _part.length )
+                {
+                    uploadPart( );
+                }
+                int nLength = Math.min( nRemaining, _part.length - _nCount );
+                System.arraycopy( b, nOffset, _part, _nCount, nLength );
+                _nCount += nLength;
+                nOffset += nLength;
+                nRemaining -= nLength;
+            }
+        }
+
+        @Override
+        protected void store( ) throws IOException
+        {
+            if ( _bFailed )
+            {
+                throw new IOException( "S3 storage : the upload of " + _strKey + " failed" );
+            }
+
+            if ( _strUploadId == null )
+            {
+                HttpURLConnection connection = send( METHOD_PUT, _strKey, null, _part, _nCount );
+                checkResponse( connection );
+                connection.disconnect( );
+                return;
+            }
+
+            if ( _nCount > 0 )
+            {
+                uploadPart( );
+            }
+            StringBuilder sbComplete = new StringBuilder( "<CompleteMultipartUpload>" );
+            for ( int i = 0; i < _listETags.size( ); i++ )
+            {
+                sbComplete.append( "<Part><PartNumber>" ).append( i + 1 ).append( "</PartNumber><ETag>" ).append( _listETags.get( i ) )
+                        .append( "</ETag></Part>" );
+            }
+            byte [ ] complete = sbComplete.append( "</CompleteMultipartUpload>" ).toString( ).getBytes( StandardCharsets.UTF_8 );
+            readResponse( send( METHOD_POST, _strKey, QUERY_UPLOAD_ID + S3RequestSigner.encode( _strUploadId, false ), complete, complete.length ) );
+            _strUploadId = null;
+        }
+
+        @Override
+        protected void discard( )
+        {
+            abort( );
+        }
+
+        /**
+         * Upload the buffer as the next part, starting the multipart upload on the first part
+         */
+        private void uploadPart( ) throws IOException
+        {
+            try
+            {
+                if ( _strUploadId == null )
+                {
+                    Matcher matcher = PATTERN_UPLOAD_ID.matcher( readResponse( send( METHOD_POST, _strKey, QUERY_UPLOADS, null, 0 ) ) );
+                    if ( !matcher.find( ) )
+                    {
+                        throw new IOException( "S3 storage : no upload id for " + _strKey );
+                    }
+                    _strUploadId = matcher.group( 1 );
+                }
+
+                HttpURLConnection connection = send( METHOD_PUT, _strKey,
+                        String.format( QUERY_PART, _listETags.size( ) + 1, S3RequestSigner.encode( _strUploadId, false ) ), _part, _nCount );
+                checkResponse( connection );
+                _listETags.add( connection.getHeaderField( HEADER_ETAG ) );
+                connection.disconnect( );
+                _nCount = 0;
+            }
+            catch( IOException e )
+            {
+                // the stream is discarded by its writer, which aborts the upload
+                _bFailed = true;
+                throw e;
+            }
+        }
+
+        /**
+         * Abort the multipart upload, so that the storage drops the uploaded parts
+         */
+        private void abort( )
+        {
+            if ( _strUploadId == null )
+            {
+                return;
+            }
+            String strUploadId = _strUploadId;
+            _strUploadId = null;
+            try
+            {
+                HttpURLConnection connection = send( METHOD_DELETE, _strKey, QUERY_UPLOAD_ID + S3RequestSigner.encode( strUploadId, false ), null, 0 );
+                connection.disconnect( );
+            }
+            catch( IOException e )
+            {
+                AppLogService.error( "S3 storage : unable to abort the upload of " + _strKey, e );
+            }
+        }
+    }
+}
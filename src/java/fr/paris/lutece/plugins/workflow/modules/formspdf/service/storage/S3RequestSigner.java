@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service.storage;
+
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * Signs the requests to an S3 compatible storage with the AWS signature version 4
+ */
+final class S3RequestSigner
+{
+    static final String EMPTY_PAYLOAD_HASH = DigestUtils.sha256Hex( new byte [ 0] );
+
+    private static final String ALGORITHM = "AWS4-HMAC-SHA256";
+    private static final String HMAC = "HmacSHA256";
+    private static final String SERVICE = "s3";
+    private static final String TERMINATOR = "aws4_request";
+    private static final String HEADER_AUTHORIZATION = "Authorization";
+    private static final String HEADER_CONTENT_SHA256 = "x-amz-content-sha256";
+    private static final String HEADER_DATE = "x-amz-date";
+    private static final String SIGNED_HEADERS = "host;" + HEADER_CONTENT_SHA256 + ";" + HEADER_DATE;
+    private static final DateTimeFormatter FORMAT_DATE_TIME = DateTimeFormatter.ofPattern( "yyyyMMdd'T'HHmmss'Z'" );
+    private static final String LINE = "\n";
+
+    private final String _strRegion;
+    private final String _strAccessKey;
+    private final String _strSecretKey;
+
+    /**
+     * Constructor
+     * 
+     * @param strRegion
+     *            the region of the storage
+     * @param strAccessKey
+     *            the access key
+     * @param strSecretKey
+     *            the secret key
+     */
+    S3RequestSigner( String strRegion, String strAccessKey, String strSecretKey )
+    {
+        _strRegion = strRegion;
+        _strAccessKey = strAccessKey;
+        _strSecretKey = strSecretKey;
+    }
+
+    /**
+     * Sign a request before it is sent. The path and the query of its url must already be encoded, the parameters of the query sorted by name.
+     * 
+     * @param connection
+     *            the connection of the request, not connected yet
+     * @param strPayloadHash
+     *            the hex SHA-256 hash of the body of the request
+     */
+    void sign( HttpURLConnection connection, String strPayloadHash )
+    {
+        String strDateTime = ZonedDateTime.now( ZoneOffset.UTC ).format( FORMAT_DATE_TIME );
+
+        connection.setRequestProperty( HEADER_DATE, strDateTime );
+        connection.setRequestProperty( HEADER_CONTENT_SHA256, strPayloadHash );
+        connection.setRequestProperty( HEADER_AUTHORIZATION,
+                getAuthorization( connection.getRequestMethod( ), connection.getURL( ), strPayloadHash, strDateTime ) );
+    }
+
+    /**
+     * Compute the authorization header of a request
+     * 
+     * @param strMethod
+     *            the http method
+     * @param url
+     *            the url of the request, its path and query already encoded, the parameters of the query sorted by name
+     * @param strPayloadHash
+     *            the hex SHA-256 hash of the body of the request
+     * @param strDateTime
+     *            the date of the request in the ISO 8601 basic format, sent in the x-amz-date header
+     * @return the value of the authorization header
+     */
+    String getAuthorization( String strMethod, URL url, String strPayloadHash, String strDateTime )
+    {
+        String strDate = strDateTime.substring( 0, 8 );
+        String strHost = url.getPort( ) == -1 ? url.getHost( ) : url.getHost( ) + ":" + url.getPort( );
+        String strQuery = url.getQuery( ) != null ? url.getQuery( ) : "";
+
+        String strCanonicalRequest = strMethod + LINE + url.getPath( ) + LINE + strQuery + LINE + "host:" + strHost + LINE + HEADER_CONTENT_SHA256 + ":"
+                + strPayloadHash + LINE + HEADER_DATE + ":" + strDateTime + LINE + LINE + SIGNED_HEADERS + LINE + strPayloadHash;
+        String strScope = strDate + "/" + _strRegion + "/" + SERVICE + "/" + TERMINATOR;
+        String strStringToSign = ALGORITHM + LINE + strDateTime + LINE + strScope + LINE
+                + DigestUtils.sha256Hex( strCanonicalRequest.getBytes( StandardCharsets.UTF_8 ) );
+
+        byte [ ] signingKey = hmac( ( "AWS4" + _strSecretKey ).getBytes( StandardCharsets.UTF_8 ), strDate );
+        signingKey = hmac( signingKey, _strRegion );
+        signingKey = hmac( signingKey, SERVICE );
+        signingKey = hmac( signingKey, TERMINATOR );
+        String strSignature = Hex.encodeHexString( hmac( signingKey, strStringToSign ) );
+
+        return ALGORITHM + " Credential=" + _strAccessKey + "/" + strScope + ", SignedHeaders=" + SIGNED_HEADERS + ", Signature="
+                + strSignature;
+    }
+
+    /**
+     * Encode a value as required by the signature : every byte but the unreserved characters is percent encoded
+     * 
+     * @param strValue
+     *            the value
+     * @param bKeepSlashes
+     *            true to keep the slashes, for the paths
+     * @return the encoded value
+     */
+    static String encode( String strValue, boolean bKeepSlashes )
+    {
+        StringBuilder sbEncoded = new StringBuilder( );
+        for ( byte b : strValue.getBytes( StandardCharsets.UTF_8 ) )
+        {
+            char c = (char) ( b & 0xFF );
+            if ( ( c >= 'A' && c <= 'Z' ) || ( c >= 'a' && c <= 'z' ) || ( c >= '0' && c <= '9' ) || c == '-' || c == '_' || c == '.' || c == '~'
+                    || ( bKeepSlashes && c == '/' ) )
+            {
+                sbEncoded.append( c );
+            }
+            else
+            {
+                sbEncoded.append( '%' ).append( Character.toUpperCase( Character.forDigit( ( b >> 4 ) & 0xF, 16 ) ) )
+                        .append( Character.toUpperCase( Character.forDigit( b & 0xF, 16 ) ) );
+            }
+        }
+        return sbEncoded.toString( );
+    }
+
+    /**
+     * @return the HMAC-SHA256 of a value
+     */
+    private static byte [ ] hmac( byte [ ] key, String strValue )
+    {
+        try
+        {
+            Mac mac = Mac.getInstance( HMAC );
+            mac.init( new SecretKeySpec( key, HMAC ) );
+            return mac.doFinal( strValue.getBytes( StandardCharsets.UTF_8 ) );
+        }
+        catch( GeneralSecurityException e )
+        {
+            throw new IllegalStateException( e );
+        }
+    }
+}
@@ -35,31 +35,21 @@ package fr.paris.lutece.plugins.workflow.modules.formspdf.service.task;
 
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import javax.servlet.http.HttpServletRequest;
-import java.util.HashMap;
-
-import fr.paris.lutece.plugins.filegenerator.service.TemporaryFileGeneratorService;
-import fr.paris.lutece.plugins.forms.business.Form;
-import fr.paris.lutece.plugins.forms.business.FormHome;
-import fr.paris.lutece.plugins.forms.business.FormResponse;
-import fr.paris.lutece.plugins.forms.business.FormResponseHome;
-import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFTaskConfig;
-import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFTaskTemplateHome;
-import fr.paris.lutece.plugins.workflow.modules.formspdf.service.HtmlToPDFGenerator;
-import fr.paris.lutece.plugins.workflowcore.business.resource.ResourceHistory;
+
+import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFJobHome;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFSnapshotHome;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.FormsPDFJobService;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.FormsPDFLazyRenderService;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.FormsPDFRenderService;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.snapshot.FormsPDFSnapshotService;
 import fr.paris.lutece.plugins.workflowcore.service.config.ITaskConfigService;
-import fr.paris.lutece.plugins.workflowcore.service.resource.IResourceHistoryService;
-import fr.paris.lutece.plugins.workflowcore.service.resource.ResourceHistoryService;
 import fr.paris.lutece.plugins.workflowcore.service.task.Task;
-import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFTaskTemplate;
-import fr.paris.lutece.portal.business.user.AdminUser;
-import fr.paris.lutece.portal.service.admin.AdminUserService;
 import fr.paris.lutece.portal.service.i18n.I18nService;
 import fr.paris.lutece.portal.service.spring.SpringContextService;
-import fr.paris.lutece.plugins.forms.service.provider.GenericFormsProvider;
-import fr.paris.lutece.plugins.workflowcore.service.provider.InfoMarker;
-import fr.paris.lutece.plugins.forms.business.FormQuestionResponse;
-import fr.paris.lutece.portal.service.template.AppTemplateService;
+import fr.paris.lutece.portal.service.util.AppLogService;
 
 /**
  * @author norbert.le.garrec
@@ -72,8 +62,6 @@ public class FormsPDFTask extends Task
      * The task title
      */
     private static final String PROPERTY_LABEL_TITLE = "module.workflow.formspdf.title";
-    private static final String PROPERTY_LABEL_DESCRIPTION = "module.workflow.formspdf.export.pdf.description";
-    private static final String FTL_SQUARE_BRACKET_TAG = "[#ftl]";
 
     /**
      * the FormJasperConfigService to manage the task configuration
@@ -81,59 +69,46 @@ public class FormsPDFTask extends Task
     private static final ITaskConfigService _formsPDFTaskConfigService = SpringContextService.getBean( "workflow-formspdf.formsPDFTaskConfigService" );
 
     /**
-     * the ResourceHistoryService to get the forms to process
+     * set once the disabled snapshots have been reported, the report is not repeated for each action
      */
-    private static final IResourceHistoryService _resourceHistoryService = SpringContextService.getBean( ResourceHistoryService.BEAN_SERVICE );
+    private static final AtomicBoolean _bSnapshotWarningLogged = new AtomicBoolean( );
 
     @Override
     public void processTask( int nIdResourceHistory, HttpServletRequest request, Locale locale )
     {
-
-        // Get the resourceHistory to find the resource to work with
-        ResourceHistory resourceHistory = _resourceHistoryService.findByPrimaryKey( nIdResourceHistory );
-
-        // Get the task configuration
-        FormsPDFTaskConfig formsPDFTaskConfig = _formsPDFTaskConfigService.findByPrimaryKey( getId( ) );
-
-        // Id of the Form to modify
-        int nIdFormResponse = 0;
-        String strError = "";
-        AdminUser user = null;
-        FormsPDFTaskTemplate formsPDFTaskTemplate = null;
-        try
+        boolean bClusterMode = FormsPDFJobService.getInstance( ).isClusterMode( );
+        boolean bLazyMode = FormsPDFJobService.getInstance( ).isLazyMode( );
+        if ( bClusterMode || bLazyMode )
         {
-            nIdFormResponse = resourceHistory.getIdResource( );
-
-            FormResponse frep = FormResponseHome.findByPrimaryKey( nIdFormResponse );
-            Form form = FormHome.findByPrimaryKey( frep.getFormId( ) );
-
-            // TODO Gerer le cas null quand il s'agit d'une action automatique
-            if ( request != null )
+            if ( FormsPDFSnapshotService.getInstance( ).isEnabled( ) )
             {
-                user = AdminUserService.getAdminUser( request );
+                // the deferred rendering must show the response as it is in this workflow state
+                FormsPDFSnapshotService.getInstance( ).takeSnapshot( getId( ), nIdResourceHistory, request );
             }
-            FormResponse formResponse = FormResponseHome.findByPrimaryKey( nIdFormResponse );
-            Map<String, InfoMarker> collectionMarkersValue = GenericFormsProvider.provideMarkerValues( formResponse, request );
-            Map<String, Object> model = new HashMap<>( );
-            markersToModels(model, collectionMarkersValue);
-            formsPDFTaskTemplate = FormsPDFTaskTemplateHome.findByPrimaryKey( formsPDFTaskConfig.getIdTemplate( ) );
-           if(formsPDFTaskTemplate.isRte())
-           {
-               formsPDFTaskTemplate.setContent( addSquareBracketTag( formsPDFTaskTemplate.getContent( ) ) );
-           }
-            formsPDFTaskTemplate.setContent(AppTemplateService.getTemplateFromStringFtl(formsPDFTaskTemplate.getContent(), Locale.getDefault( ), model).getHtml());
-            HtmlToPDFGenerator htmltopdf = new HtmlToPDFGenerator( form.getTitle( ), I18nService.getLocalizedString( PROPERTY_LABEL_DESCRIPTION, locale ), frep,
-                    formsPDFTaskTemplate );
-            TemporaryFileGeneratorService.getInstance( ).generateFile( htmltopdf, user );
+            else
+                if ( _bSnapshotWarningLogged.compareAndSet( false, true ) )
+                {
+                    AppLogService.error( "PDF snapshots disabled in " + ( bClusterMode ? "cluster" : "lazy" )
+                            + " dispatch mode : the deferred renderings show the form responses as they are when rendered, not as they were when the action"
+                            + " was processed" );
+                }
+        }
+
+        if ( bClusterMode )
+        {
+            // the PDF is rendered by the render daemon of the node claiming the job
+            FormsPDFJobService.getInstance( ).enqueue( getId( ), nIdResourceHistory, locale );
+            return;
         }
-        catch( Exception e )
+
+        if ( bLazyMode )
         {
-            // print the error in a pdf
-            formsPDFTaskTemplate.setContent( e.getMessage());
-            HtmlToPDFGenerator htmltopdf = new HtmlToPDFGenerator( "error", I18nService.getLocalizedString( PROPERTY_LABEL_DESCRIPTION, locale ), new FormResponse(), formsPDFTaskTemplate );
-            TemporaryFileGeneratorService.getInstance( ).generateFile( htmltopdf, user );
-            throw new RuntimeException( strError, e );
+            // the PDF is rendered on its first download
+            FormsPDFLazyRenderService.getInstance( ).record( getId( ), nIdResourceHistory, locale );
+            return;
         }
+
+        FormsPDFRenderService.getInstance( ).generate( getId( ), nIdResourceHistory, request, locale );
     }
 
     @Override
@@ -158,8 +133,8 @@ public class FormsPDFTask extends Task
     @Override
     public void doRemoveTaskInformation( int nIdHistory )
     {
-        // Do Nothing
-
+        FormsPDFLazyRenderService.getInstance( ).remove( getId( ), nIdHistory );
+        FormsPDFSnapshotHome.remove( getId( ), nIdHistory );
     }
 
     @Override
@@ -167,55 +142,9 @@ public class FormsPDFTask extends Task
     {
         // _formsJasperTaskConfigService.remove( getId( ) );
         _formsPDFTaskConfigService.remove( getId( ) );
-    }
-
-    /**
-     * In a loop, call the markersToModel method to add the markers to the model
-     * @param model
-     * @param collectionMarkersValue
-     */
-    private void markersToModels( Map<String, Object> model, Map<String, InfoMarker> collectionMarkersValue  )
-    {
-        for ( int i = 0; i < collectionMarkersValue.size(); i++ )
-        {
-            String key = collectionMarkersValue.keySet().toArray()[i].toString();
-            markersToModel( model, collectionMarkersValue, key );
-
-        }
-    }
-
-    /**
-     * Add the markers to the model
-     * @param model
-     * @param collectionMarkersValue
-     * @param key
-     */
-    private void markersToModel( Map<String, Object> model, Map<String, InfoMarker> collectionMarkersValue, String key  )
-    {
-         if(key.contains( "position_" ) )
-            {
-                FormQuestionResponse formQuestionResponse = (FormQuestionResponse) collectionMarkersValue.get( key ).getValue( );
-                if(formQuestionResponse.getQuestion().getEntry() != null)
-                {
-                    model.put( key, formQuestionResponse );
-                }
-            }
-            else
-            {
-                model.put( key, collectionMarkersValue.get( key ).getValue( ) );
-            }
-        }
-
-    /**
-     * Add square bracket tag at the beginning of the template to process the template with the brackets included in the RTE
-     * @param strtemplate
-     * @return
-     */
-
-    private String addSquareBracketTag(String strtemplate)
-    {
-        strtemplate =  FTL_SQUARE_BRACKET_TAG+strtemplate;
-
-        return strtemplate;
+        // without its configuration the queued renderings of the task could only fail until their last attempt
+        FormsPDFJobHome.removeByTask( getId( ) );
+        FormsPDFLazyRenderService.getInstance( ).removeByTask( getId( ) );
+        FormsPDFSnapshotHome.removeByTask( getId( ) );
     }
 }
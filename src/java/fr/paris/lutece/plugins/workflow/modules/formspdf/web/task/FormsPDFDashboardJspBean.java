@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.web.task;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.commons.lang3.math.NumberUtils;
+
+import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFJob;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFJobHome;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFRenderStats;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFTaskTemplateDTO;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFTaskTemplateHome;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.FormsPDFJobService;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.budget.FormsPDFRenderBudgetService;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.budget.FormsPDFRenderLane;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.cache.FormsPDFDocumentCacheService;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.cache.FormsPDFFormCacheService;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.cache.FormsPDFTemplateContentCacheService;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.metrics.FormsPDFMetricsService;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.metrics.RenderFailure;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+import fr.paris.lutece.portal.util.mvc.admin.MVCAdminJspBean;
+import fr.paris.lutece.portal.util.mvc.admin.annotations.Controller;
+import fr.paris.lutece.portal.util.mvc.commons.annotations.Action;
+import fr.paris.lutece.portal.util.mvc.commons.annotations.View;
+
+/**
+ * Performance dashboard of the module : render metrics of the templates on this node and persisted for all the nodes, hit ratios of the caches, depth
+ * of the render queues and latest failed renderings
+ */
+@Controller( controllerJsp = "ManageDashboard.jsp", controllerPath = "jsp/admin/plugins/workflow/modules/formspdf/", right = FormsPDFDashboardJspBean.RIGHT_DASHBOARD )
+public class FormsPDFDashboardJspBean extends MVCAdminJspBean
+{
+    public static final String RIGHT_DASHBOARD = "WORKFLOW_FORMSPDF_DASHBOARD";
+
+    private static final long serialVersionUID = 1L;
+
+    // Templates
+    private static final String TEMPLATE_DASHBOARD = "/admin/plugins/workflow/modules/formspdf/dashboard_forms_pdf.html";
+
+    // Views
+    private static final String VIEW_DASHBOARD = "dashboard";
+
+    // Actions
+    private static final String ACTION_RESET_METRICS = "resetMetrics";
+    private static final String ACTION_PERSIST_METRICS = "persistMetrics";
+
+    // Parameters
+    private static final String PARAMETER_HOURS = "hours";
+
+    // Markers
+    private static final String MARK_NODE_ID = "node_id";
+    private static final String MARK_METRICS_ENABLED = "metrics_enabled";
+    private static final String MARK_TEMPLATE_METRICS = "template_metrics";
+    private static final String MARK_TEMPLATE_HISTORY = "template_history";
+    private static final String MARK_TEMPLATE_NAMES = "template_names";
+    private static final String MARK_RECENT_FAILURES = "recent_failures";
+    private static final String MARK_CACHES = "caches";
+    private static final String MARK_LANES = "lanes";
+    private static final String MARK_PENDING_JOBS = "pending_jobs";
+    private static final String MARK_HOURS = "hours";
+
+    private static final String KEY_NAME = "name";
+    private static final String KEY_HITS = "hits";
+    private static final String KEY_MISSES = "misses";
+    private static final String KEY_WAITING = "waiting";
+    private static final String KEY_ACTIVE = "active";
+
+    // Properties
+    private static final String PROPERTY_PAGE_TITLE_DASHBOARD = "module.workflow.formspdf.dashboard.title";
+    private static final String PROPERTY_DEFAULT_HOURS = "workflow-formspdf.metrics.dashboard.hours";
+    private static final int DEFAULT_HOURS = 24;
+
+    private static final String CACHE_TEMPLATES = "templates";
+    private static final String CACHE_FORMS = "forms";
+    private static final String CACHE_DOCUMENTS = "documents";
+
+    // session fields
+    private int _nHours;
+
+    @View( value = VIEW_DASHBOARD, defaultView = true )
+    public String getDashboard( HttpServletRequest request )
+    {
+        if ( _nHours <= 0 )
+        {
+            _nHours = AppPropertiesService.getPropertyInt( PROPERTY_DEFAULT_HOURS, DEFAULT_HOURS );
+        }
+        _nHours = NumberUtils.toInt( request.getParameter( PARAMETER_HOURS ), _nHours );
+
+        FormsPDFMetricsService metricsService = FormsPDFMetricsService.getInstance( );
+        List<FormsPDFRenderStats> listTemplateMetrics = metricsService.getTemplateMetrics( );
+        List<FormsPDFRenderStats> listTemplateHistory = metricsService.getHistory( _nHours );
+        List<RenderFailure> listRecentFailures = metricsService.getRecentFailures( );
+
+        Map<String, Object> model = getModel( );
+        model.put( MARK_NODE_ID, FormsPDFJobService.getInstance( ).getNodeId( ) );
+        model.put( MARK_METRICS_ENABLED, metricsService.isEnabled( ) );
+        model.put( MARK_TEMPLATE_METRICS, listTemplateMetrics );
+        model.put( MARK_TEMPLATE_HISTORY, listTemplateHistory );
+        model.put( MARK_TEMPLATE_NAMES, getTemplateNames( listTemplateMetrics, listTemplateHistory, listRecentFailures ) );
+        model.put( MARK_RECENT_FAILURES, listRecentFailures );
+        model.put( MARK_CACHES, getCaches( ) );
+        model.put( MARK_LANES, getLanes( ) );
+        model.put( MARK_PENDING_JOBS, FormsPDFJobHome.countByStatus( FormsPDFJob.STATUS_PENDING ) );
+        model.put( MARK_HOURS, _nHours );
+
+        return getPage( PROPERTY_PAGE_TITLE_DASHBOARD, TEMPLATE_DASHBOARD, model );
+    }
+
+    @Action( value = ACTION_PERSIST_METRICS )
+    public String doPersistMetrics( HttpServletRequest request )
+    {
+        FormsPDFMetricsService.getInstance( ).persist( );
+        return redirectView( request, VIEW_DASHBOARD );
+    }
+
+    @Action( value = ACTION_RESET_METRICS )
+    public String doResetMetrics( HttpServletRequest request )
+    {
+        FormsPDFMetricsService.getInstance( ).reset( );
+        return redirectView( request, VIEW_DASHBOARD );
+    }
+
+    /**
+     * Get the names of the templates shown by the dashboard
+     * 
+     * @return the names keyed by template id
+     */
+    private static Map<String, String> getTemplateNames( List<FormsPDFRenderStats> listTemplateMetrics, List<FormsPDFRenderStats> listTemplateHistory,
+            List<RenderFailure> listRecentFailures )
+    {
+        Set<Integer> setIdTemplates = new LinkedHashSet<>( );
+        listTemplateMetrics.forEach( stats -> setIdTemplates.add( stats.getIdTemplate( ) ) );
+        listTemplateHistory.forEach( stats -> setIdTemplates.add( stats.getIdTemplate( ) ) );
+        listRecentFailures.forEach( failure -> setIdTemplates.add( failure.getIdTemplate( ) ) );
+
+        Map<String, String> mapNames = new HashMap<>( );
+        if ( !setIdTemplates.isEmpty( ) )
+        {
+            for ( FormsPDFTaskTemplateDTO template : FormsPDFTaskTemplateHome.findSummariesWithFormTitles( new ArrayList<>( setIdTemplates ) ) )
+            {
+                mapNames.put( String.valueOf( template.getId( ) ), template.getName( ) );
+            }
+        }
+        return mapNames;
+    }
+
+    /**
+     * @return the hit and miss counters of the caches of the node
+     */
+    private static List<Map<String, Object>> getCaches( )
+    {
+        List<Map<String, Object>> listCaches = new ArrayList<>( );
+        listCaches.add( cache( CACHE_TEMPLATES, FormsPDFTemplateContentCacheService.getInstance( ).getHits( ),
+                FormsPDFTemplateContentCacheService.getInstance( ).getMisses( ) ) );
+        listCaches.add( cache( CACHE_FORMS, FormsPDFFormCacheService.getInstance( ).getHits( ), FormsPDFFormCacheService.getInstance( ).getMisses( ) ) );
+        listCaches.add( cache( CACHE_DOCUMENTS, FormsPDFDocumentCacheService.getInstance( ).getHits( ),
+                FormsPDFDocumentCacheService.getInstance( ).getMisses( ) ) );
+        return listCaches;
+    }
+
+    private static Map<String, Object> cache( String strName, long lHits, long lMisses )
+    {
+        Map<String, Object> mapCache = new HashMap<>( );
+        mapCache.put( KEY_NAME, strName );
+        mapCache.put( KEY_HITS, lHits );
+        mapCache.put( KEY_MISSES, lMisses );
+        return mapCache;
+    }
+
+    /**
+     * @return the renderings waiting for and using the render threads of each lane of the node
+     */
+    private static List<Map<String, Object>> getLanes( )
+    {
+        List<Map<String, Object>> listLanes = new ArrayList<>( );
+        for ( FormsPDFRenderLane lane : FormsPDFRenderLane.values( ) )
+        {
+            Map<String, Object> mapLane = new HashMap<>( );
+            mapLane.put( KEY_NAME, lane.getName( ) );
+            mapLane.put( KEY_WAITING, FormsPDFRenderBudgetService.getInstance( ).getQueueDepth( lane ) );
+            mapLane.put( KEY_ACTIVE, FormsPDFRenderBudgetService.getInstance( ).getActiveCount( lane ) );
+            listLanes.add( mapLane );
+        }
+        return listLanes;
+    }
+}
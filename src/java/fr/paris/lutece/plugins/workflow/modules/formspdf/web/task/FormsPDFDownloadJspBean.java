@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.web.task;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import fr.paris.lutece.plugins.forms.business.Form;
+import fr.paris.lutece.plugins.forms.business.FormResponse;
+import fr.paris.lutece.plugins.forms.business.FormResponseHome;
+import fr.paris.lutece.plugins.forms.service.FormsResourceIdService;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFRenderDescriptor;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFRenderDescriptorHome;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.FileTransferUtils;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.FormsPDFLazyRenderService;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.cache.CachedDocument;
+import fr.paris.lutece.portal.business.user.AdminUser;
+import fr.paris.lutece.portal.service.admin.AdminUserService;
+import fr.paris.lutece.portal.service.message.AdminMessage;
+import fr.paris.lutece.portal.service.message.AdminMessageService;
+import fr.paris.lutece.portal.service.rbac.RBACService;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.web.constants.Messages;
+
+/**
+ * Download of the documents recorded in lazy dispatch mode. The document is rendered by the first download. Only the users allowed to view the
+ * responses of the form of the document can download it.
+ */
+public class FormsPDFDownloadJspBean implements Serializable
+{
+    public static final String JSP_DOWNLOAD = "jsp/admin/plugins/workflow/modules/formspdf/DoDownloadDocument.jsp";
+    public static final String PARAMETER_ID_RENDER = "id_render";
+
+    private static final long serialVersionUID = 4927615468322195373L;
+
+    private static final String MESSAGE_ERROR_NO_FILE_PARAMETER = "module.workflow.formspdf.message.error.no_file_parameter";
+    private static final String MESSAGE_ERROR_NO_FILE_FOUND = "module.workflow.formspdf.message.error.no_file_found";
+
+    private static final String HEADER_CONTENT_DISPOSITION = "Content-Disposition";
+    // characters kept in the file name of the header for the clients not supporting RFC 5987
+    private static final String PATTERN_UNSAFE_FILE_NAME_CHARACTERS = "[^A-Za-z0-9._ -]";
+    private static final String UNSAFE_FILE_NAME_CHARACTER_REPLACEMENT = "_";
+
+    /**
+     * Send the document of a render descriptor
+     * 
+     * @param request
+     *            the request
+     * @param response
+     *            the response
+     * @return the url of an error message, or null if the document has been sent
+     */
+    public String doDownloadDocument( HttpServletRequest request, HttpServletResponse response )
+    {
+        String strIdRender = request.getParameter( PARAMETER_ID_RENDER );
+        int nIdRender = NumberUtils.toInt( strIdRender, -1 );
+        if ( nIdRender == -1 )
+        {
+            return AdminMessageService.getMessageUrl( request, MESSAGE_ERROR_NO_FILE_PARAMETER, AdminMessage.TYPE_STOP );
+        }
+
+        FormsPDFRenderDescriptor descriptor = FormsPDFRenderDescriptorHome.findByPrimaryKey( nIdRender );
+        if ( descriptor == null )
+        {
+            return AdminMessageService.getMessageUrl( request, MESSAGE_ERROR_NO_FILE_FOUND, new Object [ ] {
+                    strIdRender
+            }, AdminMessage.TYPE_STOP );
+        }
+
+        if ( !isAuthorized( descriptor, AdminUserService.getAdminUser( request ) ) )
+        {
+            AppLogService.error( "Download of the document of the PDF render descriptor " + nIdRender + " denied" );
+            return AdminMessageService.getMessageUrl( request, Messages.USER_ACCESS_DENIED, AdminMessage.TYPE_STOP );
+        }
+
+        try
+        {
+            CachedDocument document = FormsPDFLazyRenderService.getInstance( ).getCachedDocument( descriptor, request );
+            if ( document != null )
+            {
+                response.setContentType( document.getMimeType( ) );
+                response.setHeader( HEADER_CONTENT_DISPOSITION, getContentDisposition( document.getFileName( ) ) );
+                response.setContentLengthLong( document.getSize( ) );
+
+                OutputStream outputStream = response.getOutputStream( );
+                FileTransferUtils.transferTo( document.getContent( ), outputStream );
+                outputStream.flush( );
+                return null;
+            }
+
+            long lSize = FormsPDFLazyRenderService.getInstance( ).getRenderedDocument( descriptor, request );
+            Path renderedFile = FormsPDFLazyRenderService.getInstance( ).getRenderedFile( descriptor );
+            if ( renderedFile != null )
+            {
+                response.setContentType( descriptor.getMimeType( ) );
+                response.setHeader( HEADER_CONTENT_DISPOSITION, getContentDisposition( descriptor.getFileName( ) ) );
+                response.setContentLengthLong( lSize );
+
+                OutputStream outputStream = response.getOutputStream( );
+                FileTransferUtils.transferTo( renderedFile, outputStream );
+                outputStream.flush( );
+                return null;
+            }
+
+            try ( InputStream inputStream = FormsPDFLazyRenderService.getInstance( ).openRenderedDocument( descriptor ) )
+            {
+                if ( inputStream == null )
+                {
+                    throw new IOException( "Rendered document deleted from the storage" );
+                }
+
+                response.setContentType( descriptor.getMimeType( ) );
+                response.setHeader( HEADER_CONTENT_DISPOSITION, getContentDisposition( descriptor.getFileName( ) ) );
+                response.setContentLengthLong( lSize );
+
+                OutputStream outputStream = response.getOutputStream( );
+                IOUtils.copyLarge( inputStream, outputStream );
+                outputStream.flush( );
+            }
+        }
+        catch( IOException | RuntimeException e )
+        {
+            // rendering errors, exceeded render budgets and storage errors alike
+            AppLogService.error( "Unable to send the document of the PDF render descriptor " + nIdRender, e );
+            return AdminMessageService.getMessageUrl( request, MESSAGE_ERROR_NO_FILE_FOUND, new Object [ ] {
+                    strIdRender
+            }, AdminMessage.TYPE_STOP );
+        }
+
+        return null;
+    }
+
+    /**
+     * Check if a user may view the form response of a render descriptor
+     * 
+     * @param descriptor
+     *            the render descriptor
+     * @param user
+     *            the user
+     * @return true if the user may view the responses of the form of the descriptor
+     */
+    private static boolean isAuthorized( FormsPDFRenderDescriptor descriptor, AdminUser user )
+    {
+        if ( user == null )
+        {
+            return false;
+        }
+        FormResponse formResponse = FormResponseHome.findByPrimaryKey( descriptor.getIdFormResponse( ) );
+        return formResponse != null && RBACService.isAuthorized( Form.RESOURCE_TYPE, String.valueOf( formResponse.getFormId( ) ),
+                FormsResourceIdService.PERMISSION_VIEW_FORM_RESPONSE, user );
+    }
+
+    /**
+     * Build the Content-Disposition header of a download, with a sanitised file name and its RFC 5987 encoding
+     * 
+     * @param strFileName
+     *            the file name, built from the title of the form
+     * @return the value of the header
+     */
+    private static String getContentDisposition( String strFileName )
+    {
+        String strSafeFileName = String.valueOf( strFileName ).replaceAll( PATTERN_UNSAFE_FILE_NAME_CHARACTERS, UNSAFE_FILE_NAME_CHARACTER_REPLACEMENT );
+        try
+        {
+            String strEncodedFileName = URLEncoder.encode( String.valueOf( strFileName ), StandardCharsets.UTF_8.name( ) ).replace( "+", "%20" )
+                    .replace( "*", "%2A" );
+            return "attachment; filename=\"" + strSafeFileName + "\"; filename*=UTF-8''" + strEncodedFileName;
+        }
+        catch( UnsupportedEncodingException e )
+        {
+            // UTF-8 is always supported
+            return "attachment; filename=\"" + strSafeFileName + "\"";
+        }
+    }
+}
@@ -43,16 +43,21 @@ import javax.servlet.http.HttpServletRequest;
 import org.apache.commons.lang3.math.NumberUtils;
 
 import fr.paris.lutece.plugins.forms.business.FormHome;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFRenderDescriptor;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFRenderDescriptorHome;
 import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFTaskConfig;
 import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFTaskTemplate;
 import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFTaskTemplateHome;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.output.OutputWriterService;
 import fr.paris.lutece.plugins.workflow.web.task.AbstractTaskComponent;
 import fr.paris.lutece.plugins.workflowcore.service.task.ITask;
 import fr.paris.lutece.portal.service.template.AppTemplateService;
+import fr.paris.lutece.portal.service.util.AppPathService;
 import fr.paris.lutece.portal.service.util.AppPropertiesService;
 import fr.paris.lutece.util.ReferenceItem;
 import fr.paris.lutece.util.ReferenceList;
 import fr.paris.lutece.util.html.HtmlTemplate;
+import fr.paris.lutece.util.url.UrlItem;
 
 /**
  * This class represents a component for the task {@link fr.paris.lutece.plugins.workflow.modules.formspdf.service.task.FormsPDFTask FormsPDFTask}
@@ -82,6 +87,10 @@ public class FormsPDFTaskComponent extends AbstractTaskComponent
      */
     private static final String MARK_FORMATS_LIST = "formats_list";
 
+    private static final String MARK_RENDER = "render";
+
+    private static final String MARK_DOWNLOAD_URL = "download_url";
+
     /**
      * the list of compatible formats to generate reports
      */
@@ -91,6 +100,11 @@ public class FormsPDFTaskComponent extends AbstractTaskComponent
      * Freemarker template of the task configuration vue
      */
     private static final String TEMPLATE_CONFIG_GLOBAL_FORMSPDF = "admin/plugins/workflow/modules/formspdf/global_formspdf_task_config.html";
+
+    /**
+     * Freemarker template of the task information, linking to the document recorded in lazy dispatch mode
+     */
+    private static final String TEMPLATE_TASK_INFORMATION = "admin/plugins/workflow/modules/formspdf/formspdf_task_information.html";
     
     private static final String PARAMETER_ID_TASK = "id_task";
     
@@ -117,6 +131,11 @@ public class FormsPDFTaskComponent extends AbstractTaskComponent
         ReferenceList listFormats = new ReferenceList( );
         for ( String strFormat : arrayListFormats )
         {
+            if ( !OutputWriterService.isAvailable( strFormat ) )
+            {
+                // e.g. pdfa without color profile
+                continue;
+            }
             ReferenceItem itemFormat = new ReferenceItem( );
             itemFormat.setCode( strFormat );
             itemFormat.setName( strFormat );
@@ -147,7 +166,22 @@ public class FormsPDFTaskComponent extends AbstractTaskComponent
     @Override
     public String getDisplayTaskInformation( int nIdHistory, HttpServletRequest request, Locale locale, ITask task )
     {
-        return null;
+        // only the documents recorded in lazy dispatch mode are downloaded from the history
+        FormsPDFRenderDescriptor descriptor = FormsPDFRenderDescriptorHome.findByTaskAndHistory( task.getId( ), nIdHistory );
+        if ( descriptor == null )
+        {
+            return null;
+        }
+
+        UrlItem url = new UrlItem( AppPathService.getBaseUrl( request ) + FormsPDFDownloadJspBean.JSP_DOWNLOAD );
+        url.addParameter( FormsPDFDownloadJspBean.PARAMETER_ID_RENDER, descriptor.getId( ) );
+
+        Map<String, Object> model = new HashMap<>( );
+        model.put( MARK_RENDER, descriptor );
+        model.put( MARK_DOWNLOAD_URL, url.getUrl( ) );
+
+        HtmlTemplate page = AppTemplateService.getTemplate( TEMPLATE_TASK_INFORMATION, locale, model );
+        return page.getHtml( );
     }
 
     @Override
@@ -33,22 +33,32 @@
  */
 package fr.paris.lutece.plugins.workflow.modules.formspdf.web.task;
 
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
 import javax.servlet.http.HttpServletRequest;
 
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.math.NumberUtils;
 
-import fr.paris.lutece.plugins.forms.business.Form;
 import fr.paris.lutece.plugins.forms.business.FormHome;
-import fr.paris.lutece.plugins.forms.service.provider.GenericFormsProvider;
 import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFTaskTemplate;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFTaskTemplateFilter;
 import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFTaskTemplateHome;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.business.FormsPDFTaskTemplateRevisionHome;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.FormsPDFTemplateService;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.budget.FormsPDFCircuitBreakerService;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.cache.FormsPDFCacheInvalidationService;
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.cache.FormsPDFFormCacheService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
 import fr.paris.lutece.portal.util.mvc.admin.MVCAdminJspBean;
 import fr.paris.lutece.portal.util.mvc.admin.annotations.Controller;
 import fr.paris.lutece.portal.util.mvc.commons.annotations.Action;
 import fr.paris.lutece.portal.util.mvc.commons.annotations.View;
+import fr.paris.lutece.util.html.AbstractPaginator;
+import fr.paris.lutece.util.html.LocalizedPaginator;
+import fr.paris.lutece.util.url.UrlItem;
 
 @Controller( controllerJsp = "ManageTemplates.jsp", controllerPath = "jsp/admin/plugins/workflow/modules/formspdf/", right = "WORKFLOW_MANAGEMENT" )
 public class FormsPDFTaskTemplateJspBean extends MVCAdminJspBean{
@@ -68,6 +78,8 @@ public class FormsPDFTaskTemplateJspBean extends MVCAdminJspBean{
     // Actions
     private static final String ACTION_MODIFY_TEMPLATE = "modifyTemplate";
     private static final String ACTION_REMOVE_TEMPLATE = "removeTemplate";
+    private static final String ACTION_ROLLBACK_TEMPLATE = "rollbackTemplate";
+    private static final String ACTION_RESET_CIRCUIT = "resetCircuit";
     
     // Parameters
     private static final String PARAMETER_TASK_ID = "task_id";
@@ -77,6 +89,11 @@ public class FormsPDFTaskTemplateJspBean extends MVCAdminJspBean{
     private static final String PARAMETER_TEMPLATE_ASSOCIATE_FORM = "template_associate_form";
     private static final String PARAMETER_TEMPLATE_CONTENT = "template_content";
 	private static final String PARAMETER_RICH_TEXT_EDITOR = "rte";
+	private static final String PARAMETER_REVISION = "revision";
+	private static final String PARAMETER_SEARCH = "search";
+	private static final String PARAMETER_SEARCH_NAME = "search_name";
+	private static final String PARAMETER_SEARCH_ID_FORM = "search_id_form";
+	private static final String PARAMETER_SEARCH_GENERIC = "search_generic";
 
 	// Markers
 	private static final String MARK_RICH_TEXT_EDITOR = "rte";
@@ -85,14 +102,29 @@ public class FormsPDFTaskTemplateJspBean extends MVCAdminJspBean{
     private static final String MARK_TASK_ID = "task_id";
     private static final String MARK_LIST_MARKERS = "list_markers";
     private static final String MARK_FORMS_LIST = "forms_list";
+    private static final String MARK_REVISIONS_LIST = "revisions_list";
+    private static final String MARK_CIRCUITS = "circuits";
+    private static final String MARK_FILTER = "filter";
+    private static final String MARK_PAGINATOR = "paginator";
+    private static final String MARK_NB_ITEMS_PER_PAGE = "nb_items_per_page";
     
     // session fields
     private int _nIdTask;
+    private FormsPDFTaskTemplate _formsPDFTaskTemplate;
+    private FormsPDFTaskTemplateFilter _filter = new FormsPDFTaskTemplateFilter( );
+    private String _strCurrentPageIndex;
+    private int _nItemsPerPage;
 
 	//Properties
 
 	private static final String PROPERTY_PAGE_TITLE_MANAGE_FORMS_PDF_TEMPLATES = "module.workflow.formspdf.manage.template.title";
 	private static final String PROPERTY_PAGE_TITLE_MODIFY_FORMS_PDF_TEMPLATES = "module.workflow.formspdf.modify.template.title";
+	private static final String PROPERTY_ITEMS_PER_PAGE = "workflow-formspdf.manage.template.itemsPerPage";
+	private static final int DEFAULT_ITEMS_PER_PAGE = 50;
+	
+	// Jsp
+	private static final String JSP_MANAGE_TEMPLATES = "jsp/admin/plugins/workflow/modules/formspdf/ManageTemplates.jsp";
+	
     @View( value = VIEW_MANAGE_TEMPLATES, defaultView = true )
     public String getManageTemplates( HttpServletRequest request )
     {
@@ -105,7 +137,28 @@ public class FormsPDFTaskTemplateJspBean extends MVCAdminJspBean{
         }
         model.put(MARK_TASK_ID, _nIdTask);
         
-        model.put(MARK_TEMPLATE_PDF_LIST, FormsPDFTaskTemplateHome.findAllWithFormTitles());
+        if (request.getParameter(PARAMETER_SEARCH) != null)
+        {
+        	_filter = new FormsPDFTaskTemplateFilter( );
+        	_filter.setName(StringUtils.trimToNull(request.getParameter(PARAMETER_SEARCH_NAME)));
+        	_filter.setIdForm(NumberUtils.toInt(request.getParameter(PARAMETER_SEARCH_ID_FORM), 0));
+        	_filter.setGeneric(NumberUtils.toInt(request.getParameter(PARAMETER_SEARCH_GENERIC), FormsPDFTaskTemplateFilter.ALL));
+        	_strCurrentPageIndex = null;
+        }
+        
+        // only the ids of the matching templates are loaded, then the templates of the current page without their content
+        _strCurrentPageIndex = AbstractPaginator.getPageIndex( request, AbstractPaginator.PARAMETER_PAGE_INDEX, _strCurrentPageIndex );
+        _nItemsPerPage = AbstractPaginator.getItemsPerPage( request, AbstractPaginator.PARAMETER_ITEMS_PER_PAGE, _nItemsPerPage,
+        		AppPropertiesService.getPropertyInt( PROPERTY_ITEMS_PER_PAGE, DEFAULT_ITEMS_PER_PAGE ) );
+        LocalizedPaginator<Integer> paginator = new LocalizedPaginator<>( FormsPDFTaskTemplateHome.findIdsByFilter(_filter), _nItemsPerPage,
+        		new UrlItem( JSP_MANAGE_TEMPLATES ).getUrl( ), AbstractPaginator.PARAMETER_PAGE_INDEX, _strCurrentPageIndex, locale );
+        
+        model.put(MARK_TEMPLATE_PDF_LIST, FormsPDFTaskTemplateHome.findSummariesWithFormTitles(paginator.getPageItems( )));
+        model.put(MARK_PAGINATOR, paginator);
+        model.put(MARK_NB_ITEMS_PER_PAGE, String.valueOf(_nItemsPerPage));
+        model.put(MARK_FILTER, _filter);
+        model.put(MARK_FORMS_LIST, FormHome.getFormsReferenceList( ));
+        model.put(MARK_CIRCUITS, FormsPDFCircuitBreakerService.getCircuits( ));
 
 		return getPage(PROPERTY_PAGE_TITLE_MANAGE_FORMS_PDF_TEMPLATES, TEMPLATE_MANAGE_FORMS_PDF_TEMPLATES, model);
     }
@@ -117,7 +170,13 @@ public class FormsPDFTaskTemplateJspBean extends MVCAdminJspBean{
     	Map<String, Object> model = getModel( );
 		FormsPDFTaskTemplate formsPDFTaskTemplate = null;
     	int nIdTemplate = NumberUtils.toInt( request.getParameter( PARAMETER_TEMPLATE_ID ), DEFAULT_ID_VALUE );
-    	if (nIdTemplate > 0)
+    	if (_formsPDFTaskTemplate != null)
+    	{
+    		// template rejected by the validation
+    		formsPDFTaskTemplate = _formsPDFTaskTemplate;
+    		_formsPDFTaskTemplate = null;
+    	}
+    	else if (nIdTemplate > 0)
     	{
     		formsPDFTaskTemplate = FormsPDFTaskTemplateHome.findByPrimaryKey(nIdTemplate);
     	} else {
@@ -134,20 +193,20 @@ public class FormsPDFTaskTemplateJspBean extends MVCAdminJspBean{
 		// format the content
 		if (isRichTextEditor) {
 			if(!formsPDFTaskTemplate.isRte()) {
-				formsPDFTaskTemplate.setContent(convertMacroToSquareBrackets(formsPDFTaskTemplate.getContent()));
+				formsPDFTaskTemplate.setContent(FormsPDFTemplateService.convertMacroToSquareBrackets(formsPDFTaskTemplate.getContent()));
 			}
 		} else {
 			if(formsPDFTaskTemplate.isRte()) {
-				formsPDFTaskTemplate.setContent(convertMacroToSuppMinor(formsPDFTaskTemplate.getContent()));
+				formsPDFTaskTemplate.setContent(FormsPDFTemplateService.convertMacroToSuppMinor(formsPDFTaskTemplate.getContent()));
 			}
 		}
     	model.put(MARK_FORMS_PDF_TASK_TEMPLATE, formsPDFTaskTemplate);
     	
     	model.put( MARK_FORMS_LIST, FormHome.getFormsReferenceList( ) );
+    	model.put( MARK_REVISIONS_LIST, FormsPDFTaskTemplateRevisionHome.findByTemplate( formsPDFTaskTemplate.getId( ) ) );
     	
     	// markers
-    	Form form = FormHome.findByPrimaryKey( formsPDFTaskTemplate.getIdForm());
-    	model.put(MARK_LIST_MARKERS, GenericFormsProvider.getProviderMarkerDescriptions(form != null ? form : new Form()));
+    	model.put(MARK_LIST_MARKERS, FormsPDFFormCacheService.getInstance( ).getMarkerDescriptions( formsPDFTaskTemplate.getIdForm()));
 
 		return getPage(PROPERTY_PAGE_TITLE_MODIFY_FORMS_PDF_TEMPLATES, TEMPLATE_MODIFY_FORMS_PDF_TEMPLATE, model);
 	}
@@ -157,16 +216,31 @@ public class FormsPDFTaskTemplateJspBean extends MVCAdminJspBean{
     {
     	int nIdTemplate = NumberUtils.toInt( request.getParameter( PARAMETER_TEMPLATE_ID ), DEFAULT_ID_VALUE );
     	FormsPDFTaskTemplate formsPDFTaskTemplateToEdit = FormsPDFTaskTemplateHome.findByPrimaryKey(nIdTemplate);
-    	
-    	if (formsPDFTaskTemplateToEdit == null)
+    	boolean bCreate = formsPDFTaskTemplateToEdit == null;
+    	if (bCreate)
     	{
     		formsPDFTaskTemplateToEdit = new FormsPDFTaskTemplate();
-    		populateFormsPDFTaskTemplate(request, formsPDFTaskTemplateToEdit);
+    	}
+    	populateFormsPDFTaskTemplate(request, formsPDFTaskTemplateToEdit);
+
+    	List<String> listErrors = FormsPDFTemplateService.compile(formsPDFTaskTemplateToEdit, getLocale( ));
+    	if (!listErrors.isEmpty())
+    	{
+    		for (String strError : listErrors)
+    		{
+    			addError(strError);
+    		}
+    		_formsPDFTaskTemplate = formsPDFTaskTemplateToEdit;
+    		return redirect( request, VIEW_MODIFY_TEMPLATE, PARAMETER_TEMPLATE_ID, nIdTemplate );
+    	}
+
+    	if (bCreate)
+    	{
     		FormsPDFTaskTemplateHome.create(formsPDFTaskTemplateToEdit);
     	} else {
-    		populateFormsPDFTaskTemplate(request, formsPDFTaskTemplateToEdit);
     		FormsPDFTaskTemplateHome.update(formsPDFTaskTemplateToEdit);
     	}
+    	FormsPDFCacheInvalidationService.broadcast( FormsPDFCacheInvalidationService.CACHE_TEMPLATES );
     	
     	return redirectView( request, VIEW_MANAGE_TEMPLATES );
     }
@@ -179,6 +253,33 @@ public class FormsPDFTaskTemplateJspBean extends MVCAdminJspBean{
     	if (nIdTemplate > DEFAULT_ID_VALUE)
     	{
     		FormsPDFTaskTemplateHome.remove(nIdTemplate);
+    		FormsPDFCacheInvalidationService.broadcast( FormsPDFCacheInvalidationService.CACHE_TEMPLATES );
+    	}
+    	return redirectView( request, VIEW_MANAGE_TEMPLATES );
+    }
+    
+    @Action( value = ACTION_ROLLBACK_TEMPLATE )
+    public String doRollbackTemplate( HttpServletRequest request )
+    {
+    	int nIdTemplate = NumberUtils.toInt( request.getParameter( PARAMETER_TEMPLATE_ID ), DEFAULT_ID_VALUE );
+    	int nRevision = NumberUtils.toInt( request.getParameter( PARAMETER_REVISION ), DEFAULT_ID_VALUE );
+    	
+    	if (nIdTemplate > DEFAULT_ID_VALUE && nRevision > 0)
+    	{
+    		FormsPDFTaskTemplateHome.rollback(nIdTemplate, nRevision);
+    		FormsPDFCacheInvalidationService.broadcast( FormsPDFCacheInvalidationService.CACHE_TEMPLATES );
+    	}
+    	return redirect( request, VIEW_MODIFY_TEMPLATE, PARAMETER_TEMPLATE_ID, nIdTemplate );
+    }
+    
+    @Action( value = ACTION_RESET_CIRCUIT )
+    public String doResetCircuit( HttpServletRequest request )
+    {
+    	int nIdTemplate = NumberUtils.toInt( request.getParameter( PARAMETER_TEMPLATE_ID ), DEFAULT_ID_VALUE );
+    	
+    	if (nIdTemplate > DEFAULT_ID_VALUE)
+    	{
+    		FormsPDFCircuitBreakerService.reset(nIdTemplate);
     	}
     	return redirectView( request, VIEW_MANAGE_TEMPLATES );
     }
@@ -204,26 +305,4 @@ public class FormsPDFTaskTemplateJspBean extends MVCAdminJspBean{
 		return formsPDFTaskTemplateToEdit;
     }
 
-	/**
-	 * Convert the macro to display responses to the usual supp and minor
-	 * @param strtemplate
-	 * @return the string with the macro converted
-	 */
-	private String convertMacroToSuppMinor(String strtemplate)
-	{
-		strtemplate = strtemplate.replaceAll("\\[@displayEntry q=position_(\\d+)/]", "<@displayEntry q=position_$1/>");
-		return strtemplate;
-	}
-
-	/**
-	 * Convert the macro to display responses to the square brackets
-	 * @param strtemplate
-	 * @return the string with the macro converted
-	 */
-	private String convertMacroToSquareBrackets(String strtemplate)
-	{
-		strtemplate = strtemplate.replaceAll("<@displayEntry q=position_(\\d+)/>", "[@displayEntry q=position_$1/]");
-		return strtemplate;
-	}
-
-}
+}
\ No newline at end of file
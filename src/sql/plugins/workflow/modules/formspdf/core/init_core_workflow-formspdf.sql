@@ -0,0 +1,9 @@
+--
+-- Right of the performance dashboard, granted to the administrator
+--
+DELETE FROM core_admin_right WHERE id_right = 'WORKFLOW_FORMSPDF_DASHBOARD';
+INSERT INTO core_admin_right (id_right,name,level_right,admin_url,description,is_updatable,plugin_name,id_feature_group,icon_url,documentation_url,id_order) VALUES
+('WORKFLOW_FORMSPDF_DASHBOARD','module.workflow.formspdf.adminFeature.dashboard.name',0,'jsp/admin/plugins/workflow/modules/formspdf/ManageDashboard.jsp','module.workflow.formspdf.adminFeature.dashboard.description',0,'workflow-formspdf','SYSTEM',NULL,NULL,1);
+
+DELETE FROM core_user_right WHERE id_right = 'WORKFLOW_FORMSPDF_DASHBOARD';
+INSERT INTO core_user_right (id_right,id_user) VALUES ('WORKFLOW_FORMSPDF_DASHBOARD',1);
@@ -16,8 +16,134 @@ CREATE TABLE `workflow_task_formspdf_template` (
 	`name` VARCHAR(255) NOT NULL,
 	`id_form` INT(11) NOT NULL DEFAULT -1,
 	`is_generic` SMALLINT NOT NULL DEFAULT 1,
-	`content` LONGTEXT,
     'is_rte' SMALLINT NOT NULL DEFAULT 0,
+	`revision` INT(11) NOT NULL DEFAULT 0,
+	`sha256` CHAR(64) NULL DEFAULT NULL,
+	PRIMARY KEY (`id_template`),
+	KEY `idx_formspdf_template_form` (`id_form`, `is_generic`, `name`),
+	KEY `idx_formspdf_template_generic` (`is_generic`, `name`)
+)
+;
+
+DROP TABLE IF EXISTS workflow_task_formspdf_template_content ;
+
+CREATE TABLE `workflow_task_formspdf_template_content` (
+	`id_template` INT(11) NOT NULL,
+	`content` LONGTEXT,
+	`compiled_content` LONGTEXT,
 	PRIMARY KEY (`id_template`)
 )
 ;
+
+DROP TABLE IF EXISTS workflow_task_formspdf_template_revision ;
+
+CREATE TABLE `workflow_task_formspdf_template_revision` (
+	`id_template` INT(11) NOT NULL,
+	`revision` INT(11) NOT NULL,
+	`sha256` CHAR(64) NOT NULL,
+	`content` LONGTEXT,
+	`compiled_content` LONGTEXT,
+	`is_rte` SMALLINT NOT NULL DEFAULT 0,
+	`created_at` TIMESTAMP NULL DEFAULT NULL,
+	PRIMARY KEY (`id_template`, `revision`)
+)
+;
+
+DROP TABLE IF EXISTS workflow_task_formspdf_job ;
+
+CREATE TABLE `workflow_task_formspdf_job` (
+	`id_job` INT AUTO_INCREMENT,
+	`id_task` INT(11) NOT NULL,
+	`id_resource_history` INT(11) NOT NULL,
+	`locale` VARCHAR(50) NULL DEFAULT NULL,
+	`status` VARCHAR(15) NOT NULL,
+	`node_id` VARCHAR(255) NULL DEFAULT NULL,
+	`lease_expiration` TIMESTAMP NULL DEFAULT NULL,
+	`nb_attempts` INT(11) NOT NULL DEFAULT 0,
+	`date_creation` TIMESTAMP NULL DEFAULT NULL,
+	PRIMARY KEY (`id_job`),
+	UNIQUE KEY `uk_formspdf_job_task_history` (`id_task`, `id_resource_history`),
+	KEY `idx_formspdf_job_status` (`status`, `lease_expiration`)
+)
+;
+
+DROP TABLE IF EXISTS workflow_task_formspdf_render ;
+
+CREATE TABLE `workflow_task_formspdf_render` (
+	`id_render` INT AUTO_INCREMENT,
+	`id_task` INT(11) NOT NULL,
+	`id_resource_history` INT(11) NOT NULL,
+	`id_template` INT(11) NOT NULL,
+	`template_revision` INT(11) NOT NULL DEFAULT 0,
+	`id_form_response` INT(11) NOT NULL,
+	`locale` VARCHAR(50) NULL DEFAULT NULL,
+	`date_creation` TIMESTAMP NULL DEFAULT NULL,
+	`file_name` VARCHAR(255) NULL DEFAULT NULL,
+	`mime_type` VARCHAR(255) NULL DEFAULT NULL,
+	`date_rendered` TIMESTAMP NULL DEFAULT NULL,
+	PRIMARY KEY (`id_render`),
+	UNIQUE KEY `uk_formspdf_render_task_history` (`id_task`, `id_resource_history`),
+	KEY `idx_formspdf_render_rendered` (`date_rendered`)
+)
+;
+
+DROP TABLE IF EXISTS workflow_task_formspdf_snapshot ;
+
+CREATE TABLE `workflow_task_formspdf_snapshot` (
+	`id_task` INT(11) NOT NULL,
+	`id_resource_history` INT(11) NOT NULL,
+	`id_form` INT(11) NOT NULL,
+	`id_form_response` INT(11) NOT NULL,
+	`data` LONGBLOB NOT NULL,
+	`date_creation` TIMESTAMP NULL DEFAULT NULL,
+	PRIMARY KEY (`id_task`, `id_resource_history`)
+)
+;
+
+DROP TABLE IF EXISTS workflow_task_formspdf_cache_epoch ;
+
+CREATE TABLE `workflow_task_formspdf_cache_epoch` (
+	`cache_name` VARCHAR(100) NOT NULL,
+	`epoch` BIGINT NOT NULL DEFAULT 0,
+	PRIMARY KEY (`cache_name`)
+)
+;
+
+DROP TABLE IF EXISTS workflow_task_formspdf_document ;
+
+CREATE TABLE `workflow_task_formspdf_document` (
+	`document_key` VARCHAR(255) NOT NULL,
+	`size` BIGINT NOT NULL DEFAULT 0,
+	`date_creation` TIMESTAMP NULL DEFAULT NULL,
+	PRIMARY KEY (`document_key`)
+)
+;
+
+DROP TABLE IF EXISTS workflow_task_formspdf_document_chunk ;
+
+CREATE TABLE `workflow_task_formspdf_document_chunk` (
+	`document_key` VARCHAR(255) NOT NULL,
+	`chunk_index` INT(11) NOT NULL,
+	`data` LONGBLOB NOT NULL,
+	PRIMARY KEY (`document_key`, `chunk_index`)
+)
+;
+
+DROP TABLE IF EXISTS workflow_task_formspdf_render_stats ;
+
+CREATE TABLE `workflow_task_formspdf_render_stats` (
+	`id_template` INT(11) NOT NULL,
+	`period_start` TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+	`node_id` VARCHAR(255) NOT NULL,
+	`nb_renders` INT(11) NOT NULL DEFAULT 0,
+	`nb_failures` INT(11) NOT NULL DEFAULT 0,
+	`total_duration` BIGINT NOT NULL DEFAULT 0,
+	`max_duration` BIGINT NOT NULL DEFAULT 0,
+	`p50_duration` BIGINT NOT NULL DEFAULT 0,
+	`p95_duration` BIGINT NOT NULL DEFAULT 0,
+	`p99_duration` BIGINT NOT NULL DEFAULT 0,
+	`total_size` BIGINT NOT NULL DEFAULT 0,
+	PRIMARY KEY (`id_template`, `period_start`, `node_id`),
+	KEY `idx_formspdf_render_stats_period` (`period_start`)
+)
+;
@@ -1,2 +1,11 @@
+DELETE FROM workflow_task_formspdf_template_revision;
+DELETE FROM workflow_task_formspdf_template_content;
 DELETE FROM workflow_task_formspdf_template;
-INSERT INTO workflow_task_formspdf_template (name, content) VALUES ('Default Template','<!DOCTYPE html><html><head><title>Export PDF formulaire ${form_title} le ${creation_date!}</title></head><body><h1 style="font-size: 30px; text-align: center; background-color: #f0f0f0;">${form_title}</h1><!-- division pour les reponses du formulaire a copier depuis les signets disponibles --><div id="form-response-summary" style="margin-bottom: 3em;"><h2 style="font-size: 18px;"> signet rep 1 </h2><h2 style="font-size: 18px;"> signet rep 2 </h2><h2 style="font-size: 18px;"> signet rep n </h2></div><!-- division pour le texte du copyright --><div id="copyright" style="position: fixed; bottom: 0; width: 100%; text-align: center; background-color: #f0f0f0; padding: 5px;"> Copyright (c) 2002-2023, City of Paris All rights reserved</div></body></html>');
\ No newline at end of file
+INSERT INTO workflow_task_formspdf_template (name) VALUES ('Default Template');
+INSERT INTO workflow_task_formspdf_template_content (id_template, content) SELECT id_template, '<!DOCTYPE html><html><head><title>Export PDF formulaire ${form_title} le ${creation_date!}</title></head><body><h1 style="font-size: 30px; text-align: center; background-color: #f0f0f0;">${form_title}</h1><!-- division pour les reponses du formulaire a copier depuis les signets disponibles --><div id="form-response-summary" style="margin-bottom: 3em;"><h2 style="font-size: 18px;"> signet rep 1 </h2><h2 style="font-size: 18px;"> signet rep 2 </h2><h2 style="font-size: 18px;"> signet rep n </h2></div><!-- division pour le texte du copyright --><div id="copyright" style="position: fixed; bottom: 0; width: 100%; text-align: center; background-color: #f0f0f0; padding: 5px;"> Copyright (c) 2002-2023, City of Paris All rights reserved</div></body></html>' FROM workflow_task_formspdf_template WHERE name = 'Default Template';
+
+-- first revision of the templates
+INSERT INTO workflow_task_formspdf_template_revision ( id_template, revision, sha256, content, compiled_content, is_rte, created_at )
+	SELECT t.id_template, 1, SHA2( CONCAT( CASE WHEN t.is_rte = 1 THEN 'rte:' ELSE '' END, COALESCE( c.content, '' ) ), 256 ), c.content, c.compiled_content, t.is_rte, NOW( )
+	FROM workflow_task_formspdf_template t LEFT JOIN workflow_task_formspdf_template_content c ON c.id_template = t.id_template;
+UPDATE workflow_task_formspdf_template t SET revision = 1, sha256 = ( SELECT r.sha256 FROM workflow_task_formspdf_template_revision r WHERE r.id_template = t.id_template AND r.revision = 1 );
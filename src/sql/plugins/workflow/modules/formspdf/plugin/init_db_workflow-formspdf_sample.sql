@@ -0,0 +1,10 @@
+-- Sample data of the load test (daemon formspdfLoadTestDaemon). The forms, responses and workflows are those of the plugins forms and workflow :
+-- create a task of this module using the template below on the workflow of a form with responses, and set its id in workflow-formspdf.loadtest.idTask.
+INSERT INTO workflow_task_formspdf_template (name) VALUES ('Load test template');
+INSERT INTO workflow_task_formspdf_template_content (id_template, content) SELECT id_template, '<!DOCTYPE html><html><head><title>${form_title!}</title></head><body><h1 style="font-size: 30px; text-align: center;">${form_title!}</h1><p>${creation_date!}</p><table style="width: 100%; border-collapse: collapse;"><#list 1..200 as i><tr><td style="border: 1px solid #ccc;">Line ${i}</td><td style="border: 1px solid #ccc;">Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et dolore magna aliqua.</td></tr></#list></table></body></html>' FROM workflow_task_formspdf_template WHERE name = 'Load test template';
+
+INSERT INTO workflow_task_formspdf_template_revision ( id_template, revision, sha256, content, compiled_content, is_rte, created_at )
+	SELECT t.id_template, 1, SHA2( CONCAT( CASE WHEN t.is_rte = 1 THEN 'rte:' ELSE '' END, COALESCE( c.content, '' ) ), 256 ), c.content, c.compiled_content, t.is_rte, NOW( )
+	FROM workflow_task_formspdf_template t LEFT JOIN workflow_task_formspdf_template_content c ON c.id_template = t.id_template WHERE t.name = 'Load test template';
+UPDATE workflow_task_formspdf_template t SET revision = 1, sha256 = ( SELECT r.sha256 FROM workflow_task_formspdf_template_revision r WHERE r.id_template = t.id_template AND r.revision = 1 )
+	WHERE name = 'Load test template';
@@ -0,0 +1,140 @@
+CREATE TABLE `workflow_task_formspdf_job` (
+	`id_job` INT AUTO_INCREMENT,
+	`id_task` INT(11) NOT NULL,
+	`id_resource_history` INT(11) NOT NULL,
+	`locale` VARCHAR(50) NULL DEFAULT NULL,
+	`status` VARCHAR(15) NOT NULL,
+	`node_id` VARCHAR(255) NULL DEFAULT NULL,
+	`lease_expiration` TIMESTAMP NULL DEFAULT NULL,
+	`nb_attempts` INT(11) NOT NULL DEFAULT 0,
+	`date_creation` TIMESTAMP NULL DEFAULT NULL,
+	PRIMARY KEY (`id_job`),
+	UNIQUE KEY `uk_formspdf_job_task_history` (`id_task`, `id_resource_history`),
+	KEY `idx_formspdf_job_status` (`status`, `lease_expiration`)
+)
+;
+
+ALTER TABLE workflow_task_formspdf_template ADD COLUMN compiled_content LONGTEXT;
+
+CREATE TABLE `workflow_task_formspdf_render` (
+	`id_render` INT AUTO_INCREMENT,
+	`id_task` INT(11) NOT NULL,
+	`id_resource_history` INT(11) NOT NULL,
+	`id_template` INT(11) NOT NULL,
+	`template_revision` INT(11) NOT NULL DEFAULT 0,
+	`id_form_response` INT(11) NOT NULL,
+	`locale` VARCHAR(50) NULL DEFAULT NULL,
+	`date_creation` TIMESTAMP NULL DEFAULT NULL,
+	`file_name` VARCHAR(255) NULL DEFAULT NULL,
+	`mime_type` VARCHAR(255) NULL DEFAULT NULL,
+	`date_rendered` TIMESTAMP NULL DEFAULT NULL,
+	PRIMARY KEY (`id_render`),
+	UNIQUE KEY `uk_formspdf_render_task_history` (`id_task`, `id_resource_history`)
+)
+;
+
+CREATE TABLE `workflow_task_formspdf_snapshot` (
+	`id_task` INT(11) NOT NULL,
+	`id_resource_history` INT(11) NOT NULL,
+	`id_form` INT(11) NOT NULL,
+	`id_form_response` INT(11) NOT NULL,
+	`data` LONGBLOB NOT NULL,
+	`date_creation` TIMESTAMP NULL DEFAULT NULL,
+	PRIMARY KEY (`id_task`, `id_resource_history`)
+)
+;
+
+ALTER TABLE workflow_task_formspdf_template ADD COLUMN revision INT(11) NOT NULL DEFAULT 0;
+ALTER TABLE workflow_task_formspdf_template ADD COLUMN sha256 CHAR(64) NULL DEFAULT NULL;
+
+CREATE TABLE `workflow_task_formspdf_template_revision` (
+	`id_template` INT(11) NOT NULL,
+	`revision` INT(11) NOT NULL,
+	`sha256` CHAR(64) NOT NULL,
+	`content` LONGTEXT,
+	`compiled_content` LONGTEXT,
+	`is_rte` SMALLINT NOT NULL DEFAULT 0,
+	`created_at` TIMESTAMP NULL DEFAULT NULL,
+	PRIMARY KEY (`id_template`, `revision`)
+)
+;
+
+-- first revision of the templates
+INSERT INTO workflow_task_formspdf_template_revision ( id_template, revision, sha256, content, compiled_content, is_rte, created_at )
+	SELECT id_template, 1, SHA2( CONCAT( CASE WHEN is_rte = 1 THEN 'rte:' ELSE '' END, 'form:', id_form, ':', is_generic, ':', COALESCE( content, '' ), ':', COALESCE( compiled_content, '' ) ), 256 ), content, compiled_content, is_rte, NOW( )
+	FROM workflow_task_formspdf_template;
+UPDATE workflow_task_formspdf_template t SET revision = 1, sha256 = ( SELECT r.sha256 FROM workflow_task_formspdf_template_revision r WHERE r.id_template = t.id_template AND r.revision = 1 );
+
+CREATE TABLE `workflow_task_formspdf_cache_epoch` (
+	`cache_name` VARCHAR(100) NOT NULL,
+	`epoch` BIGINT NOT NULL DEFAULT 0,
+	PRIMARY KEY (`cache_name`)
+)
+;
+
+-- listing of the templates in the administration, filtered by form and type and ordered by name
+CREATE INDEX idx_formspdf_template_form ON workflow_task_formspdf_template ( id_form, is_generic, name );
+CREATE INDEX idx_formspdf_template_generic ON workflow_task_formspdf_template ( is_generic, name );
+
+-- content of the templates moved out of the rows read by the listings
+CREATE TABLE `workflow_task_formspdf_template_content` (
+	`id_template` INT(11) NOT NULL,
+	`content` LONGTEXT,
+	`compiled_content` LONGTEXT,
+	PRIMARY KEY (`id_template`)
+)
+;
+INSERT INTO workflow_task_formspdf_template_content ( id_template, content, compiled_content )
+	SELECT id_template, content, compiled_content FROM workflow_task_formspdf_template;
+ALTER TABLE workflow_task_formspdf_template DROP COLUMN content;
+ALTER TABLE workflow_task_formspdf_template DROP COLUMN compiled_content;
+
+-- templates offered in the task configuration : each branch of the union uses its index, see the plans captured on a seeded database with the seed
+-- in doc/template-query-plans.md, e.g. with
+-- EXPLAIN SELECT id_template, name, id_form, is_generic, is_rte, revision, sha256 FROM workflow_task_formspdf_template WHERE id_form = 1
+-- UNION SELECT id_template, name, id_form, is_generic, is_rte, revision, sha256 FROM workflow_task_formspdf_template WHERE is_generic = 1 ORDER BY name;
+
+-- rendered documents kept in the database storage, by chunks, and index on the date of rendering used by the storage sweeper
+CREATE TABLE `workflow_task_formspdf_document` (
+	`document_key` VARCHAR(255) NOT NULL,
+	`size` BIGINT NOT NULL DEFAULT 0,
+	`date_creation` TIMESTAMP NULL DEFAULT NULL,
+	PRIMARY KEY (`document_key`)
+)
+;
+
+CREATE TABLE `workflow_task_formspdf_document_chunk` (
+	`document_key` VARCHAR(255) NOT NULL,
+	`chunk_index` INT(11) NOT NULL,
+	`data` LONGBLOB NOT NULL,
+	PRIMARY KEY (`document_key`, `chunk_index`)
+)
+;
+
+CREATE INDEX idx_formspdf_render_rendered ON workflow_task_formspdf_render ( date_rendered );
+
+-- render metrics of the templates persisted hourly by each node for the performance dashboard
+CREATE TABLE `workflow_task_formspdf_render_stats` (
+	`id_template` INT(11) NOT NULL,
+	`period_start` TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+	`node_id` VARCHAR(255) NOT NULL,
+	`nb_renders` INT(11) NOT NULL DEFAULT 0,
+	`nb_failures` INT(11) NOT NULL DEFAULT 0,
+	`total_duration` BIGINT NOT NULL DEFAULT 0,
+	`max_duration` BIGINT NOT NULL DEFAULT 0,
+	`p50_duration` BIGINT NOT NULL DEFAULT 0,
+	`p95_duration` BIGINT NOT NULL DEFAULT 0,
+	`p99_duration` BIGINT NOT NULL DEFAULT 0,
+	`total_size` BIGINT NOT NULL DEFAULT 0,
+	PRIMARY KEY (`id_template`, `period_start`, `node_id`),
+	KEY `idx_formspdf_render_stats_period` (`period_start`)
+)
+;
+
+-- right of the performance dashboard, granted to the administrator as on a new installation
+DELETE FROM core_admin_right WHERE id_right = 'WORKFLOW_FORMSPDF_DASHBOARD';
+INSERT INTO core_admin_right (id_right,name,level_right,admin_url,description,is_updatable,plugin_name,id_feature_group,icon_url,documentation_url,id_order) VALUES
+('WORKFLOW_FORMSPDF_DASHBOARD','module.workflow.formspdf.adminFeature.dashboard.name',0,'jsp/admin/plugins/workflow/modules/formspdf/ManageDashboard.jsp','module.workflow.formspdf.adminFeature.dashboard.description',0,'workflow-formspdf','SYSTEM',NULL,NULL,1);
+
+DELETE FROM core_user_right WHERE id_right = 'WORKFLOW_FORMSPDF_DASHBOARD';
+INSERT INTO core_user_right (id_right,id_user) VALUES ('WORKFLOW_FORMSPDF_DASHBOARD',1);
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.business;
+
+import java.util.Arrays;
+
+import fr.paris.lutece.test.LuteceTestCase;
+
+/**
+ * Test of the chunks of the {@link FormsPDFDocumentStorageDAO}
+ */
+public class FormsPDFDocumentStorageDAOTest extends LuteceTestCase
+{
+    private static final int CHUNK_SIZE = 1024;
+    private static final int NB_CHUNKS = 3;
+
+    private final IFormsPDFDocumentStorageDAO _dao = new FormsPDFDocumentStorageDAO( );
+
+    /**
+     * Test that the chunks of a document are read back in order, and its size once its header is written
+     */
+    public void testChunks( )
+    {
+        String strKey = createKey( );
+        try
+        {
+            for ( int i = 0; i < NB_CHUNKS; i++ )
+            {
+                _dao.insertChunk( strKey, i, createChunk( i ) );
+            }
+            // the document is not readable until its header is written after its last chunk
+            assertEquals( -1, _dao.loadSize( strKey ) );
+
+            _dao.insertDocument( strKey, (long) NB_CHUNKS * CHUNK_SIZE );
+            assertEquals( (long) NB_CHUNKS * CHUNK_SIZE, _dao.loadSize( strKey ) );
+            for ( int i = 0; i < NB_CHUNKS; i++ )
+            {
+                assertTrue( Arrays.equals( createChunk( i ), _dao.loadChunk( strKey, i ) ) );
+            }
+            assertNull( _dao.loadChunk( strKey, NB_CHUNKS ) );
+        }
+        finally
+        {
+            _dao.delete( strKey );
+        }
+    }
+
+    /**
+     * Test that the deletion of a document removes its header and its chunks
+     */
+    public void testDelete( )
+    {
+        String strKey = createKey( );
+        _dao.insertChunk( strKey, 0, createChunk( 0 ) );
+        _dao.insertDocument( strKey, CHUNK_SIZE );
+
+        _dao.delete( strKey );
+
+        assertEquals( -1, _dao.loadSize( strKey ) );
+        assertNull( _dao.loadChunk( strKey, 0 ) );
+    }
+
+    /**
+     * Test that the chunks written under a temporary key are moved under the key of the document
+     */
+    public void testUpdateChunksKey( )
+    {
+        String strKey = createKey( );
+        String strTemporaryKey = strKey + ".tmp";
+        try
+        {
+            _dao.insertChunk( strTemporaryKey, 0, createChunk( 0 ) );
+
+            _dao.updateChunksKey( strTemporaryKey, strKey );
+
+            assertTrue( Arrays.equals( createChunk( 0 ), _dao.loadChunk( strKey, 0 ) ) );
+            assertNull( _dao.loadChunk( strTemporaryKey, 0 ) );
+        }
+        finally
+        {
+            _dao.delete( strKey );
+            _dao.delete( strTemporaryKey );
+        }
+    }
+
+    /**
+     * Test that the chunks of a document are not mixed up with the chunks of another document
+     */
+    public void testKeys( )
+    {
+        String strKey = createKey( );
+        String strOtherKey = strKey + "-other";
+        try
+        {
+            _dao.insertChunk( strKey, 0, createChunk( 0 ) );
+            _dao.insertChunk( strOtherKey, 0, createChunk( 1 ) );
+
+            _dao.delete( strOtherKey );
+
+            assertTrue( Arrays.equals( createChunk( 0 ), _dao.loadChunk( strKey, 0 ) ) );
+            assertNull( _dao.loadChunk( strOtherKey, 0 ) );
+        }
+        finally
+        {
+            _dao.delete( strKey );
+            _dao.delete( strOtherKey );
+        }
+    }
+
+    /**
+     * @return a key unique among the tests
+     */
+    private static String createKey( )
+    {
+        return "test/" + System.nanoTime( ) + ".pdf";
+    }
+
+    /**
+     * @return a chunk whose bytes depend on its index and on their position
+     */
+    private static byte [ ] createChunk( int nIndex )
+    {
+        byte [ ] chunk = new byte [ CHUNK_SIZE];
+        for ( int i = 0; i < CHUNK_SIZE; i++ )
+        {
+            chunk [i] = (byte) ( nIndex * 31 + i );
+        }
+        return chunk;
+    }
+}
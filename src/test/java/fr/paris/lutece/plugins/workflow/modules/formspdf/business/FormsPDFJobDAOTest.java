@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.business;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import fr.paris.lutece.plugins.workflow.modules.formspdf.service.FormsPDFPlugin;
+import fr.paris.lutece.test.LuteceTestCase;
+import fr.paris.lutece.util.sql.DAOUtil;
+
+/**
+ * Test of the leases of the {@link FormsPDFJobDAO}
+ */
+public class FormsPDFJobDAOTest extends LuteceTestCase
+{
+    private static final String SQL_QUERY_DELETE = "DELETE FROM workflow_task_formspdf_job WHERE id_job = ? ";
+
+    private static final String NODE_A = "node-a";
+    private static final String NODE_B = "node-b";
+    private static final long LEASE = 60000L;
+    private static final int NB_CONCURRENT_NODES = 8;
+
+    private final IFormsPDFJobDAO _dao = new FormsPDFJobDAO( );
+
+    /**
+     * Test the claim of a pending job
+     */
+    public void testClaim( )
+    {
+        FormsPDFJob job = createJob( );
+        try
+        {
+            Timestamp now = new Timestamp( System.currentTimeMillis( ) );
+            assertTrue( _dao.selectClaimableIds( now, Integer.MAX_VALUE ).contains( job.getId( ) ) );
+
+            assertTrue( _dao.claim( job.getId( ), NODE_A, now, after( now, LEASE ) ) );
+            FormsPDFJob claimed = _dao.load( job.getId( ) );
+            assertEquals( FormsPDFJob.STATUS_RUNNING, claimed.getStatus( ) );
+            assertEquals( NODE_A, claimed.getNodeId( ) );
+            assertEquals( 1, claimed.getAttempts( ) );
+
+            // the lease is held until it expires
+            assertFalse( _dao.selectClaimableIds( now, Integer.MAX_VALUE ).contains( job.getId( ) ) );
+            assertFalse( _dao.claim( job.getId( ), NODE_B, now, after( now, LEASE ) ) );
+
+            _dao.release( job.getId( ), NODE_A, FormsPDFJob.STATUS_DONE );
+            assertEquals( FormsPDFJob.STATUS_DONE, _dao.load( job.getId( ) ).getStatus( ) );
+            assertFalse( _dao.claim( job.getId( ), NODE_B, after( now, 2 * LEASE ), after( now, 3 * LEASE ) ) );
+        }
+        finally
+        {
+            delete( job );
+        }
+    }
+
+    /**
+     * Test that a job claimed by several nodes at once is claimed by one of them only
+     * 
+     * @throws Exception
+     *             if a claiming thread fails
+     */
+    public void testConcurrentClaim( ) throws Exception
+    {
+        FormsPDFJob job = createJob( );
+        ExecutorService executor = Executors.newFixedThreadPool( NB_CONCURRENT_NODES );
+        try
+        {
+            Timestamp now = new Timestamp( System.currentTimeMillis( ) );
+            CountDownLatch start = new CountDownLatch( 1 );
+            List<Future<Boolean>> listClaims = new ArrayList<>( );
+            for ( int i = 0; i < NB_CONCURRENT_NODES; i++ )
+            {
+                String strNodeId = "node-" + i;
+                Callable<Boolean> claim = ( ) -> {
+                    start.await( );
+                    return _dao.claim( job.getId( ), strNodeId, now, after( now, LEASE ) );
+                };
+                listClaims.add( executor.submit( claim ) );
+            }
+            start.countDown( );
+
+            int nClaimed = 0;
+            for ( Future<Boolean> claim : listClaims )
+            {
+                if ( claim.get( 30, TimeUnit.SECONDS ) )
+                {
+                    nClaimed++;
+                }
+            }
+            assertEquals( 1, nClaimed );
+            assertEquals( 1, _dao.load( job.getId( ) ).getAttempts( ) );
+        }
+        finally
+        {
+            executor.shutdownNow( );
+            delete( job );
+        }
+    }
+
+    /**
+     * Test that a job whose lease has expired is claimed by another node, the former holder losing it
+     */
+    public void testLeaseExpiry( )
+    {
+        FormsPDFJob job = createJob( );
+        try
+        {
+            Timestamp now = new Timestamp( System.currentTimeMillis( ) );
+            assertTrue( _dao.claim( job.getId( ), NODE_A, now, after( now, LEASE ) ) );
+
+            Timestamp expired = after( now, 2 * LEASE );
+            assertTrue( _dao.selectClaimableIds( expired, Integer.MAX_VALUE ).contains( job.getId( ) ) );
+            assertTrue( _dao.claim( job.getId( ), NODE_B, expired, after( expired, LEASE ) ) );
+
+            FormsPDFJob claimed = _dao.load( job.getId( ) );
+            assertEquals( NODE_B, claimed.getNodeId( ) );
+            assertEquals( 2, claimed.getAttempts( ) );
+
+            // the former holder can neither renew the lease nor complete the job
+            assertFalse( _dao.renewLease( job.getId( ), NODE_A, after( expired, 2 * LEASE ) ) );
+            _dao.release( job.getId( ), NODE_A, FormsPDFJob.STATUS_DONE );
+            assertEquals( FormsPDFJob.STATUS_RUNNING, _dao.load( job.getId( ) ).getStatus( ) );
+        }
+        finally
+        {
+            delete( job );
+        }
+    }
+
+    /**
+     * Test that a renewed lease is not claimed by another node
+     */
+    public void testRenewLease( )
+    {
+        FormsPDFJob job = createJob( );
+        try
+        {
+            Timestamp now = new Timestamp( System.currentTimeMillis( ) );
+            assertTrue( _dao.claim( job.getId( ), NODE_A, now, after( now, LEASE ) ) );
+            assertTrue( _dao.renewLease( job.getId( ), NODE_A, after( now, 3 * LEASE ) ) );
+
+            Timestamp later = after( now, 2 * LEASE );
+            assertFalse( _dao.selectClaimableIds( later, Integer.MAX_VALUE ).contains( job.getId( ) ) );
+            assertFalse( _dao.claim( job.getId( ), NODE_B, later, after( later, LEASE ) ) );
+            assertEquals( NODE_A, _dao.load( job.getId( ) ).getNodeId( ) );
+        }
+        finally
+        {
+            delete( job );
+        }
+    }
+
+    /**
+     * Test that the claimable jobs are limited by the query
+     */
+    public void testClaimableLimit( )
+    {
+        FormsPDFJob job = createJob( );
+        FormsPDFJob otherJob = createJob( );
+        try
+        {
+            Timestamp now = new Timestamp( System.currentTimeMillis( ) );
+            assertEquals( 1, _dao.selectClaimableIds( now, 1 ).size( ) );
+            assertTrue( _dao.selectClaimableIds( now, Integer.MAX_VALUE ).containsAll( Arrays.asList( job.getId( ), otherJob.getId( ) ) ) );
+        }
+        finally
+        {
+            delete( job );
+            delete( otherJob );
+        }
+    }
+
+    /**
+     * Test that the jobs of a removed task are deleted whatever their status
+     */
+    public void testDeleteByTask( )
+    {
+        FormsPDFJob job = createJob( );
+        FormsPDFJob runningJob = createJob( );
+        try
+        {
+            Timestamp now = new Timestamp( System.currentTimeMillis( ) );
+            assertTrue( _dao.claim( runningJob.getId( ), NODE_A, now, after( now, LEASE ) ) );
+
+            _dao.deleteByTask( job.getIdTask( ) );
+
+            assertNull( _dao.load( job.getId( ) ) );
+            assertNull( _dao.load( runningJob.getId( ) ) );
+        }
+        finally
+        {
+            delete( job );
+            delete( runningJob );
+        }
+    }
+
+    private FormsPDFJob createJob( )
+    {
+        FormsPDFJob job = new FormsPDFJob( );
+        // a task id out of the range of the real tasks, unique among the tests
+        job.setIdTask( -1 );
+        job.setIdResourceHistory( (int) ( System.nanoTime( ) & Integer.MAX_VALUE ) );
+        job.setStatus( FormsPDFJob.STATUS_PENDING );
+        job.setDateCreation( new Timestamp( System.currentTimeMillis( ) ) );
+        _dao.insert( job );
+        return job;
+    }
+
+    private static void delete( FormsPDFJob job )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_DELETE, FormsPDFPlugin.getPlugin( ) ) )
+        {
+            daoUtil.setInt( 1, job.getId( ) );
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    private static Timestamp after( Timestamp date, long lMillis )
+    {
+        return new Timestamp( date.getTime( ) + lMillis );
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import fr.paris.lutece.test.LuteceTestCase;
+
+/**
+ * Test of the include headers of the {@link FormsPDFTemplateIncludes} when the form is edited after the template is saved
+ */
+public class FormsPDFTemplateIncludesTest extends LuteceTestCase
+{
+    private static final String CONTENT = "<p><@displayEntry q=position_1/></p><p><@displayEntry q=position_2/></p>";
+    private static final String CONTENT_RTE = "<p>[@displayEntry q=position_1/]</p>";
+    private static final String ENTRY_TYPE_TEXT = "forms.entryTypeText";
+    private static final String ENTRY_TYPE_DATE = "forms.entryTypeDate";
+    private static final String INCLUDE_DATE = "displayEntryTypeDate.ftl";
+
+    /**
+     * Test that the header of a template is kept while the form is unchanged
+     */
+    public void testUnchangedForm( )
+    {
+        Map<String, String> mapEntryTypes = createEntryTypes( );
+        String strRenderContent = FormsPDFTemplateIncludes.getHeader( CONTENT, ( ) -> mapEntryTypes, false ) + CONTENT;
+
+        assertFalse( strRenderContent.startsWith( FormsPDFTemplateIncludes.getDefaultHeader( false ) ) );
+        assertEquals( strRenderContent, FormsPDFTemplateIncludes.checkHeader( strRenderContent, ( ) -> mapEntryTypes ) );
+    }
+
+    /**
+     * Test that the header of a template saved before the entry type of one of its questions was changed includes the macros of all the entry types
+     */
+    public void testEditedEntryType( )
+    {
+        String strRenderContent = FormsPDFTemplateIncludes.getHeader( CONTENT, FormsPDFTemplateIncludesTest::createEntryTypes, false ) + CONTENT;
+        assertFalse( strRenderContent.contains( INCLUDE_DATE ) );
+
+        Map<String, String> mapEditedEntryTypes = createEntryTypes( );
+        mapEditedEntryTypes.put( "position_2", ENTRY_TYPE_DATE );
+
+        assertEquals( FormsPDFTemplateIncludes.getDefaultHeader( false ) + CONTENT,
+                FormsPDFTemplateIncludes.checkHeader( strRenderContent, ( ) -> mapEditedEntryTypes ) );
+    }
+
+    /**
+     * Test that the header of a template saved before one of its questions was removed from the form includes the macros of all the entry types
+     */
+    public void testRemovedQuestion( )
+    {
+        String strRenderContent = FormsPDFTemplateIncludes.getHeader( CONTENT, FormsPDFTemplateIncludesTest::createEntryTypes, false ) + CONTENT;
+
+        Map<String, String> mapEditedEntryTypes = createEntryTypes( );
+        mapEditedEntryTypes.remove( "position_2" );
+
+        assertEquals( FormsPDFTemplateIncludes.getDefaultHeader( false ) + CONTENT,
+                FormsPDFTemplateIncludes.checkHeader( strRenderContent, ( ) -> mapEditedEntryTypes ) );
+    }
+
+    /**
+     * Test that the header replacing the header of a template edited with the rich text editor keeps its syntax
+     */
+    public void testEditedEntryTypeRte( )
+    {
+        String strRenderContent = FormsPDFTemplateService.FTL_SQUARE_BRACKET_TAG
+                + FormsPDFTemplateIncludes.getHeader( CONTENT_RTE, FormsPDFTemplateIncludesTest::createEntryTypes, true ) + CONTENT_RTE;
+
+        Map<String, String> mapEditedEntryTypes = createEntryTypes( );
+        mapEditedEntryTypes.put( "position_1", ENTRY_TYPE_DATE );
+
+        assertEquals( FormsPDFTemplateService.FTL_SQUARE_BRACKET_TAG + FormsPDFTemplateIncludes.getDefaultHeader( true ) + CONTENT_RTE,
+                FormsPDFTemplateIncludes.checkHeader( strRenderContent, ( ) -> mapEditedEntryTypes ) );
+    }
+
+    /**
+     * Test that the header including the macros of all the entry types is kept without reading the questions of the form
+     */
+    public void testDefaultHeader( )
+    {
+        String strRenderContent = FormsPDFTemplateIncludes.getDefaultHeader( false ) + CONTENT;
+
+        assertEquals( strRenderContent, FormsPDFTemplateIncludes.checkHeader( strRenderContent, ( ) -> {
+            throw new AssertionError( "The questions of the form should not be read" );
+        } ) );
+    }
+
+    /**
+     * @return the entry types of the questions of the form when the template is saved
+     */
+    private static Map<String, String> createEntryTypes( )
+    {
+        Map<String, String> mapEntryTypes = new HashMap<>( );
+        mapEntryTypes.put( "position_1", ENTRY_TYPE_TEXT );
+        mapEntryTypes.put( "position_2", ENTRY_TYPE_TEXT );
+        return mapEntryTypes;
+    }
+}
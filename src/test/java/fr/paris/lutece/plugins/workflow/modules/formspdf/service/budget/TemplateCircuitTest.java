@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service.budget;
+
+import fr.paris.lutece.test.LuteceTestCase;
+
+/**
+ * Test of the states of the {@link TemplateCircuit}
+ */
+public class TemplateCircuitTest extends LuteceTestCase
+{
+    private static final int THRESHOLD = 2;
+    private static final long OPEN_DURATION = 60000L;
+
+    /**
+     * Test that the circuit opens once the threshold of consecutive failures is reached
+     */
+    public void testOpen( )
+    {
+        TemplateCircuit circuit = new TemplateCircuit( 1 );
+        circuit.recordFailure( "first", THRESHOLD, OPEN_DURATION );
+        assertFalse( circuit.isOpen( ) );
+        assertFalse( circuit.startProbe( ) );
+
+        circuit.recordFailure( "second", THRESHOLD, OPEN_DURATION );
+        assertTrue( circuit.isOpen( ) );
+        assertFalse( circuit.startProbe( ) );
+        assertEquals( "second", circuit.getLastError( ) );
+    }
+
+    /**
+     * Test that a single probe is let through once the open duration has elapsed, the other renderings being refused until it ends
+     */
+    public void testSingleProbe( )
+    {
+        TemplateCircuit circuit = openElapsed( );
+
+        assertTrue( circuit.startProbe( ) );
+        assertFalse( circuit.startProbe( ) );
+        assertTrue( circuit.isOpen( ) );
+
+        // a probe ending without outcome lets the next rendering probe
+        circuit.endProbe( );
+        assertFalse( circuit.isOpen( ) );
+        assertTrue( circuit.startProbe( ) );
+    }
+
+    /**
+     * Test that a failed probe opens the circuit again at once
+     */
+    public void testFailedProbe( )
+    {
+        TemplateCircuit circuit = openElapsed( );
+
+        assertTrue( circuit.startProbe( ) );
+        circuit.recordFailure( "probe", THRESHOLD, OPEN_DURATION );
+
+        assertTrue( circuit.isOpen( ) );
+        assertFalse( circuit.startProbe( ) );
+        assertNotNull( circuit.getOpenUntil( ) );
+    }
+
+    /**
+     * @return a circuit whose open duration has already elapsed
+     */
+    private static TemplateCircuit openElapsed( )
+    {
+        TemplateCircuit circuit = new TemplateCircuit( 1 );
+        for ( int i = 0; i < THRESHOLD; i++ )
+        {
+            circuit.recordFailure( "failure", THRESHOLD, -1L );
+        }
+        return circuit;
+    }
+}
@@ -0,0 +1,352 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.workflow.modules.formspdf.service.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.io.IOUtils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import fr.paris.lutece.test.LuteceTestCase;
+
+/**
+ * Test of the uploads of the {@link S3DocumentStorage} against a local stand-in of an S3 storage
+ */
+public class S3DocumentStorageTest extends LuteceTestCase
+{
+    private static final String BUCKET = "formspdf";
+    private static final String KEY = "12/document.pdf";
+    private static final String PATH = "/" + BUCKET + "/" + KEY;
+    private static final String UPLOAD_ID = "upload-1";
+    private static final int PART_SIZE = 5 * 1024 * 1024;
+
+    private HttpServer _server;
+    private StandInHandler _handler;
+    private S3DocumentStorage _storage;
+
+    @Override
+    protected void setUp( ) throws Exception
+    {
+        super.setUp( );
+        _handler = new StandInHandler( );
+        _server = HttpServer.create( new InetSocketAddress( "127.0.0.1", 0 ), 0 );
+        _server.createContext( "/", _handler::handle );
+        _server.start( );
+
+        Map<String, String> mapProperties = new HashMap<>( );
+        mapProperties.put( "workflow-formspdf.storage.s3.endpoint", "http://127.0.0.1:" + _server.getAddress( ).getPort( ) );
+        mapProperties.put( "workflow-formspdf.storage.s3.bucket", BUCKET );
+        mapProperties.put( "workflow-formspdf.storage.s3.accessKey", "access" );
+        mapProperties.put( "workflow-formspdf.storage.s3.secretKey", "secret" );
+        mapProperties.put( "workflow-formspdf.storage.s3.partSize", String.valueOf( PART_SIZE ) );
+        _storage = new S3DocumentStorage( )
+        {
+            @Override
+            String getProperty( String strKey, String strDefault )
+            {
+                return mapProperties.getOrDefault( strKey, strDefault );
+            }
+        };
+    }
+
+    @Override
+    protected void tearDown( ) throws Exception
+    {
+        _server.stop( 0 );
+        super.tearDown( );
+    }
+
+    /**
+     * Test that a document smaller than a part is uploaded by a single request
+     * 
+     * @throws IOException
+     *             if the upload fails
+     */
+    public void testSingleUpload( ) throws IOException
+    {
+        byte [ ] document = createDocument( 1000 );
+        try ( DocumentOutputStream outputStream = _storage.openOutputStream( KEY ) )
+        {
+            outputStream.write( document );
+            outputStream.commit( );
+        }
+
+        assertEquals( Collections.singletonList( "PUT " + PATH ), _handler.getRequests( ) );
+        assertTrue( Arrays.equals( document, _handler.getObject( ) ) );
+    }
+
+    /**
+     * Test that a document larger than a part is uploaded part by part, then assembled by the storage
+     * 
+     * @throws IOException
+     *             if the upload fails
+     */
+    public void testMultipartUpload( ) throws IOException
+    {
+        byte [ ] document = createDocument( 2 * PART_SIZE + 10 );
+        try ( DocumentOutputStream outputStream = _storage.openOutputStream( KEY ) )
+        {
+            // written in slices which do not match the parts
+            for ( int nOffset = 0; nOffset < document.length; nOffset += 100000 )
+            {
+                outputStream.write( document, nOffset, Math.min( 100000, document.length - nOffset ) );
+            }
+            outputStream.commit( );
+        }
+
+        assertEquals( Arrays.asList( "POST " + PATH + "?uploads=", "PUT " + PATH + "?partNumber=1&uploadId=" + UPLOAD_ID,
+                "PUT " + PATH + "?partNumber=2&uploadId=" + UPLOAD_ID, "PUT " + PATH + "?partNumber=3&uploadId=" + UPLOAD_ID,
+                "POST " + PATH + "?uploadId=" + UPLOAD_ID ), _handler.getRequests( ) );
+        assertTrue( Arrays.equals( document, _handler.getObject( ) ) );
+        assertTrue( _handler.isSigned( ) );
+    }
+
+    /**
+     * Test that a multipart upload is aborted when a part is refused, so that the storage drops the uploaded parts
+     */
+    public void testAbortOnFailedPart( )
+    {
+        _handler.failPart( 2 );
+        byte [ ] document = createDocument( 2 * PART_SIZE + 10 );
+        try
+        {
+            try ( DocumentOutputStream outputStream = _storage.openOutputStream( KEY ) )
+            {
+                outputStream.write( document );
+                outputStream.commit( );
+            }
+            fail( "The refused part should fail the upload" );
+        }
+        catch( IOException e )
+        {
+            // expected
+        }
+
+        List<String> listRequests = _handler.getRequests( );
+        assertEquals( "DELETE " + PATH + "?uploadId=" + UPLOAD_ID, listRequests.get( listRequests.size( ) - 1 ) );
+        assertFalse( listRequests.contains( "POST " + PATH + "?uploadId=" + UPLOAD_ID ) );
+        assertNull( _handler.getObject( ) );
+    }
+
+    /**
+     * Test that a document smaller than a part closed without being committed is not uploaded
+     * 
+     * @throws IOException
+     *             if the stream fails
+     */
+    public void testDiscardSingleUpload( ) throws IOException
+    {
+        try ( DocumentOutputStream outputStream = _storage.openOutputStream( KEY ) )
+        {
+            outputStream.write( createDocument( 1000 ) );
+        }
+
+        assertTrue( _handler.getRequests( ).isEmpty( ) );
+        assertNull( _handler.getObject( ) );
+    }
+
+    /**
+     * Test that a multipart upload closed without being committed is aborted, leaving the stored object unchanged
+     * 
+     * @throws IOException
+     *             if the stream fails
+     */
+    public void testDiscardMultipartUpload( ) throws IOException
+    {
+        try ( DocumentOutputStream outputStream = _storage.openOutputStream( KEY ) )
+        {
+            outputStream.write( createDocument( 2 * PART_SIZE + 10 ) );
+        }
+
+        List<String> listRequests = _handler.getRequests( );
+        assertEquals( "DELETE " + PATH + "?uploadId=" + UPLOAD_ID, listRequests.get( listRequests.size( ) - 1 ) );
+        assertFalse( listRequests.contains( "POST " + PATH + "?uploadId=" + UPLOAD_ID ) );
+        assertNull( _handler.getObject( ) );
+    }
+
+    /**
+     * @return a document whose bytes depend on their position
+     */
+    private static byte [ ] createDocument( int nLength )
+    {
+        byte [ ] document = new byte [ nLength];
+        for ( int i = 0; i < nLength; i++ )
+        {
+            document [i] = (byte) ( i % 251 );
+        }
+        return document;
+    }
+
+    /**
+     * Answers the requests of the storage as an S3 storage does, recording them
+     */
+    private static final class StandInHandler
+    {
+        private final List<String> _listRequests = Collections.synchronizedList( new ArrayList<>( ) );
+        private final Map<Integer, byte [ ]> _mapParts = new TreeMap<>( );
+        private volatile byte [ ] _object;
+        private volatile boolean _bSigned = true;
+        private volatile int _nFailedPart;
+
+        void handle( HttpExchange exchange ) throws IOException
+        {
+            String strMethod = exchange.getRequestMethod( );
+            String strQuery = exchange.getRequestURI( ).getRawQuery( );
+            _listRequests.add( strMethod + " " + exchange.getRequestURI( ).getRawPath( ) + ( strQuery != null ? "?" + strQuery : "" ) );
+            String strAuthorization = exchange.getRequestHeaders( ).getFirst( "Authorization" );
+            _bSigned &= strAuthorization != null && strAuthorization.startsWith( "AWS4-HMAC-SHA256 Credential=access/" );
+
+            byte [ ] body;
+            try ( InputStream inputStream = exchange.getRequestBody( ) )
+            {
+                body = IOUtils.toByteArray( inputStream );
+            }
+
+            if ( "POST".equals( strMethod ) && "uploads=".equals( strQuery ) )
+            {
+                respond( exchange, 200, "<InitiateMultipartUploadResult><UploadId>" + UPLOAD_ID + "</UploadId></InitiateMultipartUploadResult>" );
+            }
+            else
+                if ( "PUT".equals( strMethod ) && strQuery != null )
+                {
+                    int nPart = Integer.parseInt( strQuery.substring( "partNumber=".length( ), strQuery.indexOf( '&' ) ) );
+                    if ( nPart == _nFailedPart )
+                    {
+                        respond( exchange, 500, "<Error><Code>InternalError</Code></Error>" );
+                        return;
+                    }
+                    synchronized( _mapParts )
+                    {
+                        _mapParts.put( nPart, body );
+                    }
+                    exchange.getResponseHeaders( ).add( "ETag", "\"etag-" + nPart + "\"" );
+                    respond( exchange, 200, null );
+                }
+                else
+                    if ( "PUT".equals( strMethod ) )
+                    {
+                        _object = body;
+                        respond( exchange, 200, null );
+                    }
+                    else
+                        if ( "POST".equals( strMethod ) )
+                        {
+                            completeUpload( new String( body, StandardCharsets.UTF_8 ) );
+                            respond( exchange, 200, "<CompleteMultipartUploadResult/>" );
+                        }
+                        else
+                        {
+                            synchronized( _mapParts )
+                            {
+                                _mapParts.clear( );
+                            }
+                            respond( exchange, 204, null );
+                        }
+        }
+
+        /**
+         * Assemble the parts listed in the request completing the upload
+         */
+        private void completeUpload( String strComplete ) throws IOException
+        {
+            ByteArrayOutputStream object = new ByteArrayOutputStream( );
+            synchronized( _mapParts )
+            {
+                for ( Map.Entry<Integer, byte [ ]> part : _mapParts.entrySet( ) )
+                {
+                    String strPart = "<Part><PartNumber>" + part.getKey( ) + "</PartNumber><ETag>\"etag-" + part.getKey( ) + "\"</ETag></Part>";
+                    if ( !strComplete.contains( strPart ) )
+                    {
+                        throw new IOException( "Part " + part.getKey( ) + " not listed" );
+                    }
+                    object.write( part.getValue( ) );
+                }
+            }
+            _object = object.toByteArray( );
+        }
+
+        private static void respond( HttpExchange exchange, int nStatus, String strBody ) throws IOException
+        {
+            if ( strBody == null )
+            {
+                exchange.sendResponseHeaders( nStatus, -1 );
+                exchange.close( );
+                return;
+            }
+            byte [ ] body = strBody.getBytes( StandardCharsets.UTF_8 );
+            exchange.sendResponseHeaders( nStatus, body.length );
+            try ( OutputStream outputStream = exchange.getResponseBody( ) )
+            {
+                outputStream.write( body );
+            }
+        }
+
+        void failPart( int nPart )
+        {
+            _nFailedPart = nPart;
+        }
+
+        List<String> getRequests( )
+        {
+            synchronized( _listRequests )
+            {
+                return new ArrayList<>( _listRequests );
+            }
+        }
+
+        byte [ ] getObject( )
+        {
+            return _object;
+        }
+
+        boolean isSigned( )
+        {
+            return _bSigned;
+        }
+    }
+}
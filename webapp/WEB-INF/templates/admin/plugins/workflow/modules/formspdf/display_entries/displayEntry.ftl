@@ -1,6 +1,6 @@
 <#--
 Macro: displayEntry
-Description: Call the macro corresponding to the entry type
+Description: Call the macro corresponding to the entry type, with the macros of all the entry types
 Parameters: q (forms.FormQuestionResponse) - The form question response
 -->
 <#include "/admin/plugins/workflow/modules/formspdf/display_entries/displayEntryTypeText.ftl" />
@@ -23,59 +23,5 @@ Parameters: q (forms.FormQuestionResponse) - The form question response
 <#include "/admin/plugins/workflow/modules/formspdf/display_entries/displayEntryTypeSelectOrder.ftl" />
 <#include "/admin/plugins/workflow/modules/formspdf/display_entries/displayEntryTypeTelephone.ftl" />
 <#include "/admin/plugins/workflow/modules/formspdf/display_entries/displayEntryTypeTermsOfService.ftl" />
-<#include "/admin/plugins/workflow/modules/formspdf/display_entries/displayEntryTypeText.ftl" />
 <#include "/admin/plugins/workflow/modules/formspdf/display_entries/displayEntryTypeTextArea.ftl" />
-
-
-<#macro displayEntry q>
-    <#if q??>
-        <#assign entry=q.question.entry >
-        <#assign list_responses=q.getEntryResponse() >
-
-        <#if entry.entryType.beanName == "forms.entryTypeArray">
-            <@displayEntryTypeArray entry=entry list_responses=list_responses  />
-        <#elseif entry.entryType.beanName == "forms.entryTypeAutomaticFileReading">
-            <@displayEntryTypeAutoFileReading entry=entry list_responses=list_responses  />
-        <#elseif entry.entryType.beanName == "forms.entryTypeCamera">
-            <@displayEntryTypeCamera entry=entry list_responses=list_responses  />
-        <#elseif entry.entryType.beanName == "forms.entryTypeCartography">
-            <@displayEntryTypeCartography entry=entry list_responses=list_responses  />
-        <#elseif entry.entryType.beanName == "forms.entryTypeCheckbox">
-            <@displayEntryTypeCheckbox entry=entry list_responses=list_responses  />
-        <#elseif entry.entryType.beanName == "forms.entryTypeComment">
-            <@displayEntryTypeComment entry=entry list_responses=list_responses  />
-        <#elseif entry.entryType.beanName == "forms.entryTypeDate">
-            <@displayEntryTypeDate entry=entry list_responses=list_responses  />
-        <#elseif entry.entryType.beanName == "forms.entryTypeFile">
-            <@displayEntryTypeFile entry=entry list_responses=list_responses  />
-        <#elseif entry.entryType.beanName == "forms.entryTypeGalleryImage">
-            <@displayEntryTypeGalleryImage entry=entry list_responses=list_responses  />
-        <#elseif entry.entryType.beanName == "forms.entryTypeGeolocation">
-            <@displayEntryTypeGeolocation entry=entry list_responses=list_responses  />
-        <#elseif entry.entryType.beanName == "forms.entryTypeImage">
-            <@displayEntryTypeImage entry=entry list_responses=list_responses  />
-        <#elseif entry.entryType.beanName == "forms.entryTypeMyLuteceUser">
-            <@displayEntryTypeMyLuteceUser entry=entry list_responses=list_responses  />
-        <#elseif entry.entryType.beanName == "forms.entryTypeNumber">
-            <@displayEntryTypeNumber entry=entry list_responses=list_responses  />
-        <#elseif entry.entryType.beanName == "forms.entryTypeNumbering">
-            <@displayEntryTypeNumbering entry=entry list_responses=list_responses  />
-        <#elseif entry.entryType.beanName == "forms.entryTypeRadioButton">
-            <@displayEntryTypeRadioButton entry=entry list_responses=list_responses  />
-        <#elseif entry.entryType.beanName == "forms.entryTypeSelect">
-            <@displayEntryTypeSelect entry=entry list_responses=list_responses  />
-        <#elseif entry.entryType.beanName == "forms.entryTypeSelectOrder">
-            <@displayEntryTypeSelectOrder entry=entry list_responses=list_responses  />
-        <#elseif entry.entryType.beanName == "forms.entryTypeTelephoneNumber">
-            <@displayEntryTypeTelephoneNumber entry=entry list_responses=list_responses  />
-        <#elseif entry.entryType.beanName == "forms.entryTypeTermsOfService">
-            <@displayEntryTypeTermsOfService entry=entry list_responses=list_responses  />
-        <#elseif entry.entryType.beanName == "forms.entryTypeText">
-            <@displayEntryTypeText entry=entry list_responses=list_responses  />
-        <#elseif entry.entryType.beanName == "forms.entryTypeTextArea">
-            <@displayEntryTypeTextArea entry=entry list_responses=list_responses  />
-        <#else>
-            <@displayEntryTypeText entry=entry list_responses=list_responses  />
-        </#if>
-    </#if>
-</#macro>
+<#include "/admin/plugins/workflow/modules/formspdf/display_entries/displayEntryDispatch.ftl" />
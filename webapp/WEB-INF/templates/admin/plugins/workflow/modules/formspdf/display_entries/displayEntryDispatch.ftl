@@ -0,0 +1,58 @@
+<#--
+Macro: displayEntry
+Description: Call the macro corresponding to the entry type. The macros of the entry types must be included before this file, either all of them
+through displayEntry.ftl or only those of the entry types displayed by the template
+Parameters: q (forms.FormQuestionResponse) - The form question response
+-->
+<#macro displayEntry q>
+    <#if q??>
+        <#assign entry=q.question.entry >
+        <#assign list_responses=q.entryResponse >
+
+        <#if entry.entryType.beanName == "forms.entryTypeArray">
+            <@displayEntryTypeArray entry=entry list_responses=list_responses  />
+        <#elseif entry.entryType.beanName == "forms.entryTypeAutomaticFileReading">
+            <@displayEntryTypeAutoFileReading entry=entry list_responses=list_responses  />
+        <#elseif entry.entryType.beanName == "forms.entryTypeCamera">
+            <@displayEntryTypeCamera entry=entry list_responses=list_responses  />
+        <#elseif entry.entryType.beanName == "forms.entryTypeCartography">
+            <@displayEntryTypeCartography entry=entry list_responses=list_responses  />
+        <#elseif entry.entryType.beanName == "forms.entryTypeCheckbox">
+            <@displayEntryTypeCheckBox entry=entry list_responses=list_responses  />
+        <#elseif entry.entryType.beanName == "forms.entryTypeComment">
+            <@displayEntryTypeComment entry=entry list_responses=list_responses  />
+        <#elseif entry.entryType.beanName == "forms.entryTypeDate">
+            <@displayEntryTypeDate entry=entry list_responses=list_responses  />
+        <#elseif entry.entryType.beanName == "forms.entryTypeFile">
+            <@displayEntryTypeFile entry=entry list_responses=list_responses  />
+        <#elseif entry.entryType.beanName == "forms.entryTypeGalleryImage">
+            <@displayEntryTypeGalleryImage entry=entry list_responses=list_responses  />
+        <#elseif entry.entryType.beanName == "forms.entryTypeGeolocation">
+            <@displayEntryTypeGeolocation entry=entry list_responses=list_responses  />
+        <#elseif entry.entryType.beanName == "forms.entryTypeImage">
+            <@displayEntryTypeImage entry=entry list_responses=list_responses  />
+        <#elseif entry.entryType.beanName == "forms.entryTypeMyLuteceUser">
+            <@displayEntryTypeMyLuteceUser entry=entry list_responses=list_responses  />
+        <#elseif entry.entryType.beanName == "forms.entryTypeNumber">
+            <@displayEntryTypeNumber entry=entry list_responses=list_responses  />
+        <#elseif entry.entryType.beanName == "forms.entryTypeNumbering">
+            <@displayEntryTypeNumbering entry=entry list_responses=list_responses  />
+        <#elseif entry.entryType.beanName == "forms.entryTypeRadioButton">
+            <@displayEntryTypeRadioButton entry=entry list_responses=list_responses  />
+        <#elseif entry.entryType.beanName == "forms.entryTypeSelect">
+            <@displayEntryTypeSelect entry=entry list_responses=list_responses  />
+        <#elseif entry.entryType.beanName == "forms.entryTypeSelectOrder">
+            <@displayEntryTypeSelectOrder entry=entry list_responses=list_responses  />
+        <#elseif entry.entryType.beanName == "forms.entryTypeTelephoneNumber">
+            <@displayEntryTypeTelephone entry=entry list_responses=list_responses  />
+        <#elseif entry.entryType.beanName == "forms.entryTypeTermsOfService">
+            <@displayEntryTypeTermsOfService entry=entry list_responses=list_responses  />
+        <#elseif entry.entryType.beanName == "forms.entryTypeText">
+            <@displayEntryTypeText entry=entry list_responses=list_responses  />
+        <#elseif entry.entryType.beanName == "forms.entryTypeTextArea">
+            <@displayEntryTypeTextArea entry=entry list_responses=list_responses  />
+        <#else>
+            <@displayEntryTypeText entry=entry list_responses=list_responses  />
+        </#if>
+    </#if>
+</#macro>
@@ -20,7 +20,7 @@ Parameters: entry, list_responses
 						<#else>
 							<#if response.file?exists && entry?exists >
 								<@link href='${base_url!""}jsp/admin/plugins/forms/FormsDownloadFile.jsp?id_file=${response.file.idFile}&id_response=${response.idResponse}'>
-									${response.file.getTitle()!''}
+									${response.file.title!''}
 								</@link>
 							</#if>
 						</#if>
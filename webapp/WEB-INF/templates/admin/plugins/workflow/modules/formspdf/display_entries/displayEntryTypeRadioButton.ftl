@@ -8,7 +8,7 @@ Parameters: entry, list_responses
 				<#list list_responses as response>
 					<p>
 						<#if response.field??>${response.field.title!''}
-							<#if response.field.fileImage.url??>
+							<#if (response.field.fileImage.url)??>
 								<@img url=response.field.fileImage.url title=response.field.title alt=response.field.title params='width="100" height="100"' />
 							</#if>
 						</#if>
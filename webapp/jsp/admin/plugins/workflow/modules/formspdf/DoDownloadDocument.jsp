@@ -0,0 +1,9 @@
+<%@ page errorPage="../../../../ErrorPage.jsp" trimDirectiveWhitespaces="true" %>
+<jsp:useBean id="downloadFormsPDFDocument" scope="request" class="fr.paris.lutece.plugins.workflow.modules.formspdf.web.task.FormsPDFDownloadJspBean" />
+<%
+    String strErrorUrl = downloadFormsPDFDocument.doDownloadDocument( request, response );
+    if ( strErrorUrl != null )
+    {
+        response.sendRedirect( strErrorUrl );
+    }
+%>
@@ -0,0 +1,9 @@
+<jsp:useBean id="manageFormsPDFDashboard" scope="session" class="fr.paris.lutece.plugins.workflow.modules.formspdf.web.task.FormsPDFDashboardJspBean" />
+<% String strContent = manageFormsPDFDashboard.processController ( request , response ); %>
+
+<%@ page errorPage="../../../../ErrorPage.jsp" %>
+<jsp:include page="../../../../AdminHeader.jsp" />
+
+<%= strContent %>
+
+<%@ include file="../../../../AdminFooter.jsp" %>